@@ -0,0 +1,13 @@
+package com.riceawa.llm.cache;
+
+/**
+ * 文本向量化接口，语义缓存用它比较问题之间的相似度
+ * 可以替换为本地嵌入模型等实现，实现必须线程安全
+ */
+public interface Embedder {
+    /**
+     * 把文本编码为L2归一化的向量，两个向量的点积即余弦相似度
+     * 相同的文本必须得到相同的向量，同一个实现返回的向量维度必须一致
+     */
+    float[] embed(String text);
+}
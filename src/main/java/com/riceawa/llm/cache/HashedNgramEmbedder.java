@@ -0,0 +1,83 @@
+package com.riceawa.llm.cache;
+
+/**
+ * 基于字符n-gram哈希的向量化实现
+ * 把文本中的单个字符和相邻两个字符哈希到固定维度的向量上并归一化，不依赖模型文件；
+ * 按字符而不是按词切分，中文不需要分词。能识别措辞略有不同的同一问题，但不理解同义词。
+ * 助词、疑问词等常见字几乎出现在每个问题中，降低它们的权重，让“钻石”和“铁矿”这类内容字的差异决定相似度。
+ */
+public class HashedNgramEmbedder implements Embedder {
+    private static final int MAX_N = 2;
+    /** 常见的虚词和疑问词用字 */
+    private static final String COMMON_CHARACTERS = "的了是在吗呢吧啊呀么什怎哪里谁几一个这那有和与就都也还要会能可以请问我你他她它们把被给如何为";
+    /** 包含常见字的n-gram的权重 */
+    private static final float COMMON_WEIGHT = 0.25f;
+
+    private final int dimensions;
+
+    public HashedNgramEmbedder() {
+        this(512);
+    }
+
+    public HashedNgramEmbedder(int dimensions) {
+        this.dimensions = Math.max(1, dimensions);
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        int[] codePoints = normalize(text);
+        for (int n = 1; n <= MAX_N; n++) {
+            for (int start = 0; start + n <= codePoints.length; start++) {
+                int hash = n;
+                float weight = 1;
+                for (int i = start; i < start + n; i++) {
+                    hash = hash * 31 + codePoints[i];
+                    if (COMMON_CHARACTERS.indexOf(codePoints[i]) >= 0) {
+                        weight = COMMON_WEIGHT;
+                    }
+                }
+                hash = mix(hash);
+                // 用哈希的最高位决定符号，使不同n-gram的碰撞在期望上相互抵消
+                vector[(hash & 0x7fffffff) % dimensions] += hash < 0 ? -weight : weight;
+            }
+        }
+
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 只保留字母和数字并转为小写，忽略空白和标点的差异
+     */
+    private static int[] normalize(String text) {
+        if (text == null) {
+            return new int[0];
+        }
+        return text.codePoints()
+            .filter(Character::isLetterOrDigit)
+            .map(Character::toLowerCase)
+            .toArray();
+    }
+
+    /**
+     * MurmurHash3的混合函数，打散相近字符的哈希值
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,386 @@
+package com.riceawa.llm.cache;
+
+import com.google.gson.Gson;
+import com.riceawa.llm.core.LLMConfig;
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMResponse;
+import okio.ByteString;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * 响应缓存
+ * 以规范化的请求指纹为键缓存纯文本回复，内存中按LRU淘汰并限制条目数，条目超过TTL后失效；
+ * 可选的磁盘层把回复保存为每个指纹一个文件，内存未命中时从磁盘读取，服务器重启后仍然有效。
+ * 只缓存成功且不含函数调用的回复，命中时返回新的响应对象，调用方可以自由修改。
+ */
+public class ResponseCache {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final String FILE_SUFFIX = ".json";
+
+    private final LongSupplier clock;
+    private final Gson gson = new Gson();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private volatile int maxEntries;
+    private volatile long ttlMs;
+    private volatile Path diskDir;
+    private volatile int maxDiskEntries;
+    private final AtomicInteger diskEntries = new AtomicInteger(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong diskHits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * @param maxEntries 内存中最多保存的回复数
+     * @param ttlMs 回复的有效期
+     * @param diskDir 磁盘层目录，null表示不使用磁盘层
+     * @param maxDiskEntries 磁盘层最多保存的回复数
+     */
+    public ResponseCache(int maxEntries, long ttlMs, Path diskDir, int maxDiskEntries) {
+        this(maxEntries, ttlMs, diskDir, maxDiskEntries, System::currentTimeMillis);
+    }
+
+    ResponseCache(int maxEntries, long ttlMs, Path diskDir, int maxDiskEntries, LongSupplier clock) {
+        this.clock = clock;
+        configure(maxEntries, ttlMs, diskDir, maxDiskEntries);
+    }
+
+    /**
+     * 更新容量、有效期和磁盘层目录，保留仍然有效的回复
+     */
+    public void configure(int maxEntries, long ttlMs, Path diskDir, int maxDiskEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMs = Math.max(1, ttlMs);
+        this.maxDiskEntries = Math.max(1, maxDiskEntries);
+        synchronized (entries) {
+            trimMemory();
+        }
+        if (diskDir != null) {
+            try {
+                Files.createDirectories(diskDir);
+            } catch (IOException e) {
+                diskDir = null; // 无法创建目录时只使用内存层
+            }
+        }
+        this.diskDir = diskDir;
+        diskEntries.set(0);
+        if (diskDir != null) {
+            // 启动时清理过期文件并统计剩余条目
+            for (Path file : listDiskFiles(diskDir)) {
+                if (readDisk(file) != null) {
+                    diskEntries.incrementAndGet();
+                }
+            }
+            trimDisk(diskDir);
+        }
+    }
+
+    /**
+     * 计算渲染后系统消息的哈希
+     * 没有显式启用缓存的模板可能在系统提示词中放入玩家名、坐标等个人信息，
+     * 这类请求的作用域需要包含该哈希，避免一个玩家得到为另一个玩家生成的回复
+     */
+    public static String systemPromptHash(List<LLMMessage> messages) {
+        StringBuilder builder = new StringBuilder();
+        for (LLMMessage message : messages) {
+            if (message.getRole() == LLMMessage.MessageRole.SYSTEM && message.getContent() != null) {
+                builder.append(message.getContent()).append('\u0000');
+            }
+        }
+        return ByteString.encodeUtf8(builder.toString()).sha256().hex().substring(0, 16);
+    }
+
+    /**
+     * 计算规范化的请求指纹
+     * 系统消息包含玩家坐标、时间等每次都不同的内容，由作用域（模板ID等）代替；
+     * 其余消息的空白和大小写被规范化，工具调用ID每次随机生成，不参与指纹。
+     *
+     * @param scope 缓存作用域，不同作用域的回复互不共享
+     */
+    public static String fingerprint(List<LLMMessage> messages, LLMConfig config, String scope) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(scope).append('\n')
+               .append(config.getModel()).append('\n')
+               .append(config.getTemperature()).append('\n')
+               .append(config.getMaxTokens()).append('\n');
+        for (LLMMessage message : messages) {
+            if (message.getRole() == LLMMessage.MessageRole.SYSTEM) {
+                continue;
+            }
+            builder.append(message.getRole().getValue()).append('\u0000');
+            if (message.getName() != null) {
+                builder.append(message.getName());
+            }
+            builder.append('\u0000');
+            LLMMessage.MessageMetadata metadata = message.getMetadata();
+            if (metadata != null && metadata.getFunctionCall() != null) {
+                builder.append(metadata.getFunctionCall().getName()).append('\u0000')
+                       .append(normalize(metadata.getFunctionCall().getArguments()));
+            }
+            builder.append('\u0000').append(normalize(message.getContent())).append('\n');
+        }
+        return ByteString.encodeUtf8(builder.toString()).sha256().hex();
+    }
+
+    private static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        return WHITESPACE.matcher(text.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 判断回复能否缓存：成功、有文本内容且不含函数调用
+     */
+    public static boolean isCacheable(LLMResponse response) {
+        if (response == null || !response.isSuccess()) {
+            return false;
+        }
+        LLMMessage message = response.getChoices().get(0).getMessage();
+        if (message == null || message.getContent() == null || message.getContent().isEmpty()) {
+            return false;
+        }
+        return message.getMetadata() == null || message.getMetadata().getFunctionCall() == null;
+    }
+
+    /**
+     * 查找缓存的回复，先查内存再查磁盘层
+     *
+     * @return 未命中或已过期时返回null
+     */
+    public LLMResponse get(String key) {
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.isExpired(now, ttlMs)) {
+                    hits.incrementAndGet();
+                    return entry.toResponse();
+                }
+                entries.remove(key);
+            }
+        }
+
+        Path dir = diskDir;
+        if (dir != null) {
+            Entry entry = readDisk(dir.resolve(key + FILE_SUFFIX));
+            if (entry != null) {
+                synchronized (entries) {
+                    entries.put(key, entry);
+                    trimMemory();
+                }
+                diskHits.incrementAndGet();
+                return entry.toResponse();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 保存回复，不可缓存的回复会被忽略；启用磁盘层时同时写入磁盘，应在后台线程调用
+     */
+    public void put(String key, LLMResponse response) {
+        if (!isCacheable(response)) {
+            return;
+        }
+        Entry entry = new Entry(response.getModel(), response.getContent(), clock.getAsLong());
+        synchronized (entries) {
+            entries.put(key, entry);
+            trimMemory();
+        }
+
+        Path dir = diskDir;
+        if (dir != null) {
+            writeDisk(dir, key, entry);
+        }
+    }
+
+    /**
+     * 清空内存和磁盘中的所有回复
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        Path dir = diskDir;
+        if (dir != null) {
+            for (Path file : listDiskFiles(dir)) {
+                deleteQuietly(file);
+            }
+        }
+        diskEntries.set(0);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public int getDiskSize() {
+        return diskEntries.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 命中率（含磁盘层命中），没有请求时为0
+     */
+    public double getHitRate() {
+        long found = hits.get() + diskHits.get();
+        long total = found + misses.get();
+        return total > 0 ? (double) found / total : 0.0;
+    }
+
+    /**
+     * 构造只包含一条文本回复的响应
+     */
+    static LLMResponse textResponse(String model, String content) {
+        LLMResponse.Choice choice = new LLMResponse.Choice();
+        choice.setIndex(0);
+        choice.setMessage(new LLMMessage(LLMMessage.MessageRole.ASSISTANT, content));
+        choice.setFinishReason("stop");
+
+        List<LLMResponse.Choice> choices = new ArrayList<>();
+        choices.add(choice);
+        LLMResponse response = new LLMResponse();
+        response.setModel(model);
+        response.setChoices(choices);
+        return response;
+    }
+
+    private void trimMemory() {
+        var iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove(); // 访问顺序的第一个即最久未使用
+        }
+    }
+
+    private Entry readDisk(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Entry entry;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            entry = gson.fromJson(reader, Entry.class);
+        } catch (Exception e) {
+            entry = null; // 损坏的文件当作过期处理
+        }
+        if (entry == null || entry.content == null || entry.isExpired(clock.getAsLong(), ttlMs)) {
+            if (deleteQuietly(file)) {
+                diskEntries.updateAndGet(count -> Math.max(0, count - 1));
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    private void writeDisk(Path dir, String key, Entry entry) {
+        Path file = dir.resolve(key + FILE_SUFFIX);
+        Path temp = dir.resolve(key + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                gson.toJson(entry, writer);
+            }
+            boolean existed = Files.exists(file);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (!existed && diskEntries.incrementAndGet() > maxDiskEntries) {
+                trimDisk(dir);
+            }
+        } catch (IOException e) {
+            deleteQuietly(temp); // 写入失败只影响磁盘层，不影响请求
+        }
+    }
+
+    /**
+     * 磁盘层超出容量时删除最早写入的文件
+     */
+    private synchronized void trimDisk(Path dir) {
+        List<Path> files = listDiskFiles(dir);
+        int excess = files.size() - maxDiskEntries;
+        if (excess > 0) {
+            files.sort(Comparator.comparingLong(ResponseCache::lastModified));
+            for (int i = 0; i < excess; i++) {
+                deleteQuietly(files.get(i));
+            }
+        }
+        diskEntries.set(Math.min(files.size(), maxDiskEntries));
+    }
+
+    private static List<Path> listDiskFiles(Path dir) {
+        try (Stream<Path> stream = Files.list(dir)) {
+            return new ArrayList<>(stream.filter(path -> path.getFileName().toString().endsWith(FILE_SUFFIX)).toList());
+        } catch (IOException e) {
+            return new ArrayList<>();
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static boolean deleteQuietly(Path file) {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 缓存的回复，同时作为磁盘文件的格式
+     */
+    private static class Entry {
+        String model;
+        String content;
+        long createdAt;
+
+        Entry(String model, String content, long createdAt) {
+            this.model = model;
+            this.content = content;
+            this.createdAt = createdAt;
+        }
+
+        boolean isExpired(long now, long ttlMs) {
+            return now - createdAt >= ttlMs;
+        }
+
+        LLMResponse toResponse() {
+            return textResponse(model, content);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.riceawa.llm.cache;
+
+import com.riceawa.llm.core.LLMResponse;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 语义缓存
+ * 把问题向量化后保存问答对，新问题与同一作用域中已缓存的问题相似度达到阈值时直接返回其回答。
+ * 向量索引保存在内存中，超出条目上限时淘汰最久未命中的问答对；查找时线性扫描同一作用域的条目，
+ * 在上千条的规模下开销远小于一次请求。所有方法线程安全。
+ */
+public class SemanticCache {
+    private final LongSupplier clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private volatile Embedder embedder;
+    private volatile int maxEntries;
+    private volatile double threshold;
+    private volatile long ttlMs;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * @param embedder 问题的向量化实现
+     * @param maxEntries 最多保存的问答对数
+     * @param threshold 视为同一问题的最低余弦相似度（0-1）
+     * @param ttlMs 问答对的有效期
+     */
+    public SemanticCache(Embedder embedder, int maxEntries, double threshold, long ttlMs) {
+        this(embedder, maxEntries, threshold, ttlMs, System::currentTimeMillis);
+    }
+
+    SemanticCache(Embedder embedder, int maxEntries, double threshold, long ttlMs, LongSupplier clock) {
+        this.clock = clock;
+        this.embedder = embedder;
+        configure(maxEntries, threshold, ttlMs);
+    }
+
+    /**
+     * 更新容量、相似度阈值和有效期，保留仍然有效的问答对
+     */
+    public void configure(int maxEntries, double threshold, long ttlMs) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.threshold = threshold;
+        this.ttlMs = Math.max(1, ttlMs);
+        synchronized (entries) {
+            trim();
+        }
+    }
+
+    /**
+     * 替换向量化实现，不同实现的向量不可比较，已缓存的问答对会被清空
+     */
+    public void setEmbedder(Embedder embedder) {
+        synchronized (entries) {
+            this.embedder = embedder;
+            entries.clear();
+        }
+    }
+
+    /**
+     * 查找与问题足够相似的已缓存问题的回答
+     *
+     * @return 未命中时返回null
+     */
+    public LLMResponse lookup(String scope, String question) {
+        float[] vector = embedder.embed(question);
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry best = null;
+            double bestSimilarity = threshold;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (now - entry.createdAt >= ttlMs) {
+                    iterator.remove();
+                    continue;
+                }
+                if (!entry.scope.equals(scope) || entry.vector.length != vector.length) {
+                    continue;
+                }
+                double similarity = dot(entry.vector, vector);
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+            if (best == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            entries.get(best.key); // 更新访问顺序
+            best.hits++;
+            hits.incrementAndGet();
+            return ResponseCache.textResponse(best.model, best.answer);
+        }
+    }
+
+    /**
+     * 保存问答对，同一作用域中相同的问题会覆盖旧的回答
+     */
+    public void put(String scope, String question, String model, String answer) {
+        if (question == null || question.isBlank() || answer == null || answer.isEmpty()) {
+            return;
+        }
+        float[] vector = embedder.embed(question);
+        String key = scope + '\u0000' + question;
+        synchronized (entries) {
+            entries.put(key, new Entry(key, scope, question, model, answer, vector, clock.getAsLong()));
+            trim();
+        }
+    }
+
+    /**
+     * 清空所有问答对
+     */
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * 按命中次数从高到低列出问答对，用于管理员检查缓存内容
+     */
+    public List<EntryInfo> inspect(int limit) {
+        long now = clock.getAsLong();
+        List<EntryInfo> result = new ArrayList<>();
+        synchronized (entries) {
+            for (Entry entry : entries.values()) {
+                if (now - entry.createdAt < ttlMs) {
+                    result.add(new EntryInfo(entry.scope, entry.question, entry.answer, entry.hits, now - entry.createdAt));
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong((EntryInfo info) -> info.hits).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, limit)) : result;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * 命中率，没有查找时为0
+     */
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total > 0 ? (double) hits.get() / total : 0.0;
+    }
+
+    private void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove(); // 访问顺序的第一个即最久未命中
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    private static class Entry {
+        final String key;
+        final String scope;
+        final String question;
+        final String model;
+        final String answer;
+        final float[] vector;
+        final long createdAt;
+        long hits;
+
+        Entry(String key, String scope, String question, String model, String answer, float[] vector, long createdAt) {
+            this.key = key;
+            this.scope = scope;
+            this.question = question;
+            this.model = model;
+            this.answer = answer;
+            this.vector = vector;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /**
+     * 问答对的只读信息
+     */
+    public static class EntryInfo {
+        public final String scope;
+        public final String question;
+        public final String answer;
+        public final long hits;
+        public final long ageMs;
+
+        EntryInfo(String scope, String question, String answer, long hits, long ageMs) {
+            this.scope = scope;
+            this.question = question;
+            this.answer = answer;
+            this.hits = hits;
+            this.ageMs = ageMs;
+        }
+    }
+}
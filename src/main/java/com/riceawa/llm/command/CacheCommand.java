@@ -0,0 +1,141 @@
+package com.riceawa.llm.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.context.CommandContext;
+import com.riceawa.llm.cache.ResponseCache;
+import com.riceawa.llm.cache.SemanticCache;
+import com.riceawa.llm.config.ConcurrencySettings;
+import com.riceawa.llm.config.LLMChatConfig;
+import com.riceawa.llm.logging.LogManager;
+import com.riceawa.llm.service.LLMServiceManager;
+import com.riceawa.llm.service.RoutingLLMService;
+import net.minecraft.command.CommandRegistryAccess;
+import net.minecraft.server.command.CommandManager;
+import net.minecraft.server.command.ServerCommandSource;
+import net.minecraft.text.Text;
+import net.minecraft.util.Formatting;
+
+import java.util.List;
+
+/**
+ * 响应缓存管理命令
+ */
+public class CacheCommand {
+    private static final int DEFAULT_INSPECT_LIMIT = 10;
+    private static final int MAX_PREVIEW_LENGTH = 40;
+
+    public static void register(CommandDispatcher<ServerCommandSource> dispatcher, CommandRegistryAccess registryAccess) {
+        dispatcher.register(CommandManager.literal("llmchat")
+                .then(CommandManager.literal("cache")
+                        .then(CommandManager.literal("stats")
+                                .executes(CacheCommand::showStats))
+                        .then(CommandManager.literal("flush")
+                                .executes(CacheCommand::flush))
+                        .then(CommandManager.literal("inspect")
+                                .executes(context -> inspect(context, DEFAULT_INSPECT_LIMIT))
+                                .then(CommandManager.argument("limit", IntegerArgumentType.integer(1, 50))
+                                        .executes(context -> inspect(context, IntegerArgumentType.getInteger(context, "limit"))))))
+        );
+    }
+
+    /**
+     * 检查OP权限，没有权限时提示
+     */
+    private static boolean checkPermission(ServerCommandSource source) {
+        if (!source.hasPermissionLevel(2)) {
+            source.sendError(Text.literal("只有OP可以管理响应缓存"));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 显示缓存统计
+     */
+    private static int showStats(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        if (!checkPermission(source)) {
+            return 0;
+        }
+
+        ConcurrencySettings settings = LLMChatConfig.getInstance().getConcurrencySettings();
+        RoutingLLMService routingService = LLMServiceManager.getInstance().getRoutingService();
+        ResponseCache responseCache = routingService.getResponseCache();
+        SemanticCache semanticCache = routingService.getSemanticCache();
+
+        StringBuilder status = new StringBuilder();
+        status.append("=== 响应缓存状态 ===\n");
+        status.append("响应缓存: ").append(settings.isEnableResponseCache() ? "启用" : "禁用").append("\n");
+        status.append("  条目: 内存 ").append(responseCache.size())
+              .append(", 磁盘 ").append(settings.isEnableResponseCacheDisk() ? String.valueOf(responseCache.getDiskSize()) : "未启用").append("\n");
+        status.append("  命中率: ").append(String.format("%.1f%%", responseCache.getHitRate() * 100))
+              .append(" (内存命中 ").append(responseCache.getHits())
+              .append(", 磁盘命中 ").append(responseCache.getDiskHits())
+              .append(", 未命中 ").append(responseCache.getMisses()).append(")\n");
+        status.append("语义缓存: ").append(settings.isEnableSemanticCache() ? "启用" : "禁用")
+              .append(" (相似度阈值 ").append(settings.getSemanticCacheThreshold()).append(")\n");
+        status.append("  问答对: ").append(semanticCache.size()).append("/").append(settings.getSemanticCacheMaxEntries()).append("\n");
+        status.append("  命中率: ").append(String.format("%.1f%%", semanticCache.getHitRate() * 100))
+              .append(" (命中 ").append(semanticCache.getHits())
+              .append(", 未命中 ").append(semanticCache.getMisses()).append(")");
+
+        source.sendFeedback(() -> Text.literal(status.toString()).formatted(Formatting.AQUA), false);
+        return 1;
+    }
+
+    /**
+     * 清空响应缓存和语义缓存
+     */
+    private static int flush(CommandContext<ServerCommandSource> context) {
+        ServerCommandSource source = context.getSource();
+        if (!checkPermission(source)) {
+            return 0;
+        }
+
+        RoutingLLMService routingService = LLMServiceManager.getInstance().getRoutingService();
+        int responses = routingService.getResponseCache().size();
+        int pairs = routingService.getSemanticCache().size();
+        routingService.getResponseCache().clear();
+        routingService.getSemanticCache().clear();
+
+        LogManager.getInstance().system("Response cache flushed by " + source.getName());
+        source.sendFeedback(() -> Text.literal("已清空响应缓存 (" + responses + " 条回复, " + pairs + " 个问答对)")
+                .formatted(Formatting.GREEN), true);
+        return 1;
+    }
+
+    /**
+     * 按命中次数列出语义缓存中的问答对
+     */
+    private static int inspect(CommandContext<ServerCommandSource> context, int limit) {
+        ServerCommandSource source = context.getSource();
+        if (!checkPermission(source)) {
+            return 0;
+        }
+
+        List<SemanticCache.EntryInfo> entries = LLMServiceManager.getInstance().getRoutingService()
+                .getSemanticCache().inspect(limit);
+        if (entries.isEmpty()) {
+            source.sendFeedback(() -> Text.literal("语义缓存为空").formatted(Formatting.YELLOW), false);
+            return 1;
+        }
+
+        StringBuilder list = new StringBuilder();
+        list.append("=== 语义缓存 (按命中次数) ===");
+        for (SemanticCache.EntryInfo entry : entries) {
+            list.append("\n[").append(entry.scope).append("] ")
+                .append(preview(entry.question))
+                .append("\n  → ").append(preview(entry.answer))
+                .append(" (命中 ").append(entry.hits)
+                .append(" 次, ").append(entry.ageMs / 60000).append(" 分钟前)");
+        }
+        source.sendFeedback(() -> Text.literal(list.toString()).formatted(Formatting.WHITE), false);
+        return 1;
+    }
+
+    private static String preview(String text) {
+        String singleLine = text.replaceAll("\\s+", " ").trim();
+        return singleLine.length() > MAX_PREVIEW_LENGTH ? singleLine.substring(0, MAX_PREVIEW_LENGTH) + "..." : singleLine;
+    }
+}
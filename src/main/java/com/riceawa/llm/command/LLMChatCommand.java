@@ -4,6 +4,9 @@ import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.riceawa.llm.cache.ResponseCache;
+import com.riceawa.llm.cache.SemanticCache;
+import com.riceawa.llm.config.ConcurrencySettings;
 import com.riceawa.llm.config.LLMChatConfig;
 import com.riceawa.llm.config.Provider;
 
@@ -16,8 +19,14 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.riceawa.llm.history.ChatHistory;
 import com.riceawa.llm.history.ChatHistory.ChatSession;
+import com.riceawa.llm.http.HttpClientRegistry;
 import com.riceawa.llm.logging.LogManager;
+import com.riceawa.llm.service.CircuitBreaker;
 import com.riceawa.llm.service.LLMServiceManager;
+import com.riceawa.llm.service.ProviderMonitor;
+import com.riceawa.llm.service.ProviderRateLimiter;
+import com.riceawa.llm.service.ProviderStats;
+import com.riceawa.llm.service.RoutingLLMService;
 import com.riceawa.llm.template.PromptTemplate;
 import com.riceawa.llm.template.PromptTemplateManager;
 import com.riceawa.llm.template.TemplateEditor;
@@ -30,6 +39,7 @@ import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 
@@ -59,6 +69,9 @@ public class LLMChatCommand {
 
         // 注册历史记录管理命令
         HistoryCommand.register(dispatcher, registryAccess);
+
+        // 注册响应缓存管理命令
+        CacheCommand.register(dispatcher, registryAccess);
         dispatcher.register(CommandManager.literal("llmchat")
                 .then(CommandManager.argument("message", StringArgumentType.greedyString())
                         .executes(LLMChatCommand::handleChatMessage))
@@ -198,16 +211,21 @@ public class LLMChatCommand {
 
 
 
-        // 异步处理聊天请求
-        CompletableFuture.runAsync(() -> {
-            try {
-                processChatMessage(player, message);
-            } catch (Exception e) {
-                LogManager.getInstance().error("Error processing chat message from " +
-                        player.getName().getString(), e);
-                player.sendMessage(Text.literal("处理消息时发生错误: " + e.getMessage()).formatted(Formatting.RED), false);
-            }
-        });
+        // 异步处理聊天请求，使用并发管理器的执行器，避免阻塞服务器线程或公共线程池
+        try {
+            CompletableFuture.runAsync(() -> {
+                try {
+                    processChatMessage(player, message);
+                } catch (Exception e) {
+                    LogManager.getInstance().error("Error processing chat message from " +
+                            player.getName().getString(), e);
+                    player.sendMessage(Text.literal("处理消息时发生错误: " + e.getMessage()).formatted(Formatting.RED), false);
+                }
+            }, ConcurrencyManager.getInstance().getExecutor());
+        } catch (java.util.concurrent.RejectedExecutionException e) {
+            player.sendMessage(Text.literal("服务器繁忙，请稍后再试").formatted(Formatting.RED), false);
+            return 0;
+        }
 
         return 1;
     }
@@ -544,6 +562,9 @@ public class LLMChatCommand {
         player.sendMessage(Text.literal("描述: " + template.getDescription()).formatted(Formatting.AQUA), false);
         player.sendMessage(Text.literal("状态: " + (template.isEnabled() ? "启用" : "禁用")).formatted(
             template.isEnabled() ? Formatting.GREEN : Formatting.RED), false);
+        if (template.isCacheResponses()) {
+            player.sendMessage(Text.literal("响应缓存: 启用").formatted(Formatting.AQUA), false);
+        }
         player.sendMessage(Text.literal("").formatted(Formatting.GRAY), false);
 
         player.sendMessage(Text.literal("📋 系统提示词:").formatted(Formatting.YELLOW), false);
@@ -1095,11 +1116,109 @@ public class LLMChatCommand {
             // 并发状态
             player.sendMessage(Text.literal("🔄 当前状态:").formatted(Formatting.AQUA), false);
             player.sendMessage(Text.literal("  活跃请求: " + stats.activeRequests).formatted(Formatting.WHITE), false);
+            player.sendMessage(Text.literal("  并发上限: " + stats.concurrencyLimit +
+                (stats.adaptiveConcurrency ? " (自适应)" : "")).formatted(Formatting.WHITE), false);
             player.sendMessage(Text.literal("  排队请求: " + stats.queuedRequests).formatted(Formatting.WHITE), false);
+            StringBuilder laneInfo = new StringBuilder("  按优先级排队:");
+            for (RequestPriority priority : RequestPriority.values()) {
+                laneInfo.append(" ").append(priority.getDisplayName()).append(" ")
+                    .append(stats.queuedByPriority.getOrDefault(priority, 0));
+            }
+            player.sendMessage(Text.literal(laneInfo.toString()).formatted(Formatting.WHITE), false);
+            player.sendMessage(Text.literal("  后台任务进行中: " + stats.activeBackgroundRequests).formatted(Formatting.WHITE), false);
+            player.sendMessage(Text.literal(""), false);
+
+            // 按玩家的队列状态，只显示有进行中或排队请求的玩家
+            List<ConcurrencyManager.ClientQueueStats> busyClients = stats.clientStats.values().stream()
+                .filter(client -> client.inFlightRequests > 0 || client.queuedRequests > 0)
+                .toList();
+            if (!busyClients.isEmpty()) {
+                player.sendMessage(Text.literal("👥 玩家队列:").formatted(Formatting.AQUA), false);
+                for (ConcurrencyManager.ClientQueueStats client : busyClients) {
+                    player.sendMessage(Text.literal("  " + client.displayName + ": 进行中 " + client.inFlightRequests +
+                        ", 排队 " + client.queuedRequests + ", 被拒 " + client.rejectedRequests).formatted(Formatting.WHITE), false);
+                }
+                player.sendMessage(Text.literal(""), false);
+            }
+
+            // 服务商限流状态
+            Map<String, ProviderRateLimiter.RateLimitStats> rateLimitStats = ProviderRateLimiter.getInstance().getStats();
+            if (!rateLimitStats.isEmpty()) {
+                player.sendMessage(Text.literal("⏱ 服务商限流:").formatted(Formatting.AQUA), false);
+                for (Map.Entry<String, ProviderRateLimiter.RateLimitStats> entry : rateLimitStats.entrySet()) {
+                    ProviderRateLimiter.RateLimitStats rateStats = entry.getValue();
+                    player.sendMessage(Text.literal("  " + entry.getKey() + ": 等待 " + rateStats.waitingRequests +
+                        ", 累计限流 " + rateStats.throttledRequests +
+                        (rateStats.availableTokens >= 0 ? ", 剩余TPM " + rateStats.availableTokens : "")).formatted(Formatting.WHITE), false);
+                }
+                player.sendMessage(Text.literal(""), false);
+            }
+
+            // 服务商流量
+            Map<String, ProviderStats> providerStats = ProviderMonitor.getInstance().getAllStats();
+            if (!providerStats.isEmpty()) {
+                player.sendMessage(Text.literal("📡 服务商流量:").formatted(Formatting.AQUA), false);
+                for (Map.Entry<String, ProviderStats> entry : providerStats.entrySet()) {
+                    ProviderStats traffic = entry.getValue();
+                    double ewma = traffic.getEwmaLatencyMs();
+                    long p95 = traffic.getLatencyPercentile(0.95);
+                    CircuitBreaker breaker = ProviderMonitor.getInstance().getCircuitBreaker(entry.getKey());
+                    CircuitBreaker.State breakerState = breaker != null ? breaker.getState() : CircuitBreaker.State.CLOSED;
+                    player.sendMessage(Text.literal("  " + entry.getKey() + ": 延迟 " +
+                        (ewma >= 0 ? String.format("%.0fms", ewma) : "-") +
+                        (p95 >= 0 ? " (P95 " + p95 + "ms)" : "") +
+                        ", 进行中 " + traffic.getInFlight() +
+                        ", 错误率 " + String.format("%.1f%%", traffic.getErrorRate() * 100) +
+                        (breaker != null ? ", 熔断器 " + breakerState.getDisplayName() : ""))
+                        .formatted(breakerState == CircuitBreaker.State.CLOSED ? Formatting.WHITE : Formatting.RED), false);
+                }
+                long failovers = LLMServiceManager.getInstance().getRoutingService().getFailoverCount();
+                if (failovers > 0) {
+                    player.sendMessage(Text.literal("  熔断切换到备用服务商: " + failovers + " 次").formatted(Formatting.WHITE), false);
+                }
+                long coalesced = LLMServiceManager.getInstance().getRoutingService().getCoalescedCount();
+                if (coalesced > 0) {
+                    player.sendMessage(Text.literal("  合并的相同请求: " + coalesced + " 次").formatted(Formatting.WHITE), false);
+                }
+                player.sendMessage(Text.literal(""), false);
+            }
+
+            // 响应缓存
+            if (LLMChatConfig.getInstance().getConcurrencySettings().isEnableResponseCache()) {
+                ResponseCache responseCache = LLMServiceManager.getInstance().getRoutingService().getResponseCache();
+                player.sendMessage(Text.literal("💾 响应缓存: 命中率 " + String.format("%.1f%%", responseCache.getHitRate() * 100) +
+                    " (内存命中 " + responseCache.getHits() + ", 磁盘命中 " + responseCache.getDiskHits() +
+                    ", 未命中 " + responseCache.getMisses() + ")").formatted(Formatting.AQUA), false);
+                player.sendMessage(Text.literal("  缓存条目: 内存 " + responseCache.size() + ", 磁盘 " +
+                    responseCache.getDiskSize()).formatted(Formatting.WHITE), false);
+                if (LLMChatConfig.getInstance().getConcurrencySettings().isEnableSemanticCache()) {
+                    SemanticCache semanticCache = LLMServiceManager.getInstance().getRoutingService().getSemanticCache();
+                    player.sendMessage(Text.literal("  语义缓存: 命中率 " + String.format("%.1f%%", semanticCache.getHitRate() * 100) +
+                        " (命中 " + semanticCache.getHits() + ", 问答对 " + semanticCache.size() + ")").formatted(Formatting.WHITE), false);
+                }
+                player.sendMessage(Text.literal(""), false);
+            }
+
+            // 对冲请求
+            if (LLMChatConfig.getInstance().getConcurrencySettings().isEnableHedging()) {
+                RoutingLLMService.HedgeStats hedgeStats = LLMServiceManager.getInstance().getRoutingService().getHedgeStats();
+                player.sendMessage(Text.literal("🪁 对冲请求: 已发送 " + hedgeStats.hedgedRequests +
+                    ", 备用服务商胜出 " + hedgeStats.hedgeWins).formatted(Formatting.AQUA), false);
+                player.sendMessage(Text.literal(""), false);
+            }
+
+            // HTTP连接池状态
+            HttpClientRegistry.HttpClientStats httpStats = HttpClientRegistry.getInstance().getStats();
+            player.sendMessage(Text.literal("🌐 HTTP连接池:").formatted(Formatting.AQUA), false);
+            player.sendMessage(Text.literal("  连接数: " + httpStats.connectionCount + " (空闲 " + httpStats.idleConnectionCount + ")").formatted(Formatting.WHITE), false);
+            player.sendMessage(Text.literal("  连接复用率: " + String.format("%.1f%%", httpStats.getPoolHitRate() * 100) +
+                " (复用 " + httpStats.pooledConnections + ", 新建 " + httpStats.newConnections + ", TLS握手 " + httpStats.tlsHandshakes + ")").formatted(Formatting.WHITE), false);
+            player.sendMessage(Text.literal("  进行中/排队: " + httpStats.runningCalls + "/" + httpStats.queuedCalls).formatted(Formatting.WHITE), false);
             player.sendMessage(Text.literal(""), false);
 
             // 线程池状态
             player.sendMessage(Text.literal("🧵 线程池状态:").formatted(Formatting.AQUA), false);
+            player.sendMessage(Text.literal("  执行模式: " + (stats.executorMode == ConcurrencyManager.ExecutorMode.VIRTUAL ? "虚拟线程" : "平台线程池")).formatted(Formatting.WHITE), false);
             player.sendMessage(Text.literal("  线程池大小: " + stats.poolSize).formatted(Formatting.WHITE), false);
             player.sendMessage(Text.literal("  活跃线程: " + stats.activeThreads).formatted(Formatting.WHITE), false);
             player.sendMessage(Text.literal("  队列大小: " + stats.queueSize).formatted(Formatting.WHITE), false);
@@ -1154,6 +1273,7 @@ public class LLMChatCommand {
         player.sendMessage(Text.literal("  /llmchat setup - 显示配置向导").formatted(Formatting.WHITE), false);
         player.sendMessage(Text.literal("  /llmchat stats - 显示系统统计信息").formatted(Formatting.WHITE), false);
         player.sendMessage(Text.literal("  /llmchat reload - 重载配置 (仅OP)").formatted(Formatting.WHITE), false);
+        player.sendMessage(Text.literal("  /llmchat cache <stats|flush|inspect> - 查看或清空响应缓存 (仅OP)").formatted(Formatting.WHITE), false);
         player.sendMessage(Text.literal(""), false);
 
         // 提示信息
@@ -1369,11 +1489,18 @@ public class LLMChatCommand {
                 .playerName(serverPlayer.getName().getString())
                 .playerUuid(serverPlayer.getUuidAsString())
                 .sessionId(chatContext.getSessionId())
+                .cacheScope(responseCacheScope(template, chatContext))
                 .metadata("server", serverPlayer.getServer().getName())
                 .build();
 
+        if (config.isEnableStreamingResponse()) {
+            streamChatMessage(llmService, llmConfig, llmContext, serverPlayer, chatContext, config, startTime);
+            return;
+        }
+
+        // 响应处理可能包含函数调用等阻塞操作，切换到并发管理器的执行器，不占用HTTP回调线程
         llmService.chat(chatContext.getMessages(), llmConfig, llmContext)
-                .thenAccept(response -> {
+                .thenAcceptAsync(response -> {
                     long endTime = System.currentTimeMillis();
                     if (response.isSuccess()) {
                         handleLLMResponse(response, serverPlayer, chatContext, config);
@@ -1389,7 +1516,7 @@ public class LLMChatCommand {
                         LogManager.getInstance().error("AI response error for player " +
                                 serverPlayer.getName().getString() + ": " + response.getError());
                     }
-                })
+                }, ConcurrencyManager.getInstance().getExecutor())
                 .exceptionally(throwable -> {
                     long endTime = System.currentTimeMillis();
                     serverPlayer.sendMessage(Text.literal("请求失败: " + throwable.getMessage()).formatted(Formatting.RED), false);
@@ -1406,11 +1533,126 @@ public class LLMChatCommand {
                 });
     }
 
+    /**
+     * 获取基于函数结果的请求的响应缓存作用域
+     */
+    private static String responseCacheScope(ChatContext chatContext) {
+        PromptTemplateManager templateManager = PromptTemplateManager.getInstance();
+        PromptTemplate template = templateManager.getTemplate(chatContext.getCurrentPromptTemplate());
+        return responseCacheScope(template != null ? template : templateManager.getDefaultTemplate(), chatContext);
+    }
+
+    /**
+     * 获取响应缓存作用域：当前模板启用了响应缓存，或最近一次调用的函数属于启用缓存的分类时，
+     * 以模板（和函数分类）作为作用域；否则返回null，表示不缓存。
+     * 作用域包含模板内容的版本，系统提示词修改后不会再命中旧模板生成的回复；
+     * 按函数分类缓存时模板未承诺回复与玩家无关，作用域还包含渲染后系统消息的哈希
+     */
+    private static String responseCacheScope(PromptTemplate template, ChatContext chatContext) {
+        ConcurrencySettings settings = LLMChatConfig.getInstance().getConcurrencySettings();
+        if (!settings.isEnableResponseCache()) {
+            return null;
+        }
+        String templateScope = "template:" + (template != null ? template.getId() + "@" + template.getContentVersion() : "");
+        if (template != null && template.isCacheResponses()) {
+            return templateScope;
+        }
+
+        List<LLMMessage> messages = chatContext.getMessages();
+        if (messages.isEmpty()) {
+            return null;
+        }
+        LLMMessage last = messages.get(messages.size() - 1);
+        if (last.getRole() != LLMMessage.MessageRole.TOOL || last.getName() == null) {
+            return null;
+        }
+        LLMFunction function = FunctionRegistry.getInstance().getFunction(last.getName());
+        if (function == null || !settings.getResponseCacheFunctionCategories().contains(function.getCategory())) {
+            return null;
+        }
+        return templateScope + "/function:" + function.getCategory() +
+               "/system:" + ResponseCache.systemPromptHash(messages);
+    }
+
+    /**
+     * 以流式方式请求LLM，边生成边按句子发送到聊天栏
+     */
+    private static void streamChatMessage(LLMService llmService, LLMConfig llmConfig, LLMContext llmContext,
+                                          ServerPlayerEntity player, ChatContext chatContext,
+                                          LLMChatConfig config, long startTime) {
+        String playerName = player.getName().getString();
+        boolean broadcast = shouldBroadcast(config, playerName);
+        java.util.concurrent.atomic.AtomicBoolean firstSegment = new java.util.concurrent.atomic.AtomicBoolean(true);
+
+        StreamingMessageFlusher flusher = new StreamingMessageFlusher(
+            player.getUuid(),
+            config.getStreamingMaxMessagesPerSecond(),
+            segment -> {
+                // 只有第一段带前缀，后续段落视为同一条回复的延续
+                boolean first = firstSegment.getAndSet(false);
+                if (broadcast) {
+                    String prefix = first ? "[AI回复给 " + playerName + "] " : "";
+                    player.getServer().getPlayerManager().broadcast(
+                        Text.literal(prefix + segment).formatted(Formatting.AQUA), false);
+                } else {
+                    String prefix = first ? "[AI] " : "";
+                    player.sendMessage(Text.literal(prefix + segment).formatted(Formatting.AQUA), false);
+                }
+            }
+        );
+
+        llmService.chatStream(chatContext.getMessages(), llmConfig, llmContext, new LLMService.StreamCallback() {
+            @Override
+            public void onChunk(String chunk) {
+                flusher.append(chunk);
+            }
+
+            @Override
+            public void onComplete(LLMResponse response) {
+                // 等待剩余内容发送完毕后再处理函数调用和上下文，保证消息顺序
+                flusher.complete().thenRunAsync(() -> {
+                    handleLLMResponse(response, player, chatContext, config, true);
+                    LogManager.getInstance().performance("Chat processing completed successfully",
+                            java.util.Map.of(
+                                    "player", playerName,
+                                    "total_time_ms", System.currentTimeMillis() - startTime,
+                                    "context_messages", chatContext.getMessageCount(),
+                                    "streamed_segments", flusher.getSentSegments()
+                            ));
+                }, ConcurrencyManager.getInstance().getExecutor());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                flusher.complete().thenRun(() -> {
+                    player.sendMessage(Text.literal("AI响应错误: " + error.getMessage()).formatted(Formatting.RED), false);
+                    LogManager.getInstance().error("Streaming chat request failed for player " + playerName, error);
+                    LogManager.getInstance().performance("Chat processing failed",
+                            java.util.Map.of(
+                                    "player", playerName,
+                                    "total_time_ms", System.currentTimeMillis() - startTime,
+                                    "error", String.valueOf(error.getMessage())
+                            ));
+                });
+            }
+        });
+    }
+
     /**
      * 处理LLM响应，包括function calling
      */
     private static void handleLLMResponse(LLMResponse response, ServerPlayerEntity player,
                                  ChatContext chatContext, LLMChatConfig config) {
+        handleLLMResponse(response, player, chatContext, config, false);
+    }
+
+    /**
+     * 处理LLM响应，包括function calling
+     *
+     * @param contentAlreadyShown 内容是否已通过流式输出显示给玩家
+     */
+    private static void handleLLMResponse(LLMResponse response, ServerPlayerEntity player,
+                                 ChatContext chatContext, LLMChatConfig config, boolean contentAlreadyShown) {
         if (response.getChoices() == null || response.getChoices().isEmpty()) {
             player.sendMessage(Text.literal("AI没有返回有效响应").formatted(Formatting.RED), false);
             return;
@@ -1431,7 +1673,7 @@ public class LLMChatCommand {
         // 检查是否有函数调用
         boolean hasFunctionCall = message.getMetadata() != null && message.getMetadata().getFunctionCall() != null;
         
-        if (hasContent) {
+        if (hasContent && !contentAlreadyShown) {
             // 显示LLM的提示信息
             if (shouldBroadcast(config, player.getName().getString())) {
                 player.getServer().getPlayerManager().broadcast(
@@ -1481,7 +1723,7 @@ public class LLMChatCommand {
         // 检查是否启用压缩通知
         if (config.isEnableCompressionNotification()) {
             // 检查是否超过上下文限制
-            if (chatContext.calculateTotalCharacters() > chatContext.getMaxContextCharacters()) {
+            if (chatContext.exceedsContextLimits()) {
                 player.sendMessage(Text.literal("⚠️ 已达到最大上下文长度，您的之前上下文将被压缩")
                     .formatted(Formatting.YELLOW), false);
             }
@@ -1594,20 +1836,22 @@ public class LLMChatCommand {
                     .playerName(player.getName().getString())
                     .playerUuid(player.getUuidAsString())
                     .sessionId(chatContext.getSessionId())
+                    .priority(RequestPriority.FOLLOW_UP)
+                    .cacheScope(responseCacheScope(chatContext))
                     .metadata("server", player.getServer().getName())
                     .metadata("recursionDepth", String.valueOf(recursionDepth))
                     .build();
 
             // 发送请求获取响应（可能包含新的函数调用）
             llmService.chat(chatContext.getMessages(), llmConfig, llmContext)
-                    .thenAccept(response -> {
+                    .thenAcceptAsync(response -> {
                         if (response.isSuccess()) {
                             // 使用递归响应处理逻辑
                             handleLLMResponseWithRecursion(response, player, chatContext, config, recursionDepth);
                         } else {
                             player.sendMessage(Text.literal("AI响应错误: " + response.getError()).formatted(Formatting.RED), false);
                         }
-                    })
+                    }, ConcurrencyManager.getInstance().getExecutor())
                     .exceptionally(throwable -> {
                         player.sendMessage(Text.literal("请求失败: " + throwable.getMessage()).formatted(Formatting.RED), false);
                         return null;
@@ -1760,6 +2004,8 @@ public class LLMChatCommand {
                     .playerName(player.getName().getString())
                     .playerUuid(player.getUuidAsString())
                     .sessionId(chatContext.getSessionId())
+                    .priority(RequestPriority.FOLLOW_UP)
+                    .cacheScope(responseCacheScope(chatContext))
                     .metadata("server", player.getServer().getName())
                     .build();
 
@@ -2115,6 +2361,9 @@ public class LLMChatCommand {
                     case API_ERROR:
                         player.sendMessage(Text.literal("  💡 建议: 检查API服务状态").formatted(Formatting.YELLOW), false);
                         break;
+                    case CIRCUIT_OPEN:
+                        player.sendMessage(Text.literal("  💡 建议: 服务商近期连续失败，请求暂时直接失败；可为其配置fallbackProvider").formatted(Formatting.YELLOW), false);
+                        break;
                     default:
                         player.sendMessage(Text.literal("  💡 建议: 请检查配置文件和网络连接").formatted(Formatting.YELLOW), false);
                         break;
@@ -2592,7 +2841,8 @@ public class LLMChatCommand {
         player.sendMessage(Text.literal("  /llmchat provider check <provider> - 强制检测指定Provider状态").formatted(Formatting.WHITE), false);
         player.sendMessage(Text.literal(""), false);
         player.sendMessage(Text.literal("🔍 健康检查功能:").formatted(Formatting.AQUA), false);
-        player.sendMessage(Text.literal("  • 检测超时时间: 30秒 (已提高)").formatted(Formatting.GRAY), false);
+        player.sendMessage(Text.literal("  • 近5分钟有对话请求时根据真实请求的成功率判断，不发送额外请求").formatted(Formatting.GRAY), false);
+        player.sendMessage(Text.literal("  • 没有近期请求时通过/models接口探测，超时10秒，不消耗token").formatted(Formatting.GRAY), false);
         player.sendMessage(Text.literal("  • 强制检测会清除缓存，获取最新状态").formatted(Formatting.GRAY), false);
         player.sendMessage(Text.literal("  • 显示详细的错误信息和解决建议").formatted(Formatting.GRAY), false);
         player.sendMessage(Text.literal("  • 支持错误类型分类: 配置、认证、网络、API等").formatted(Formatting.GRAY), false);
@@ -0,0 +1,211 @@
+package com.riceawa.llm.command;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * 流式消息合并发送器
+ * 将LLM的增量输出合并为句子或行大小的片段，并限制每个玩家每秒发送的聊天消息数
+ */
+public class StreamingMessageFlusher {
+    /** 单条聊天消息的最大长度，超出时即使没有句子边界也会切分 */
+    private static final int MAX_SEGMENT_LENGTH = 256;
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "LLM-Stream-Flusher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** 每个玩家下一次允许发送的时间，多个并发流共享同一限额；发送时清除已过期的条目 */
+    private static final Map<Object, Long> nextSendTimes = new ConcurrentHashMap<>();
+
+    private final Object rateKey;
+    private final long minIntervalMs;
+    private final Consumer<String> sink;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier clock;
+    private final StringBuilder pending = new StringBuilder();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean completing = false;
+    private int sentSegments = 0;
+
+    /**
+     * @param rateKey 限流键（通常为玩家UUID）
+     * @param maxMessagesPerSecond 每秒最多发送的消息数
+     * @param sink 实际发送一条聊天消息的回调
+     */
+    public StreamingMessageFlusher(Object rateKey, int maxMessagesPerSecond, Consumer<String> sink) {
+        this(rateKey, maxMessagesPerSecond, sink, SCHEDULER, System::currentTimeMillis);
+    }
+
+    StreamingMessageFlusher(Object rateKey, int maxMessagesPerSecond, Consumer<String> sink,
+                            ScheduledExecutorService scheduler, LongSupplier clock) {
+        this.rateKey = rateKey;
+        this.minIntervalMs = 1000L / Math.max(1, maxMessagesPerSecond);
+        this.sink = sink;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /**
+     * 追加增量文本
+     */
+    public synchronized void append(String delta) {
+        if (delta == null || delta.isEmpty() || completing) {
+            return;
+        }
+        pending.append(delta);
+        if (findSegmentEnd(false) > 0) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * 输出结束，发送剩余全部内容
+     *
+     * @return 所有内容发送完毕时完成的Future
+     */
+    public synchronized CompletableFuture<Void> complete() {
+        if (!completing) {
+            completing = true;
+            scheduleFlush();
+        }
+        return completion;
+    }
+
+    /**
+     * 已发送的消息条数
+     */
+    public synchronized int getSentSegments() {
+        return sentSegments;
+    }
+
+    /**
+     * 在限流允许的最早时间安排一次发送
+     */
+    private void scheduleFlush() {
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            return;
+        }
+        long delay = Math.max(0, nextSendTimes.getOrDefault(rateKey, 0L) - clock.getAsLong());
+        scheduledFlush = scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush() {
+        String segment;
+        boolean finished;
+        synchronized (this) {
+            long now = clock.getAsLong();
+            long nextAllowed = nextSendTimes.getOrDefault(rateKey, 0L);
+            if (now < nextAllowed) {
+                // 同一玩家的其他流刚刚发送过，稍后再试
+                scheduledFlush = scheduler.schedule(this::flush, nextAllowed - now, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            int end = findSegmentEnd(completing);
+            if (end <= 0) {
+                scheduledFlush = null;
+                if (completing) {
+                    completion.complete(null);
+                }
+                return;
+            }
+
+            segment = pending.substring(0, end).strip();
+            pending.delete(0, end);
+            long interval = 0;
+            if (!segment.isEmpty()) {
+                // 已离线或停止对话的玩家的限额不会再被读取，顺带清除
+                nextSendTimes.values().removeIf(time -> time <= now);
+                nextSendTimes.put(rateKey, now + minIntervalMs);
+                interval = minIntervalMs;
+                sentSegments++;
+            }
+            boolean more = findSegmentEnd(completing) > 0;
+            finished = !more && completing;
+            scheduledFlush = more
+                    ? scheduler.schedule(this::flush, interval, TimeUnit.MILLISECONDS)
+                    : null;
+        }
+
+        try {
+            if (!segment.isEmpty()) {
+                sink.accept(segment);
+            }
+        } finally {
+            if (finished) {
+                completion.complete(null);
+            }
+        }
+    }
+
+    /**
+     * 限流键的下一次发送时间是否仍被记录
+     */
+    static boolean isTracked(Object rateKey) {
+        return nextSendTimes.containsKey(rateKey);
+    }
+
+    /**
+     * 计算可以发送的片段结束位置
+     * 合并到最后一个句子或行边界，以减少消息条数
+     *
+     * @param all 是否发送全部剩余内容
+     * @return 片段结束位置（不含），0表示暂无可发送内容
+     */
+    private int findSegmentEnd(boolean all) {
+        int length = Math.min(pending.length(), MAX_SEGMENT_LENGTH);
+        if (all && pending.length() <= MAX_SEGMENT_LENGTH) {
+            return pending.length();
+        }
+
+        for (int i = length - 1; i >= 0; i--) {
+            if (isBoundary(i)) {
+                return i + 1;
+            }
+        }
+
+        if (pending.length() >= MAX_SEGMENT_LENGTH) {
+            // 没有句子边界的超长内容，尽量在空白处切分
+            for (int i = MAX_SEGMENT_LENGTH - 1; i > MAX_SEGMENT_LENGTH / 2; i--) {
+                if (Character.isWhitespace(pending.charAt(i))) {
+                    return i + 1;
+                }
+            }
+            return MAX_SEGMENT_LENGTH;
+        }
+        return 0;
+    }
+
+    private boolean isBoundary(int index) {
+        char c = pending.charAt(index);
+        switch (c) {
+            case '\n':
+            case '。':
+            case '！':
+            case '？':
+            case '；':
+            case '…':
+                return true;
+            case '.':
+            case '!':
+            case '?':
+            case ';':
+                // 英文标点需要后跟空白，避免切开小数和网址
+                return index + 1 < pending.length() && Character.isWhitespace(pending.charAt(index + 1));
+            default:
+                return false;
+        }
+    }
+}
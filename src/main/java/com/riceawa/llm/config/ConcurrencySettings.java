@@ -1,5 +1,8 @@
 package com.riceawa.llm.config;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * 并发设置配置类
  */
@@ -10,27 +13,77 @@ public class ConcurrencySettings {
     private int connectTimeoutMs = 30000; // 30秒
     private int readTimeoutMs = 60000; // 60秒
     private int writeTimeoutMs = 60000; // 60秒
+    private int maxRequestsPerHost = 16; // 同一主机同时进行的请求数上限，应不小于maxConcurrentRequests
+    private boolean enableHttp2 = true; // 优先使用HTTP/2，在一个连接上多路复用请求
+    private boolean enableConnectionPrewarm = true; // 启动和重载后预先建立到各服务商的连接
+    private long connectionWarmupIntervalMs = 240000; // 4分钟，定期预热保持连接池中有可用连接，0表示只在启动时预热
+    private long connectionPingIntervalMs = 30000; // 30秒，HTTP/2连接的保活ping间隔，0表示不发送
     
     // 并发控制配置
-    private int maxConcurrentRequests = 10;
+    private int maxConcurrentRequests = 10; // 启用自适应并发时为上限
     private int queueCapacity = 50;
     private long requestTimeoutMs = 30000; // 30秒
     
+    // 自适应并发配置
+    private boolean enableAdaptiveConcurrency = false; // 根据服务商延迟和429/503自动调整并发上限（实验性）
+    private int minConcurrentRequests = 2; // 自适应收缩的下限
+    
+    // 公平调度配置（按玩家）
+    private int maxInFlightPerPlayer = 3; // 每个玩家同时进行的请求数上限
+    private int maxQueuedPerPlayer = 10; // 每个玩家最多排队的请求数
+    
+    // 优先级配置
+    private int maxBackgroundRequests = 2; // 后台任务（压缩、标题生成、健康检查）同时进行的请求数上限
+    
     // 线程池配置
     private int corePoolSize = 5;
     private int maximumPoolSize = 20;
     private long keepAliveTimeMs = 60000; // 60秒
+    private String executorMode = "platform"; // platform: 平台线程池, virtual: 每个请求一个虚拟线程
     
     // 重试配置
     private boolean enableRetry = true;
     private int maxRetryAttempts = 3;
     private long retryDelayMs = 1000; // 1秒
-    private double retryBackoffMultiplier = 2.0;
+    private double retryBackoffMultiplier = 2.0; // 去相关抖动的上界倍数
+    private long maxRetryDelayMs = 30000; // 单次重试等待上限，Retry-After要求更久时不再重试
+    private double retryBudgetRatio = 0.2; // 重试预算：重试量最多约为请求量的20%
     
     // 速率限制配置
     private boolean enableRateLimit = false;
     private int requestsPerMinute = 60;
     private int requestsPerHour = 1000;
+    private int tokensPerMinute = 0; // 0表示不限制
+    
+    // 对冲请求配置
+    private boolean enableHedging = false; // 主服务商超过延迟阈值未响应时向备用服务商发送相同请求
+    private long hedgeMinDelayMs = 2000; // 对冲等待时间下限，实际等待主服务商近期延迟的P95
+    private double maxHedgeRatio = 0.1; // 对冲请求最多占请求总数的比例
+    
+    // 负载均衡配置
+    private boolean enableLoadBalancing = false; // 在支持同一模型的多个服务商之间按延迟、负载、错误率和剩余配额分配请求
+    
+    // 熔断配置
+    private boolean enableCircuitBreaker = true; // 启用服务商熔断器
+    private int circuitFailureThreshold = 5; // 触发熔断的连续失败次数
+    private double circuitTimeoutRateThreshold = 0.5; // 触发熔断的最近请求超时比例
+    private long circuitOpenDurationMs = 30000; // 熔断打开后多久放行探测请求(毫秒)
+    
+    // 请求合并配置
+    private boolean enableRequestCoalescing = true; // 相同的进行中请求只发送一次（仅temperature为0或调用方允许时）
+    
+    // 响应缓存配置
+    private boolean enableResponseCache = false; // 对启用缓存的模板和函数分类缓存回复，相同问题直接返回
+    private int responseCacheMaxEntries = 500; // 内存中最多缓存的回复数，超出时淘汰最久未使用的
+    private long responseCacheTtlMs = 3600000; // 缓存回复的有效期(毫秒)，默认1小时
+    private boolean enableResponseCacheDisk = false; // 把缓存的回复保存到配置目录下，重启后仍然有效
+    private int responseCacheDiskMaxEntries = 5000; // 磁盘中最多缓存的回复数
+    private List<String> responseCacheFunctionCategories = new ArrayList<>(List.of("wiki")); // 调用这些分类的函数后，基于函数结果的回复可以缓存
+    
+    // 语义缓存配置
+    private boolean enableSemanticCache = false; // 启用响应缓存的模板中，与已缓存问题足够相似的新问题直接返回其回答
+    private double semanticCacheThreshold = 0.92; // 视为同一问题的最低相似度（0-1）
+    private int semanticCacheMaxEntries = 1000; // 最多缓存的问答对数，超出时淘汰最久未命中的
     
     public ConcurrencySettings() {
     }
@@ -80,6 +133,46 @@ public class ConcurrencySettings {
         this.writeTimeoutMs = writeTimeoutMs;
     }
     
+    public int getMaxRequestsPerHost() {
+        return maxRequestsPerHost;
+    }
+    
+    public void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        this.maxRequestsPerHost = maxRequestsPerHost;
+    }
+    
+    public boolean isEnableHttp2() {
+        return enableHttp2;
+    }
+    
+    public void setEnableHttp2(boolean enableHttp2) {
+        this.enableHttp2 = enableHttp2;
+    }
+    
+    public boolean isEnableConnectionPrewarm() {
+        return enableConnectionPrewarm;
+    }
+    
+    public void setEnableConnectionPrewarm(boolean enableConnectionPrewarm) {
+        this.enableConnectionPrewarm = enableConnectionPrewarm;
+    }
+    
+    public long getConnectionWarmupIntervalMs() {
+        return connectionWarmupIntervalMs;
+    }
+    
+    public void setConnectionWarmupIntervalMs(long connectionWarmupIntervalMs) {
+        this.connectionWarmupIntervalMs = connectionWarmupIntervalMs;
+    }
+    
+    public long getConnectionPingIntervalMs() {
+        return connectionPingIntervalMs;
+    }
+    
+    public void setConnectionPingIntervalMs(long connectionPingIntervalMs) {
+        this.connectionPingIntervalMs = connectionPingIntervalMs;
+    }
+    
     // 并发控制配置的getter和setter
     public int getMaxConcurrentRequests() {
         return maxConcurrentRequests;
@@ -105,6 +198,48 @@ public class ConcurrencySettings {
         this.requestTimeoutMs = requestTimeoutMs;
     }
     
+    // 自适应并发配置的getter和setter
+    public boolean isEnableAdaptiveConcurrency() {
+        return enableAdaptiveConcurrency;
+    }
+    
+    public void setEnableAdaptiveConcurrency(boolean enableAdaptiveConcurrency) {
+        this.enableAdaptiveConcurrency = enableAdaptiveConcurrency;
+    }
+    
+    public int getMinConcurrentRequests() {
+        return minConcurrentRequests;
+    }
+    
+    public void setMinConcurrentRequests(int minConcurrentRequests) {
+        this.minConcurrentRequests = minConcurrentRequests;
+    }
+    
+    // 公平调度配置的getter和setter
+    public int getMaxInFlightPerPlayer() {
+        return maxInFlightPerPlayer;
+    }
+    
+    public void setMaxInFlightPerPlayer(int maxInFlightPerPlayer) {
+        this.maxInFlightPerPlayer = maxInFlightPerPlayer;
+    }
+    
+    public int getMaxQueuedPerPlayer() {
+        return maxQueuedPerPlayer;
+    }
+    
+    public void setMaxQueuedPerPlayer(int maxQueuedPerPlayer) {
+        this.maxQueuedPerPlayer = maxQueuedPerPlayer;
+    }
+    
+    public int getMaxBackgroundRequests() {
+        return maxBackgroundRequests;
+    }
+    
+    public void setMaxBackgroundRequests(int maxBackgroundRequests) {
+        this.maxBackgroundRequests = maxBackgroundRequests;
+    }
+    
     // 线程池配置的getter和setter
     public int getCorePoolSize() {
         return corePoolSize;
@@ -129,6 +264,21 @@ public class ConcurrencySettings {
     public void setKeepAliveTimeMs(long keepAliveTimeMs) {
         this.keepAliveTimeMs = keepAliveTimeMs;
     }
+
+    public String getExecutorMode() {
+        return executorMode;
+    }
+
+    public void setExecutorMode(String executorMode) {
+        this.executorMode = executorMode;
+    }
+
+    /**
+     * 是否使用虚拟线程执行请求
+     */
+    public boolean isVirtualThreadMode() {
+        return "virtual".equalsIgnoreCase(executorMode);
+    }
     
     // 重试配置的getter和setter
     public boolean isEnableRetry() {
@@ -163,6 +313,22 @@ public class ConcurrencySettings {
         this.retryBackoffMultiplier = retryBackoffMultiplier;
     }
     
+    public long getMaxRetryDelayMs() {
+        return maxRetryDelayMs;
+    }
+    
+    public void setMaxRetryDelayMs(long maxRetryDelayMs) {
+        this.maxRetryDelayMs = maxRetryDelayMs;
+    }
+    
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+    
+    public void setRetryBudgetRatio(double retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio;
+    }
+    
     // 速率限制配置的getter和setter
     public boolean isEnableRateLimit() {
         return enableRateLimit;
@@ -188,6 +354,158 @@ public class ConcurrencySettings {
         this.requestsPerHour = requestsPerHour;
     }
     
+    public int getTokensPerMinute() {
+        return tokensPerMinute;
+    }
+    
+    public void setTokensPerMinute(int tokensPerMinute) {
+        this.tokensPerMinute = tokensPerMinute;
+    }
+    
+    public boolean isEnableHedging() {
+        return enableHedging;
+    }
+    
+    public void setEnableHedging(boolean enableHedging) {
+        this.enableHedging = enableHedging;
+    }
+    
+    public long getHedgeMinDelayMs() {
+        return hedgeMinDelayMs;
+    }
+    
+    public void setHedgeMinDelayMs(long hedgeMinDelayMs) {
+        this.hedgeMinDelayMs = hedgeMinDelayMs;
+    }
+    
+    public double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+    
+    public void setMaxHedgeRatio(double maxHedgeRatio) {
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+    
+    public boolean isEnableLoadBalancing() {
+        return enableLoadBalancing;
+    }
+    
+    public void setEnableLoadBalancing(boolean enableLoadBalancing) {
+        this.enableLoadBalancing = enableLoadBalancing;
+    }
+    
+    public boolean isEnableCircuitBreaker() {
+        return enableCircuitBreaker;
+    }
+    
+    public void setEnableCircuitBreaker(boolean enableCircuitBreaker) {
+        this.enableCircuitBreaker = enableCircuitBreaker;
+    }
+    
+    public int getCircuitFailureThreshold() {
+        return circuitFailureThreshold;
+    }
+    
+    public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+        this.circuitFailureThreshold = circuitFailureThreshold;
+    }
+    
+    public double getCircuitTimeoutRateThreshold() {
+        return circuitTimeoutRateThreshold;
+    }
+    
+    public void setCircuitTimeoutRateThreshold(double circuitTimeoutRateThreshold) {
+        this.circuitTimeoutRateThreshold = circuitTimeoutRateThreshold;
+    }
+    
+    public long getCircuitOpenDurationMs() {
+        return circuitOpenDurationMs;
+    }
+    
+    public void setCircuitOpenDurationMs(long circuitOpenDurationMs) {
+        this.circuitOpenDurationMs = circuitOpenDurationMs;
+    }
+    
+    public boolean isEnableRequestCoalescing() {
+        return enableRequestCoalescing;
+    }
+    
+    public void setEnableRequestCoalescing(boolean enableRequestCoalescing) {
+        this.enableRequestCoalescing = enableRequestCoalescing;
+    }
+    
+    public boolean isEnableResponseCache() {
+        return enableResponseCache;
+    }
+    
+    public void setEnableResponseCache(boolean enableResponseCache) {
+        this.enableResponseCache = enableResponseCache;
+    }
+    
+    public int getResponseCacheMaxEntries() {
+        return responseCacheMaxEntries;
+    }
+    
+    public void setResponseCacheMaxEntries(int responseCacheMaxEntries) {
+        this.responseCacheMaxEntries = responseCacheMaxEntries;
+    }
+    
+    public long getResponseCacheTtlMs() {
+        return responseCacheTtlMs;
+    }
+    
+    public void setResponseCacheTtlMs(long responseCacheTtlMs) {
+        this.responseCacheTtlMs = responseCacheTtlMs;
+    }
+    
+    public boolean isEnableResponseCacheDisk() {
+        return enableResponseCacheDisk;
+    }
+    
+    public void setEnableResponseCacheDisk(boolean enableResponseCacheDisk) {
+        this.enableResponseCacheDisk = enableResponseCacheDisk;
+    }
+    
+    public int getResponseCacheDiskMaxEntries() {
+        return responseCacheDiskMaxEntries;
+    }
+    
+    public void setResponseCacheDiskMaxEntries(int responseCacheDiskMaxEntries) {
+        this.responseCacheDiskMaxEntries = responseCacheDiskMaxEntries;
+    }
+    
+    public List<String> getResponseCacheFunctionCategories() {
+        return responseCacheFunctionCategories;
+    }
+    
+    public void setResponseCacheFunctionCategories(List<String> responseCacheFunctionCategories) {
+        this.responseCacheFunctionCategories = responseCacheFunctionCategories;
+    }
+    
+    public boolean isEnableSemanticCache() {
+        return enableSemanticCache;
+    }
+    
+    public void setEnableSemanticCache(boolean enableSemanticCache) {
+        this.enableSemanticCache = enableSemanticCache;
+    }
+    
+    public double getSemanticCacheThreshold() {
+        return semanticCacheThreshold;
+    }
+    
+    public void setSemanticCacheThreshold(double semanticCacheThreshold) {
+        this.semanticCacheThreshold = semanticCacheThreshold;
+    }
+    
+    public int getSemanticCacheMaxEntries() {
+        return semanticCacheMaxEntries;
+    }
+    
+    public void setSemanticCacheMaxEntries(int semanticCacheMaxEntries) {
+        this.semanticCacheMaxEntries = semanticCacheMaxEntries;
+    }
+    
     /**
      * 验证配置的有效性
      */
@@ -197,17 +515,39 @@ public class ConcurrencySettings {
                connectTimeoutMs > 0 &&
                readTimeoutMs > 0 &&
                writeTimeoutMs > 0 &&
+               maxRequestsPerHost > 0 &&
+               connectionWarmupIntervalMs >= 0 &&
+               connectionPingIntervalMs >= 0 &&
                maxConcurrentRequests > 0 &&
                queueCapacity > 0 &&
                requestTimeoutMs > 0 &&
+               minConcurrentRequests > 0 &&
+               maxInFlightPerPlayer > 0 &&
+               maxQueuedPerPlayer > 0 &&
+               maxBackgroundRequests > 0 &&
                corePoolSize > 0 &&
                maximumPoolSize >= corePoolSize &&
                keepAliveTimeMs > 0 &&
+               (executorMode == null || "platform".equalsIgnoreCase(executorMode) || isVirtualThreadMode()) &&
                maxRetryAttempts >= 0 &&
                retryDelayMs >= 0 &&
                retryBackoffMultiplier > 0 &&
+               maxRetryDelayMs >= retryDelayMs &&
+               retryBudgetRatio >= 0 &&
                requestsPerMinute > 0 &&
-               requestsPerHour > 0;
+               requestsPerHour > 0 &&
+               tokensPerMinute >= 0 &&
+               hedgeMinDelayMs > 0 &&
+               maxHedgeRatio >= 0 && maxHedgeRatio <= 1 &&
+               circuitFailureThreshold > 0 &&
+               circuitTimeoutRateThreshold > 0 && circuitTimeoutRateThreshold <= 1 &&
+               circuitOpenDurationMs > 0 &&
+               responseCacheMaxEntries > 0 &&
+               responseCacheTtlMs > 0 &&
+               responseCacheDiskMaxEntries > 0 &&
+               responseCacheFunctionCategories != null &&
+               semanticCacheThreshold > 0 && semanticCacheThreshold <= 1 &&
+               semanticCacheMaxEntries > 0;
     }
     
     @Override
@@ -218,19 +558,51 @@ public class ConcurrencySettings {
                 ", connectTimeoutMs=" + connectTimeoutMs +
                 ", readTimeoutMs=" + readTimeoutMs +
                 ", writeTimeoutMs=" + writeTimeoutMs +
+                ", maxRequestsPerHost=" + maxRequestsPerHost +
+                ", enableHttp2=" + enableHttp2 +
+                ", enableConnectionPrewarm=" + enableConnectionPrewarm +
+                ", connectionWarmupIntervalMs=" + connectionWarmupIntervalMs +
+                ", connectionPingIntervalMs=" + connectionPingIntervalMs +
                 ", maxConcurrentRequests=" + maxConcurrentRequests +
                 ", queueCapacity=" + queueCapacity +
                 ", requestTimeoutMs=" + requestTimeoutMs +
+                ", enableAdaptiveConcurrency=" + enableAdaptiveConcurrency +
+                ", minConcurrentRequests=" + minConcurrentRequests +
+                ", maxInFlightPerPlayer=" + maxInFlightPerPlayer +
+                ", maxQueuedPerPlayer=" + maxQueuedPerPlayer +
+                ", maxBackgroundRequests=" + maxBackgroundRequests +
                 ", corePoolSize=" + corePoolSize +
                 ", maximumPoolSize=" + maximumPoolSize +
                 ", keepAliveTimeMs=" + keepAliveTimeMs +
+                ", executorMode='" + executorMode + '\'' +
                 ", enableRetry=" + enableRetry +
                 ", maxRetryAttempts=" + maxRetryAttempts +
                 ", retryDelayMs=" + retryDelayMs +
                 ", retryBackoffMultiplier=" + retryBackoffMultiplier +
+                ", maxRetryDelayMs=" + maxRetryDelayMs +
+                ", retryBudgetRatio=" + retryBudgetRatio +
                 ", enableRateLimit=" + enableRateLimit +
                 ", requestsPerMinute=" + requestsPerMinute +
                 ", requestsPerHour=" + requestsPerHour +
+                ", tokensPerMinute=" + tokensPerMinute +
+                ", enableHedging=" + enableHedging +
+                ", hedgeMinDelayMs=" + hedgeMinDelayMs +
+                ", maxHedgeRatio=" + maxHedgeRatio +
+                ", enableLoadBalancing=" + enableLoadBalancing +
+                ", enableCircuitBreaker=" + enableCircuitBreaker +
+                ", circuitFailureThreshold=" + circuitFailureThreshold +
+                ", circuitTimeoutRateThreshold=" + circuitTimeoutRateThreshold +
+                ", circuitOpenDurationMs=" + circuitOpenDurationMs +
+                ", enableRequestCoalescing=" + enableRequestCoalescing +
+                ", enableResponseCache=" + enableResponseCache +
+                ", responseCacheMaxEntries=" + responseCacheMaxEntries +
+                ", responseCacheTtlMs=" + responseCacheTtlMs +
+                ", enableResponseCacheDisk=" + enableResponseCacheDisk +
+                ", responseCacheDiskMaxEntries=" + responseCacheDiskMaxEntries +
+                ", responseCacheFunctionCategories=" + responseCacheFunctionCategories +
+                ", enableSemanticCache=" + enableSemanticCache +
+                ", semanticCacheThreshold=" + semanticCacheThreshold +
+                ", semanticCacheMaxEntries=" + semanticCacheMaxEntries +
                 '}';
     }
 }
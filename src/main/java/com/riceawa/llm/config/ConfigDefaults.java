@@ -16,14 +16,24 @@ public class ConfigDefaults {
     public static final double DEFAULT_TEMPERATURE = 0.7;
     public static final int DEFAULT_MAX_TOKENS = 8192;
     public static final int DEFAULT_MAX_CONTEXT_CHARACTERS = 60000;
+    public static final String CONTEXT_LIMIT_MODE_CHARACTERS = "characters";
+    public static final String CONTEXT_LIMIT_MODE_TOKENS = "tokens";
+    public static final String DEFAULT_CONTEXT_LIMIT_MODE = CONTEXT_LIMIT_MODE_CHARACTERS;
+    public static final int DEFAULT_MAX_CONTEXT_TOKENS = 16000;
     public static final boolean DEFAULT_ENABLE_HISTORY = true;
     public static final boolean DEFAULT_ENABLE_FUNCTION_CALLING = false;
     public static final boolean DEFAULT_ENABLE_BROADCAST = false;
     public static final int DEFAULT_HISTORY_RETENTION_DAYS = 30;
+
+    // 流式输出配置默认值
+    public static final boolean DEFAULT_ENABLE_STREAMING_RESPONSE = false;
+    public static final int DEFAULT_STREAMING_MAX_MESSAGES_PER_SECOND = 2; // 每个玩家每秒最多发送的聊天消息数
     
     // 上下文压缩配置默认值
     public static final String DEFAULT_COMPRESSION_MODEL = ""; // 空字符串表示使用当前模型
     public static final boolean DEFAULT_ENABLE_COMPRESSION_NOTIFICATION = true;
+    public static final boolean DEFAULT_ENABLE_SPECULATIVE_COMPRESSION = true;
+    public static final double DEFAULT_SPECULATIVE_COMPRESSION_WATERMARK = 0.7; // 达到上下文上限的70%时预先生成摘要
 
     // 消息预览配置默认值
     public static final int DEFAULT_MESSAGE_PREVIEW_COUNT = 5; // 恢复对话时显示的消息数量
@@ -141,13 +151,19 @@ public class ConfigDefaults {
     public static String getConfigDisplayName(String configKey) {
         switch (configKey) {
             case "maxContextCharacters": return "最大上下文字符数";
+            case "contextLimitMode": return "上下文限制模式";
+            case "maxContextTokens": return "最大上下文Token数";
             case "defaultTemperature": return "默认温度";
             case "defaultMaxTokens": return "默认最大Token数";
             case "enableHistory": return "启用历史记录";
             case "enableFunctionCalling": return "启用函数调用";
             case "enableBroadcast": return "启用广播";
+            case "enableStreamingResponse": return "启用流式输出";
+            case "streamingMaxMessagesPerSecond": return "流式输出每秒最大消息数";
             case "compressionModel": return "压缩模型";
             case "enableCompressionNotification": return "启用压缩通知";
+            case "enableSpeculativeCompression": return "启用预压缩";
+            case "speculativeCompressionWatermark": return "预压缩水位";
             case "enableGlobalContext": return "启用全局上下文";
             default: return configKey;
         }
@@ -169,12 +185,30 @@ public class ConfigDefaults {
 
             case "defaultMaxTokens":
             case "maxContextCharacters":
+            case "maxContextTokens":
                 if (value instanceof Number) {
                     int num = ((Number) value).intValue();
                     return num > 0 && num <= 1000000; // 合理的上限
                 }
                 return false;
 
+            case "streamingMaxMessagesPerSecond":
+                if (value instanceof Number) {
+                    int rate = ((Number) value).intValue();
+                    return rate >= 1 && rate <= 20;
+                }
+                return false;
+
+            case "speculativeCompressionWatermark":
+                if (value instanceof Number) {
+                    double watermark = ((Number) value).doubleValue();
+                    return watermark > 0.0 && watermark < 1.0;
+                }
+                return false;
+
+            case "contextLimitMode":
+                return CONTEXT_LIMIT_MODE_CHARACTERS.equals(value) || CONTEXT_LIMIT_MODE_TOKENS.equals(value);
+
             case "historyRetentionDays":
                 if (value instanceof Number) {
                     int days = ((Number) value).intValue();
@@ -196,6 +230,8 @@ public class ConfigDefaults {
             case "defaultTemperature": return DEFAULT_TEMPERATURE;
             case "defaultMaxTokens": return DEFAULT_MAX_TOKENS;
             case "maxContextCharacters": return DEFAULT_MAX_CONTEXT_CHARACTERS;
+            case "contextLimitMode": return DEFAULT_CONTEXT_LIMIT_MODE;
+            case "maxContextTokens": return DEFAULT_MAX_CONTEXT_TOKENS;
             case "enableHistory": return DEFAULT_ENABLE_HISTORY;
             case "enableFunctionCalling": return DEFAULT_ENABLE_FUNCTION_CALLING;
             case "enableRecursiveFunctionCalls": return DEFAULT_ENABLE_RECURSIVE_FUNCTION_CALLS;
@@ -203,8 +239,12 @@ public class ConfigDefaults {
             case "functionCallTimeoutMs": return DEFAULT_FUNCTION_CALL_TIMEOUT_MS;
             case "enableBroadcast": return DEFAULT_ENABLE_BROADCAST;
             case "historyRetentionDays": return DEFAULT_HISTORY_RETENTION_DAYS;
+            case "enableStreamingResponse": return DEFAULT_ENABLE_STREAMING_RESPONSE;
+            case "streamingMaxMessagesPerSecond": return DEFAULT_STREAMING_MAX_MESSAGES_PER_SECOND;
             case "compressionModel": return DEFAULT_COMPRESSION_MODEL;
             case "enableCompressionNotification": return DEFAULT_ENABLE_COMPRESSION_NOTIFICATION;
+            case "enableSpeculativeCompression": return DEFAULT_ENABLE_SPECULATIVE_COMPRESSION;
+            case "speculativeCompressionWatermark": return DEFAULT_SPECULATIVE_COMPRESSION_WATERMARK;
             case "enableGlobalContext": return DEFAULT_ENABLE_GLOBAL_CONTEXT;
             case "globalContextPrompt": return DEFAULT_GLOBAL_CONTEXT_PROMPT;
             case "enableTitleGeneration": return DEFAULT_ENABLE_TITLE_GENERATION;
@@ -35,15 +35,23 @@ public class LLMChatConfig {
     private double defaultTemperature = ConfigDefaults.DEFAULT_TEMPERATURE;
     private int defaultMaxTokens = ConfigDefaults.DEFAULT_MAX_TOKENS;
     private int maxContextCharacters = ConfigDefaults.DEFAULT_MAX_CONTEXT_CHARACTERS;
+    private String contextLimitMode = ConfigDefaults.DEFAULT_CONTEXT_LIMIT_MODE;
+    private int maxContextTokens = ConfigDefaults.DEFAULT_MAX_CONTEXT_TOKENS;
     private boolean enableHistory = ConfigDefaults.DEFAULT_ENABLE_HISTORY;
     private boolean enableFunctionCalling = ConfigDefaults.DEFAULT_ENABLE_FUNCTION_CALLING;
     private boolean enableBroadcast = ConfigDefaults.DEFAULT_ENABLE_BROADCAST;
     private Set<String> broadcastPlayers = ConfigDefaults.createDefaultBroadcastPlayers();
     private int historyRetentionDays = ConfigDefaults.DEFAULT_HISTORY_RETENTION_DAYS;
 
+    // 流式输出配置
+    private boolean enableStreamingResponse = ConfigDefaults.DEFAULT_ENABLE_STREAMING_RESPONSE;
+    private int streamingMaxMessagesPerSecond = ConfigDefaults.DEFAULT_STREAMING_MAX_MESSAGES_PER_SECOND;
+
     // 上下文压缩配置
     private String compressionModel = ConfigDefaults.DEFAULT_COMPRESSION_MODEL;
     private boolean enableCompressionNotification = ConfigDefaults.DEFAULT_ENABLE_COMPRESSION_NOTIFICATION;
+    private boolean enableSpeculativeCompression = ConfigDefaults.DEFAULT_ENABLE_SPECULATIVE_COMPRESSION;
+    private double speculativeCompressionWatermark = ConfigDefaults.DEFAULT_SPECULATIVE_COMPRESSION_WATERMARK;
 
     // 消息预览配置
     private int messagePreviewCount = ConfigDefaults.DEFAULT_MESSAGE_PREVIEW_COUNT;
@@ -279,18 +287,24 @@ public class LLMChatConfig {
             this.maxContextCharacters = ConfigDefaults.DEFAULT_MAX_CONTEXT_CHARACTERS;
             System.out.println("Applied default maxContextCharacters: " + this.maxContextCharacters);
         }
+        this.contextLimitMode = data.contextLimitMode != null ? data.contextLimitMode : (String) ConfigDefaults.getDefaultValue("contextLimitMode");
+        this.maxContextTokens = data.maxContextTokens != null ? data.maxContextTokens : (Integer) ConfigDefaults.getDefaultValue("maxContextTokens");
 
         this.enableHistory = data.enableHistory != null ? data.enableHistory : (Boolean) ConfigDefaults.getDefaultValue("enableHistory");
         this.enableFunctionCalling = data.enableFunctionCalling != null ? data.enableFunctionCalling : (Boolean) ConfigDefaults.getDefaultValue("enableFunctionCalling");
         this.enableBroadcast = data.enableBroadcast != null ? data.enableBroadcast : (Boolean) ConfigDefaults.getDefaultValue("enableBroadcast");
         this.broadcastPlayers = data.broadcastPlayers != null ? new HashSet<>(data.broadcastPlayers) : ConfigDefaults.createDefaultBroadcastPlayers();
         this.historyRetentionDays = data.historyRetentionDays != null ? data.historyRetentionDays : (Integer) ConfigDefaults.getDefaultValue("historyRetentionDays");
+        this.enableStreamingResponse = data.enableStreamingResponse != null ? data.enableStreamingResponse : (Boolean) ConfigDefaults.getDefaultValue("enableStreamingResponse");
+        this.streamingMaxMessagesPerSecond = data.streamingMaxMessagesPerSecond != null ? data.streamingMaxMessagesPerSecond : (Integer) ConfigDefaults.getDefaultValue("streamingMaxMessagesPerSecond");
         this.enableGlobalContext = data.enableGlobalContext != null ? data.enableGlobalContext : (Boolean) ConfigDefaults.getDefaultValue("enableGlobalContext");
         this.globalContextPrompt = data.globalContextPrompt != null ? data.globalContextPrompt : (String) ConfigDefaults.getDefaultValue("globalContextPrompt");
 
         // 处理上下文压缩配置
         this.compressionModel = data.compressionModel != null ? data.compressionModel : (String) ConfigDefaults.getDefaultValue("compressionModel");
         this.enableCompressionNotification = data.enableCompressionNotification != null ? data.enableCompressionNotification : (Boolean) ConfigDefaults.getDefaultValue("enableCompressionNotification");
+        this.enableSpeculativeCompression = data.enableSpeculativeCompression != null ? data.enableSpeculativeCompression : (Boolean) ConfigDefaults.getDefaultValue("enableSpeculativeCompression");
+        this.speculativeCompressionWatermark = data.speculativeCompressionWatermark != null ? data.speculativeCompressionWatermark : (Double) ConfigDefaults.getDefaultValue("speculativeCompressionWatermark");
 
         // 处理标题生成配置
         this.enableTitleGeneration = data.enableTitleGeneration != null ? data.enableTitleGeneration : (Boolean) ConfigDefaults.getDefaultValue("enableTitleGeneration");
@@ -338,6 +352,24 @@ public class LLMChatConfig {
             needsSave = true;
         }
 
+        if (!ConfigDefaults.isValidConfigValue("speculativeCompressionWatermark", this.speculativeCompressionWatermark)) {
+            System.out.println("Invalid speculativeCompressionWatermark (" + this.speculativeCompressionWatermark + "), resetting to default");
+            this.speculativeCompressionWatermark = ConfigDefaults.DEFAULT_SPECULATIVE_COMPRESSION_WATERMARK;
+            needsSave = true;
+        }
+
+        if (!ConfigDefaults.isValidConfigValue("contextLimitMode", this.contextLimitMode)) {
+            System.out.println("Invalid contextLimitMode (" + this.contextLimitMode + "), resetting to default");
+            this.contextLimitMode = ConfigDefaults.DEFAULT_CONTEXT_LIMIT_MODE;
+            needsSave = true;
+        }
+
+        if (!ConfigDefaults.isValidConfigValue("maxContextTokens", this.maxContextTokens)) {
+            System.out.println("Invalid maxContextTokens (" + this.maxContextTokens + "), resetting to default");
+            this.maxContextTokens = ConfigDefaults.DEFAULT_MAX_CONTEXT_TOKENS;
+            needsSave = true;
+        }
+
         if (!ConfigDefaults.isValidConfigValue("defaultTemperature", this.defaultTemperature)) {
             System.out.println("Invalid defaultTemperature (" + this.defaultTemperature + "), resetting to default");
             this.defaultTemperature = ConfigDefaults.DEFAULT_TEMPERATURE;
@@ -350,6 +382,12 @@ public class LLMChatConfig {
             needsSave = true;
         }
 
+        if (!ConfigDefaults.isValidConfigValue("streamingMaxMessagesPerSecond", this.streamingMaxMessagesPerSecond)) {
+            System.out.println("Invalid streamingMaxMessagesPerSecond (" + this.streamingMaxMessagesPerSecond + "), resetting to default");
+            this.streamingMaxMessagesPerSecond = ConfigDefaults.DEFAULT_STREAMING_MAX_MESSAGES_PER_SECOND;
+            needsSave = true;
+        }
+
         // 验证和修复Provider配置
         ProviderManager.ProviderModelResult result = providerManager.fixCurrentConfiguration(
             this.currentProvider, this.currentModel);
@@ -386,6 +424,8 @@ public class LLMChatConfig {
         data.defaultTemperature = this.defaultTemperature;
         data.defaultMaxTokens = this.defaultMaxTokens;
         data.maxContextCharacters = this.maxContextCharacters;
+        data.contextLimitMode = this.contextLimitMode;
+        data.maxContextTokens = this.maxContextTokens;
 
         // 功能开关配置
         data.enableHistory = this.enableHistory;
@@ -394,12 +434,18 @@ public class LLMChatConfig {
         data.broadcastPlayers = new HashSet<>(this.broadcastPlayers);
         data.historyRetentionDays = this.historyRetentionDays;
 
+        // 流式输出配置
+        data.enableStreamingResponse = this.enableStreamingResponse;
+        data.streamingMaxMessagesPerSecond = this.streamingMaxMessagesPerSecond;
+
         // 全局上下文配置
         data.enableGlobalContext = this.enableGlobalContext;
         data.globalContextPrompt = this.globalContextPrompt;
 
         // 压缩和标题生成功能配置
         data.enableCompressionNotification = this.enableCompressionNotification;
+        data.enableSpeculativeCompression = this.enableSpeculativeCompression;
+        data.speculativeCompressionWatermark = this.speculativeCompressionWatermark;
         data.enableTitleGeneration = this.enableTitleGeneration;
 
         // Wiki API 配置
@@ -474,6 +520,48 @@ public class LLMChatConfig {
         }
     }
 
+    public String getContextLimitMode() {
+        return contextLimitMode;
+    }
+
+    public void setContextLimitMode(String contextLimitMode) {
+        this.contextLimitMode = contextLimitMode;
+        if (!isInitializing) {
+            saveConfig();
+            updateContextLimits();
+        }
+    }
+
+    /**
+     * 是否按token数而不是字符数限制上下文
+     */
+    public boolean isTokenContextLimit() {
+        return ConfigDefaults.CONTEXT_LIMIT_MODE_TOKENS.equals(contextLimitMode);
+    }
+
+    public int getMaxContextTokens() {
+        return maxContextTokens;
+    }
+
+    public void setMaxContextTokens(int maxContextTokens) {
+        this.maxContextTokens = maxContextTokens;
+        if (!isInitializing) {
+            saveConfig();
+            updateContextLimits();
+        }
+    }
+
+    /**
+     * 把上下文限制同步到现有的上下文实例
+     */
+    private void updateContextLimits() {
+        try {
+            com.riceawa.llm.context.ChatContextManager.getInstance().updateMaxContextLength();
+        } catch (Exception e) {
+            System.err.println("Failed to update existing contexts with new context limits: " + e.getMessage());
+        }
+    }
+
     // 保持向后兼容的方法名
     public int getMaxContextLength() {
         return maxContextCharacters;
@@ -621,6 +709,30 @@ public class LLMChatConfig {
         saveConfig();
     }
 
+    public boolean isEnableSpeculativeCompression() {
+        return enableSpeculativeCompression;
+    }
+
+    public void setEnableSpeculativeCompression(boolean enableSpeculativeCompression) {
+        this.enableSpeculativeCompression = enableSpeculativeCompression;
+        if (!isInitializing) {
+            saveConfig();
+            updateContextLimits();
+        }
+    }
+
+    public double getSpeculativeCompressionWatermark() {
+        return speculativeCompressionWatermark;
+    }
+
+    public void setSpeculativeCompressionWatermark(double speculativeCompressionWatermark) {
+        this.speculativeCompressionWatermark = speculativeCompressionWatermark;
+        if (!isInitializing) {
+            saveConfig();
+            updateContextLimits();
+        }
+    }
+
     // 消息预览配置的getter和setter方法
     public int getMessagePreviewCount() {
         return messagePreviewCount;
@@ -1015,6 +1127,36 @@ public class LLMChatConfig {
         saveConfig();
     }
 
+    /**
+     * 是否启用流式输出（边生成边发送到聊天栏）
+     */
+    public boolean isEnableStreamingResponse() {
+        return enableStreamingResponse;
+    }
+
+    /**
+     * 设置是否启用流式输出
+     */
+    public void setEnableStreamingResponse(boolean enableStreamingResponse) {
+        this.enableStreamingResponse = enableStreamingResponse;
+        saveConfig();
+    }
+
+    /**
+     * 获取流式输出时每个玩家每秒最多发送的消息数
+     */
+    public int getStreamingMaxMessagesPerSecond() {
+        return streamingMaxMessagesPerSecond;
+    }
+
+    /**
+     * 设置流式输出时每个玩家每秒最多发送的消息数
+     */
+    public void setStreamingMaxMessagesPerSecond(int streamingMaxMessagesPerSecond) {
+        this.streamingMaxMessagesPerSecond = Math.max(1, Math.min(20, streamingMaxMessagesPerSecond)); // 限制在1-20之间
+        saveConfig();
+    }
+
     /**
      * 配置数据类
      */
@@ -1026,6 +1168,8 @@ public class LLMChatConfig {
         Integer defaultMaxTokens;
         Integer maxContextLength; // 保留用于向后兼容
         Integer maxContextCharacters;
+        String contextLimitMode;
+        Integer maxContextTokens;
 
         // 功能开关配置
         Boolean enableHistory;
@@ -1034,12 +1178,18 @@ public class LLMChatConfig {
         Set<String> broadcastPlayers;
         Integer historyRetentionDays;
 
+        // 流式输出配置
+        Boolean enableStreamingResponse;
+        Integer streamingMaxMessagesPerSecond;
+
         // 全局上下文配置
         Boolean enableGlobalContext;
         String globalContextPrompt;
 
         // 压缩和标题生成功能配置
         Boolean enableCompressionNotification;
+        Boolean enableSpeculativeCompression;
+        Double speculativeCompressionWatermark;
         Boolean enableTitleGeneration;
 
         // Wiki API 配置
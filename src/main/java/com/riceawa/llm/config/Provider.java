@@ -12,6 +12,17 @@ public class Provider {
     private String apiKey;
     private List<String> models;
 
+    // 单独的速率限制，为null时使用全局并发设置
+    private Integer requestsPerMinute;
+    private Integer tokensPerMinute;
+
+    // 单独的重试配置，为null时使用全局并发设置
+    private Integer maxRetryAttempts;
+    private Long retryDelayMs;
+
+    // 熔断时改用的备用服务商名称，为null时直接失败
+    private String fallbackProvider;
+
     public Provider() {
     }
 
@@ -54,6 +65,46 @@ public class Provider {
         this.models = models;
     }
 
+    public Integer getRequestsPerMinute() {
+        return requestsPerMinute;
+    }
+
+    public void setRequestsPerMinute(Integer requestsPerMinute) {
+        this.requestsPerMinute = requestsPerMinute;
+    }
+
+    public Integer getTokensPerMinute() {
+        return tokensPerMinute;
+    }
+
+    public void setTokensPerMinute(Integer tokensPerMinute) {
+        this.tokensPerMinute = tokensPerMinute;
+    }
+
+    public Integer getMaxRetryAttempts() {
+        return maxRetryAttempts;
+    }
+
+    public void setMaxRetryAttempts(Integer maxRetryAttempts) {
+        this.maxRetryAttempts = maxRetryAttempts;
+    }
+
+    public Long getRetryDelayMs() {
+        return retryDelayMs;
+    }
+
+    public void setRetryDelayMs(Long retryDelayMs) {
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public String getFallbackProvider() {
+        return fallbackProvider;
+    }
+
+    public void setFallbackProvider(String fallbackProvider) {
+        this.fallbackProvider = fallbackProvider;
+    }
+
     /**
      * 检查提供商配置是否有效
      */
@@ -6,13 +6,17 @@ import com.riceawa.llm.core.LLMService;
 import com.riceawa.llm.core.LLMConfig;
 import com.riceawa.llm.core.LLMResponse;
 import com.riceawa.llm.core.LLMContext;
+import com.riceawa.llm.core.RequestPriority;
 import com.riceawa.llm.service.LLMServiceManager;
 import com.riceawa.llm.config.LLMChatConfig;
 import com.riceawa.llm.logging.LogManager;
+import com.riceawa.llm.tokenizer.TokenCounter;
 import net.minecraft.entity.player.PlayerEntity;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
 /**
  * 聊天上下文管理器，管理每个玩家的对话状态
@@ -49,19 +53,39 @@ public class ChatContext {
     }
     private final String sessionId;
     private final UUID playerId;
-    private final List<LLMMessage> messages;
+    // 消息列表的当前快照，修改时整体替换；writeLock串行化修改
+    private volatile MessageSequence messages = MessageSequence.empty();
+    private final Object writeLock = new Object();
     private final Map<String, Object> metadata;
     private String currentPromptTemplate;
     private int maxContextCharacters;
+    private boolean tokenLimitMode;
+    private int maxContextTokens;
+    private boolean speculativeCompression;
+    private double speculativeCompressionWatermark;
     private long lastActivity;
     private ContextEventListener eventListener;
 
-    // 缓存字符长度以提高性能
-    private int cachedTotalCharacters = -1;
-    private boolean characterCacheValid = false;
+    // 增量维护的字符数、token数和各角色消息数
+    private final ContextSizeTracker sizeTracker = new ContextSizeTracker();
 
     // 压缩状态标记
-    private volatile boolean compressionInProgress = false;
+    private final AtomicBoolean compressionInProgress = new AtomicBoolean(false);
+
+    // 消息被整体改写（替换系统提示词、清空、压缩）的次数，追加消息不改变它
+    // 压缩完成时据此判断快照中的消息是否仍是当前列表的前缀，在writeLock内修改
+    private volatile long rewriteVersion = 0;
+
+    // 达到预压缩水位后在后台预先生成的摘要，达到上限时直接替换
+    private volatile PreparedSummary preparedSummary;
+
+    // 上次预先生成摘要失败（无可压缩的消息、服务不可用或请求失败）时的版本和上下文长度，
+    // 同一版本下上下文再增长上限的1/10之前不再重试，避免反复发送注定失败的请求
+    private volatile long failedPreparationVersion = -1;
+    private volatile int failedPreparationSize;
+
+    // 生成摘要的实现，测试中可以替换
+    private Function<List<LLMMessage>, CompletableFuture<String>> summarizer = this::summarizeAsync;
 
     // 当前玩家实体（用于发送通知）
     private transient PlayerEntity currentPlayer;
@@ -69,10 +93,13 @@ public class ChatContext {
     public ChatContext(UUID playerId) {
         this.sessionId = UUID.randomUUID().toString();
         this.playerId = playerId;
-        this.messages = new ArrayList<>();
         this.metadata = new ConcurrentHashMap<>();
         this.currentPromptTemplate = LLMChatConfig.getInstance().getDefaultPromptTemplate();
         this.maxContextCharacters = LLMChatConfig.getInstance().getMaxContextCharacters();
+        this.tokenLimitMode = LLMChatConfig.getInstance().isTokenContextLimit();
+        this.maxContextTokens = LLMChatConfig.getInstance().getMaxContextTokens();
+        this.speculativeCompression = LLMChatConfig.getInstance().isEnableSpeculativeCompression();
+        this.speculativeCompressionWatermark = LLMChatConfig.getInstance().getSpeculativeCompressionWatermark();
         this.lastActivity = System.currentTimeMillis();
     }
 
@@ -80,9 +107,9 @@ public class ChatContext {
      * 添加消息到上下文
      */
     public void addMessage(LLMMessage message) {
-        synchronized (messages) {
-            messages.add(message);
-            invalidateCharacterCache();
+        synchronized (writeLock) {
+            messages = messages.append(message);
+            sizeTracker.add(message);
             updateLastActivity();
         }
     }
@@ -113,54 +140,58 @@ public class ChatContext {
      * 如果已存在系统消息，则替换第一个系统消息；否则在开头添加
      */
     public void updateSystemMessage(String content) {
-        synchronized (messages) {
+        synchronized (writeLock) {
             // 查找第一个系统消息
-            for (int i = 0; i < messages.size(); i++) {
-                if (messages.get(i).getRole() == MessageRole.SYSTEM) {
+            MessageSequence current = messages;
+            for (int i = 0; i < current.size(); i++) {
+                if (current.get(i).getRole() == MessageRole.SYSTEM) {
                     // 替换现有的系统消息
-                    messages.set(i, new LLMMessage(MessageRole.SYSTEM, content));
-                    invalidateCharacterCache();
+                    LLMMessage systemMessage = new LLMMessage(MessageRole.SYSTEM, content);
+                    messages = current.with(i, systemMessage);
+                    rewriteVersion++;
+                    sizeTracker.replace(current.get(i), systemMessage);
                     updateLastActivity();
                     return;
                 }
             }
 
             // 如果没有找到系统消息，在开头添加
-            messages.add(0, new LLMMessage(MessageRole.SYSTEM, content));
-            invalidateCharacterCache();
+            LLMMessage systemMessage = new LLMMessage(MessageRole.SYSTEM, content);
+            messages = current.prepend(systemMessage);
+            rewriteVersion++;
+            sizeTracker.add(systemMessage);
             updateLastActivity();
         }
     }
 
     /**
      * 获取所有消息
+     * 返回当前消息列表的不可变快照，之后的修改不会影响已返回的列表
      */
     public List<LLMMessage> getMessages() {
-        synchronized (messages) {
-            return new ArrayList<>(messages);
-        }
+        return messages;
     }
 
     /**
      * 获取最近的N条消息
      */
     public List<LLMMessage> getRecentMessages(int count) {
-        synchronized (messages) {
-            int size = messages.size();
-            if (size <= count) {
-                return new ArrayList<>(messages);
-            }
-            return new ArrayList<>(messages.subList(size - count, size));
+        MessageSequence current = messages;
+        int size = current.size();
+        if (size <= count) {
+            return current;
         }
+        return current.subList(size - count, size);
     }
 
     /**
      * 清空上下文
      */
     public void clear() {
-        synchronized (messages) {
-            messages.clear();
-            invalidateCharacterCache();
+        synchronized (writeLock) {
+            messages = MessageSequence.empty();
+            rewriteVersion++;
+            sizeTracker.reset();
             updateLastActivity();
         }
     }
@@ -169,36 +200,63 @@ public class ChatContext {
      * 计算所有消息的总字符长度
      */
     public int calculateTotalCharacters() {
-        if (characterCacheValid) {
-            return cachedTotalCharacters;
+        return sizeTracker.getCharacters();
+    }
+
+    /**
+     * 计算所有消息的总token数，每条消息的token数记录在消息元数据中
+     */
+    public int calculateTotalTokens() {
+        return sizeTracker.getTokens();
+    }
+
+    /**
+     * 获取指定角色的消息数
+     */
+    public int getMessageCount(MessageRole role) {
+        return sizeTracker.getRoleCount(role);
+    }
+
+    /**
+     * 用新的消息列表整体替换上下文（压缩、修剪），并重新统计长度
+     */
+    private void replaceMessages(List<LLMMessage> newMessages) {
+        synchronized (writeLock) {
+            messages = MessageSequence.of(newMessages);
+            rewriteVersion++;
+            sizeTracker.reset(messages);
         }
+    }
 
-        synchronized (messages) {
-            int total = 0;
-            for (LLMMessage message : messages) {
-                if (message.getContent() != null) {
-                    total += message.getContent().length();
-                }
-            }
-            cachedTotalCharacters = total;
-            characterCacheValid = true;
-            return total;
+    /**
+     * 按当前限制模式计算一条消息的长度（字符数或token数）
+     */
+    private int measure(LLMMessage message) {
+        if (tokenLimitMode) {
+            return TokenCounter.getInstance().count(message);
         }
+        return message.getContent() != null ? message.getContent().length() : 0;
+    }
+
+    /**
+     * 按当前限制模式返回上下文上限（字符数或token数）
+     */
+    private int contextLimit() {
+        return tokenLimitMode ? maxContextTokens : maxContextCharacters;
     }
 
     /**
-     * 使字符长度缓存失效
+     * 按当前限制模式计算上下文总长度（字符数或token数）
      */
-    private void invalidateCharacterCache() {
-        characterCacheValid = false;
-        cachedTotalCharacters = -1;
+    public int calculateContextSize() {
+        return tokenLimitMode ? calculateTotalTokens() : calculateTotalCharacters();
     }
 
     /**
-     * 检查是否超过上下文字符长度限制
+     * 检查是否超过上下文长度限制（按字符数或token数，取决于配置）
      */
-    private boolean exceedsContextLimits() {
-        return calculateTotalCharacters() > maxContextCharacters;
+    public boolean exceedsContextLimits() {
+        return calculateContextSize() > contextLimit();
     }
 
     /**
@@ -210,49 +268,177 @@ public class ChatContext {
 
     /**
      * 检查是否需要压缩，如果需要则启动异步压缩任务
+     * 超过上限时压缩（已有预先生成的摘要时直接替换）；超过预压缩水位时在后台预先生成摘要。
+     * 立即返回，调用方（玩家的对话请求）不会等待压缩
      */
     public void scheduleCompressionIfNeeded() {
-        if (!exceedsContextLimits() || compressionInProgress) {
+        boolean exceeds = exceedsContextLimits();
+        if (!exceeds && !shouldPrepareSummary()) {
             return;
         }
+        if (!compressionInProgress.compareAndSet(false, true)) {
+            return; // 正在进行的任务结束时会再次检查
+        }
 
         // 启动异步压缩
-        compressContextAsync();
+        compressContextAsync(!exceeds);
     }
 
     /**
-     * 异步压缩上下文
+     * 是否已超过预压缩水位且还没有对应当前上下文的预先生成的摘要
      */
-    private void compressContextAsync() {
-        compressionInProgress = true;
+    private boolean shouldPrepareSummary() {
+        if (!speculativeCompression) {
+            return false;
+        }
+        PreparedSummary prepared = preparedSummary;
+        if (prepared != null && prepared.plan.version == rewriteVersion) {
+            return false;
+        }
+        int size = calculateContextSize();
+        if (failedPreparationVersion == rewriteVersion && size < failedPreparationSize + contextLimit() / 10) {
+            return false;
+        }
+        return size >= contextLimit() * speculativeCompressionWatermark;
+    }
 
-        // 使用ChatContextManager的调度器执行异步任务
+    /**
+     * 异步压缩上下文
+     *
+     * @param speculative true表示只预先生成摘要，不修改上下文
+     */
+    private void compressContextAsync(boolean speculative) {
+        // 使用ChatContextManager的调度器准备压缩，摘要请求完成后在回调中写回
         ChatContextManager.getInstance().getScheduler().execute(() -> {
             try {
-                // 执行压缩逻辑
-                trimContext();
+                (speculative ? prepareSummary() : trimContext()).whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        LogManager.getInstance().error("Async context compression failed for session " + sessionId, throwable);
+                    }
+                    compressionInProgress.set(false);
+                    if (speculative && Boolean.TRUE.equals(result)) {
+                        // 生成摘要期间可能已经超过上限，此时立即替换
+                        scheduleCompressionIfNeeded();
+                    }
+                });
             } catch (Exception e) {
                 LogManager.getInstance().error("Async context compression failed for session " + sessionId, e);
-            } finally {
-                compressionInProgress = false;
+                compressionInProgress.set(false);
             }
         });
     }
 
+    /**
+     * 在后台为最早的一段消息预先生成摘要，保留最近约一半上下文预算的消息
+     * 摘要只被缓存，达到上限时由trimContext直接替换，不需要再等待摘要请求
+     */
+    private CompletableFuture<Boolean> prepareSummary() {
+        long version = rewriteVersion;
+        int size = calculateContextSize();
+        CompressionPlan plan = planCompression(contextLimit() / 2);
+        if (plan == null) {
+            recordFailedPreparation(version, size);
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return summarizer.apply(plan.compressed).handle((summary, throwable) -> {
+            if (throwable != null) {
+                LogManager.getInstance().error("Error during speculative compression for session " + sessionId, throwable);
+            } else if (summary != null && !summary.trim().isEmpty()) {
+                preparedSummary = new PreparedSummary(plan, summary);
+                LogManager.getInstance().system("Prepared summary of " + plan.compressed.size() +
+                    " messages for session " + sessionId);
+                return true;
+            }
+            recordFailedPreparation(plan.version, size);
+            return false;
+        });
+    }
+
+    /**
+     * 记录预先生成摘要失败时的版本和上下文长度
+     */
+    private void recordFailedPreparation(long version, int size) {
+        failedPreparationSize = size;
+        failedPreparationVersion = version;
+    }
+
     /**
      * 修剪上下文，保持在最大长度内
-     * 使用智能压缩而不是简单删除
+     * 使用智能压缩而不是简单删除：对当前消息列表取快照，在后台为最早的一段消息生成摘要，
+     * 完成后仅当这段消息仍是列表的前缀时才替换为摘要，压缩期间新到达的消息会被保留。
+     * 已有预先生成且仍然有效的摘要时直接替换，不再发送摘要请求。
      */
-    private void trimContext() {
+    private CompletableFuture<Void> trimContext() {
         if (!exceedsContextLimits()) {
-            return;
+            return CompletableFuture.completedFuture(null);
+        }
+
+        PreparedSummary prepared = preparedSummary;
+        preparedSummary = null;
+        if (prepared != null && applySummary(prepared.plan, prepared.summary)) {
+            LogManager.getInstance().system("Swapped in prepared summary for session " + sessionId);
+            if (!exceedsContextLimits()) {
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        CompressionPlan plan = planCompression(contextLimit());
+        if (plan == null) {
+            return CompletableFuture.completedFuture(null); // 无需压缩
+        }
+
+        // 通知监听器压缩即将开始
+        int messagesToCompress = plan.compressed.size();
+        if (eventListener != null) {
+            if (currentPlayer != null) {
+                eventListener.onContextCompressionStarted(playerId, messagesToCompress, currentPlayer);
+            } else {
+                eventListener.onContextCompressionStarted(playerId, messagesToCompress);
+            }
+        }
+
+        // 尝试压缩旧消息
+        return summarizer.apply(plan.compressed).handle((compressedSummary, throwable) -> {
+            if (throwable != null) {
+                LogManager.getInstance().error("Error during context compression for session " + sessionId, throwable);
+            }
+
+            if (compressedSummary != null && !compressedSummary.trim().isEmpty()) {
+                // 压缩成功，用摘要替换旧消息
+                if (!applySummary(plan, compressedSummary)) {
+                    // 上下文在压缩期间被改写，摘要已不对应当前消息，下次检查时重新压缩
+                    LogManager.getInstance().system("Context of session " + sessionId +
+                        " changed during compression, summary discarded");
+                }
+            } else {
+                // 压缩失败，回退到简单删除
+                fallbackTrimContext();
+                notifyCompressionCompleted(false, messagesToCompress);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 对当前消息列表取快照，选出需要压缩的最早一段消息
+     *
+     * @param budget 压缩后保留的消息可以占用的长度（字符数或token数）
+     * @return 无需压缩时返回null
+     */
+    private CompressionPlan planCompression(int budget) {
+        MessageSequence snapshot;
+        long snapshotVersion;
+        synchronized (writeLock) {
+            snapshot = messages;
+            snapshotVersion = rewriteVersion;
         }
 
         // 保留系统消息和最近的消息
         List<LLMMessage> systemMessages = new ArrayList<>();
         List<LLMMessage> otherMessages = new ArrayList<>();
 
-        for (LLMMessage message : messages) {
+        for (LLMMessage message : snapshot) {
             if (message.getRole() == MessageRole.SYSTEM) {
                 systemMessages.add(message);
             } else {
@@ -261,91 +447,100 @@ public class ChatContext {
         }
 
         // 智能计算需要压缩的消息
-        int messagesToCompress = calculateMessagesToCompress(systemMessages, otherMessages);
+        int messagesToCompress = calculateMessagesToCompress(systemMessages, otherMessages, budget);
 
-        if (messagesToCompress <= 0) {
-            return; // 无需压缩
+        if (messagesToCompress <= 0 || messagesToCompress >= otherMessages.size()) {
+            return null;
         }
+        return new CompressionPlan(snapshot, snapshotVersion, systemMessages,
+            otherMessages.subList(0, messagesToCompress),
+            otherMessages.subList(messagesToCompress, otherMessages.size()));
+    }
 
-        if (messagesToCompress > 0 && messagesToCompress < otherMessages.size()) {
-                // 通知监听器压缩即将开始
-                if (eventListener != null) {
-                    if (currentPlayer != null) {
-                        eventListener.onContextCompressionStarted(playerId, messagesToCompress, currentPlayer);
-                    } else {
-                        eventListener.onContextCompressionStarted(playerId, messagesToCompress);
-                    }
-                }
+    /**
+     * 用摘要替换计划中的消息，成功时通知监听器
+     *
+     * @return 上下文已被改写、摘要被放弃时返回false
+     */
+    private boolean applySummary(CompressionPlan plan, String compressedSummary) {
+        if (!spliceSummary(plan.snapshot, plan.version, plan.systemMessages, plan.remaining, compressedSummary)) {
+            return false;
+        }
+        LogManager.getInstance().system("Context compressed for session " + sessionId +
+            ", compressed " + plan.compressed.size() + " messages into summary");
+        notifyCompressionCompleted(true, plan.compressed.size());
+        return true;
+    }
 
-                // 尝试压缩旧消息
-                List<LLMMessage> messagesToCompressSublist = otherMessages.subList(0, messagesToCompress);
-                String compressedSummary = compressMessages(messagesToCompressSublist);
+    /**
+     * 通知监听器压缩结果
+     */
+    private void notifyCompressionCompleted(boolean success, int messagesToCompress) {
+        if (eventListener != null) {
+            if (currentPlayer != null) {
+                eventListener.onContextCompressionCompleted(playerId, success,
+                    messagesToCompress, messages.size(), currentPlayer);
+            } else {
+                eventListener.onContextCompressionCompleted(playerId, success,
+                    messagesToCompress, messages.size());
+            }
+        }
+    }
 
-                if (compressedSummary != null && !compressedSummary.trim().isEmpty()) {
-                    // 压缩成功，用摘要替换旧消息
-                    List<LLMMessage> remainingMessages = otherMessages.subList(messagesToCompress, otherMessages.size());
+    /**
+     * 把摘要写回上下文：仅当快照之后没有发生追加以外的修改时替换，快照之后追加的消息保留在末尾
+     *
+     * @return 上下文已被改写、摘要被放弃时返回false
+     */
+    private boolean spliceSummary(MessageSequence snapshot, long snapshotVersion, List<LLMMessage> systemMessages,
+                                  List<LLMMessage> remainingMessages, String compressedSummary) {
+        synchronized (writeLock) {
+            if (rewriteVersion != snapshotVersion) {
+                return false;
+            }
+            MessageSequence current = messages;
 
-                    // 重新构建消息列表
-                    messages.clear();
-                    messages.addAll(systemMessages);
+            // 重新构建消息列表
+            List<LLMMessage> rebuilt = new ArrayList<>(systemMessages);
 
-                    // 添加压缩摘要作为系统消息
-                    messages.add(new LLMMessage(MessageRole.SYSTEM,
-                        "=== 对话历史摘要 ===\n" + compressedSummary + "\n=== 以下是最近的对话 ==="));
+            // 添加压缩摘要作为系统消息
+            rebuilt.add(new LLMMessage(MessageRole.SYSTEM,
+                "=== 对话历史摘要 ===\n" + compressedSummary + "\n=== 以下是最近的对话 ==="));
 
-                    messages.addAll(remainingMessages);
+            rebuilt.addAll(remainingMessages);
+            rebuilt.addAll(current.subList(snapshot.size(), current.size()));
+            replaceMessages(rebuilt);
+            return true;
+        }
+    }
 
-                    LogManager.getInstance().system("Context compressed for session " + sessionId +
-                        ", compressed " + messagesToCompress + " messages into summary");
+    /**
+     * 替换生成摘要的实现（仅用于测试）
+     */
+    void setSummarizer(Function<List<LLMMessage>, CompletableFuture<String>> summarizer) {
+        this.summarizer = summarizer;
+    }
 
-                    // 通知监听器压缩成功
-                    if (eventListener != null) {
-                        if (currentPlayer != null) {
-                            eventListener.onContextCompressionCompleted(playerId, true,
-                                messagesToCompress, messages.size(), currentPlayer);
-                        } else {
-                            eventListener.onContextCompressionCompleted(playerId, true,
-                                messagesToCompress, messages.size());
-                        }
-                    }
-                } else {
-                    // 压缩失败，回退到简单删除
-                    fallbackTrimContext(systemMessages, otherMessages);
-
-                    // 通知监听器压缩失败
-                    if (eventListener != null) {
-                        if (currentPlayer != null) {
-                            eventListener.onContextCompressionCompleted(playerId, false,
-                                messagesToCompress, messages.size(), currentPlayer);
-                        } else {
-                            eventListener.onContextCompressionCompleted(playerId, false,
-                                messagesToCompress, messages.size());
-                        }
-                    }
-                }
-            }
-        }
+    /**
+     * 是否有压缩任务正在进行
+     */
+    public boolean isCompressionInProgress() {
+        return compressionInProgress.get();
+    }
 
     /**
-     * 智能计算需要压缩的消息数量（基于字符长度）
+     * 智能计算需要压缩的消息数量（基于字符长度或token数）
      * 策略：压缩完整的消息（如1/2的消息），保持消息完整性
      */
-    private int calculateMessagesToCompress(List<LLMMessage> systemMessages, List<LLMMessage> otherMessages) {
-        int totalCharacters = calculateTotalCharacters();
-        if (totalCharacters <= maxContextCharacters) {
-            return 0; // 无需压缩
-        }
-
-        // 计算系统消息的字符长度
+    private int calculateMessagesToCompress(List<LLMMessage> systemMessages, List<LLMMessage> otherMessages, int budget) {
+        // 计算系统消息的长度
         int systemCharacters = 0;
         for (LLMMessage msg : systemMessages) {
-            if (msg.getContent() != null) {
-                systemCharacters += msg.getContent().length();
-            }
+            systemCharacters += measure(msg);
         }
 
-        // 预留压缩摘要的空间（估算为500字符）
-        int availableCharacters = maxContextCharacters - systemCharacters - 500;
+        // 预留压缩摘要的空间（估算为500字符或512个token）
+        int availableCharacters = budget - systemCharacters - (tokenLimitMode ? 512 : 500);
         if (availableCharacters <= 0) {
             // 如果空间不足，压缩一半消息（保持完整性）
             return Math.max(1, otherMessages.size() / 2);
@@ -356,7 +551,7 @@ public class ChatContext {
         int messagesToKeep = 0;
         for (int i = otherMessages.size() - 1; i >= 0; i--) {
             LLMMessage msg = otherMessages.get(i);
-            int msgLength = msg.getContent() != null ? msg.getContent().length() : 0;
+            int msgLength = measure(msg);
             if (currentCharacters + msgLength <= availableCharacters) {
                 currentCharacters += msgLength;
                 messagesToKeep++;
@@ -377,55 +572,66 @@ public class ChatContext {
 
     /**
      * 回退的上下文修剪方法（简单删除）
+     * 基于当前消息列表在锁内完成，不会丢失压缩期间新到达的消息
      */
-    private void fallbackTrimContext(List<LLMMessage> systemMessages, List<LLMMessage> otherMessages) {
-        // 按字符长度保留完整消息
+    private void fallbackTrimContext() {
+        // 按字符长度或token数保留完整消息
         List<LLMMessage> messagesToKeep = new ArrayList<>();
+        int currentCharacters = 0;
 
-        // 计算系统消息的字符长度
-        int systemCharacters = 0;
-        for (LLMMessage msg : systemMessages) {
-            if (msg.getContent() != null) {
-                systemCharacters += msg.getContent().length();
+        synchronized (writeLock) {
+            List<LLMMessage> systemMessages = new ArrayList<>();
+            List<LLMMessage> otherMessages = new ArrayList<>();
+            for (LLMMessage message : messages) {
+                if (message.getRole() == MessageRole.SYSTEM) {
+                    systemMessages.add(message);
+                } else {
+                    otherMessages.add(message);
+                }
             }
-        }
 
-        int availableCharacters = maxContextCharacters - systemCharacters;
-        int currentCharacters = 0;
+            // 计算系统消息的长度
+            int systemCharacters = 0;
+            for (LLMMessage msg : systemMessages) {
+                systemCharacters += measure(msg);
+            }
 
-        // 从最新消息开始保留完整消息
-        for (int i = otherMessages.size() - 1; i >= 0; i--) {
-            LLMMessage msg = otherMessages.get(i);
-            int msgLength = msg.getContent() != null ? msg.getContent().length() : 0;
-            if (currentCharacters + msgLength <= availableCharacters) {
-                currentCharacters += msgLength;
-                messagesToKeep.add(0, msg); // 添加到开头保持顺序
-            } else {
-                break; // 不能放下完整消息就停止
+            int availableCharacters = contextLimit() - systemCharacters;
+
+            // 从最新消息开始保留完整消息
+            for (int i = otherMessages.size() - 1; i >= 0; i--) {
+                LLMMessage msg = otherMessages.get(i);
+                int msgLength = measure(msg);
+                if (currentCharacters + msgLength <= availableCharacters) {
+                    currentCharacters += msgLength;
+                    messagesToKeep.add(0, msg); // 添加到开头保持顺序
+                } else {
+                    break; // 不能放下完整消息就停止
+                }
             }
-        }
 
-        // 重新构建消息列表
-        messages.clear();
-        messages.addAll(systemMessages);
-        messages.addAll(messagesToKeep);
-        invalidateCharacterCache();
+            // 重新构建消息列表
+            List<LLMMessage> rebuilt = new ArrayList<>(systemMessages);
+            rebuilt.addAll(messagesToKeep);
+            replaceMessages(rebuilt);
+        }
 
         LogManager.getInstance().system("Context trimmed using fallback method for session " + sessionId +
-            ", kept " + messagesToKeep.size() + " messages with " + currentCharacters + " characters");
+            ", kept " + messagesToKeep.size() + " messages with " + currentCharacters + (tokenLimitMode ? " tokens" : " characters"));
     }
 
     /**
      * 压缩消息列表为摘要
+     * 以后台优先级发送摘要请求，不阻塞任何线程；失败时返回null
      */
-    private String compressMessages(List<LLMMessage> messagesToCompress) {
+    private CompletableFuture<String> summarizeAsync(List<LLMMessage> messagesToCompress) {
         try {
             LLMServiceManager serviceManager = LLMServiceManager.getInstance();
             LLMService llmService = serviceManager.getDefaultService();
 
             if (llmService == null || !llmService.isAvailable()) {
                 LogManager.getInstance().error("LLM service not available for context compression");
-                return null;
+                return CompletableFuture.completedFuture(null);
             }
 
             // 构建压缩提示词
@@ -452,29 +658,29 @@ public class ChatContext {
             // 创建压缩上下文
             LLMContext compressionContext = LLMContext.builder()
                     .sessionId(this.sessionId)
+                    .priority(RequestPriority.BACKGROUND)
                     .metadata("operation", "compression")
                     .metadata("original_message_count", messagesToCompress.size())
                     .build();
 
-            // 同步调用LLM进行压缩
-            CompletableFuture<LLMResponse> future = llmService.chat(compressionMessages, compressionConfig, compressionContext);
-            LLMResponse response = future.get(); // 等待结果
-
-            if (response.isSuccess()) {
-                String summary = response.getContent();
-                if (summary != null && !summary.trim().isEmpty()) {
-                    LogManager.getInstance().system("Successfully compressed " + messagesToCompress.size() +
-                        " messages into summary for session " + sessionId);
-                    return summary.trim();
+            // 异步调用LLM进行压缩
+            return llmService.chat(compressionMessages, compressionConfig, compressionContext).thenApply(response -> {
+                if (response.isSuccess()) {
+                    String summary = response.getContent();
+                    if (summary != null && !summary.trim().isEmpty()) {
+                        LogManager.getInstance().system("Successfully compressed " + messagesToCompress.size() +
+                            " messages into summary for session " + sessionId);
+                        return summary.trim();
+                    }
+                } else {
+                    LogManager.getInstance().error("Failed to compress context: " + response.getError());
                 }
-            } else {
-                LogManager.getInstance().error("Failed to compress context: " + response.getError());
-            }
+                return null;
+            });
         } catch (Exception e) {
             LogManager.getInstance().error("Error during context compression for session " + sessionId, e);
+            return CompletableFuture.completedFuture(null);
         }
-
-        return null;
     }
 
     /**
@@ -548,10 +754,41 @@ public class ChatContext {
         System.out.println("ChatContext[" + sessionId + "] updating maxContextCharacters from " +
             this.maxContextCharacters + " to " + maxContextCharacters);
         this.maxContextCharacters = maxContextCharacters;
-        invalidateCharacterCache();
         updateLastActivity();
     }
 
+    public boolean isTokenLimitMode() {
+        return tokenLimitMode;
+    }
+
+    public int getMaxContextTokens() {
+        return maxContextTokens;
+    }
+
+    /**
+     * 设置token限制模式和token上限
+     */
+    public void setTokenLimit(boolean tokenLimitMode, int maxContextTokens) {
+        this.tokenLimitMode = tokenLimitMode;
+        this.maxContextTokens = maxContextTokens;
+        updateLastActivity();
+    }
+
+    public boolean isSpeculativeCompression() {
+        return speculativeCompression;
+    }
+
+    /**
+     * 设置是否预压缩以及预压缩水位（上下文上限的比例）
+     */
+    public void setSpeculativeCompression(boolean speculativeCompression, double speculativeCompressionWatermark) {
+        this.speculativeCompression = speculativeCompression;
+        this.speculativeCompressionWatermark = speculativeCompressionWatermark;
+        if (!speculativeCompression) {
+            preparedSummary = null;
+        }
+    }
+
     // 保持向后兼容的方法名
     public int getMaxContextLength() {
         return maxContextCharacters;
@@ -566,7 +803,7 @@ public class ChatContext {
     }
 
     public int getMessageCount() {
-        return messages.size();
+        return sizeTracker.getMessageCount();
     }
 
     /**
@@ -582,4 +819,37 @@ public class ChatContext {
     public ContextEventListener getEventListener() {
         return eventListener;
     }
+
+    /**
+     * 一次压缩的计划：快照、快照时的版本，以及快照中要压缩和保留的消息
+     */
+    private static class CompressionPlan {
+        final MessageSequence snapshot;
+        final long version;
+        final List<LLMMessage> systemMessages;
+        final List<LLMMessage> compressed;
+        final List<LLMMessage> remaining;
+
+        CompressionPlan(MessageSequence snapshot, long version, List<LLMMessage> systemMessages,
+                        List<LLMMessage> compressed, List<LLMMessage> remaining) {
+            this.snapshot = snapshot;
+            this.version = version;
+            this.systemMessages = systemMessages;
+            this.compressed = compressed;
+            this.remaining = remaining;
+        }
+    }
+
+    /**
+     * 预先生成的摘要及其对应的压缩计划
+     */
+    private static class PreparedSummary {
+        final CompressionPlan plan;
+        final String summary;
+
+        PreparedSummary(CompressionPlan plan, String summary) {
+            this.plan = plan;
+            this.summary = summary;
+        }
+    }
 }
@@ -145,7 +145,7 @@ public class ChatContextManager {
     }
 
     /**
-     * 更新所有上下文的最大字符长度配置
+     * 更新所有上下文的最大长度配置（字符数、token数、限制模式和预压缩水位）
      */
     public void updateMaxContextLength() {
         LLMChatConfig config = LLMChatConfig.getInstance();
@@ -153,8 +153,11 @@ public class ChatContextManager {
 
         for (ChatContext context : contexts.values()) {
             context.setMaxContextCharacters(newMaxContextCharacters);
+            context.setTokenLimit(config.isTokenContextLimit(), config.getMaxContextTokens());
+            context.setSpeculativeCompression(config.isEnableSpeculativeCompression(), config.getSpeculativeCompressionWatermark());
         }
         LogManager.getInstance().system("Updated max context characters to " + newMaxContextCharacters +
+            ", max context tokens to " + config.getMaxContextTokens() + " (limit mode: " + config.getContextLimitMode() + ")" +
             " for " + contexts.size() + " active contexts");
     }
 
@@ -166,6 +169,8 @@ public class ChatContextManager {
         if (context != null) {
             LLMChatConfig config = LLMChatConfig.getInstance();
             context.setMaxContextCharacters(config.getMaxContextCharacters());
+            context.setTokenLimit(config.isTokenContextLimit(), config.getMaxContextTokens());
+            context.setSpeculativeCompression(config.isEnableSpeculativeCompression(), config.getSpeculativeCompressionWatermark());
         }
     }
 
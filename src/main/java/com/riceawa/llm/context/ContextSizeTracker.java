@@ -0,0 +1,104 @@
+package com.riceawa.llm.context;
+
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMMessage.MessageRole;
+import com.riceawa.llm.tokenizer.TokenCounter;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * 上下文长度统计
+ * 随消息的添加、替换和删除增量维护总字符数、总token数和各角色的消息数，
+ * 每次只计算变化的那条消息，检查上下文限制时不需要重新扫描整个消息列表。
+ * 修改方法由持有消息列表锁的调用方串行调用，读取方法可以在任意线程调用。
+ */
+class ContextSizeTracker {
+    private static final MessageRole[] ROLES = MessageRole.values();
+
+    private final ToIntFunction<LLMMessage> tokenCounter;
+    private final int[] roleCounts = new int[ROLES.length];
+
+    private volatile int characters;
+    private volatile int messageTokens;
+    private volatile int messageCount;
+
+    ContextSizeTracker() {
+        this(message -> TokenCounter.getInstance().count(message));
+    }
+
+    ContextSizeTracker(ToIntFunction<LLMMessage> tokenCounter) {
+        this.tokenCounter = tokenCounter;
+    }
+
+    /**
+     * 记录新增的消息
+     */
+    void add(LLMMessage message) {
+        characters += length(message);
+        messageTokens += tokenCounter.applyAsInt(message);
+        roleCounts[message.getRole().ordinal()]++;
+        messageCount++;
+    }
+
+    /**
+     * 记录被删除的消息
+     */
+    void remove(LLMMessage message) {
+        characters -= length(message);
+        messageTokens -= tokenCounter.applyAsInt(message);
+        roleCounts[message.getRole().ordinal()]--;
+        messageCount--;
+    }
+
+    /**
+     * 记录被替换的消息
+     */
+    void replace(LLMMessage oldMessage, LLMMessage newMessage) {
+        remove(oldMessage);
+        add(newMessage);
+    }
+
+    /**
+     * 清空统计
+     */
+    void reset() {
+        characters = 0;
+        messageTokens = 0;
+        messageCount = 0;
+        Arrays.fill(roleCounts, 0);
+    }
+
+    /**
+     * 重新统计整个消息列表，用于压缩等整体替换消息的场景
+     */
+    void reset(Iterable<LLMMessage> messages) {
+        reset();
+        for (LLMMessage message : messages) {
+            add(message);
+        }
+    }
+
+    int getCharacters() {
+        return characters;
+    }
+
+    /**
+     * 总token数，包括每个请求回复开头的固定开销，与TokenCounter统计整个列表的结果一致
+     */
+    int getTokens() {
+        return messageCount > 0 ? messageTokens + TokenCounter.TOKENS_PER_REPLY : 0;
+    }
+
+    int getMessageCount() {
+        return messageCount;
+    }
+
+    int getRoleCount(MessageRole role) {
+        return roleCounts[role.ordinal()];
+    }
+
+    private static int length(LLMMessage message) {
+        return message.getContent() != null ? message.getContent().length() : 0;
+    }
+}
@@ -0,0 +1,108 @@
+package com.riceawa.llm.context;
+
+import com.riceawa.llm.core.LLMMessage;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * 不可变的消息序列
+ * 每个实例都是消息列表在某一时刻的快照，读取时无需加锁也无需复制。
+ * 追加消息返回新的序列：同一数组的后续位置尚未被占用时直接写入并共享数组，
+ * 旧快照只读取自己长度以内的元素，因此看不到新消息；否则复制到更大的数组。
+ * 连续追加的均摊开销为O(1)，替换和在开头插入需要复制整个序列。
+ */
+public final class MessageSequence extends AbstractList<LLMMessage> implements RandomAccess {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final MessageSequence EMPTY = new MessageSequence(new Buffer(new LLMMessage[0], 0), 0);
+
+    private final Buffer buffer;
+    private final int size;
+
+    private MessageSequence(Buffer buffer, int size) {
+        this.buffer = buffer;
+        this.size = size;
+    }
+
+    public static MessageSequence empty() {
+        return EMPTY;
+    }
+
+    /**
+     * 从已有的消息列表创建序列
+     */
+    public static MessageSequence of(Collection<LLMMessage> messages) {
+        if (messages instanceof MessageSequence sequence) {
+            return sequence;
+        }
+        LLMMessage[] items = messages.toArray(new LLMMessage[Math.max(INITIAL_CAPACITY, messages.size())]);
+        return new MessageSequence(new Buffer(items, messages.size()), messages.size());
+    }
+
+    /**
+     * 返回末尾追加一条消息后的新序列
+     */
+    public MessageSequence append(LLMMessage message) {
+        synchronized (buffer) {
+            if (buffer.used == size && size < buffer.items.length) {
+                buffer.items[size] = message;
+                buffer.used++;
+                return new MessageSequence(buffer, size + 1);
+            }
+        }
+        LLMMessage[] items = new LLMMessage[Math.max(INITIAL_CAPACITY, size * 2)];
+        System.arraycopy(buffer.items, 0, items, 0, size);
+        items[size] = message;
+        return new MessageSequence(new Buffer(items, size + 1), size + 1);
+    }
+
+    /**
+     * 返回开头插入一条消息后的新序列
+     */
+    public MessageSequence prepend(LLMMessage message) {
+        LLMMessage[] items = new LLMMessage[Math.max(INITIAL_CAPACITY, (size + 1) * 2)];
+        items[0] = message;
+        System.arraycopy(buffer.items, 0, items, 1, size);
+        return new MessageSequence(new Buffer(items, size + 1), size + 1);
+    }
+
+    /**
+     * 返回替换指定位置的消息后的新序列
+     */
+    public MessageSequence with(int index, LLMMessage message) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        LLMMessage[] items = new LLMMessage[Math.max(INITIAL_CAPACITY, size * 2)];
+        System.arraycopy(buffer.items, 0, items, 0, size);
+        items[index] = message;
+        return new MessageSequence(new Buffer(items, size), size);
+    }
+
+    @Override
+    public LLMMessage get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return buffer.items[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 共享的底层数组，used为已被某个序列占用的位置数
+     */
+    private static final class Buffer {
+        final LLMMessage[] items;
+        int used;
+
+        Buffer(LLMMessage[] items, int used) {
+            this.items = items;
+            this.used = used;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.riceawa.llm.core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 自适应并发上限 - 基于AIMD（加性增、乘性减）
+ * 每个服务商单独维护上限：延迟平稳时逐步放大，延迟明显升高或出现429/503时按比例收缩，事故恢复后自动回升。
+ * 延迟基线按服务商和请求类型分别统计，取最近样本的中位数，流式请求和非流式请求的样本单位不同，互不比较。
+ * 并发槽位由所有服务商共享，整体上限取近期有样本的服务商中最小的上限，正在限流的服务商不会因为其他服务商健康而继续被打满；
+ * 增长条件按该服务商自己的进行中请求数判断。
+ * 所有方法线程安全。
+ */
+public class AdaptiveConcurrencyLimiter {
+    /** 出现限流或过载响应时的收缩系数 */
+    private static final double OVERLOAD_BACKOFF = 0.5;
+    /** 延迟升高时的收缩系数 */
+    private static final double LATENCY_BACKOFF = 0.9;
+    /** 短期延迟超过基线的倍数时视为延迟升高 */
+    private static final double LATENCY_TOLERANCE = 2.0;
+    /** 短期延迟EWMA的平滑系数 */
+    private static final double SHORT_EWMA_ALPHA = 0.2;
+    /** 每类请求保留的最近样本数 */
+    private static final int WINDOW_SIZE = 100;
+    /** 基线使用的百分位 */
+    private static final double BASELINE_PERCENTILE = 0.5;
+    /** 样本数不足时不根据延迟收缩 */
+    private static final int MIN_SAMPLES = 10;
+    /** 两次收缩之间的最小间隔，避免一批失败把上限直接压到最低 */
+    private static final long DECREASE_COOLDOWN_MS = 1000;
+    /** 服务商超过该时间没有样本时不再参与整体上限的计算 */
+    private static final long IDLE_EXPIRY_MS = 5 * 60 * 1000;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final LongSupplier clock;
+    private final Map<String, ProviderState> providers = new HashMap<>();
+
+    public AdaptiveConcurrencyLimiter(int minLimit, int maxLimit) {
+        this(minLimit, maxLimit, System::currentTimeMillis);
+    }
+
+    AdaptiveConcurrencyLimiter(int minLimit, int maxLimit, LongSupplier clock) {
+        this.maxLimit = Math.max(1, maxLimit);
+        this.minLimit = Math.max(1, Math.min(minLimit, this.maxLimit));
+        this.clock = clock;
+    }
+
+    /**
+     * 获取当前并发上限
+     * 从配置的上限开始，只在出现问题时收缩
+     */
+    public synchronized int getLimit() {
+        long now = clock.getAsLong();
+        double limit = maxLimit;
+        Iterator<ProviderState> iterator = providers.values().iterator();
+        while (iterator.hasNext()) {
+            ProviderState state = iterator.next();
+            if (now - state.lastSampleTime > IDLE_EXPIRY_MS) {
+                iterator.remove();
+            } else {
+                limit = Math.min(limit, state.limit);
+            }
+        }
+        return (int) Math.floor(limit);
+    }
+
+    /**
+     * 获取指定服务商的并发上限
+     */
+    public synchronized int getLimit(String provider) {
+        ProviderState state = providers.get(provider);
+        return state != null ? (int) Math.floor(state.limit) : maxLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * 获取指定服务商和请求类型的延迟基线，样本不足时返回-1
+     */
+    public synchronized double getBaselineLatency(String provider, String kind) {
+        ProviderState state = providers.get(provider);
+        LatencyWindow window = state != null ? state.windows.get(kind) : null;
+        return window != null && window.count >= MIN_SAMPLES ? window.percentile(BASELINE_PERCENTILE) : -1;
+    }
+
+    /**
+     * 记录一次请求的结果
+     *
+     * @param provider 服务商名称
+     * @param kind 请求类型，只有同类请求的延迟互相比较
+     * @param latency 延迟样本，如流式请求的首字节时间或非流式请求每个输出token的耗时
+     * @param overloaded 服务商是否返回了限流或过载（429/503、超时）
+     * @param inFlight 记录时发往该服务商的进行中请求数
+     */
+    public synchronized void onSample(String provider, String kind, double latency, boolean overloaded, int inFlight) {
+        long now = clock.getAsLong();
+        ProviderState state = providers.computeIfAbsent(provider, key -> new ProviderState(maxLimit));
+        state.lastSampleTime = now;
+
+        if (overloaded) {
+            decrease(state, OVERLOAD_BACKOFF, now);
+            return;
+        }
+
+        if (latency <= 0) {
+            return;
+        }
+
+        LatencyWindow window = state.windows.computeIfAbsent(kind, key -> new LatencyWindow());
+        window.add(latency);
+
+        if (window.count >= MIN_SAMPLES &&
+            window.shortLatency > window.percentile(BASELINE_PERCENTILE) * LATENCY_TOLERANCE) {
+            decrease(state, LATENCY_BACKOFF, now);
+        } else if (inFlight * 2 >= state.limit) {
+            // 只有上限确实被用到时才增长，避免空闲时无意义地放大
+            state.limit = Math.min(maxLimit, state.limit + 1.0 / state.limit);
+        }
+    }
+
+    private void decrease(ProviderState state, double factor, long now) {
+        if (now - state.lastDecreaseTime < DECREASE_COOLDOWN_MS) {
+            return;
+        }
+        state.lastDecreaseTime = now;
+        state.limit = Math.max(minLimit, state.limit * factor);
+    }
+
+    /**
+     * 单个服务商的并发上限和各类请求的延迟样本
+     */
+    private static final class ProviderState {
+        final Map<String, LatencyWindow> windows = new HashMap<>();
+        double limit;
+        long lastDecreaseTime = Long.MIN_VALUE / 2;
+        long lastSampleTime;
+
+        ProviderState(double limit) {
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * 最近的延迟样本和短期延迟EWMA
+     */
+    private static final class LatencyWindow {
+        final double[] samples = new double[WINDOW_SIZE];
+        int count;
+        int next;
+        double shortLatency = -1;
+
+        void add(double latency) {
+            samples[next] = latency;
+            next = (next + 1) % WINDOW_SIZE;
+            count = Math.min(count + 1, WINDOW_SIZE);
+            shortLatency = shortLatency < 0 ? latency
+                : shortLatency + SHORT_EWMA_ALPHA * (latency - shortLatency);
+        }
+
+        double percentile(double p) {
+            double[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(count - 1, Math.floor(p * count))];
+        }
+    }
+}
@@ -1,7 +1,12 @@
 package com.riceawa.llm.core;
 
+import com.riceawa.llm.config.ConcurrencySettings;
 import com.riceawa.llm.logging.LogManager;
 
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -12,6 +17,9 @@ import java.util.function.Supplier;
  */
 public class ConcurrencyManager {
     private static ConcurrencyManager instance;
+
+    /** 没有玩家信息的请求（系统任务）使用的客户端键 */
+    public static final String SYSTEM_CLIENT_KEY = "system";
     
     // 配置参数
     private final int maxConcurrentRequests;
@@ -20,18 +28,39 @@ public class ConcurrencyManager {
     private final int corePoolSize;
     private final int maximumPoolSize;
     private final long keepAliveTimeMs;
+    private final ExecutorMode executorMode;
+    private final int maxInFlightPerClient;
+    private final int maxQueuedPerClient;
+    private final int maxBackgroundRequests;
     
-    // 线程池和信号量
-    private final ThreadPoolExecutor executorService;
-    private final Semaphore requestSemaphore;
+    // 线程池和并发槽位
+    private final ExecutorService executorService;
+    private int permitsInUse = 0; // 由queueLock保护
+
+    // 自适应并发上限，未启用时为null，上限固定为maxConcurrentRequests
+    private final AdaptiveConcurrencyLimiter adaptiveLimiter;
+
+    // 调度器，用于重试退避和排队超时，不占用工作线程
+    private final ScheduledExecutorService scheduler;
+
+    // 等待并发槽位的请求队列，每个优先级一条通道，通道内按玩家公平调度
+    private final Map<RequestPriority, FairRequestQueue<PendingRequest<?>>> lanes = new EnumMap<>(RequestPriority.class);
+    private final Object queueLock = new Object();
+
+    // 按玩家统计
+    private final Map<String, ClientState> clientStates = new ConcurrentHashMap<>();
     
     // 统计信息
     private final AtomicInteger activeRequests = new AtomicInteger(0);
     private final AtomicInteger queuedRequests = new AtomicInteger(0);
+    private final AtomicInteger activeBackgroundRequests = new AtomicInteger(0);
     private final AtomicLong totalRequests = new AtomicLong(0);
     private final AtomicLong completedRequests = new AtomicLong(0);
     private final AtomicLong failedRequests = new AtomicLong(0);
 
+    // 执行器中正在运行的任务数（虚拟线程模式下没有线程池统计可用）
+    private final AtomicInteger runningTasks = new AtomicInteger(0);
+
     // Token统计信息
     private final AtomicLong totalPromptTokens = new AtomicLong(0);
     private final AtomicLong totalCompletionTokens = new AtomicLong(0);
@@ -44,9 +73,49 @@ public class ConcurrencyManager {
         this.corePoolSize = config.corePoolSize;
         this.maximumPoolSize = config.maximumPoolSize;
         this.keepAliveTimeMs = config.keepAliveTimeMs;
+        this.maxInFlightPerClient = config.maxInFlightPerPlayer;
+        this.maxQueuedPerClient = config.maxQueuedPerPlayer;
+        this.maxBackgroundRequests = Math.max(1, Math.min(config.maxBackgroundRequests, maxConcurrentRequests));
+        for (RequestPriority priority : RequestPriority.values()) {
+            lanes.put(priority, new FairRequestQueue<>());
+        }
         
-        // 创建自定义线程池
-        this.executorService = new ThreadPoolExecutor(
+        this.executorMode = config.executorMode;
+        this.executorService = createExecutor();
+        
+        this.adaptiveLimiter = config.enableAdaptiveConcurrency
+            ? new AdaptiveConcurrencyLimiter(config.minConcurrentRequests, maxConcurrentRequests)
+            : null;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LLM-Scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        
+        LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.INFO, "system",
+            "ConcurrencyManager initialized with config: " +
+            "executorMode=" + executorMode +
+            ", maxConcurrent=" + maxConcurrentRequests +
+            ", adaptiveConcurrency=" + (adaptiveLimiter != null) +
+            ", queueCapacity=" + queueCapacity +
+            ", maxInFlightPerPlayer=" + maxInFlightPerClient +
+            ", maxQueuedPerPlayer=" + maxQueuedPerClient +
+            ", maxBackgroundRequests=" + maxBackgroundRequests +
+            ", corePoolSize=" + corePoolSize +
+            ", maxPoolSize=" + maximumPoolSize);
+    }
+    
+    /**
+     * 根据执行模式创建执行器
+     */
+    private ExecutorService createExecutor() {
+        if (executorMode == ExecutorMode.VIRTUAL) {
+            // 每个任务一个虚拟线程，阻塞调用只挂起虚拟线程，并发上限仍由信号量控制
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("LLM-VWorker-", 1).factory());
+        }
+
+        return new ThreadPoolExecutor(
             corePoolSize,
             maximumPoolSize,
             keepAliveTimeMs,
@@ -61,18 +130,9 @@ public class ConcurrencyManager {
                     return t;
                 }
             },
-            new ThreadPoolExecutor.CallerRunsPolicy() // 当队列满时，在调用者线程中执行
+            // 队列满时拒绝，而不是在提交者线程（可能是服务器主线程）中执行阻塞调用
+            new ThreadPoolExecutor.AbortPolicy()
         );
-        
-        // 创建信号量来控制并发请求数
-        this.requestSemaphore = new Semaphore(maxConcurrentRequests, true);
-        
-        LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.INFO, "system",
-            "ConcurrencyManager initialized with config: " +
-            "maxConcurrent=" + maxConcurrentRequests +
-            ", queueCapacity=" + queueCapacity +
-            ", corePoolSize=" + corePoolSize +
-            ", maxPoolSize=" + maximumPoolSize);
     }
     
     public static synchronized void initialize(ConcurrencyConfig config) {
@@ -96,70 +156,346 @@ public class ConcurrencyManager {
     
     /**
      * 提交一个LLM请求任务
+     * 任务体为阻塞调用，获得并发槽位后在工作线程池中执行
      */
     public <T> CompletableFuture<T> submitRequest(Supplier<T> task, String requestId) {
+        return submitRequest(task, requestId, null);
+    }
+
+    /**
+     * 提交一个LLM请求任务，按上下文中的玩家进行公平调度
+     */
+    public <T> CompletableFuture<T> submitRequest(Supplier<T> task, String requestId, LLMContext context) {
+        return submitAsyncRequest(() -> CompletableFuture.supplyAsync(task, getExecutor()), requestId, context);
+    }
+
+    /**
+     * 获取任务执行器
+     * 用于响应处理、函数调用等可能阻塞但不占用并发槽位的工作，虚拟线程模式下每个任务一个虚拟线程
+     */
+    public Executor getExecutor() {
+        return task -> {
+            runningTasks.incrementAndGet();
+            try {
+                executorService.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        runningTasks.decrementAndGet();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                runningTasks.decrementAndGet();
+                throw e;
+            }
+        };
+    }
+
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    /**
+     * 提交一个异步LLM请求任务
+     * 任务在获得并发槽位后启动，槽位在返回的Future完成时释放，等待期间不占用任何线程
+     */
+    public <T> CompletableFuture<T> submitAsyncRequest(Supplier<CompletableFuture<T>> task, String requestId) {
+        return submitAsyncRequest(task, requestId, null);
+    }
+
+    /**
+     * 提交一个异步LLM请求任务，按上下文中的优先级和玩家进行调度
+     * 高优先级通道先出队；同一通道内不同玩家轮流获得并发槽位，同一玩家的请求受在途数和排队数上限约束
+     */
+    public <T> CompletableFuture<T> submitAsyncRequest(Supplier<CompletableFuture<T>> task, String requestId,
+                                                      LLMContext context) {
         totalRequests.incrementAndGet();
-        
-        CompletableFuture<T> future = new CompletableFuture<>();
-        
-        // 检查是否可以获取信号量（非阻塞）
-        if (!requestSemaphore.tryAcquire()) {
-            // 如果无法立即获取信号量，说明已达到最大并发数
+
+        String clientKey = context != null && context.getPlayerUuid() != null
+            ? context.getPlayerUuid() : SYSTEM_CLIENT_KEY;
+        RequestPriority priority = context != null && context.getPriority() != null
+            ? context.getPriority() : RequestPriority.INTERACTIVE;
+        PendingRequest<T> pending = new PendingRequest<>(requestId, clientKey, priority, task);
+
+        synchronized (queueLock) {
+            ClientState client = clientStates.computeIfAbsent(clientKey, ClientState::new);
+            if (context != null && context.getPlayerName() != null) {
+                client.displayName = context.getPlayerName();
+            }
+            client.submitted.incrementAndGet();
+
+            String rejectReason = null;
+            if (queuedRequests.get() >= queueCapacity) {
+                rejectReason = "Request rejected: request queue is full";
+            } else if (priority == RequestPriority.BACKGROUND &&
+                       lanes.get(RequestPriority.BACKGROUND).size() >= queueCapacity / 2) {
+                // 后台任务最多占用一半队列，为玩家请求保留排队空间
+                rejectReason = "Request rejected: background queue is full";
+            } else if (!SYSTEM_CLIENT_KEY.equals(clientKey) &&
+                       queuedFor(clientKey) >= maxQueuedPerClient) {
+                rejectReason = "Request rejected: too many queued requests for " + client.displayName;
+            }
+            if (rejectReason != null) {
+                failedRequests.incrementAndGet();
+                client.rejected.incrementAndGet();
+                if (client.outstanding == 0) {
+                    clientStates.remove(clientKey);
+                }
+                pending.future.completeExceptionally(new RejectedExecutionException(rejectReason));
+                return pending.future;
+            }
+            lanes.get(priority).offer(clientKey, pending);
             queuedRequests.incrementAndGet();
+            client.outstanding++;
+        }
+
+        // 排队超时
+        pending.timeoutTask = scheduler.schedule(() -> expirePending(pending), requestTimeoutMs, TimeUnit.MILLISECONDS);
+
+        // 调用方取消时从队列中移除
+        pending.future.whenComplete((result, throwable) -> {
+            if (pending.future.isCancelled() && removePending(pending)) {
+                pending.timeoutTask.cancel(false);
+            }
+        });
+
+        dispatchPending();
+
+        if (!pending.started && !pending.future.isDone()) {
             LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
                 "Request queued due to concurrency limit: " + requestId);
         }
-        
+        return pending.future;
+    }
+
+    /**
+     * 获取调度器，用于延迟执行（如重试退避）
+     */
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 在有空闲槽位时启动排队中的请求
+     */
+    private void dispatchPending() {
+        while (true) {
+            PendingRequest<?> next;
+            synchronized (queueLock) {
+                if (queuedRequests.get() == 0 || permitsInUse >= getConcurrencyLimit()) {
+                    return;
+                }
+                next = pollNext();
+                if (next == null) {
+                    // 排队的玩家都已达到在途上限，或只剩受限的后台任务，等待其他请求完成
+                    return;
+                }
+                permitsInUse++;
+                queuedRequests.decrementAndGet();
+                clientStates.get(next.clientKey).inFlight.incrementAndGet();
+                if (next.priority == RequestPriority.BACKGROUND) {
+                    activeBackgroundRequests.incrementAndGet();
+                }
+                next.started = true;
+            }
+            startRequest(next);
+        }
+    }
+
+    /**
+     * 按优先级选出下一个请求
+     * 每次出队都从最高优先级开始检查，后台任务只在没有可启动的玩家请求且未超过后台上限时启动
+     */
+    private PendingRequest<?> pollNext() {
+        for (RequestPriority priority : RequestPriority.values()) {
+            if (priority == RequestPriority.BACKGROUND &&
+                activeBackgroundRequests.get() >= maxBackgroundRequests) {
+                continue;
+            }
+            PendingRequest<?> next = lanes.get(priority).poll(this::canStart);
+            if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 获取玩家在所有通道中的排队数
+     */
+    private int queuedFor(String clientKey) {
+        int count = 0;
+        for (FairRequestQueue<PendingRequest<?>> lane : lanes.values()) {
+            count += lane.size(clientKey);
+        }
+        return count;
+    }
+
+    /**
+     * 玩家是否可以再启动一个请求
+     * 系统任务不受单玩家在途上限约束
+     */
+    private boolean canStart(String clientKey) {
+        if (SYSTEM_CLIENT_KEY.equals(clientKey)) {
+            return true;
+        }
+        ClientState client = clientStates.get(clientKey);
+        return client == null || client.inFlight.get() < maxInFlightPerClient;
+    }
+
+    /**
+     * 启动请求，完成后释放槽位
+     */
+    private <T> void startRequest(PendingRequest<T> pending) {
+        if (pending.timeoutTask != null) {
+            pending.timeoutTask.cancel(false);
+        }
+        if (pending.future.isDone()) {
+            // 排队期间已被取消
+            releasePermit(pending);
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+        activeRequests.incrementAndGet();
+
+        LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+            "Starting LLM request: " + pending.requestId +
+            " (active: " + activeRequests.get() + "/" + getConcurrencyLimit() + ")");
+
+        CompletableFuture<T> inner;
         try {
-            executorService.submit(() -> {
-                long startTime = System.currentTimeMillis();
-                try {
-                    // 获取信号量（如果之前没有获取到）
-                    if (!requestSemaphore.tryAcquire(requestTimeoutMs, TimeUnit.MILLISECONDS)) {
-                        future.completeExceptionally(new TimeoutException("Request timeout waiting for concurrency slot"));
-                        failedRequests.incrementAndGet();
-                        return;
-                    }
-                    
-                    activeRequests.incrementAndGet();
-                    queuedRequests.decrementAndGet();
-                    
-                    LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
-                        "Starting LLM request: " + requestId +
-                        " (active: " + activeRequests.get() + "/" + maxConcurrentRequests + ")");
-                    
-                    // 执行实际任务
-                    T result = task.get();
-                    future.complete(result);
+            inner = pending.task.get();
+        } catch (Exception e) {
+            inner = CompletableFuture.failedFuture(e);
+        }
+        if (inner == null) {
+            inner = CompletableFuture.completedFuture(null);
+        }
+
+        // 取消外部Future时同时取消实际任务
+        CompletableFuture<T> task = inner;
+        pending.future.whenComplete((result, throwable) -> {
+            if (pending.future.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+
+        task.whenComplete((result, throwable) -> {
+            activeRequests.decrementAndGet();
+            try {
+                if (throwable == null) {
                     completedRequests.incrementAndGet();
-                    
                     long duration = System.currentTimeMillis() - startTime;
-                    LogManager.getInstance().performance("LLM request completed: " + requestId,
+                    LogManager.getInstance().performance("LLM request completed: " + pending.requestId,
                         java.util.Map.of(
                             "duration_ms", duration,
                             "active_requests", activeRequests.get(),
                             "queued_requests", queuedRequests.get()
                         ));
-                    
-                } catch (Exception e) {
-                    future.completeExceptionally(e);
+                    pending.future.complete(result);
+                } else {
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null
+                        ? throwable.getCause() : throwable;
                     failedRequests.incrementAndGet();
-                    LogManager.getInstance().error("LLM request failed: " + requestId, e);
-                } finally {
-                    activeRequests.decrementAndGet();
-                    requestSemaphore.release();
+                    if (!(cause instanceof CancellationException)) {
+                        LogManager.getInstance().error("LLM request failed: " + pending.requestId, cause);
+                    }
+                    pending.future.completeExceptionally(cause);
                 }
-            });
-        } catch (RejectedExecutionException e) {
-            // 线程池队列已满
-            future.completeExceptionally(new RuntimeException("Request rejected: thread pool queue is full", e));
+            } finally {
+                releasePermit(pending);
+            }
+        });
+    }
+
+    /**
+     * 释放槽位并调度下一个排队请求
+     */
+    private void releasePermit(PendingRequest<?> pending) {
+        if (pending.priority == RequestPriority.BACKGROUND) {
+            activeBackgroundRequests.decrementAndGet();
+        }
+        synchronized (queueLock) {
+            permitsInUse--;
+            clientStates.get(pending.clientKey).inFlight.decrementAndGet();
+            releaseClient(pending.clientKey);
+        }
+        dispatchPending();
+    }
+
+    /**
+     * 玩家的一个请求结束，没有排队和在途请求时移除玩家状态
+     * 调用方持有queueLock
+     */
+    private void releaseClient(String clientKey) {
+        ClientState client = clientStates.get(clientKey);
+        if (client != null && --client.outstanding == 0) {
+            clientStates.remove(clientKey);
+        }
+    }
+
+    /**
+     * 获取当前并发上限
+     */
+    public int getConcurrencyLimit() {
+        return adaptiveLimiter != null ? adaptiveLimiter.getLimit() : maxConcurrentRequests;
+    }
+
+    /**
+     * 记录一次服务商响应，用于调整自适应并发上限
+     *
+     * @param provider 服务商名称
+     * @param kind 请求类型，只有同一服务商的同类请求的延迟互相比较
+     * @param latency 延迟样本，单位由请求类型决定
+     * @param overloaded 服务商是否返回了限流或过载（429/503、超时）
+     * @param providerInFlight 发往该服务商的进行中请求数
+     */
+    public void recordProviderSample(String provider, String kind, double latency, boolean overloaded,
+                                     int providerInFlight) {
+        if (adaptiveLimiter == null) {
+            return;
+        }
+
+        int before = adaptiveLimiter.getLimit();
+        adaptiveLimiter.onSample(provider, kind, latency, overloaded, providerInFlight);
+        int after = adaptiveLimiter.getLimit();
+
+        if (after != before) {
+            LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.INFO, "system",
+                "Adaptive concurrency limit changed: " + before + " -> " + after + " (provider " + provider +
+                (overloaded ? " overloaded)" : ", " + kind + " latency " + Math.round(latency) + ", baseline " +
+                    Math.round(adaptiveLimiter.getBaselineLatency(provider, kind)) + ")"));
+            if (after > before) {
+                dispatchPending();
+            }
+        }
+    }
+
+    /**
+     * 排队超时处理
+     */
+    private void expirePending(PendingRequest<?> pending) {
+        if (removePending(pending)) {
             failedRequests.incrementAndGet();
-            requestSemaphore.release(); // 释放可能已获取的信号量
+            pending.future.completeExceptionally(new TimeoutException("Request timeout waiting for concurrency slot"));
         }
-        
-        return future;
     }
-    
+
+    /**
+     * 从等待队列中移除请求
+     */
+    private boolean removePending(PendingRequest<?> pending) {
+        synchronized (queueLock) {
+            if (lanes.get(pending.priority).remove(pending.clientKey, pending)) {
+                queuedRequests.decrementAndGet();
+                releaseClient(pending.clientKey);
+                return true;
+            }
+            return false;
+        }
+    }
+
     /**
      * 记录token使用情况
      */
@@ -179,20 +515,78 @@ public class ConcurrencyManager {
      * 获取当前统计信息
      */
     public ConcurrencyStats getStats() {
+        int poolSize;
+        int activeThreads;
+        int queueSize;
+        if (executorService instanceof ThreadPoolExecutor pool) {
+            poolSize = pool.getPoolSize();
+            activeThreads = pool.getActiveCount();
+            queueSize = pool.getQueue().size();
+        } else {
+            // 虚拟线程按需创建，线程数即正在运行的任务数
+            poolSize = runningTasks.get();
+            activeThreads = runningTasks.get();
+            queueSize = 0;
+        }
+
         return new ConcurrencyStats(
             activeRequests.get(),
             queuedRequests.get(),
             totalRequests.get(),
             completedRequests.get(),
             failedRequests.get(),
-            executorService.getPoolSize(),
-            executorService.getActiveCount(),
-            executorService.getQueue().size(),
+            poolSize,
+            activeThreads,
+            queueSize,
             totalPromptTokens.get(),
             totalCompletionTokens.get(),
-            totalTokens.get()
+            totalTokens.get(),
+            executorMode,
+            getClientStats(),
+            getQueuedByPriority(),
+            activeBackgroundRequests.get(),
+            getConcurrencyLimit(),
+            adaptiveLimiter != null
         );
     }
+
+    /**
+     * 获取各优先级通道的排队数
+     */
+    private Map<RequestPriority, Integer> getQueuedByPriority() {
+        Map<RequestPriority, Integer> queued = new EnumMap<>(RequestPriority.class);
+        synchronized (queueLock) {
+            for (Map.Entry<RequestPriority, FairRequestQueue<PendingRequest<?>>> entry : lanes.entrySet()) {
+                queued.put(entry.getKey(), entry.getValue().size());
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * 获取按玩家统计的队列信息，只包含当前有排队或在途请求的玩家
+     */
+    private Map<String, ClientQueueStats> getClientStats() {
+        Map<String, Integer> queuedByClient = new LinkedHashMap<>();
+        synchronized (queueLock) {
+            for (FairRequestQueue<PendingRequest<?>> lane : lanes.values()) {
+                lane.sizesByClient().forEach((key, size) -> queuedByClient.merge(key, size, Integer::sum));
+            }
+        }
+
+        Map<String, ClientQueueStats> stats = new LinkedHashMap<>();
+        for (ClientState client : clientStates.values()) {
+            stats.put(client.clientKey, new ClientQueueStats(
+                client.clientKey,
+                client.displayName,
+                queuedByClient.getOrDefault(client.clientKey, 0),
+                client.inFlight.get(),
+                client.submitted.get(),
+                client.rejected.get()
+            ));
+        }
+        return stats;
+    }
     
     /**
      * 检查是否健康
@@ -200,7 +594,7 @@ public class ConcurrencyManager {
     public boolean isHealthy() {
         return !executorService.isShutdown() && 
                activeRequests.get() <= maxConcurrentRequests &&
-               executorService.getQueue().size() < queueCapacity * 0.9; // 队列使用率不超过90%
+               queuedRequests.get() < queueCapacity * 0.9; // 队列使用率不超过90%
     }
     
     /**
@@ -209,6 +603,19 @@ public class ConcurrencyManager {
     public void shutdown() {
         LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.INFO, "system",
             "Shutting down ConcurrencyManager...");
+
+        // 拒绝仍在排队的请求
+        synchronized (queueLock) {
+            for (FairRequestQueue<PendingRequest<?>> lane : lanes.values()) {
+                for (PendingRequest<?> pending : lane.drain()) {
+                    queuedRequests.decrementAndGet();
+                    releaseClient(pending.clientKey);
+                    pending.future.completeExceptionally(new RejectedExecutionException("ConcurrencyManager is shutting down"));
+                }
+            }
+        }
+        scheduler.shutdownNow();
+
         executorService.shutdown();
         try {
             if (!executorService.awaitTermination(30, TimeUnit.SECONDS)) {
@@ -220,6 +627,57 @@ public class ConcurrencyManager {
         }
     }
     
+    /**
+     * 等待并发槽位的请求
+     */
+    private static class PendingRequest<T> {
+        final String requestId;
+        final String clientKey;
+        final RequestPriority priority;
+        final Supplier<CompletableFuture<T>> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        volatile ScheduledFuture<?> timeoutTask;
+        volatile boolean started = false;
+
+        PendingRequest(String requestId, String clientKey, RequestPriority priority,
+                       Supplier<CompletableFuture<T>> task) {
+            this.requestId = requestId;
+            this.clientKey = clientKey;
+            this.priority = priority;
+            this.task = task;
+        }
+    }
+
+    /**
+     * 单个玩家的调度状态，只在玩家有排队或在途请求时保留
+     */
+    private static class ClientState {
+        final String clientKey;
+        volatile String displayName;
+        /** 排队和在途的请求数，由queueLock保护 */
+        int outstanding;
+        final AtomicInteger inFlight = new AtomicInteger(0);
+        final AtomicLong submitted = new AtomicLong(0);
+        final AtomicLong rejected = new AtomicLong(0);
+
+        ClientState(String clientKey) {
+            this.clientKey = clientKey;
+            this.displayName = clientKey;
+        }
+    }
+
+    /**
+     * 执行模式
+     */
+    public enum ExecutorMode {
+        PLATFORM, // 固定大小的平台线程池
+        VIRTUAL;  // 每个任务一个虚拟线程
+
+        public static ExecutorMode fromString(String value) {
+            return "virtual".equalsIgnoreCase(value) ? VIRTUAL : PLATFORM;
+        }
+    }
+
     /**
      * 并发配置类
      */
@@ -230,6 +688,12 @@ public class ConcurrencyManager {
         public final int corePoolSize;
         public final int maximumPoolSize;
         public final long keepAliveTimeMs;
+        public final ExecutorMode executorMode;
+        public final int maxInFlightPerPlayer;
+        public final int maxQueuedPerPlayer;
+        public final int maxBackgroundRequests;
+        public final boolean enableAdaptiveConcurrency;
+        public final int minConcurrentRequests;
         
         public ConcurrencyConfig(int maxConcurrentRequests, int queueCapacity, long requestTimeoutMs,
                                int corePoolSize, int maximumPoolSize, long keepAliveTimeMs) {
@@ -239,6 +703,30 @@ public class ConcurrencyManager {
             this.corePoolSize = corePoolSize;
             this.maximumPoolSize = maximumPoolSize;
             this.keepAliveTimeMs = keepAliveTimeMs;
+            this.executorMode = ExecutorMode.PLATFORM;
+            this.maxInFlightPerPlayer = 3;
+            this.maxQueuedPerPlayer = 10;
+            this.maxBackgroundRequests = 2;
+            this.enableAdaptiveConcurrency = false;
+            this.minConcurrentRequests = 1;
+        }
+
+        /**
+         * 从配置文件中的并发设置创建
+         */
+        public ConcurrencyConfig(ConcurrencySettings settings) {
+            this.maxConcurrentRequests = settings.getMaxConcurrentRequests();
+            this.queueCapacity = settings.getQueueCapacity();
+            this.requestTimeoutMs = settings.getRequestTimeoutMs();
+            this.corePoolSize = settings.getCorePoolSize();
+            this.maximumPoolSize = settings.getMaximumPoolSize();
+            this.keepAliveTimeMs = settings.getKeepAliveTimeMs();
+            this.executorMode = ExecutorMode.fromString(settings.getExecutorMode());
+            this.maxInFlightPerPlayer = settings.getMaxInFlightPerPlayer();
+            this.maxQueuedPerPlayer = settings.getMaxQueuedPerPlayer();
+            this.maxBackgroundRequests = settings.getMaxBackgroundRequests();
+            this.enableAdaptiveConcurrency = settings.isEnableAdaptiveConcurrency();
+            this.minConcurrentRequests = settings.getMinConcurrentRequests();
         }
         
         public static ConcurrencyConfig createDefault() {
@@ -271,10 +759,44 @@ public class ConcurrencyManager {
         public final long totalCompletionTokens;
         public final long totalTokens;
 
+        public final ExecutorMode executorMode;
+
+        // 按玩家的队列统计
+        public final Map<String, ClientQueueStats> clientStats;
+
+        // 按优先级的队列统计
+        public final Map<RequestPriority, Integer> queuedByPriority;
+        public final int activeBackgroundRequests;
+
+        // 当前并发上限（启用自适应时会随服务商状态变化）
+        public final int concurrencyLimit;
+        public final boolean adaptiveConcurrency;
+
         public ConcurrencyStats(int activeRequests, int queuedRequests, long totalRequests,
                               long completedRequests, long failedRequests, int poolSize,
                               int activeThreads, int queueSize, long totalPromptTokens,
                               long totalCompletionTokens, long totalTokens) {
+            this(activeRequests, queuedRequests, totalRequests, completedRequests, failedRequests,
+                 poolSize, activeThreads, queueSize, totalPromptTokens, totalCompletionTokens,
+                 totalTokens, ExecutorMode.PLATFORM);
+        }
+
+        public ConcurrencyStats(int activeRequests, int queuedRequests, long totalRequests,
+                              long completedRequests, long failedRequests, int poolSize,
+                              int activeThreads, int queueSize, long totalPromptTokens,
+                              long totalCompletionTokens, long totalTokens, ExecutorMode executorMode) {
+            this(activeRequests, queuedRequests, totalRequests, completedRequests, failedRequests,
+                 poolSize, activeThreads, queueSize, totalPromptTokens, totalCompletionTokens,
+                 totalTokens, executorMode, Collections.emptyMap(), Collections.emptyMap(), 0, 0, false);
+        }
+
+        public ConcurrencyStats(int activeRequests, int queuedRequests, long totalRequests,
+                              long completedRequests, long failedRequests, int poolSize,
+                              int activeThreads, int queueSize, long totalPromptTokens,
+                              long totalCompletionTokens, long totalTokens, ExecutorMode executorMode,
+                              Map<String, ClientQueueStats> clientStats,
+                              Map<RequestPriority, Integer> queuedByPriority, int activeBackgroundRequests,
+                              int concurrencyLimit, boolean adaptiveConcurrency) {
             this.activeRequests = activeRequests;
             this.queuedRequests = queuedRequests;
             this.totalRequests = totalRequests;
@@ -286,6 +808,12 @@ public class ConcurrencyManager {
             this.totalPromptTokens = totalPromptTokens;
             this.totalCompletionTokens = totalCompletionTokens;
             this.totalTokens = totalTokens;
+            this.executorMode = executorMode;
+            this.clientStats = Collections.unmodifiableMap(clientStats);
+            this.queuedByPriority = Collections.unmodifiableMap(queuedByPriority);
+            this.activeBackgroundRequests = activeBackgroundRequests;
+            this.concurrencyLimit = concurrencyLimit;
+            this.adaptiveConcurrency = adaptiveConcurrency;
         }
         
         public double getSuccessRate() {
@@ -312,4 +840,26 @@ public class ConcurrencyManager {
             return totalPromptTokens > 0 ? (double) totalCompletionTokens / totalPromptTokens : 0.0;
         }
     }
+
+    /**
+     * 单个玩家的队列统计
+     */
+    public static class ClientQueueStats {
+        public final String clientKey;
+        public final String displayName;
+        public final int queuedRequests;
+        public final int inFlightRequests;
+        public final long submittedRequests;
+        public final long rejectedRequests;
+
+        public ClientQueueStats(String clientKey, String displayName, int queuedRequests,
+                                int inFlightRequests, long submittedRequests, long rejectedRequests) {
+            this.clientKey = clientKey;
+            this.displayName = displayName;
+            this.queuedRequests = queuedRequests;
+            this.inFlightRequests = inFlightRequests;
+            this.submittedRequests = submittedRequests;
+            this.rejectedRequests = rejectedRequests;
+        }
+    }
 }
@@ -0,0 +1,133 @@
+package com.riceawa.llm.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 公平请求队列 - 按客户端（玩家）分组的轮询队列
+ * 每个客户端拥有独立的子队列，出队时轮流服务各客户端，每次轮到时出队一个请求，单个客户端的大量请求不会饿死其他客户端。
+ * 非线程安全，由调用方加锁。
+ */
+public class FairRequestQueue<E> {
+    private final Map<String, ClientQueue<E>> queues = new HashMap<>();
+    private final Deque<ClientQueue<E>> activeRing = new ArrayDeque<>();
+    private int size = 0;
+
+    /**
+     * 入队，排队数上限由调用方检查
+     */
+    public void offer(String clientKey, E item) {
+        ClientQueue<E> queue = queues.get(clientKey);
+        if (queue == null) {
+            queue = new ClientQueue<>(clientKey);
+            queues.put(clientKey, queue);
+            activeRing.addLast(queue);
+        }
+
+        queue.items.addLast(item);
+        size++;
+    }
+
+    /**
+     * 按轮询顺序取出下一个请求
+     *
+     * @param eligible 客户端当前是否允许出队（例如未超过在途请求上限）
+     * @return 下一个请求，没有可出队的请求时返回null
+     */
+    public E poll(Predicate<String> eligible) {
+        // 每个客户端最多访问一次，不可出队的客户端留到下一轮
+        int attempts = activeRing.size();
+        for (int i = 0; i < attempts; i++) {
+            ClientQueue<E> queue = activeRing.pollFirst();
+            if (!eligible.test(queue.clientKey)) {
+                activeRing.addLast(queue);
+                continue;
+            }
+
+            E item = queue.items.pollFirst();
+            size--;
+
+            if (queue.items.isEmpty()) {
+                queues.remove(queue.clientKey);
+            } else {
+                activeRing.addLast(queue);
+            }
+            return item;
+        }
+        return null;
+    }
+
+    /**
+     * 移除指定请求（超时或取消时使用）
+     */
+    public boolean remove(String clientKey, E item) {
+        ClientQueue<E> queue = queues.get(clientKey);
+        if (queue == null || !queue.items.remove(item)) {
+            return false;
+        }
+
+        size--;
+        if (queue.items.isEmpty()) {
+            activeRing.remove(queue);
+            queues.remove(clientKey);
+        }
+        return true;
+    }
+
+    /**
+     * 清空队列并返回所有请求
+     */
+    public Deque<E> drain() {
+        Deque<E> drained = new ArrayDeque<>();
+        for (ClientQueue<E> queue : activeRing) {
+            drained.addAll(queue.items);
+        }
+        activeRing.clear();
+        queues.clear();
+        size = 0;
+        return drained;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 获取指定客户端的排队数
+     */
+    public int size(String clientKey) {
+        ClientQueue<E> queue = queues.get(clientKey);
+        return queue != null ? queue.items.size() : 0;
+    }
+
+    /**
+     * 获取各客户端的排队数
+     */
+    public Map<String, Integer> sizesByClient() {
+        Map<String, Integer> sizes = new LinkedHashMap<>();
+        for (ClientQueue<E> queue : activeRing) {
+            sizes.put(queue.clientKey, queue.items.size());
+        }
+        return sizes;
+    }
+
+    /**
+     * 单个客户端的子队列
+     */
+    private static class ClientQueue<E> {
+        final String clientKey;
+        final Deque<E> items = new ArrayDeque<>();
+
+        ClientQueue(String clientKey) {
+            this.clientKey = clientKey;
+        }
+    }
+}
@@ -11,12 +11,18 @@ public class LLMContext {
     private final String playerName;
     private final String playerUuid;
     private final String sessionId;
+    private final RequestPriority priority;
+    private final boolean coalescable;
+    private final String cacheScope;
     private final Map<String, Object> metadata;
 
     private LLMContext(Builder builder) {
         this.playerName = builder.playerName;
         this.playerUuid = builder.playerUuid;
         this.sessionId = builder.sessionId;
+        this.priority = builder.priority;
+        this.coalescable = builder.coalescable;
+        this.cacheScope = builder.cacheScope;
         this.metadata = new HashMap<>(builder.metadata);
     }
 
@@ -32,6 +38,24 @@ public class LLMContext {
         return sessionId;
     }
 
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * 是否允许与相同的进行中请求合并，temperature不为0时也共享同一个回复
+     */
+    public boolean isCoalescable() {
+        return coalescable;
+    }
+
+    /**
+     * 响应缓存作用域，不为null时回复可以被缓存，并只在同一作用域内共享
+     */
+    public String getCacheScope() {
+        return cacheScope;
+    }
+
     public Map<String, Object> getMetadata() {
         return new HashMap<>(metadata);
     }
@@ -44,6 +68,9 @@ public class LLMContext {
         private String playerName;
         private String playerUuid;
         private String sessionId;
+        private RequestPriority priority = RequestPriority.INTERACTIVE;
+        private boolean coalescable = false;
+        private String cacheScope;
         private Map<String, Object> metadata = new HashMap<>();
 
         public Builder playerName(String playerName) {
@@ -61,6 +88,21 @@ public class LLMContext {
             return this;
         }
 
+        public Builder priority(RequestPriority priority) {
+            this.priority = priority != null ? priority : RequestPriority.INTERACTIVE;
+            return this;
+        }
+
+        public Builder coalescable(boolean coalescable) {
+            this.coalescable = coalescable;
+            return this;
+        }
+
+        public Builder cacheScope(String cacheScope) {
+            this.cacheScope = cacheScope;
+            return this;
+        }
+
         public Builder metadata(String key, Object value) {
             this.metadata.put(key, value);
             return this;
@@ -117,6 +117,9 @@ public class LLMMessage {
     public static class MessageMetadata {
         @SerializedName("tokens")
         private Integer tokens;
+
+        @SerializedName("tokenizer")
+        private String tokenizer;
         
         @SerializedName("model")
         private String model;
@@ -134,6 +137,17 @@ public class LLMMessage {
             this.tokens = tokens;
         }
 
+        /**
+         * 计算tokens所用的分词器名称，换用其他分词器后记录的token数不再可用
+         */
+        public String getTokenizer() {
+            return tokenizer;
+        }
+
+        public void setTokenizer(String tokenizer) {
+            this.tokenizer = tokenizer;
+        }
+
         public String getModel() {
             return model;
         }
@@ -39,6 +39,21 @@ public interface LLMService {
      * @return 异步任务
      */
     CompletableFuture<Void> chatStream(List<LLMMessage> messages, LLMConfig config, StreamCallback callback);
+
+    /**
+     * 流式聊天请求（带上下文信息）
+     *
+     * @param messages 消息列表
+     * @param config 请求配置
+     * @param context 上下文信息
+     * @param callback 流式响应回调
+     * @return 异步任务
+     */
+    default CompletableFuture<Void> chatStream(List<LLMMessage> messages, LLMConfig config, LLMContext context,
+                                               StreamCallback callback) {
+        // 默认实现，忽略上下文信息
+        return chatStream(messages, config, callback);
+    }
     
     /**
      * 获取支持的模型列表
@@ -79,6 +94,17 @@ public interface LLMService {
          * @param chunk 文本块
          */
         void onChunk(String chunk);
+
+        /**
+         * 接收到工具调用片段，name和arguments均为增量
+         *
+         * @param index 工具调用索引
+         * @param toolCallId 工具调用ID（仅首个片段携带）
+         * @param functionName 函数名片段
+         * @param argumentsDelta 参数片段
+         */
+        default void onToolCallDelta(int index, String toolCallId, String functionName, String argumentsDelta) {
+        }
         
         /**
          * 流式响应完成
@@ -0,0 +1,21 @@
+package com.riceawa.llm.core;
+
+/**
+ * LLM请求优先级
+ * 出队时按声明顺序选择，高优先级的排队请求总是先于低优先级的请求获得并发槽位
+ */
+public enum RequestPriority {
+    INTERACTIVE("交互"),  // 玩家直接发起的对话
+    FOLLOW_UP("后续"),    // 函数调用结果的递归请求
+    BACKGROUND("后台");   // 上下文压缩、标题生成、健康检查等后台任务
+
+    private final String displayName;
+
+    RequestPriority(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
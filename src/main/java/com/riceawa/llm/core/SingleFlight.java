@@ -0,0 +1,133 @@
+package com.riceawa.llm.core;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）
+ * 相同键的请求在进行中时，后来的调用方不再发起新请求，而是等待同一个请求的结果。
+ * 每个调用方拿到独立的Future，取消只影响自己；所有调用方都取消后才取消底层请求。
+ */
+public class SingleFlight<K, V> {
+    private final Map<K, Flight<V>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong(0);
+
+    /**
+     * 执行请求，相同键的请求进行中时直接等待其结果
+     *
+     * @param request 没有进行中的请求时调用，发起底层请求
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> request) {
+        while (true) {
+            Flight<V> existing = inFlight.get(key);
+            if (existing != null) {
+                CompletableFuture<V> joined = existing.join();
+                if (joined != null) {
+                    coalesced.incrementAndGet();
+                    return joined;
+                }
+                inFlight.remove(key, existing); // 所有调用方都已取消，重新发起
+                continue;
+            }
+
+            Flight<V> flight = new Flight<>();
+            if (inFlight.putIfAbsent(key, flight) != null) {
+                continue;
+            }
+            CompletableFuture<V> caller = flight.join();
+            flight.shared.whenComplete((value, throwable) -> inFlight.remove(key, flight));
+
+            CompletableFuture<V> upstream;
+            try {
+                upstream = request.get();
+            } catch (Exception e) {
+                upstream = CompletableFuture.failedFuture(e);
+            }
+            flight.start(upstream);
+            return caller;
+        }
+    }
+
+    /**
+     * 因合并而没有发起新请求的次数
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * 当前进行中的不同请求数
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * 一个进行中的底层请求及其等待者
+     */
+    private static class Flight<V> {
+        final CompletableFuture<V> shared = new CompletableFuture<>();
+        private CompletableFuture<V> upstream;
+        private int waiters = 0;
+        private boolean abandoned = false;
+
+        /**
+         * 加入等待，底层请求已被放弃时返回null
+         */
+        synchronized CompletableFuture<V> join() {
+            if (abandoned) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<V> caller = new CompletableFuture<>();
+            shared.whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    caller.completeExceptionally(throwable);
+                } else {
+                    caller.complete(value);
+                }
+            });
+            caller.whenComplete((value, throwable) -> {
+                if (caller.isCancelled()) {
+                    release();
+                }
+            });
+            return caller;
+        }
+
+        void start(CompletableFuture<V> upstream) {
+            synchronized (this) {
+                this.upstream = upstream;
+                if (abandoned) {
+                    upstream.cancel(true); // 发起前所有调用方已经取消
+                }
+            }
+            upstream.whenComplete((value, throwable) -> {
+                if (throwable != null) {
+                    shared.completeExceptionally(throwable);
+                } else {
+                    shared.complete(value);
+                }
+            });
+        }
+
+        private void release() {
+            CompletableFuture<V> toCancel;
+            synchronized (this) {
+                waiters--;
+                if (waiters > 0 || shared.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                toCancel = upstream;
+            }
+            if (toCancel != null) {
+                toCancel.cancel(true);
+            }
+            shared.cancel(false);
+        }
+    }
+}
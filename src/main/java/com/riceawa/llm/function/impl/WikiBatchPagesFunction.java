@@ -6,6 +6,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.riceawa.llm.config.LLMChatConfig;
 import com.riceawa.llm.function.LLMFunction;
+import com.riceawa.llm.http.HttpClientRegistry;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.server.MinecraftServer;
 import okhttp3.MediaType;
@@ -24,10 +25,13 @@ import java.util.concurrent.TimeUnit;
  */
 public class WikiBatchPagesFunction implements LLMFunction {
     
-    private static final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(15, TimeUnit.SECONDS)
-            .readTimeout(60, TimeUnit.SECONDS)  // 批量请求需要更长时间
-            .build();
+    /**
+     * 从共享连接池派生的HTTP客户端
+     */
+    private static OkHttpClient httpClient() {
+        return HttpClientRegistry.getInstance().getClient(
+                TimeUnit.SECONDS.toMillis(15), TimeUnit.SECONDS.toMillis(60));  // 批量请求需要更长时间
+    }
     
     private static final Gson gson = new Gson();
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
@@ -175,7 +179,7 @@ public class WikiBatchPagesFunction implements LLMFunction {
                     .addHeader("Content-Type", "application/json")
                     .build();
             
-            try (Response response = httpClient.newCall(request).execute()) {
+            try (Response response = httpClient().newCall(request).execute()) {
                 if (!response.isSuccessful()) {
                     return FunctionResult.error("Wiki API请求失败: HTTP " + response.code());
                 }
@@ -5,6 +5,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.riceawa.llm.config.LLMChatConfig;
 import com.riceawa.llm.function.LLMFunction;
+import com.riceawa.llm.http.HttpClientRegistry;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.server.MinecraftServer;
 import okhttp3.OkHttpClient;
@@ -19,10 +20,13 @@ import java.util.concurrent.TimeUnit;
  */
 public class WikiPageFunction implements LLMFunction {
     
-    private static final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(10, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .build();
+    /**
+     * 从共享连接池派生的HTTP客户端
+     */
+    private static OkHttpClient httpClient() {
+        return HttpClientRegistry.getInstance().getClient(
+                TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(30));
+    }
     
     private static final Gson gson = new Gson();
     
@@ -127,7 +131,7 @@ public class WikiPageFunction implements LLMFunction {
                     .addHeader("User-Agent", "Luminous-LLMChat-Mod/1.0")
                     .build();
             
-            try (Response response = httpClient.newCall(request).execute()) {
+            try (Response response = httpClient().newCall(request).execute()) {
                 // 使用统一的HTTP响应处理
                 WikiErrorHandler.HttpResponseResult httpResult = WikiErrorHandler.handleHttpResponse(response, pageName);
                 if (!httpResult.isSuccess()) {
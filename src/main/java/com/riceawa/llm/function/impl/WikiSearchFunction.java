@@ -6,6 +6,7 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.riceawa.llm.config.LLMChatConfig;
 import com.riceawa.llm.function.LLMFunction;
+import com.riceawa.llm.http.HttpClientRegistry;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.server.MinecraftServer;
 import okhttp3.OkHttpClient;
@@ -20,10 +21,13 @@ import java.util.concurrent.TimeUnit;
  */
 public class WikiSearchFunction implements LLMFunction {
     
-    private static final OkHttpClient httpClient = new OkHttpClient.Builder()
-            .connectTimeout(10, TimeUnit.SECONDS)
-            .readTimeout(30, TimeUnit.SECONDS)
-            .build();
+    /**
+     * 从共享连接池派生的HTTP客户端
+     */
+    private static OkHttpClient httpClient() {
+        return HttpClientRegistry.getInstance().getClient(
+                TimeUnit.SECONDS.toMillis(10), TimeUnit.SECONDS.toMillis(30));
+    }
     
     private static final Gson gson = new Gson();
     
@@ -112,7 +116,7 @@ public class WikiSearchFunction implements LLMFunction {
                     .addHeader("User-Agent", "Luminous-LLMChat-Mod/1.0")
                     .build();
             
-            try (Response response = httpClient.newCall(request).execute()) {
+            try (Response response = httpClient().newCall(request).execute()) {
                 // 使用统一的HTTP响应处理
                 WikiErrorHandler.HttpResponseResult httpResult = WikiErrorHandler.handleHttpResponse(response, query);
                 if (!httpResult.isSuccess()) {
@@ -0,0 +1,310 @@
+package com.riceawa.llm.http;
+
+import com.riceawa.llm.config.ConcurrencySettings;
+import com.riceawa.llm.config.LLMChatConfig;
+import com.riceawa.llm.core.ConcurrencyManager;
+import com.riceawa.llm.logging.LogManager;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP客户端注册中心 - 所有对外HTTP请求共用的OkHttpClient
+ * 各服务通过newBuilder()派生出只在超时等参数上不同的客户端，共享同一个连接池、Dispatcher和线程，
+ * 避免每新建一个服务就重新建立TCP连接和TLS握手。
+ */
+public class HttpClientRegistry {
+    private static HttpClientRegistry instance;
+
+    private final Dispatcher dispatcher = new Dispatcher();
+    private final Map<String, OkHttpClient> derivedClients = new ConcurrentHashMap<>();
+
+    // 连接复用统计
+    private final AtomicLong totalCalls = new AtomicLong(0);
+    private final AtomicLong pooledConnections = new AtomicLong(0);
+    private final AtomicLong newConnections = new AtomicLong(0);
+    private final AtomicLong tlsHandshakes = new AtomicLong(0);
+    private final AtomicLong failedConnections = new AtomicLong(0);
+
+    private volatile OkHttpClient baseClient;
+    private ConnectionPool connectionPool;
+    private int maxIdleConnections;
+    private long keepAliveDurationMs;
+
+    // 连接预热
+    private static final long WARMUP_TIMEOUT_MS = 10_000;
+    private boolean prewarmEnabled;
+    private long warmupIntervalMs;
+    private List<HttpUrl> warmupTargets = List.of();
+    private ScheduledFuture<?> warmupTask;
+
+    private HttpClientRegistry() {
+    }
+
+    public static HttpClientRegistry getInstance() {
+        if (instance == null) {
+            synchronized (HttpClientRegistry.class) {
+                if (instance == null) {
+                    instance = new HttpClientRegistry();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 根据并发配置（重新）构建共享客户端
+     * Dispatcher始终是同一个实例，进行中的请求不受影响；连接池参数变化时才替换连接池
+     */
+    public synchronized void configure(ConcurrencySettings settings) {
+        dispatcher.setMaxRequests(Math.max(64, settings.getMaxConcurrentRequests()));
+        dispatcher.setMaxRequestsPerHost(settings.getMaxRequestsPerHost());
+
+        if (connectionPool == null || maxIdleConnections != settings.getMaxIdleConnections() ||
+            keepAliveDurationMs != settings.getKeepAliveDurationMs()) {
+            if (connectionPool != null) {
+                connectionPool.evictAll(); // 只关闭空闲连接，使用中的连接在请求结束后关闭
+            }
+            connectionPool = new ConnectionPool(
+                settings.getMaxIdleConnections(),
+                settings.getKeepAliveDurationMs(),
+                TimeUnit.MILLISECONDS
+            );
+            maxIdleConnections = settings.getMaxIdleConnections();
+            keepAliveDurationMs = settings.getKeepAliveDurationMs();
+        }
+
+        List<Protocol> protocols = settings.isEnableHttp2()
+            ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)
+            : List.of(Protocol.HTTP_1_1);
+
+        baseClient = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(connectionPool)
+                .protocols(protocols)
+                .connectTimeout(settings.getConnectTimeoutMs(), TimeUnit.MILLISECONDS)
+                .readTimeout(settings.getReadTimeoutMs(), TimeUnit.MILLISECONDS)
+                .writeTimeout(settings.getWriteTimeoutMs(), TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(settings.isEnableRetry())
+                .pingInterval(settings.getConnectionPingIntervalMs(), TimeUnit.MILLISECONDS)
+                .eventListenerFactory(call -> new PoolMetricsListener())
+                .build();
+        derivedClients.clear();
+        prewarmEnabled = settings.isEnableConnectionPrewarm();
+        warmupIntervalMs = settings.getConnectionWarmupIntervalMs();
+
+        LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+            "HTTP client pool configured: maxIdleConnections=" + maxIdleConnections +
+            ", maxRequestsPerHost=" + settings.getMaxRequestsPerHost() +
+            ", http2=" + settings.isEnableHttp2());
+    }
+
+    /**
+     * 获取使用并发配置中超时设置的共享客户端
+     */
+    public OkHttpClient getClient() {
+        OkHttpClient client = baseClient;
+        if (client == null) {
+            synchronized (this) {
+                if (baseClient == null) {
+                    configure(LLMChatConfig.getInstance().getConcurrencySettings());
+                }
+                client = baseClient;
+            }
+        }
+        return client;
+    }
+
+    /**
+     * 获取使用指定超时的派生客户端，与共享客户端使用同一个连接池和Dispatcher
+     */
+    public OkHttpClient getClient(long connectTimeoutMs, long readTimeoutMs) {
+        OkHttpClient base = getClient();
+        String key = connectTimeoutMs + "/" + readTimeoutMs;
+        return derivedClients.computeIfAbsent(key, k -> base.newBuilder()
+                .connectTimeout(connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(readTimeoutMs, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    /**
+     * 预先建立到各服务商的连接，并按配置的间隔保持连接池中有可用连接
+     * 首次对话不必再等待DNS解析、TCP连接和TLS握手；启用HTTP/2时后续并发请求在同一连接上多路复用
+     *
+     * @param baseUrls 服务商的API地址，同一主机只预热一次
+     */
+    public void prewarm(Collection<String> baseUrls) {
+        Map<String, HttpUrl> targets = new LinkedHashMap<>();
+        for (String baseUrl : baseUrls) {
+            HttpUrl url = baseUrl != null ? HttpUrl.parse(baseUrl) : null;
+            if (url != null) {
+                targets.putIfAbsent(url.scheme() + "://" + url.host() + ":" + url.port(), url);
+            }
+        }
+
+        synchronized (this) {
+            if (warmupTask != null) {
+                warmupTask.cancel(false);
+                warmupTask = null;
+            }
+            warmupTargets = new ArrayList<>(targets.values());
+            if (!prewarmEnabled || warmupTargets.isEmpty()) {
+                return;
+            }
+            if (warmupIntervalMs > 0) {
+                warmupTask = ConcurrencyManager.getInstance().getScheduler().scheduleWithFixedDelay(
+                    this::warmUpTargets, warmupIntervalMs, warmupIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        warmUpTargets();
+    }
+
+    /**
+     * 向每个目标主机发送一个HEAD请求，只为建立连接，响应状态码不重要
+     */
+    private void warmUpTargets() {
+        List<HttpUrl> targets;
+        synchronized (this) {
+            targets = warmupTargets;
+        }
+        OkHttpClient client = getClient(WARMUP_TIMEOUT_MS, WARMUP_TIMEOUT_MS);
+        for (HttpUrl url : targets) {
+            long startTime = System.currentTimeMillis();
+            Request request = new Request.Builder().url(url).head().build();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+                        "Connection warm-up to " + url.host() + " failed: " + e.getMessage());
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    response.close();
+                    LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+                        "Connection to " + url.host() + " warmed up via " + response.protocol() +
+                        " in " + (System.currentTimeMillis() - startTime) + "ms");
+                }
+            });
+        }
+    }
+
+    /**
+     * 获取连接池统计信息
+     */
+    public HttpClientStats getStats() {
+        ConnectionPool pool;
+        synchronized (this) {
+            pool = connectionPool;
+        }
+        return new HttpClientStats(
+            totalCalls.get(),
+            pooledConnections.get(),
+            newConnections.get(),
+            tlsHandshakes.get(),
+            failedConnections.get(),
+            pool != null ? pool.connectionCount() : 0,
+            pool != null ? pool.idleConnectionCount() : 0,
+            dispatcher.runningCallsCount(),
+            dispatcher.queuedCallsCount()
+        );
+    }
+
+    /**
+     * 每个请求一个实例，区分连接是从连接池复用的还是新建的
+     */
+    private class PoolMetricsListener extends EventListener {
+        private boolean connecting;
+
+        @Override
+        public void callStart(Call call) {
+            totalCalls.incrementAndGet();
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connecting = true;
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            tlsHandshakes.incrementAndGet();
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                  Protocol protocol, IOException ioe) {
+            connecting = false;
+            failedConnections.incrementAndGet();
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (connecting) {
+                newConnections.incrementAndGet();
+                connecting = false;
+            } else {
+                pooledConnections.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * HTTP连接池统计信息
+     */
+    public static class HttpClientStats {
+        public final long totalCalls;
+        public final long pooledConnections;  // 复用连接池中已有连接的次数
+        public final long newConnections;     // 新建连接的次数
+        public final long tlsHandshakes;
+        public final long failedConnections;
+        public final int connectionCount;
+        public final int idleConnectionCount;
+        public final int runningCalls;
+        public final int queuedCalls;
+
+        public HttpClientStats(long totalCalls, long pooledConnections, long newConnections,
+                               long tlsHandshakes, long failedConnections, int connectionCount,
+                               int idleConnectionCount, int runningCalls, int queuedCalls) {
+            this.totalCalls = totalCalls;
+            this.pooledConnections = pooledConnections;
+            this.newConnections = newConnections;
+            this.tlsHandshakes = tlsHandshakes;
+            this.failedConnections = failedConnections;
+            this.connectionCount = connectionCount;
+            this.idleConnectionCount = idleConnectionCount;
+            this.runningCalls = runningCalls;
+            this.queuedCalls = queuedCalls;
+        }
+
+        /**
+         * 连接复用率（0-1），没有请求时为0
+         */
+        public double getPoolHitRate() {
+            long acquired = pooledConnections + newConnections;
+            return acquired > 0 ? (double) pooledConnections / acquired : 0.0;
+        }
+    }
+}
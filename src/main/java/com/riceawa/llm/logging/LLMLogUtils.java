@@ -9,6 +9,7 @@ import com.riceawa.llm.core.LLMConfig;
 import com.riceawa.llm.core.LLMMessage;
 import com.riceawa.llm.core.LLMResponse;
 import com.riceawa.llm.history.LocalDateTimeAdapter;
+import com.riceawa.llm.tokenizer.TokenCounter;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -56,6 +57,27 @@ public class LLMLogUtils {
         return "resp_" + UUID.randomUUID().toString().substring(0, 8);
     }
     
+    /**
+     * LLM请求响应日志是否启用
+     */
+    public static boolean isLLMLogEnabled() {
+        return LogManager.getInstance().isEnabled(LogLevel.INFO, "llm_request");
+    }
+    
+    /**
+     * 原始响应JSON在日志中保留的最大字节数
+     *
+     * @return 0表示不保留（LLM日志未启用或未开启完整响应体记录）
+     */
+    public static int getRawResponseLogLimit() {
+        LogManager logManager = LogManager.getInstance();
+        LogConfig config = logManager.getConfig();
+        if (!config.isLogFullResponseBody() || !logManager.isEnabled(LogLevel.INFO, "llm_request")) {
+            return 0;
+        }
+        return Math.max(0, config.getMaxLogContentLength());
+    }
+    
     /**
      * 记录LLM请求日志
      */
@@ -152,24 +174,10 @@ public class LLMLogUtils {
     }
     
     /**
-     * 估算消息列表的token数量（简单估算）
+     * 统计消息列表的token数量
      */
     public static int estimateTokens(List<LLMMessage> messages) {
-        if (messages == null || messages.isEmpty()) {
-            return 0;
-        }
-        
-        int totalTokens = 0;
-        for (LLMMessage message : messages) {
-            if (message.getContent() != null) {
-                // 简单估算：平均每4个字符约等于1个token
-                totalTokens += message.getContent().length() / 4;
-            }
-            // 为角色和其他元数据添加固定开销
-            totalTokens += 10;
-        }
-        
-        return totalTokens;
+        return TokenCounter.getInstance().count(messages);
     }
     
     /**
@@ -133,6 +133,17 @@ public class LogManager {
         log(LogLevel.INFO, "llm_request", message, metadata);
     }
 
+    public LogConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * 判断指定级别和类别的日志是否会被记录，用于跳过开销较大的日志内容构建
+     */
+    public boolean isEnabled(LogLevel level, String category) {
+        return !isShutdown.get() && config.getLogLevel().shouldLog(level) && config.isCategoryEnabled(category);
+    }
+
     /**
      * 通用日志记录方法
      */
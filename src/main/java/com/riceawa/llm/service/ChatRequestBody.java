@@ -0,0 +1,188 @@
+package com.riceawa.llm.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
+import com.riceawa.llm.core.LLMConfig;
+import com.riceawa.llm.core.LLMMessage;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Chat Completions请求体
+ * 用JsonWriter把消息直接编码为UTF-8字节写入Okio缓冲区，不经过JsonObject树和中间字符串；
+ * 发送时共享缓冲区的分段而不复制，连接重试和请求日志都复用同一份序列化结果。
+ */
+public class ChatRequestBody extends RequestBody {
+    private static final MediaType JSON = MediaType.get("application/json");
+
+    private final Buffer buffer;
+
+    private ChatRequestBody(Buffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * 序列化请求体
+     *
+     * @param stream 是否为流式请求，流式请求会在最后一个事件中返回usage
+     * @param gson 用于序列化工具参数定义
+     */
+    public static ChatRequestBody create(List<LLMMessage> messages, LLMConfig config, boolean stream, Gson gson) {
+        Buffer buffer = new Buffer();
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(buffer.outputStream(), StandardCharsets.UTF_8))) {
+            writeRequest(writer, messages, config, stream, gson);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // 写入内存缓冲区不会失败
+        }
+        return new ChatRequestBody(buffer);
+    }
+
+    @Override
+    public MediaType contentType() {
+        return JSON;
+    }
+
+    @Override
+    public long contentLength() {
+        return buffer.size();
+    }
+
+    @Override
+    public synchronized void writeTo(BufferedSink sink) throws IOException {
+        // copy()与原缓冲区共享分段，不复制字节
+        sink.writeAll(buffer.copy());
+    }
+
+    /**
+     * 请求体的SHA-256摘要（十六进制），用于识别完全相同的请求
+     */
+    public synchronized String sha256() {
+        return buffer.sha256().hex();
+    }
+
+    /**
+     * 获取序列化后的JSON，仅在需要记录请求日志时调用
+     */
+    public synchronized String toJson() {
+        return buffer.snapshot().utf8();
+    }
+
+    private static void writeRequest(JsonWriter writer, List<LLMMessage> messages, LLMConfig config,
+                                     boolean stream, Gson gson) throws IOException {
+        writer.beginObject();
+
+        // 设置模型
+        writer.name("model").value(config.getModel() != null ? config.getModel() : "gpt-3.5-turbo");
+
+        // 设置消息
+        writer.name("messages").beginArray();
+        for (LLMMessage message : messages) {
+            writeMessage(writer, message);
+        }
+        writer.endArray();
+
+        // 设置其他参数
+        if (config.getTemperature() != null) {
+            writer.name("temperature").value(config.getTemperature());
+        }
+        if (config.getMaxTokens() != null) {
+            writer.name("max_tokens").value(config.getMaxTokens());
+        }
+        if (config.getTopP() != null) {
+            writer.name("top_p").value(config.getTopP());
+        }
+        if (config.getFrequencyPenalty() != null) {
+            writer.name("frequency_penalty").value(config.getFrequencyPenalty());
+        }
+        if (config.getPresencePenalty() != null) {
+            writer.name("presence_penalty").value(config.getPresencePenalty());
+        }
+        if (config.getStop() != null && !config.getStop().isEmpty()) {
+            writer.name("stop").beginArray();
+            for (String stop : config.getStop()) {
+                writer.value(stop);
+            }
+            writer.endArray();
+        }
+
+        // 添加工具定义（新的API格式）
+        if (config.getTools() != null && !config.getTools().isEmpty()) {
+            writer.name("tools").beginArray();
+            for (LLMConfig.ToolDefinition tool : config.getTools()) {
+                writer.beginObject();
+                writer.name("type").value(tool.getType());
+                writer.name("function").beginObject();
+                writer.name("name").value(tool.getFunction().getName());
+                writer.name("description").value(tool.getFunction().getDescription());
+                writer.name("parameters");
+                gson.getAdapter(JsonElement.class).write(writer, gson.toJsonTree(tool.getFunction().getParameters()));
+                writer.endObject();
+                writer.endObject();
+            }
+            writer.endArray();
+
+            if (config.getToolChoice() != null) {
+                writer.name("tool_choice").value(config.getToolChoice());
+            }
+        }
+
+        if (stream) {
+            writer.name("stream").value(true);
+            writer.name("stream_options").beginObject();
+            writer.name("include_usage").value(true);
+            writer.endObject();
+        }
+
+        writer.endObject();
+    }
+
+    private static void writeMessage(JsonWriter writer, LLMMessage message) throws IOException {
+        writer.beginObject();
+        writer.name("role").value(message.getRole().getValue());
+
+        // 处理不同类型的消息
+        if (message.getRole() == LLMMessage.MessageRole.TOOL) {
+            // Tool消息格式
+            writer.name("content").value(message.getContent());
+            if (message.getName() != null) {
+                writer.name("name").value(message.getName());
+            }
+            if (message.getToolCallId() != null) {
+                writer.name("tool_call_id").value(message.getToolCallId());
+            }
+        } else if (message.getRole() == LLMMessage.MessageRole.ASSISTANT &&
+                   message.getMetadata() != null &&
+                   message.getMetadata().getFunctionCall() != null) {
+            // Assistant消息包含tool_calls
+            if (message.getContent() != null) {
+                writer.name("content").value(message.getContent());
+            }
+
+            LLMMessage.FunctionCall functionCall = message.getMetadata().getFunctionCall();
+            writer.name("tool_calls").beginArray();
+            writer.beginObject();
+            writer.name("id").value(functionCall.getToolCallId());
+            writer.name("type").value("function");
+            writer.name("function").beginObject();
+            writer.name("name").value(functionCall.getName());
+            writer.name("arguments").value(functionCall.getArguments());
+            writer.endObject();
+            writer.endObject();
+            writer.endArray();
+        } else {
+            // 普通消息
+            writer.name("content").value(message.getContent());
+        }
+
+        writer.endObject();
+    }
+}
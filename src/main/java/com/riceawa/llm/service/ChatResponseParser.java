@@ -0,0 +1,281 @@
+package com.riceawa.llm.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMResponse;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 非流式Chat Completions响应解析器
+ * 用JsonReader直接从响应体读取并构建LLMResponse，不把整个响应读成字符串或JsonObject树；
+ * 需要记录原始响应时，只在读取过程中复制前若干字节。
+ */
+public class ChatResponseParser {
+    private static final String TRUNCATED_SUFFIX = "...(truncated)";
+
+    private final long rawCaptureLimit;
+    private Buffer captured;
+    private boolean truncated;
+
+    /**
+     * @param rawCaptureLimit 保留原始响应的最大字节数，0表示不保留
+     */
+    public ChatResponseParser(long rawCaptureLimit) {
+        this.rawCaptureLimit = Math.max(0, rawCaptureLimit);
+    }
+
+    /**
+     * 解析响应体，解析失败时返回带错误信息的响应
+     */
+    public LLMResponse parse(ResponseBody body) {
+        try (Reader reader = openReader(body)) {
+            return parse(reader);
+        } catch (Exception e) {
+            LLMResponse errorResponse = new LLMResponse();
+            errorResponse.setError("Failed to parse response: " + e.getMessage());
+            return errorResponse;
+        }
+    }
+
+    /**
+     * 获取读取过程中保留的原始响应，超出上限的部分被截断
+     *
+     * @return 原始JSON，未启用保留时为null
+     */
+    public String getRawJson() {
+        if (captured == null) {
+            return null;
+        }
+        String raw = captured.snapshot().utf8();
+        return truncated ? raw + TRUNCATED_SUFFIX : raw;
+    }
+
+    private Reader openReader(ResponseBody body) {
+        if (rawCaptureLimit == 0) {
+            return body.charStream();
+        }
+
+        MediaType contentType = body.contentType();
+        Charset charset = contentType != null ? contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+        captured = new Buffer();
+        Source capturing = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    long keep = Math.min(read, rawCaptureLimit - captured.size());
+                    if (keep > 0) {
+                        sink.copyTo(captured, sink.size() - read, keep);
+                    }
+                    if (keep < read) {
+                        truncated = true;
+                    }
+                }
+                return read;
+            }
+        };
+        return new InputStreamReader(Okio.buffer(capturing).inputStream(), charset);
+    }
+
+    /**
+     * 从字符流解析响应，字段顺序任意，未知字段跳过
+     */
+    static LLMResponse parse(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+
+        LLMResponse response = new LLMResponse();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (skipNull(json)) {
+                continue;
+            }
+            switch (name) {
+                case "id" -> response.setId(json.nextString());
+                case "model" -> response.setModel(json.nextString());
+                case "choices" -> response.setChoices(readChoices(json));
+                case "usage" -> response.setUsage(readUsage(json));
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return response;
+    }
+
+    private static List<LLMResponse.Choice> readChoices(JsonReader json) throws IOException {
+        List<LLMResponse.Choice> choices = new ArrayList<>();
+        json.beginArray();
+        while (json.hasNext()) {
+            LLMResponse.Choice choice = new LLMResponse.Choice();
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (skipNull(json)) {
+                    continue;
+                }
+                switch (name) {
+                    case "index" -> choice.setIndex(json.nextInt());
+                    case "finish_reason" -> choice.setFinishReason(json.nextString());
+                    case "message" -> choice.setMessage(readMessage(json));
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+            choices.add(choice);
+        }
+        json.endArray();
+        return choices;
+    }
+
+    private static LLMMessage readMessage(JsonReader json) throws IOException {
+        String role = null;
+        String content = null;
+        LLMMessage.FunctionCall functionCall = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (skipNull(json)) {
+                continue;
+            }
+            switch (name) {
+                case "role" -> role = json.nextString();
+                case "content" -> content = json.nextString();
+                case "tool_calls" -> functionCall = readFirstToolCall(json);
+                case "function_call" -> {
+                    // 保持对旧格式的兼容性，tool_calls优先
+                    LLMMessage.FunctionCall legacy = readFunction(json);
+                    if (functionCall == null) {
+                        functionCall = legacy;
+                    }
+                }
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+
+        LLMMessage.MessageRole messageRole = LLMMessage.MessageRole.ASSISTANT;
+        if ("user".equals(role)) {
+            messageRole = LLMMessage.MessageRole.USER;
+        } else if ("system".equals(role)) {
+            messageRole = LLMMessage.MessageRole.SYSTEM;
+        }
+
+        LLMMessage message = new LLMMessage(messageRole, content);
+        if (functionCall != null) {
+            LLMMessage.MessageMetadata metadata = new LLMMessage.MessageMetadata();
+            metadata.setFunctionCall(functionCall);
+            message.setMetadata(metadata);
+        }
+        return message;
+    }
+
+    /**
+     * 目前只处理第一个function类型的tool call，后续可以扩展支持多个
+     */
+    private static LLMMessage.FunctionCall readFirstToolCall(JsonReader json) throws IOException {
+        LLMMessage.FunctionCall result = null;
+        boolean first = true;
+
+        json.beginArray();
+        while (json.hasNext()) {
+            if (!first) {
+                json.skipValue();
+                continue;
+            }
+            first = false;
+
+            String id = null;
+            String type = null;
+            LLMMessage.FunctionCall function = null;
+            json.beginObject();
+            while (json.hasNext()) {
+                String name = json.nextName();
+                if (skipNull(json)) {
+                    continue;
+                }
+                switch (name) {
+                    case "id" -> id = json.nextString();
+                    case "type" -> type = json.nextString();
+                    case "function" -> function = readFunction(json);
+                    default -> json.skipValue();
+                }
+            }
+            json.endObject();
+
+            if ("function".equals(type) && function != null) {
+                function.setToolCallId(id);
+                result = function;
+            }
+        }
+        json.endArray();
+        return result;
+    }
+
+    private static LLMMessage.FunctionCall readFunction(JsonReader json) throws IOException {
+        String functionName = null;
+        String functionArgs = null;
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (skipNull(json)) {
+                continue;
+            }
+            switch (name) {
+                case "name" -> functionName = json.nextString();
+                case "arguments" -> functionArgs = json.nextString();
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return new LLMMessage.FunctionCall(functionName, functionArgs);
+    }
+
+    private static LLMResponse.Usage readUsage(JsonReader json) throws IOException {
+        LLMResponse.Usage usage = new LLMResponse.Usage();
+        json.beginObject();
+        while (json.hasNext()) {
+            String name = json.nextName();
+            if (skipNull(json)) {
+                continue;
+            }
+            switch (name) {
+                case "prompt_tokens" -> usage.setPromptTokens(json.nextInt());
+                case "completion_tokens" -> usage.setCompletionTokens(json.nextInt());
+                case "total_tokens" -> usage.setTotalTokens(json.nextInt());
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return usage;
+    }
+
+    /**
+     * 跳过null值
+     *
+     * @return 当前值为null时返回true
+     */
+    private static boolean skipNull(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,197 @@
+package com.riceawa.llm.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 服务商熔断器
+ * 连续失败次数或最近请求的超时比例超过阈值时打开，打开期间请求直接失败而不必等待超时和重试；
+ * 经过熔断时间后进入半开状态，只放行一个探测请求，成功则关闭，失败则重新打开。所有方法线程安全。
+ */
+public class CircuitBreaker {
+    /** 计算超时比例的最近请求数 */
+    private static final int TIMEOUT_WINDOW = 20;
+    /** 按超时比例熔断所需的最少请求数 */
+    static final int MIN_CALLS = 10;
+
+    public enum State {
+        CLOSED("关闭"),
+        OPEN("打开"),
+        HALF_OPEN("半开");
+
+        private final String displayName;
+
+        State(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final LongSupplier clock;
+    private int failureThreshold;
+    private double timeoutRateThreshold;
+    private long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt;
+    private boolean probeInFlight = false;
+    private long probeStartedAt;
+
+    private final boolean[] timeouts = new boolean[TIMEOUT_WINDOW];
+    private int callCount = 0;
+    private int nextCall = 0;
+    private int timeoutCount = 0;
+
+    /**
+     * @param failureThreshold 触发熔断的连续失败次数
+     * @param timeoutRateThreshold 触发熔断的超时比例（0-1）
+     * @param openDurationMs 熔断打开后等待多久进入半开状态
+     */
+    public CircuitBreaker(int failureThreshold, double timeoutRateThreshold, long openDurationMs) {
+        this(failureThreshold, timeoutRateThreshold, openDurationMs, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(int failureThreshold, double timeoutRateThreshold, long openDurationMs, LongSupplier clock) {
+        this.clock = clock;
+        configure(failureThreshold, timeoutRateThreshold, openDurationMs);
+    }
+
+    /**
+     * 更新阈值，不改变当前状态
+     */
+    public synchronized void configure(int failureThreshold, double timeoutRateThreshold, long openDurationMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.timeoutRateThreshold = timeoutRateThreshold;
+        this.openDurationMs = Math.max(0, openDurationMs);
+    }
+
+    /**
+     * 申请发送一次请求，半开状态下只有一个探测请求能获得许可
+     *
+     * @return false表示熔断中，应直接失败
+     */
+    public synchronized boolean tryAcquirePermission() {
+        long now = clock.getAsLong();
+        switch (updateState(now)) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                // 探测请求被取消时不会记录结果，超过熔断时间后允许再发一个
+                if (!probeInFlight || now - probeStartedAt >= openDurationMs) {
+                    probeInFlight = true;
+                    probeStartedAt = now;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 判断当前是否可以发送请求，不占用半开状态的探测许可，供路由选择服务商使用
+     */
+    public synchronized boolean isCallPermitted() {
+        long now = clock.getAsLong();
+        State current = updateState(now);
+        return current == State.CLOSED ||
+               (current == State.HALF_OPEN && (!probeInFlight || now - probeStartedAt >= openDurationMs));
+    }
+
+    /**
+     * 记录一次成功的请求
+     */
+    public synchronized void onSuccess() {
+        State current = updateState(clock.getAsLong());
+        if (current == State.OPEN) {
+            return; // 熔断前发出的请求，不影响状态
+        }
+        if (current == State.HALF_OPEN) {
+            reset();
+            return;
+        }
+        consecutiveFailures = 0;
+        recordCall(false);
+    }
+
+    /**
+     * 记录一次服务商侧的失败
+     *
+     * @param timeout 是否为超时
+     * @return 本次失败使熔断器打开时返回true
+     */
+    public synchronized boolean onFailure(boolean timeout) {
+        long now = clock.getAsLong();
+        State current = updateState(now);
+        if (current == State.OPEN) {
+            return false;
+        }
+        if (current == State.HALF_OPEN) {
+            open(now); // 探测失败，重新打开
+            return true;
+        }
+
+        consecutiveFailures++;
+        recordCall(timeout);
+        if (consecutiveFailures >= failureThreshold ||
+            (callCount >= MIN_CALLS && (double) timeoutCount / callCount >= timeoutRateThreshold)) {
+            open(now);
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized State getState() {
+        return updateState(clock.getAsLong());
+    }
+
+    /**
+     * 距离进入半开状态的剩余时间，未打开时为0
+     */
+    public synchronized long getRemainingOpenMs() {
+        long now = clock.getAsLong();
+        return updateState(now) == State.OPEN ? Math.max(0, openedAt + openDurationMs - now) : 0;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    private State updateState(long now) {
+        if (state == State.OPEN && now - openedAt >= openDurationMs) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        return state;
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+        probeInFlight = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        callCount = 0;
+        nextCall = 0;
+        timeoutCount = 0;
+    }
+
+    private void recordCall(boolean timeout) {
+        if (callCount == TIMEOUT_WINDOW && timeouts[nextCall]) {
+            timeoutCount--;
+        }
+        timeouts[nextCall] = timeout;
+        if (timeout) {
+            timeoutCount++;
+        }
+        nextCall = (nextCall + 1) % TIMEOUT_WINDOW;
+        callCount = Math.min(TIMEOUT_WINDOW, callCount + 1);
+    }
+}
@@ -0,0 +1,49 @@
+package com.riceawa.llm.service;
+
+import java.io.IOException;
+
+/**
+ * 服务商返回非2xx状态码时的异常
+ * 携带状态码、响应体和服务商建议的重试等待时间，供重试策略判断
+ */
+public class LLMHttpException extends IOException {
+    private final int statusCode;
+    private final String responseBody;
+    private final long retryAfterMs;
+    private final long rateLimitResetMs;
+
+    /**
+     * @param retryAfterMs 服务商通过Retry-After响应头要求的等待时间，没有时为-1
+     */
+    public LLMHttpException(int statusCode, String responseBody, long retryAfterMs) {
+        this(statusCode, responseBody, retryAfterMs, -1);
+    }
+
+    /**
+     * @param retryAfterMs 服务商通过Retry-After响应头要求的等待时间，没有时为-1
+     * @param rateLimitResetMs 429响应中耗尽的限流额度的重置时间，没有时为-1
+     */
+    public LLMHttpException(int statusCode, String responseBody, long retryAfterMs, long rateLimitResetMs) {
+        super("HTTP " + statusCode + ": " + responseBody);
+        this.statusCode = statusCode;
+        this.responseBody = responseBody;
+        this.retryAfterMs = retryAfterMs;
+        this.rateLimitResetMs = rateLimitResetMs;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getResponseBody() {
+        return responseBody;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    public long getRateLimitResetMs() {
+        return rateLimitResetMs;
+    }
+}
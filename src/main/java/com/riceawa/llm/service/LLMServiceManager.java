@@ -5,7 +5,9 @@ import com.riceawa.llm.core.ConcurrencyManager;
 import com.riceawa.llm.config.LLMChatConfig;
 import com.riceawa.llm.config.Provider;
 import com.riceawa.llm.config.ConcurrencySettings;
+import com.riceawa.llm.http.HttpClientRegistry;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,10 +19,12 @@ import java.util.Set;
 public class LLMServiceManager {
     private static LLMServiceManager instance;
     private final Map<String, LLMService> services;
+    private final RoutingLLMService routingService;
     private String defaultServiceName;
 
     private LLMServiceManager() {
         this.services = new HashMap<>();
+        this.routingService = new RoutingLLMService(this);
         initializeServices();
     }
 
@@ -46,24 +50,26 @@ public class LLMServiceManager {
 
         // 初始化并发管理器
         ConcurrencySettings concurrencySettings = config.getConcurrencySettings();
-        ConcurrencyManager.ConcurrencyConfig concurrencyConfig = new ConcurrencyManager.ConcurrencyConfig(
-            concurrencySettings.getMaxConcurrentRequests(),
-            concurrencySettings.getQueueCapacity(),
-            concurrencySettings.getRequestTimeoutMs(),
-            concurrencySettings.getCorePoolSize(),
-            concurrencySettings.getMaximumPoolSize(),
-            concurrencySettings.getKeepAliveTimeMs()
-        );
+        ConcurrencyManager.ConcurrencyConfig concurrencyConfig = new ConcurrencyManager.ConcurrencyConfig(concurrencySettings);
         ConcurrencyManager.initialize(concurrencyConfig);
+        HttpClientRegistry.getInstance().configure(concurrencySettings);
+        ProviderRateLimiter.getInstance().configure(concurrencySettings, config.getProviders());
+        ProviderMonitor.getInstance().configure(concurrencySettings);
+        routingService.configure(concurrencySettings);
 
         // 从providers配置中加载服务
         List<Provider> providers = config.getProviders();
+        List<String> baseUrls = new ArrayList<>();
         for (Provider provider : providers) {
             if (provider.isValid()) {
                 createServiceFromProvider(provider);
+                baseUrls.add(provider.getApiBaseUrl());
             }
         }
 
+        // 预先建立到各服务商的连接
+        HttpClientRegistry.getInstance().prewarm(baseUrls);
+
         // 设置默认服务
         String currentProvider = config.getCurrentProvider();
         if (!currentProvider.isEmpty() && services.containsKey(currentProvider)) {
@@ -84,7 +90,7 @@ public class LLMServiceManager {
 
         // 根据provider名称或baseUrl判断服务类型
         if (isOpenAICompatible(name, baseUrl)) {
-            OpenAIService service = new OpenAIService(apiKey, baseUrl);
+            OpenAIService service = new OpenAIService(apiKey, baseUrl, name);
             services.put(name, service);
         }
         // 可以在这里添加其他服务类型的支持
@@ -110,9 +116,17 @@ public class LLMServiceManager {
 
     /**
      * 获取默认服务
+     * 返回的路由服务把请求转发给当前默认服务商，并按配置做对冲等路由
      */
     public LLMService getDefaultService() {
-        return getService(defaultServiceName);
+        return getService(defaultServiceName) != null ? routingService : null;
+    }
+
+    /**
+     * 获取路由服务，用于查看路由统计
+     */
+    public RoutingLLMService getRoutingService() {
+        return routingService;
     }
 
     /**
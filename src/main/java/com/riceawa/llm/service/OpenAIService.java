@@ -1,16 +1,15 @@
 package com.riceawa.llm.service;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import com.riceawa.llm.core.*;
-import com.riceawa.llm.config.ConcurrencySettings;
 import com.riceawa.llm.config.LLMChatConfig;
+import com.riceawa.llm.http.HttpClientRegistry;
 import com.riceawa.llm.logging.LLMLogUtils;
 import com.riceawa.llm.logging.LLMRequestLogEntry;
 import com.riceawa.llm.logging.LLMResponseLogEntry;
+import com.riceawa.llm.logging.LogManager;
 import okhttp3.*;
+import okio.BufferedSource;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
@@ -30,38 +29,28 @@ public class OpenAIService implements LLMService {
     private final Gson gson;
     private final String apiKey;
     private final String baseUrl;
+    private final String providerName;
+    private final RetryPolicy.RetryBudget retryBudget;
 
     public OpenAIService(String apiKey) {
         this(apiKey, "https://api.openai.com/v1");
     }
 
     public OpenAIService(String apiKey, String baseUrl) {
-        this.apiKey = apiKey;
-        this.baseUrl = baseUrl;
-        this.httpClient = createOptimizedHttpClient();
-        this.gson = new Gson();
+        this(apiKey, baseUrl, null);
     }
 
     /**
-     * 创建优化的HTTP客户端
+     * @param providerName 服务商名称，用于按服务商限流，为null时不限流
      */
-    private OkHttpClient createOptimizedHttpClient() {
-        ConcurrencySettings settings = LLMChatConfig.getInstance().getConcurrencySettings();
-
-        // 创建连接池
-        ConnectionPool connectionPool = new ConnectionPool(
-            settings.getMaxIdleConnections(),
-            settings.getKeepAliveDurationMs(),
-            TimeUnit.MILLISECONDS
-        );
-
-        return new OkHttpClient.Builder()
-                .connectTimeout(settings.getConnectTimeoutMs(), TimeUnit.MILLISECONDS)
-                .readTimeout(settings.getReadTimeoutMs(), TimeUnit.MILLISECONDS)
-                .writeTimeout(settings.getWriteTimeoutMs(), TimeUnit.MILLISECONDS)
-                .connectionPool(connectionPool)
-                .retryOnConnectionFailure(settings.isEnableRetry())
-                .build();
+    public OpenAIService(String apiKey, String baseUrl, String providerName) {
+        this.apiKey = apiKey;
+        this.baseUrl = baseUrl;
+        this.providerName = providerName;
+        this.retryBudget = new RetryPolicy.RetryBudget(
+            LLMChatConfig.getInstance().getConcurrencySettings().getRetryBudgetRatio());
+        this.httpClient = HttpClientRegistry.getInstance().getClient(); // 共享连接池，避免每个服务单独建立连接
+        this.gson = new Gson();
     }
 
     @Override
@@ -73,143 +62,325 @@ public class OpenAIService implements LLMService {
     public CompletableFuture<LLMResponse> chat(List<LLMMessage> messages, LLMConfig config, LLMContext context) {
         String requestId = UUID.randomUUID().toString().substring(0, 8);
 
-        return ConcurrencyManager.getInstance().submitRequest(() -> {
-            ConcurrencySettings settings = LLMChatConfig.getInstance().getConcurrencySettings();
-
-            try {
-                return executeRequestWithRetry(messages, config, settings, requestId, context);
-            } catch (Exception e) {
-                LLMResponse errorResponse = new LLMResponse();
-                errorResponse.setError("Request failed: " + e.getMessage());
-                return errorResponse;
+        LLMChatConfig chatConfig = LLMChatConfig.getInstance();
+        RetryPolicy policy = RetryPolicy.from(chatConfig.getConcurrencySettings(),
+            providerName != null ? chatConfig.getProvider(providerName) : null);
+
+        CompletableFuture<LLMResponse> request = executeRequestWithRetry(messages, config, policy, requestId, context);
+        CompletableFuture<LLMResponse> handled = request.exceptionally(throwable -> {
+            Throwable cause = unwrap(throwable);
+            // 并发队列拒绝或排队超时仍以异常返回，调用方据此提示服务器繁忙
+            if (cause instanceof java.util.concurrent.RejectedExecutionException ||
+                cause instanceof java.util.concurrent.TimeoutException) {
+                throw new java.util.concurrent.CompletionException(cause);
+            }
+            LLMResponse errorResponse = new LLMResponse();
+            errorResponse.setError("Request failed: " + cause.getMessage());
+            return errorResponse;
+        });
+        // exceptionally返回的是新Future，取消时需要手动传递给请求，才能取消HTTP调用
+        handled.whenComplete((response, throwable) -> {
+            if (handled.isCancelled()) {
+                request.cancel(true);
             }
-        }, requestId);
+        });
+        return handled;
     }
 
     /**
-     * 执行带重试的请求
+     * 执行带重试的请求（带上下文信息）
+     * 每次尝试分别申请限流配额和并发槽位，重试间隔由调度器延迟执行，不占用槽位也不阻塞任何线程
      */
-    private LLMResponse executeRequestWithRetry(List<LLMMessage> messages, LLMConfig config,
-                                              ConcurrencySettings settings, String requestId) throws Exception {
-        return executeRequestWithRetry(messages, config, settings, requestId, null);
+    private CompletableFuture<LLMResponse> executeRequestWithRetry(List<LLMMessage> messages, LLMConfig config,
+                                                                   RetryPolicy policy, String requestId,
+                                                                   LLMContext context) {
+        CompletableFuture<LLMResponse> result = new CompletableFuture<>();
+        retryBudget.onRequest();
+        executeAttempt(messages, config, policy, requestId, context, 1, 0, result);
+        return result;
     }
 
     /**
-     * 执行带重试的请求（带上下文信息）
+     * 执行一次尝试，失败时按重试策略安排下一次尝试
+     * 用尽重试后，HTTP错误转换为错误响应返回
      */
-    private LLMResponse executeRequestWithRetry(List<LLMMessage> messages, LLMConfig config,
-                                              ConcurrencySettings settings, String requestId, LLMContext context) throws Exception {
-        Exception lastException = null;
-        int maxAttempts = settings.isEnableRetry() ? settings.getMaxRetryAttempts() + 1 : 1;
+    private void executeAttempt(List<LLMMessage> messages, LLMConfig config, RetryPolicy policy,
+                                String requestId, LLMContext context, int attempt, long previousDelayMs,
+                                CompletableFuture<LLMResponse> result) {
+        if (result.isDone()) {
+            return; // 已取消
+        }
+
+        // 熔断中直接失败，不再等待超时和重试
+        CircuitBreaker breaker = ProviderMonitor.getInstance().getCircuitBreaker(providerName);
+        if (breaker != null && !breaker.tryAcquirePermission()) {
+            LLMResponse errorResponse = new LLMResponse();
+            errorResponse.setError(circuitOpenMessage(breaker));
+            result.complete(errorResponse);
+            return;
+        }
 
         String playerName = context != null ? context.getPlayerName() : null;
         String playerUuid = context != null ? context.getPlayerUuid() : null;
 
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            try {
-                return executeRequest(messages, config, requestId, playerName, playerUuid);
-            } catch (Exception e) {
-                lastException = e;
-
-                if (attempt < maxAttempts && shouldRetry(e)) {
-                    long delay = (long) (settings.getRetryDelayMs() * Math.pow(settings.getRetryBackoffMultiplier(), attempt - 1));
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new RuntimeException("Request interrupted", ie);
+        CompletableFuture<LLMResponse> attemptFuture = submitWithRateLimit(messages, config, requestId, context, permit ->
+            executeRequest(messages, config, requestId, playerName, playerUuid, sampleKind(context, false))
+                .whenComplete((response, throwable) -> {
+                    if (response != null && response.getUsage() != null) {
+                        permit.reconcile(response.getUsage().getTotalTokens());
                     }
-                } else {
-                    break;
-                }
+                }));
+        result.whenComplete((response, throwable) -> {
+            if (result.isCancelled()) {
+                attemptFuture.cancel(true);
             }
-        }
+        });
 
-        throw lastException;
-    }
+        attemptFuture.whenComplete((response, throwable) -> {
+            if (throwable == null) {
+                result.complete(response);
+                return;
+            }
 
-    /**
-     * 执行单次请求
-     */
-    private LLMResponse executeRequest(List<LLMMessage> messages, LLMConfig config, String requestId) throws IOException {
-        return executeRequest(messages, config, requestId, null, null);
+            Throwable cause = unwrap(throwable);
+            long delay = attempt < policy.getMaxAttempts() && policy.isRetryable(cause)
+                ? policy.nextDelayMs(previousDelayMs, cause) : -1;
+            if (delay >= 0 && !result.isDone() && retryBudget.tryAcquireRetry()) {
+                LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+                    "Retrying request " + requestId + " in " + delay + "ms (attempt " + (attempt + 1) +
+                    "/" + policy.getMaxAttempts() + "): " + cause.getMessage());
+                ConcurrencyManager.getInstance().getScheduler().schedule(
+                    () -> executeAttempt(messages, config, policy, requestId, context, attempt + 1, delay, result),
+                    delay, TimeUnit.MILLISECONDS);
+            } else if (cause instanceof LLMHttpException httpException) {
+                LLMResponse errorResponse = new LLMResponse();
+                errorResponse.setError("HTTP " + httpException.getStatusCode() + ": " + httpException.getResponseBody());
+                result.complete(errorResponse);
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
     }
 
     /**
      * 执行单次请求（带上下文信息用于日志记录）
+     * 通过Call.enqueue异步发送，取消返回的Future会同时取消HTTP调用
      */
-    private LLMResponse executeRequest(List<LLMMessage> messages, LLMConfig config, String requestId,
-                                     String playerName, String playerUuid) throws IOException {
+    private CompletableFuture<LLMResponse> executeRequest(List<LLMMessage> messages, LLMConfig config, String requestId,
+                                                          String playerName, String playerUuid, String sampleKind) {
         long startTime = System.currentTimeMillis();
-        JsonObject requestBody = buildRequestBody(messages, config);
+        ChatRequestBody requestBody = ChatRequestBody.create(messages, config, false, gson);
         String requestUrl = baseUrl + "/chat/completions";
 
-        // 构建请求头
-        Map<String, String> requestHeaders = new HashMap<>();
-        requestHeaders.put("Authorization", "Bearer " + apiKey);
-        requestHeaders.put("Content-Type", "application/json");
-        requestHeaders.put("X-Request-ID", requestId);
-
-        // 记录请求日志
-        LLMRequestLogEntry requestLog = LLMLogUtils.createRequestLogBuilder(requestId)
-                .serviceName(getServiceName())
-                .playerName(playerName)
-                .playerUuid(playerUuid)
-                .messages(messages)
-                .config(config)
-                .rawRequestJson(requestBody.toString())
-                .requestUrl(requestUrl)
-                .requestHeaders(LLMLogUtils.sanitizeHeaders(requestHeaders))
-                .estimatedTokens(LLMLogUtils.estimateTokens(messages))
-                .build();
+        // 记录请求日志，日志未启用时不生成请求JSON字符串
+        if (LLMLogUtils.isLLMLogEnabled()) {
+            // 构建请求头
+            Map<String, String> requestHeaders = new HashMap<>();
+            requestHeaders.put("Authorization", "Bearer " + apiKey);
+            requestHeaders.put("Content-Type", "application/json");
+            requestHeaders.put("X-Request-ID", requestId);
+
+            LLMRequestLogEntry requestLog = LLMLogUtils.createRequestLogBuilder(requestId)
+                    .serviceName(getServiceName())
+                    .playerName(playerName)
+                    .playerUuid(playerUuid)
+                    .messages(messages)
+                    .config(config)
+                    .rawRequestJson(requestBody.toJson())
+                    .requestUrl(requestUrl)
+                    .requestHeaders(LLMLogUtils.sanitizeHeaders(requestHeaders))
+                    .estimatedTokens(LLMLogUtils.estimateTokens(messages))
+                    .build();
 
-        LLMLogUtils.logRequest(requestLog);
+            LLMLogUtils.logRequest(requestLog);
+        }
 
         Request request = new Request.Builder()
                 .url(requestUrl)
                 .header("Authorization", "Bearer " + apiKey)
                 .header("Content-Type", "application/json")
                 .header("X-Request-ID", requestId)
-                .post(RequestBody.create(requestBody.toString(), MediaType.get("application/json")))
+                .post(requestBody)
                 .build();
 
-        try (Response response = httpClient.newCall(request).execute()) {
-            long endTime = System.currentTimeMillis();
-            long responseTime = endTime - startTime;
-            String responseBody = response.body().string();
-            String responseId = LLMLogUtils.generateResponseId();
+        CompletableFuture<LLMResponse> future = new CompletableFuture<>();
+        trackInFlight(future);
+        Call call = httpClient.newCall(request);
+        future.whenComplete((response, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
 
-            // 构建响应头
-            Map<String, String> responseHeaders = new HashMap<>();
-            for (String headerName : response.headers().names()) {
-                responseHeaders.put(headerName, response.header(headerName));
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                recordFailureSample(call, e, startTime, sampleKind);
+                future.completeExceptionally(e);
             }
 
+            @Override
+            public void onResponse(Call call, Response response) {
+                recordResponseSample(response, startTime, sampleKind, false);
+                try (response) {
+                    LLMResponse llmResponse = handleResponse(response, requestId, startTime);
+                    recordTokenLatencySample(llmResponse, startTime, sampleKind);
+                    future.complete(llmResponse);
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+
+        return future;
+    }
+
+    /**
+     * 向并发管理器报告响应延迟和限流状态，用于自适应并发上限
+     * 流式请求收到响应头时还未生成内容，作为首字节延迟上报；非流式请求的延迟包含整个生成过程，
+     * 计入服务商统计，并在解析出token用量后按每个输出token的耗时上报
+     */
+    private void recordResponseSample(Response response, long startTime, String sampleKind, boolean streaming) {
+        int code = response.code();
+        long latencyMs = System.currentTimeMillis() - startTime;
+        if (code == 429 || code == 503) {
+            ConcurrencyManager.getInstance().recordProviderSample(sampleProvider(), sampleKind, latencyMs, true,
+                providerInFlight());
+        } else if (response.isSuccessful()) {
+            if (streaming) {
+                ConcurrencyManager.getInstance().recordProviderSample(sampleProvider(), sampleKind, latencyMs, false,
+                    providerInFlight());
+            } else if (providerName != null) {
+                ProviderMonitor.getInstance().getStats(providerName).recordLatency(latencyMs);
+            }
+        }
+
+        // 429、5xx和408计为服务商侧失败，认证失败和模型不存在说明服务商配置有问题，同样计入；
+        // 400等其他4xx是请求本身的问题，不影响服务商的错误率
+        if (providerName != null) {
+            ProviderStats stats = ProviderMonitor.getInstance().getStats(providerName);
+            if (response.isSuccessful() || RetryPolicy.isRetryableStatus(code) ||
+                code == 401 || code == 403 || code == 404) {
+                stats.recordOutcome(response.isSuccessful());
+            }
             if (!response.isSuccessful()) {
-                // 记录错误响应日志
-                LLMResponseLogEntry responseLog = LLMLogUtils.createResponseLogBuilder(responseId, requestId)
-                        .httpStatusCode(response.code())
-                        .success(false)
-                        .errorMessage("HTTP " + response.code() + ": " + responseBody)
-                        .rawResponseJson(responseBody)
-                        .responseHeaders(responseHeaders)
-                        .responseTimeMs(responseTime)
-                        .build();
-
-                LLMLogUtils.logResponse(responseLog);
+                stats.recordError(ProviderHealthChecker.errorTypeForStatus(code), "HTTP " + code);
+            }
+        }
 
-                LLMResponse errorResponse = new LLMResponse();
-                errorResponse.setError("HTTP " + response.code() + ": " + responseBody);
-                return errorResponse;
+        // 熔断只看服务商是否可用：5xx和408计为失败，429等其他响应说明服务商仍在工作
+        if (code >= 500 || code == 408) {
+            recordCircuitFailure(code == 408 || code == 504);
+        } else {
+            CircuitBreaker breaker = ProviderMonitor.getInstance().getCircuitBreaker(providerName);
+            if (breaker != null) {
+                breaker.onSuccess();
             }
+        }
+    }
+
+    /**
+     * 非流式请求按每个输出token的耗时上报延迟，不同长度的回复可以互相比较
+     */
+    private void recordTokenLatencySample(LLMResponse response, long startTime, String sampleKind) {
+        if (response == null || response.getUsage() == null || response.getUsage().getCompletionTokens() <= 0) {
+            return;
+        }
+        double latencyPerToken = (double) (System.currentTimeMillis() - startTime) /
+                                 response.getUsage().getCompletionTokens();
+        ConcurrencyManager.getInstance().recordProviderSample(sampleProvider(), sampleKind, latencyPerToken, false,
+            providerInFlight());
+    }
+
+    /**
+     * 请求超时视为服务商过载，主动取消和其他网络错误不计入
+     */
+    private void recordFailureSample(Call call, IOException e, long startTime, String sampleKind) {
+        if (call.isCanceled()) {
+            return;
+        }
+        if (e instanceof java.io.InterruptedIOException) {
+            ConcurrencyManager.getInstance().recordProviderSample(sampleProvider(), sampleKind,
+                System.currentTimeMillis() - startTime, true, providerInFlight());
+        }
+        if (providerName != null) {
+            ProviderStats stats = ProviderMonitor.getInstance().getStats(providerName);
+            stats.recordOutcome(false);
+            stats.recordError(ProviderHealthChecker.HealthStatus.ErrorType.NETWORK_ERROR,
+                e instanceof java.io.InterruptedIOException ? "连接超时" : "连接失败: " + e.getMessage());
+        }
+        recordCircuitFailure(e instanceof java.io.InterruptedIOException);
+    }
+
+    private String sampleProvider() {
+        return providerName != null ? providerName : getServiceName();
+    }
+
+    /**
+     * 发往本服务商的进行中请求数，未指定服务商时使用全局的进行中请求数
+     */
+    private int providerInFlight() {
+        return providerName != null ? ProviderMonitor.getInstance().getStats(providerName).getInFlight()
+            : ConcurrencyManager.getInstance().getStats().activeRequests;
+    }
 
-            LLMResponse llmResponse = parseResponse(responseBody);
+    /**
+     * 延迟样本的请求类型：按优先级区分聊天和标题、压缩等后台请求，流式和非流式的延迟单位不同
+     */
+    private static String sampleKind(LLMContext context, boolean streaming) {
+        RequestPriority priority = context != null && context.getPriority() != null
+            ? context.getPriority() : RequestPriority.INTERACTIVE;
+        return priority.name().toLowerCase() + (streaming ? "/ttfb" : "/per-token");
+    }
+
+    private void recordCircuitFailure(boolean timeout) {
+        CircuitBreaker breaker = ProviderMonitor.getInstance().getCircuitBreaker(providerName);
+        if (breaker != null && breaker.onFailure(timeout)) {
+            LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.WARN, "system",
+                "Circuit breaker opened for provider " + providerName + ", failing fast for " +
+                breaker.getRemainingOpenMs() + "ms");
+        }
+    }
+
+    private String circuitOpenMessage(CircuitBreaker breaker) {
+        return "Provider " + providerName + " is unavailable (circuit breaker open, retry in " +
+            TimeUnit.MILLISECONDS.toSeconds(breaker.getRemainingOpenMs() + 999) + "s)";
+    }
 
-            // 记录成功响应日志
+    /**
+     * 统计发往本服务商的进行中请求数，用于负载均衡
+     */
+    private void trackInFlight(CompletableFuture<?> future) {
+        if (providerName == null) {
+            return;
+        }
+        ProviderStats stats = ProviderMonitor.getInstance().getStats(providerName);
+        stats.onRequestStart();
+        future.whenComplete((result, throwable) -> stats.onRequestEnd());
+    }
+
+    /**
+     * 处理HTTP响应并记录日志
+     */
+    private LLMResponse handleResponse(Response response, String requestId, long startTime) throws IOException {
+        long endTime = System.currentTimeMillis();
+        long responseTime = endTime - startTime;
+        String responseId = LLMLogUtils.generateResponseId();
+
+        // 构建响应头
+        Map<String, String> responseHeaders = new HashMap<>();
+        for (String headerName : response.headers().names()) {
+            responseHeaders.put(headerName, response.header(headerName));
+        }
+
+        if (!response.isSuccessful()) {
+            String responseBody = response.body().string();
+
+            // 记录错误响应日志
             LLMResponseLogEntry responseLog = LLMLogUtils.createResponseLogBuilder(responseId, requestId)
                     .httpStatusCode(response.code())
-                    .success(llmResponse.isSuccess())
-                    .llmResponse(llmResponse)
+                    .success(false)
+                    .errorMessage("HTTP " + response.code() + ": " + responseBody)
                     .rawResponseJson(responseBody)
                     .responseHeaders(responseHeaders)
                     .responseTimeMs(responseTime)
@@ -217,67 +388,307 @@ public class OpenAIService implements LLMService {
 
             LLMLogUtils.logResponse(responseLog);
 
-            // 记录token使用情况
-            if (llmResponse.isSuccess() && llmResponse.getUsage() != null) {
-                LLMResponse.Usage usage = llmResponse.getUsage();
-                ConcurrencyManager.getInstance().recordTokenUsage(
-                    usage.getPromptTokens(),
-                    usage.getCompletionTokens(),
-                    usage.getTotalTokens()
-                );
+            if (RetryPolicy.isRetryableStatus(response.code())) {
+                // 交给重试策略处理，用尽重试后再转换为错误响应；限流重置时间只对429有意义
+                throw new LLMHttpException(response.code(), responseBody,
+                    RetryPolicy.parseRetryAfterMs(response::header, System.currentTimeMillis()),
+                    response.code() == 429 ? RetryPolicy.parseRateLimitResetMs(response::header) : -1);
             }
 
-            return llmResponse;
+            LLMResponse errorResponse = new LLMResponse();
+            errorResponse.setError("HTTP " + response.code() + ": " + responseBody);
+            return errorResponse;
         }
+
+        // 直接从响应体解析，原始JSON只在记录日志时按上限保留
+        ChatResponseParser parser = new ChatResponseParser(LLMLogUtils.getRawResponseLogLimit());
+        LLMResponse llmResponse = parser.parse(response.body());
+
+        // 记录成功响应日志
+        if (LLMLogUtils.isLLMLogEnabled()) {
+            LLMResponseLogEntry responseLog = LLMLogUtils.createResponseLogBuilder(responseId, requestId)
+                    .httpStatusCode(response.code())
+                    .success(llmResponse.isSuccess())
+                    .llmResponse(llmResponse)
+                    .rawResponseJson(parser.getRawJson())
+                    .responseHeaders(responseHeaders)
+                    .responseTimeMs(responseTime)
+                    .build();
+
+            LLMLogUtils.logResponse(responseLog);
+        }
+
+        // 记录token使用情况
+        if (llmResponse.isSuccess() && llmResponse.getUsage() != null) {
+            LLMResponse.Usage usage = llmResponse.getUsage();
+            ConcurrencyManager.getInstance().recordTokenUsage(
+                usage.getPromptTokens(),
+                usage.getCompletionTokens(),
+                usage.getTotalTokens()
+            );
+        }
+
+        return llmResponse;
     }
 
     /**
-     * 判断是否应该重试
+     * 展开CompletableFuture包装的异常
      */
-    private boolean shouldRetry(Exception e) {
-        if (e instanceof IOException) {
-            return true; // 网络错误通常可以重试
+    private static Throwable unwrap(Throwable throwable) {
+        if ((throwable instanceof java.util.concurrent.CompletionException ||
+             throwable instanceof java.util.concurrent.ExecutionException) && throwable.getCause() != null) {
+            return throwable.getCause();
         }
+        return throwable;
+    }
 
-        String message = e.getMessage();
-        if (message != null) {
-            // 检查是否是可重试的HTTP错误
-            return message.contains("HTTP 429") || // 速率限制
-                   message.contains("HTTP 502") || // 网关错误
-                   message.contains("HTTP 503") || // 服务不可用
-                   message.contains("HTTP 504");   // 网关超时
+    @Override
+    public CompletableFuture<Void> chatStream(List<LLMMessage> messages, LLMConfig config, StreamCallback callback) {
+        return chatStream(messages, config, null, callback);
+    }
+
+    @Override
+    public CompletableFuture<Void> chatStream(List<LLMMessage> messages, LLMConfig config, LLMContext context,
+                                              StreamCallback callback) {
+        String requestId = UUID.randomUUID().toString().substring(0, 8);
+
+        CompletableFuture<Void> future;
+        CircuitBreaker breaker = ProviderMonitor.getInstance().getCircuitBreaker(providerName);
+        if (breaker != null && !breaker.tryAcquirePermission()) {
+            future = CompletableFuture.failedFuture(new IllegalStateException(circuitOpenMessage(breaker)));
+        } else {
+            future = submitWithRateLimit(messages, config, requestId, context, permit ->
+                executeStreamRequest(messages, config, requestId, context, reconcilingCallback(callback, permit)));
         }
 
-        return false;
+        // 排队超时或被拒绝时也要通知回调
+        future.whenComplete((result, throwable) -> {
+            if (throwable != null) {
+                callback.onError(throwable);
+            }
+        });
+        return future;
     }
 
-    @Override
-    public CompletableFuture<Void> chatStream(List<LLMMessage> messages, LLMConfig config, StreamCallback callback) {
-        return CompletableFuture.runAsync(() -> {
-            try {
-                JsonObject requestBody = buildRequestBody(messages, config);
-                requestBody.addProperty("stream", true);
-                
-                Request request = new Request.Builder()
-                        .url(baseUrl + "/chat/completions")
-                        .header("Authorization", "Bearer " + apiKey)
-                        .header("Content-Type", "application/json")
-                        .post(RequestBody.create(requestBody.toString(), MediaType.get("application/json")))
-                        .build();
-
-                try (Response response = httpClient.newCall(request).execute()) {
-                    if (!response.isSuccessful()) {
-                        callback.onError(new RuntimeException("HTTP " + response.code()));
-                        return;
-                    }
+    /**
+     * 获得服务商限流配额后再提交到并发管理器发送请求
+     * 先等配额再占并发槽位，限流等待期间不占用全局槽位；取消返回的Future会同时取消等待或进行中的请求。
+     * 请求结束时没有按实际用量修正的配额全部退还，失败、超时和被拒绝的请求不占用TPM
+     */
+    private <T> CompletableFuture<T> submitWithRateLimit(List<LLMMessage> messages, LLMConfig config,
+                                                         String requestId, LLMContext context,
+                                                         java.util.function.Function<ProviderRateLimiter.Permit, CompletableFuture<T>> request) {
+        // 服务商按提示词加max_tokens计入TPM
+        int estimatedTokens = LLMLogUtils.estimateTokens(messages) +
+            (config.getMaxTokens() != null ? config.getMaxTokens() : 0);
+
+        CompletableFuture<ProviderRateLimiter.Permit> permitFuture =
+            ProviderRateLimiter.getInstance().acquire(providerName, estimatedTokens);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, throwable) -> {
+            if (result.isCancelled()) {
+                permitFuture.cancel(true);
+            }
+        });
 
-                    // 处理流式响应
-                    processStreamResponse(response, callback);
-                }
+        permitFuture.whenComplete((permit, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+            if (result.isDone()) {
+                permit.reconcile(0); // 等待期间已被取消，退还配额
+                return;
+            }
+
+            CompletableFuture<T> task;
+            try {
+                task = ConcurrencyManager.getInstance().submitAsyncRequest(() -> request.apply(permit), requestId, context);
             } catch (Exception e) {
+                task = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<T> submitted = task;
+            result.whenComplete((value, t) -> {
+                if (result.isCancelled()) {
+                    submitted.cancel(true);
+                }
+            });
+            submitted.whenComplete((value, t) -> {
+                permit.reconcile(0); // 已按实际用量修正时不再生效
+                if (t != null) {
+                    result.completeExceptionally(t);
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * 包装流式回调，在流结束时按实际token用量修正限流配额
+     * 没有返回usage或出错时退还配额
+     */
+    private static StreamCallback reconcilingCallback(StreamCallback callback, ProviderRateLimiter.Permit permit) {
+        return new StreamCallback() {
+            @Override
+            public void onChunk(String chunk) {
+                callback.onChunk(chunk);
+            }
+
+            @Override
+            public void onToolCallDelta(int index, String toolCallId, String functionName, String argumentsDelta) {
+                callback.onToolCallDelta(index, toolCallId, functionName, argumentsDelta);
+            }
+
+            @Override
+            public void onComplete(LLMResponse response) {
+                permit.reconcile(response != null && response.getUsage() != null
+                    ? response.getUsage().getTotalTokens() : 0);
+                callback.onComplete(response);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                permit.reconcile(0);
+                callback.onError(error);
+            }
+        };
+    }
+
+    /**
+     * 执行流式请求，逐个事件回调增量内容
+     * 请求过程中的错误通过回调通知，返回的Future只在流结束后完成
+     */
+    private CompletableFuture<Void> executeStreamRequest(List<LLMMessage> messages, LLMConfig config, String requestId,
+                                                         LLMContext context, StreamCallback callback) {
+        long startTime = System.currentTimeMillis();
+        String sampleKind = sampleKind(context, true);
+        // 请求在最后一个事件中返回usage，便于token统计
+        ChatRequestBody requestBody = ChatRequestBody.create(messages, config, true, gson);
+        String requestUrl = baseUrl + "/chat/completions";
+
+        // 记录请求日志，日志未启用时不生成请求JSON字符串
+        if (LLMLogUtils.isLLMLogEnabled()) {
+            Map<String, String> requestHeaders = new HashMap<>();
+            requestHeaders.put("Authorization", "Bearer " + apiKey);
+            requestHeaders.put("Content-Type", "application/json");
+            requestHeaders.put("Accept", "text/event-stream");
+            requestHeaders.put("X-Request-ID", requestId);
+
+            LLMRequestLogEntry requestLog = LLMLogUtils.createRequestLogBuilder(requestId)
+                    .serviceName(getServiceName())
+                    .playerName(context != null ? context.getPlayerName() : null)
+                    .playerUuid(context != null ? context.getPlayerUuid() : null)
+                    .messages(messages)
+                    .config(config)
+                    .rawRequestJson(requestBody.toJson())
+                    .requestUrl(requestUrl)
+                    .requestHeaders(LLMLogUtils.sanitizeHeaders(requestHeaders))
+                    .estimatedTokens(LLMLogUtils.estimateTokens(messages))
+                    .build();
+
+            LLMLogUtils.logRequest(requestLog);
+        }
+
+        Request request = new Request.Builder()
+                .url(requestUrl)
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .header("X-Request-ID", requestId)
+                .post(requestBody)
+                .build();
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        trackInFlight(future);
+        Call call = httpClient.newCall(request);
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
+            }
+        });
+
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                recordFailureSample(call, e, startTime, sampleKind);
                 callback.onError(e);
+                future.complete(null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                // 流式请求收到响应头即为首字节延迟
+                recordResponseSample(response, startTime, sampleKind, true);
+                // SSE读取发生在OkHttp的调度线程上，不占用LLM工作线程
+                try (response) {
+                    handleStreamResponse(response, requestId, startTime, callback);
+                } catch (Exception e) {
+                    callback.onError(e);
+                } finally {
+                    future.complete(null);
+                }
             }
         });
+
+        return future;
+    }
+
+    /**
+     * 处理流式HTTP响应并记录日志
+     */
+    private void handleStreamResponse(Response response, String requestId, long startTime,
+                                      StreamCallback callback) throws IOException {
+        String responseId = LLMLogUtils.generateResponseId();
+
+        Map<String, String> responseHeaders = new HashMap<>();
+        for (String headerName : response.headers().names()) {
+            responseHeaders.put(headerName, response.header(headerName));
+        }
+
+        if (!response.isSuccessful()) {
+            String errorBody = response.body() != null ? response.body().string() : "";
+            LLMResponseLogEntry responseLog = LLMLogUtils.createResponseLogBuilder(responseId, requestId)
+                    .httpStatusCode(response.code())
+                    .success(false)
+                    .errorMessage("HTTP " + response.code() + ": " + errorBody)
+                    .rawResponseJson(errorBody)
+                    .responseHeaders(responseHeaders)
+                    .responseTimeMs(System.currentTimeMillis() - startTime)
+                    .build();
+
+            LLMLogUtils.logResponse(responseLog);
+            callback.onError(new IOException("HTTP " + response.code() + ": " + errorBody));
+            return;
+        }
+
+        LLMResponse finalResponse = processStreamResponse(response, callback);
+
+        LLMResponseLogEntry responseLog = LLMLogUtils.createResponseLogBuilder(responseId, requestId)
+                .httpStatusCode(response.code())
+                .success(finalResponse.isSuccess())
+                .llmResponse(finalResponse)
+                .responseHeaders(responseHeaders)
+                .responseTimeMs(System.currentTimeMillis() - startTime)
+                .build();
+
+        LLMLogUtils.logResponse(responseLog);
+
+        if (finalResponse.isSuccess() && finalResponse.getUsage() != null) {
+            LLMResponse.Usage usage = finalResponse.getUsage();
+            ConcurrencyManager.getInstance().recordTokenUsage(
+                usage.getPromptTokens(),
+                usage.getCompletionTokens(),
+                usage.getTotalTokens()
+            );
+        }
+
+        if (finalResponse.isSuccess()) {
+            callback.onComplete(finalResponse);
+        } else {
+            callback.onError(new IOException(finalResponse.getError()));
+        }
     }
 
     @Override
@@ -295,21 +706,17 @@ public class OpenAIService implements LLMService {
         return apiKey != null && !apiKey.trim().isEmpty();
     }
 
+    /**
+     * 请求/models接口检查服务商是否可用，不产生token费用
+     */
     @Override
     public CompletableFuture<Boolean> healthCheck() {
         if (!isAvailable()) {
             return CompletableFuture.completedFuture(false);
         }
 
-        // 创建最小的测试请求
-        LLMMessage testMessage = new LLMMessage(LLMMessage.MessageRole.USER, "test");
-        LLMConfig testConfig = new LLMConfig();
-        testConfig.setModel("gpt-3.5-turbo"); // 使用最便宜的模型
-        testConfig.setMaxTokens(1); // 最小token数
-        testConfig.setTemperature(0.1);
-
-        return chat(List.of(testMessage), testConfig)
-            .thenApply(response -> response != null && response.isSuccess())
+        return ProviderHealthChecker.getInstance().probe(baseUrl, apiKey)
+            .thenApply(ProviderHealthChecker.HealthStatus::isHealthy)
             .exceptionally(throwable -> false);
     }
 
@@ -319,234 +726,28 @@ public class OpenAIService implements LLMService {
     }
 
     /**
-     * 构建请求体
+     * 获取服务商名称
      */
-    private JsonObject buildRequestBody(List<LLMMessage> messages, LLMConfig config) {
-        JsonObject requestBody = new JsonObject();
-        
-        // 设置模型
-        requestBody.addProperty("model", config.getModel() != null ? config.getModel() : "gpt-3.5-turbo");
-        
-        // 设置消息
-        JsonArray messagesArray = new JsonArray();
-        for (LLMMessage message : messages) {
-            JsonObject messageObj = new JsonObject();
-            messageObj.addProperty("role", message.getRole().getValue());
-
-            // 处理不同类型的消息
-            if (message.getRole() == LLMMessage.MessageRole.TOOL) {
-                // Tool消息格式
-                messageObj.addProperty("content", message.getContent());
-                if (message.getName() != null) {
-                    messageObj.addProperty("name", message.getName());
-                }
-                if (message.getToolCallId() != null) {
-                    messageObj.addProperty("tool_call_id", message.getToolCallId());
-                }
-            } else if (message.getRole() == LLMMessage.MessageRole.ASSISTANT &&
-                      message.getMetadata() != null &&
-                      message.getMetadata().getFunctionCall() != null) {
-                // Assistant消息包含tool_calls
-                if (message.getContent() != null) {
-                    messageObj.addProperty("content", message.getContent());
-                }
-
-                LLMMessage.FunctionCall functionCall = message.getMetadata().getFunctionCall();
-                JsonArray toolCallsArray = new JsonArray();
-                JsonObject toolCallObj = new JsonObject();
-                toolCallObj.addProperty("id", functionCall.getToolCallId());
-                toolCallObj.addProperty("type", "function");
-
-                JsonObject functionObj = new JsonObject();
-                functionObj.addProperty("name", functionCall.getName());
-                functionObj.addProperty("arguments", functionCall.getArguments());
-                toolCallObj.add("function", functionObj);
-
-                toolCallsArray.add(toolCallObj);
-                messageObj.add("tool_calls", toolCallsArray);
-            } else {
-                // 普通消息
-                messageObj.addProperty("content", message.getContent());
-            }
-
-            messagesArray.add(messageObj);
-        }
-        requestBody.add("messages", messagesArray);
-        
-        // 设置其他参数
-        if (config.getTemperature() != null) {
-            requestBody.addProperty("temperature", config.getTemperature());
-        }
-        if (config.getMaxTokens() != null) {
-            requestBody.addProperty("max_tokens", config.getMaxTokens());
-        }
-        if (config.getTopP() != null) {
-            requestBody.addProperty("top_p", config.getTopP());
-        }
-        if (config.getFrequencyPenalty() != null) {
-            requestBody.addProperty("frequency_penalty", config.getFrequencyPenalty());
-        }
-        if (config.getPresencePenalty() != null) {
-            requestBody.addProperty("presence_penalty", config.getPresencePenalty());
-        }
-        if (config.getStop() != null && !config.getStop().isEmpty()) {
-            JsonArray stopArray = new JsonArray();
-            for (String stop : config.getStop()) {
-                stopArray.add(stop);
-            }
-            requestBody.add("stop", stopArray);
-        }
-
-        // 添加工具定义（新的API格式）
-        if (config.getTools() != null && !config.getTools().isEmpty()) {
-            JsonArray toolsArray = new JsonArray();
-            for (LLMConfig.ToolDefinition tool : config.getTools()) {
-                JsonObject toolObj = new JsonObject();
-                toolObj.addProperty("type", tool.getType());
-
-                JsonObject functionObj = new JsonObject();
-                functionObj.addProperty("name", tool.getFunction().getName());
-                functionObj.addProperty("description", tool.getFunction().getDescription());
-                functionObj.add("parameters", gson.toJsonTree(tool.getFunction().getParameters()));
-
-                toolObj.add("function", functionObj);
-                toolsArray.add(toolObj);
-            }
-            requestBody.add("tools", toolsArray);
-
-            if (config.getToolChoice() != null) {
-                requestBody.addProperty("tool_choice", config.getToolChoice());
-            }
-        }
-
-        return requestBody;
+    public String getProviderName() {
+        return providerName;
     }
 
     /**
-     * 解析响应
+     * 处理流式响应
+     * 逐行读取SSE事件，收到[DONE]或连接关闭时结束
      */
-    private LLMResponse parseResponse(String responseBody) {
-        try {
-            JsonObject jsonResponse = gson.fromJson(responseBody, JsonObject.class);
-            LLMResponse response = new LLMResponse();
-            
-            if (jsonResponse.has("id")) {
-                response.setId(jsonResponse.get("id").getAsString());
+    private LLMResponse processStreamResponse(Response response, StreamCallback callback) throws IOException {
+        StreamResponseAssembler assembler = new StreamResponseAssembler(callback);
+        BufferedSource source = response.body().source();
+
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (assembler.acceptLine(line)) {
+                break;
             }
-            if (jsonResponse.has("model")) {
-                response.setModel(jsonResponse.get("model").getAsString());
-            }
-            
-            // 解析choices
-            if (jsonResponse.has("choices")) {
-                JsonArray choicesArray = jsonResponse.getAsJsonArray("choices");
-                List<LLMResponse.Choice> choices = new java.util.ArrayList<>();
-                
-                for (JsonElement choiceElement : choicesArray) {
-                    JsonObject choiceObj = choiceElement.getAsJsonObject();
-                    LLMResponse.Choice choice = new LLMResponse.Choice();
-                    
-                    if (choiceObj.has("index")) {
-                        choice.setIndex(choiceObj.get("index").getAsInt());
-                    }
-                    if (choiceObj.has("finish_reason")) {
-                        choice.setFinishReason(choiceObj.get("finish_reason").getAsString());
-                    }
-                    if (choiceObj.has("message")) {
-                        JsonObject messageObj = choiceObj.getAsJsonObject("message");
-                        String role = messageObj.get("role").getAsString();
-                        String content = messageObj.has("content") && !messageObj.get("content").isJsonNull() ?
-                            messageObj.get("content").getAsString() : null;
-
-                        LLMMessage.MessageRole messageRole = LLMMessage.MessageRole.ASSISTANT;
-                        if ("user".equals(role)) {
-                            messageRole = LLMMessage.MessageRole.USER;
-                        } else if ("system".equals(role)) {
-                            messageRole = LLMMessage.MessageRole.SYSTEM;
-                        }
-
-                        LLMMessage message = new LLMMessage(messageRole, content);
-
-                        // 处理新的tool_calls格式
-                        if (messageObj.has("tool_calls")) {
-                            JsonArray toolCallsArray = messageObj.getAsJsonArray("tool_calls");
-                            if (toolCallsArray.size() > 0) {
-                                // 目前只处理第一个tool call，后续可以扩展支持多个
-                                JsonObject toolCallObj = toolCallsArray.get(0).getAsJsonObject();
-                                if ("function".equals(toolCallObj.get("type").getAsString())) {
-                                    JsonObject functionObj = toolCallObj.getAsJsonObject("function");
-                                    String functionName = functionObj.get("name").getAsString();
-                                    String functionArgs = functionObj.get("arguments").getAsString();
-                                    String toolCallId = toolCallObj.get("id").getAsString();
-
-                                    LLMMessage.FunctionCall functionCall = new LLMMessage.FunctionCall(functionName, functionArgs);
-                                    functionCall.setToolCallId(toolCallId); // 添加tool_call_id支持
-                                    LLMMessage.MessageMetadata metadata = new LLMMessage.MessageMetadata();
-                                    metadata.setFunctionCall(functionCall);
-                                    message.setMetadata(metadata);
-                                }
-                            }
-                        }
-                        // 保持对旧格式的兼容性
-                        else if (messageObj.has("function_call")) {
-                            JsonObject functionCallObj = messageObj.getAsJsonObject("function_call");
-                            String functionName = functionCallObj.get("name").getAsString();
-                            String functionArgs = functionCallObj.get("arguments").getAsString();
-
-                            LLMMessage.FunctionCall functionCall = new LLMMessage.FunctionCall(functionName, functionArgs);
-                            LLMMessage.MessageMetadata metadata = new LLMMessage.MessageMetadata();
-                            metadata.setFunctionCall(functionCall);
-                            message.setMetadata(metadata);
-                        }
-
-                        choice.setMessage(message);
-                    }
-                    
-                    choices.add(choice);
-                }
-                response.setChoices(choices);
-            }
-            
-            // 解析usage
-            if (jsonResponse.has("usage")) {
-                JsonObject usageObj = jsonResponse.getAsJsonObject("usage");
-                LLMResponse.Usage usage = new LLMResponse.Usage();
-                
-                if (usageObj.has("prompt_tokens")) {
-                    usage.setPromptTokens(usageObj.get("prompt_tokens").getAsInt());
-                }
-                if (usageObj.has("completion_tokens")) {
-                    usage.setCompletionTokens(usageObj.get("completion_tokens").getAsInt());
-                }
-                if (usageObj.has("total_tokens")) {
-                    usage.setTotalTokens(usageObj.get("total_tokens").getAsInt());
-                }
-                
-                response.setUsage(usage);
-            }
-            
-            return response;
-        } catch (Exception e) {
-            LLMResponse errorResponse = new LLMResponse();
-            errorResponse.setError("Failed to parse response: " + e.getMessage());
-            return errorResponse;
         }
-    }
+        assembler.finish();
 
-    /**
-     * 处理流式响应
-     */
-    private void processStreamResponse(Response response, StreamCallback callback) {
-        // 简化的流式处理实现
-        // 实际实现需要处理SSE格式的数据
-        try {
-            String responseBody = response.body().string();
-            callback.onChunk(responseBody);
-            
-            LLMResponse finalResponse = parseResponse(responseBody);
-            callback.onComplete(finalResponse);
-        } catch (IOException e) {
-            callback.onError(e);
-        }
+        return assembler.buildResponse();
     }
 }
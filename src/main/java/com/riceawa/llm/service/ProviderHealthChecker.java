@@ -1,13 +1,19 @@
 package com.riceawa.llm.service;
 
 import com.riceawa.llm.config.Provider;
-import com.riceawa.llm.core.LLMConfig;
-import com.riceawa.llm.core.LLMMessage;
-import com.riceawa.llm.core.LLMResponse;
-import com.riceawa.llm.core.LLMService;
-import com.riceawa.llm.core.LLMContext;
+import com.riceawa.llm.core.SingleFlight;
+import com.riceawa.llm.http.HttpClientRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Map;
@@ -17,13 +23,18 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Provider健康检查器
- * 负责异步检测provider的可用性，缓存检测结果
+ * 负责异步检测provider的可用性，缓存检测结果。
+ * 优先使用真实请求的结果（被动检查），只对近期没有请求的provider发送/models探测请求。
  */
 public class ProviderHealthChecker {
     
     private static ProviderHealthChecker instance;
     private final Map<String, HealthStatus> healthCache = new ConcurrentHashMap<>();
-    private final long CACHE_DURATION_MS = TimeUnit.MINUTES.toMillis(5); // 5分钟缓存
+    private final SingleFlight<String, HealthStatus> probes = new SingleFlight<>();
+    private final long CACHE_DURATION_MS = TimeUnit.MINUTES.toMillis(5); // 5分钟缓存，也是判断近期有无流量的时间
+    private static final long PROBE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+    /** 近期请求失败率达到该值时认为服务商不健康 */
+    static final double UNHEALTHY_ERROR_RATE = 0.5;
     
     private ProviderHealthChecker() {}
     
@@ -40,6 +51,7 @@ public class ProviderHealthChecker {
     
     /**
      * 异步检测单个provider的健康状态
+     * 近期有真实请求时直接根据请求结果判断；没有时才用/models接口探测，不消耗token
      */
     public CompletableFuture<HealthStatus> checkProviderHealth(Provider provider) {
         if (provider == null) {
@@ -47,27 +59,47 @@ public class ProviderHealthChecker {
                 new HealthStatus(false, "Provider为空", HealthStatus.ErrorType.CONFIG_ERROR, LocalDateTime.now())
             );
         }
-        
+
+        // 熔断中的服务商直接报告熔断状态
+        CircuitBreaker breaker = ProviderMonitor.getInstance().getCircuitBreaker(provider.getName());
+        if (breaker != null && breaker.getState() == CircuitBreaker.State.OPEN) {
+            long seconds = TimeUnit.MILLISECONDS.toSeconds(breaker.getRemainingOpenMs() + 999);
+            HealthStatus status = new HealthStatus(false,
+                "熔断中，连续失败 " + breaker.getConsecutiveFailures() + " 次，" + seconds + "秒后重新探测",
+                HealthStatus.ErrorType.CIRCUIT_OPEN, LocalDateTime.now());
+            healthCache.put(provider.getName(), status);
+            return CompletableFuture.completedFuture(status);
+        }
+
+        // 根据真实请求的结果判断
+        HealthStatus passive = fromTraffic(ProviderMonitor.getInstance().getStats(provider.getName()), CACHE_DURATION_MS);
+        if (passive != null) {
+            healthCache.put(provider.getName(), passive);
+            return CompletableFuture.completedFuture(passive);
+        }
+
         // 检查缓存
         HealthStatus cached = healthCache.get(provider.getName());
         if (cached != null && !cached.isExpired(CACHE_DURATION_MS)) {
             return CompletableFuture.completedFuture(cached);
         }
-        
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return performHealthCheck(provider);
-            } catch (Exception e) {
-                return new HealthStatus(false, "检测异常: " + e.getMessage(), 
-                    HealthStatus.ErrorType.UNKNOWN_ERROR, LocalDateTime.now());
-            }
-        }).whenComplete((result, throwable) -> {
-            if (result != null) {
-                healthCache.put(provider.getName(), result);
-            }
-        });
+
+        if (!isProviderConfigValid(provider)) {
+            HealthStatus status = new HealthStatus(false, getConfigErrorMessage(provider),
+                HealthStatus.ErrorType.CONFIG_ERROR, LocalDateTime.now());
+            healthCache.put(provider.getName(), status);
+            return CompletableFuture.completedFuture(status);
+        }
+
+        // 同时进行的多次检测（例如重载时和玩家手动检测）共用一次探测请求
+        return probes.execute(provider.getName(), () -> probe(provider.getApiBaseUrl(), provider.getApiKey()))
+            .whenComplete((result, throwable) -> {
+                if (result != null) {
+                    healthCache.put(provider.getName(), result);
+                }
+            });
     }
-    
+
     /**
      * 异步检测所有provider的健康状态
      */
@@ -115,58 +147,98 @@ public class ProviderHealthChecker {
     }
     
     /**
-     * 执行实际的健康检查
+     * 根据服务商近期真实请求的结果生成健康状态
+     *
+     * @param maxIdleMs 最近一次请求超过该时间时认为没有近期流量
+     * @return 没有近期流量时返回null
      */
-    private HealthStatus performHealthCheck(Provider provider) {
-        LocalDateTime checkTime = LocalDateTime.now();
-        
-        // 基本配置检查
-        if (!isProviderConfigValid(provider)) {
-            return new HealthStatus(false, getConfigErrorMessage(provider), 
-                HealthStatus.ErrorType.CONFIG_ERROR, checkTime);
+    static HealthStatus fromTraffic(ProviderStats stats, long maxIdleMs) {
+        if (stats.getOutcomeCount() == 0 || stats.getIdleMs() > maxIdleMs) {
+            return null;
         }
-        
+
+        LocalDateTime lastActivity = LocalDateTime.ofInstant(
+            Instant.ofEpochMilli(stats.getLastActivityTime()), ZoneId.systemDefault());
+        double errorRate = stats.getErrorRate();
+        HealthStatus.ErrorType lastError = stats.getLastErrorType();
+        // 认证失败在修复配置前不会自行恢复，最近一次结果是认证失败时不必等错误率升高
+        boolean authFailing = lastError == HealthStatus.ErrorType.AUTH_ERROR &&
+                              stats.getLastErrorTime() > stats.getLastSuccessTime();
+
+        if (errorRate < UNHEALTHY_ERROR_RATE && !authFailing) {
+            double latency = stats.getEwmaLatencyMs();
+            return new HealthStatus(true, String.format("近期 %d 个请求成功率 %.0f%%", stats.getOutcomeCount(),
+                (1 - errorRate) * 100) + (latency >= 0 ? String.format("，延迟 %.0fms", latency) : ""),
+                HealthStatus.ErrorType.NONE, lastActivity);
+        }
+        return new HealthStatus(false, String.format("近期 %d 个请求失败率 %.0f%%", stats.getOutcomeCount(), errorRate * 100) +
+            (stats.getLastErrorMessage() != null ? "，最近错误: " + stats.getLastErrorMessage() : ""),
+            lastError != null ? lastError : HealthStatus.ErrorType.API_ERROR, lastActivity);
+    }
+
+    /**
+     * 请求/models接口探测服务商，只验证网络连通性和API密钥，不产生token费用
+     */
+    public CompletableFuture<HealthStatus> probe(String baseUrl, String apiKey) {
+        CompletableFuture<HealthStatus> future = new CompletableFuture<>();
+        Request request;
         try {
-            // 创建服务实例进行测试
-            LLMService service = createServiceForProvider(provider);
-            if (service == null) {
-                return new HealthStatus(false, "无法创建服务实例", 
-                    HealthStatus.ErrorType.CONFIG_ERROR, checkTime);
-            }
-            
-            // 发送测试请求
-            LLMMessage testMessage = new LLMMessage(LLMMessage.MessageRole.USER, "test");
-            LLMConfig testConfig = new LLMConfig();
-            testConfig.setModel(provider.getModels().get(0)); // 使用第一个模型
-            testConfig.setMaxTokens(1); // 最小token数
-            testConfig.setTemperature(0.1);
-            
-            // 创建健康检查上下文
-            LLMContext healthContext = LLMContext.builder()
-                    .metadata("operation", "health_check")
-                    .metadata("provider", provider.getName())
+            request = new Request.Builder()
+                    .url(baseUrl + "/models")
+                    .header("Authorization", "Bearer " + apiKey)
+                    .get()
                     .build();
+        } catch (IllegalArgumentException e) {
+            future.complete(new HealthStatus(false, "API基础URL无效: " + baseUrl,
+                HealthStatus.ErrorType.CONFIG_ERROR, LocalDateTime.now()));
+            return future;
+        }
 
-            CompletableFuture<LLMResponse> future = service.chat(List.of(testMessage), testConfig, healthContext);
-            LLMResponse response = future.get(30, TimeUnit.SECONDS); // 30秒超时
-            
-            if (response.isSuccess()) {
-                return new HealthStatus(true, "连接正常", HealthStatus.ErrorType.NONE, checkTime);
-            } else {
-                String error = response.getError();
-                HealthStatus.ErrorType errorType = categorizeError(error);
-                return new HealthStatus(false, "API错误: " + error, errorType, checkTime);
+        OkHttpClient client = HttpClientRegistry.getInstance().getClient(PROBE_TIMEOUT_MS, PROBE_TIMEOUT_MS);
+        Call call = client.newCall(request);
+        future.whenComplete((result, throwable) -> {
+            if (future.isCancelled()) {
+                call.cancel();
             }
-            
-        } catch (java.util.concurrent.TimeoutException e) {
-            return new HealthStatus(false, "连接超时", HealthStatus.ErrorType.NETWORK_ERROR, checkTime);
-        } catch (Exception e) {
-            String errorMsg = e.getMessage();
-            HealthStatus.ErrorType errorType = categorizeError(errorMsg);
-            return new HealthStatus(false, "连接失败: " + errorMsg, errorType, checkTime);
-        }
+        });
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                String message = e instanceof InterruptedIOException ? "连接超时" : "连接失败: " + e.getMessage();
+                future.complete(new HealthStatus(false, message, HealthStatus.ErrorType.NETWORK_ERROR, LocalDateTime.now()));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                response.close();
+                int code = response.code();
+                LocalDateTime checkTime = LocalDateTime.now();
+                if (response.isSuccessful()) {
+                    future.complete(new HealthStatus(true, "连接正常", HealthStatus.ErrorType.NONE, checkTime));
+                } else if (code == 404 || code == 405) {
+                    // 部分兼容OpenAI的服务没有实现/models，能返回响应说明服务可达
+                    future.complete(new HealthStatus(true, "服务可达（不支持/models）", HealthStatus.ErrorType.NONE, checkTime));
+                } else {
+                    future.complete(new HealthStatus(false, "API错误: HTTP " + code, errorTypeForStatus(code), checkTime));
+                }
+            }
+        });
+        return future;
     }
-    
+
+    /**
+     * 根据HTTP状态码分类错误类型
+     */
+    public static HealthStatus.ErrorType errorTypeForStatus(int statusCode) {
+        return switch (statusCode) {
+            case 401, 403 -> HealthStatus.ErrorType.AUTH_ERROR;
+            case 404 -> HealthStatus.ErrorType.MODEL_ERROR;
+            case 408, 504 -> HealthStatus.ErrorType.NETWORK_ERROR;
+            case 429 -> HealthStatus.ErrorType.RATE_LIMIT_ERROR;
+            default -> HealthStatus.ErrorType.API_ERROR;
+        };
+    }
+
     /**
      * 检查provider配置是否有效
      */
@@ -200,38 +272,6 @@ public class ProviderHealthChecker {
         return "配置无效";
     }
     
-    /**
-     * 为provider创建服务实例
-     */
-    private LLMService createServiceForProvider(Provider provider) {
-        // 目前只支持OpenAI兼容的服务
-        return new OpenAIService(provider.getApiKey(), provider.getApiBaseUrl());
-    }
-    
-    /**
-     * 根据错误信息分类错误类型
-     */
-    private HealthStatus.ErrorType categorizeError(String error) {
-        if (error == null) return HealthStatus.ErrorType.UNKNOWN_ERROR;
-        
-        String lowerError = error.toLowerCase();
-        if (lowerError.contains("unauthorized") || lowerError.contains("401") || 
-            lowerError.contains("invalid api key") || lowerError.contains("authentication")) {
-            return HealthStatus.ErrorType.AUTH_ERROR;
-        }
-        if (lowerError.contains("timeout") || lowerError.contains("connection") || 
-            lowerError.contains("network") || lowerError.contains("unreachable")) {
-            return HealthStatus.ErrorType.NETWORK_ERROR;
-        }
-        if (lowerError.contains("rate limit") || lowerError.contains("429")) {
-            return HealthStatus.ErrorType.RATE_LIMIT_ERROR;
-        }
-        if (lowerError.contains("model") || lowerError.contains("404")) {
-            return HealthStatus.ErrorType.MODEL_ERROR;
-        }
-        return HealthStatus.ErrorType.API_ERROR;
-    }
-    
     /**
      * 健康状态类
      */
@@ -269,6 +309,7 @@ public class ProviderHealthChecker {
             RATE_LIMIT_ERROR,
             MODEL_ERROR,
             API_ERROR,
+            CIRCUIT_OPEN,
             UNKNOWN_ERROR
         }
     }
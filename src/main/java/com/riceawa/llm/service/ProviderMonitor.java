@@ -0,0 +1,82 @@
+package com.riceawa.llm.service;
+
+import com.riceawa.llm.config.ConcurrencySettings;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 服务商流量监控 - 汇总各服务商真实请求的统计
+ * 由OpenAIService在请求结束时记录，供对冲请求等路由决策使用；同时持有各服务商的熔断器
+ */
+public class ProviderMonitor {
+    private static ProviderMonitor instance;
+
+    private final Map<String, ProviderStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private volatile ConcurrencySettings settings = new ConcurrencySettings();
+
+    private ProviderMonitor() {
+    }
+
+    public static ProviderMonitor getInstance() {
+        if (instance == null) {
+            synchronized (ProviderMonitor.class) {
+                if (instance == null) {
+                    instance = new ProviderMonitor();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 获取服务商的统计，不存在时创建
+     */
+    public ProviderStats getStats(String providerName) {
+        return stats.computeIfAbsent(providerName, ProviderStats::new);
+    }
+
+    /**
+     * 获取所有服务商的统计
+     */
+    public Map<String, ProviderStats> getAllStats() {
+        return new HashMap<>(stats);
+    }
+
+    /**
+     * 更新熔断配置，已有熔断器保持当前状态
+     */
+    public void configure(ConcurrencySettings settings) {
+        this.settings = settings;
+        for (CircuitBreaker breaker : circuitBreakers.values()) {
+            breaker.configure(settings.getCircuitFailureThreshold(), settings.getCircuitTimeoutRateThreshold(),
+                settings.getCircuitOpenDurationMs());
+        }
+    }
+
+    /**
+     * 获取服务商的熔断器，不存在时创建
+     * 熔断器按服务商名称共享，重载配置后新建的服务实例沿用原来的状态
+     *
+     * @return 未启用熔断时返回null
+     */
+    public CircuitBreaker getCircuitBreaker(String providerName) {
+        ConcurrencySettings current = settings;
+        if (providerName == null || !current.isEnableCircuitBreaker()) {
+            return null;
+        }
+        return circuitBreakers.computeIfAbsent(providerName, name -> new CircuitBreaker(
+            current.getCircuitFailureThreshold(), current.getCircuitTimeoutRateThreshold(),
+            current.getCircuitOpenDurationMs()));
+    }
+
+    /**
+     * 判断服务商当前是否可以接收请求（未熔断或可以发送探测请求）
+     */
+    public boolean isCallPermitted(String providerName) {
+        CircuitBreaker breaker = getCircuitBreaker(providerName);
+        return breaker == null || breaker.isCallPermitted();
+    }
+}
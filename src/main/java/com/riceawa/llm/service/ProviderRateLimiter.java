@@ -0,0 +1,354 @@
+package com.riceawa.llm.service;
+
+import com.riceawa.llm.config.ConcurrencySettings;
+import com.riceawa.llm.config.Provider;
+import com.riceawa.llm.core.ConcurrencyManager;
+import com.riceawa.llm.logging.LogManager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 服务商速率限制器 - 按Provider名称执行RPM/TPM令牌桶限流
+ * 超出配额的请求在队列中等待配额恢复，而不是发出后被服务商以429拒绝。
+ * 等待时间和等待数量与并发队列使用相同的上限：超出时以TimeoutException或RejectedExecutionException失败，
+ * 预计等待超过上限的请求（如每小时配额用尽）立即失败，不让玩家长时间没有反馈。
+ * 发送前按估算的token数预扣，收到响应后按实际用量修正。
+ */
+public class ProviderRateLimiter {
+    private static ProviderRateLimiter instance;
+
+    private final Map<String, ProviderBudget> budgets = new ConcurrentHashMap<>();
+
+    private ProviderRateLimiter() {
+    }
+
+    public static ProviderRateLimiter getInstance() {
+        if (instance == null) {
+            synchronized (ProviderRateLimiter.class) {
+                if (instance == null) {
+                    instance = new ProviderRateLimiter();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 根据配置重建各服务商的配额
+     * Provider上单独配置的限额优先；全局限流未启用时只对单独配置了限额的服务商生效
+     */
+    public void configure(ConcurrencySettings settings, List<Provider> providers) {
+        Map<String, ProviderBudget> newBudgets = new HashMap<>();
+        for (Provider provider : providers) {
+            if (provider.getName() == null) {
+                continue;
+            }
+
+            boolean hasOverride = provider.getRequestsPerMinute() != null || provider.getTokensPerMinute() != null;
+            if (!settings.isEnableRateLimit() && !hasOverride) {
+                continue;
+            }
+
+            int rpm = provider.getRequestsPerMinute() != null ? provider.getRequestsPerMinute()
+                : settings.isEnableRateLimit() ? settings.getRequestsPerMinute() : 0;
+            int tpm = provider.getTokensPerMinute() != null ? provider.getTokensPerMinute()
+                : settings.isEnableRateLimit() ? settings.getTokensPerMinute() : 0;
+            int rph = settings.isEnableRateLimit() ? settings.getRequestsPerHour() : 0;
+
+            if (rpm > 0 || tpm > 0 || rph > 0) {
+                newBudgets.put(provider.getName(), new ProviderBudget(provider.getName(), rpm, rph, tpm,
+                    settings.getRequestTimeoutMs(), settings.getQueueCapacity(),
+                    System::currentTimeMillis, () -> ConcurrencyManager.getInstance().getScheduler()));
+            }
+        }
+
+        // 旧配额中仍在等待的请求直接放行，由新配额接管后续请求
+        List<ProviderBudget> oldBudgets = new ArrayList<>(budgets.values());
+        budgets.clear();
+        budgets.putAll(newBudgets);
+        for (ProviderBudget budget : oldBudgets) {
+            budget.releaseAll();
+        }
+    }
+
+    /**
+     * 申请一次请求的配额
+     *
+     * @param providerName 服务商名称
+     * @param estimatedTokens 估算的token数（提示词加最大输出）
+     * @return 获得配额时完成的Future，未配置限流的服务商立即完成；
+     *         等待队列已满时以RejectedExecutionException失败，等待超时时以TimeoutException失败
+     */
+    public CompletableFuture<Permit> acquire(String providerName, int estimatedTokens) {
+        ProviderBudget budget = providerName != null ? budgets.get(providerName) : null;
+        if (budget == null) {
+            return CompletableFuture.completedFuture(Permit.UNLIMITED);
+        }
+        return budget.acquire(Math.max(0, estimatedTokens));
+    }
+
+    /**
+     * 获取服务商剩余配额的比例，用于负载均衡
+     *
+     * @return 0-1，未配置限流时为1，有请求在等待配额时为0
+     */
+    public double getBudgetFraction(String providerName) {
+        ProviderBudget budget = providerName != null ? budgets.get(providerName) : null;
+        return budget != null ? budget.getBudgetFraction() : 1.0;
+    }
+
+    /**
+     * 获取各服务商的限流统计
+     */
+    public Map<String, RateLimitStats> getStats() {
+        Map<String, RateLimitStats> stats = new HashMap<>();
+        for (ProviderBudget budget : budgets.values()) {
+            stats.put(budget.providerName, budget.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 已获得的配额，响应后按实际token用量修正
+     */
+    public static class Permit {
+        static final Permit UNLIMITED = new Permit(null, 0);
+
+        private final ProviderBudget budget;
+        private final long reservedTokens;
+        private final AtomicBoolean reconciled = new AtomicBoolean(false);
+
+        Permit(ProviderBudget budget, long reservedTokens) {
+            this.budget = budget;
+            this.reservedTokens = reservedTokens;
+        }
+
+        /**
+         * 按实际用量修正预扣的token
+         *
+         * @param actualTokens 实际使用的token数，未知时传负数保留预扣值，请求未到达服务商时传0退还
+         */
+        public void reconcile(int actualTokens) {
+            if (budget == null || budget.tokensPerMinute == null || actualTokens < 0 ||
+                !reconciled.compareAndSet(false, true)) {
+                return;
+            }
+            long delta = actualTokens - Math.min(reservedTokens, budget.tokensPerMinute.getCapacity());
+            budget.tokensPerMinute.adjust(delta);
+            if (delta < 0) {
+                // 退还了配额，等待中的请求可能已经可以发送
+                budget.drain();
+            }
+        }
+    }
+
+    /**
+     * 单个服务商的配额和等待队列
+     */
+    static class ProviderBudget {
+        final String providerName;
+        final TokenBucket requestsPerMinute;
+        final TokenBucket requestsPerHour;
+        final TokenBucket tokensPerMinute;
+        final Deque<Waiter> waiters = new ArrayDeque<>();
+        final AtomicLong throttledRequests = new AtomicLong(0);
+        private final long maxWaitMs;
+        private final int maxWaiters;
+        private final LongSupplier clock;
+        private final Supplier<ScheduledExecutorService> scheduler;
+        ScheduledFuture<?> wakeup;
+
+        /**
+         * @param maxWaitMs 等待配额的最长时间
+         * @param maxWaiters 最多同时等待的请求数
+         */
+        ProviderBudget(String providerName, int rpm, int rph, int tpm, long maxWaitMs, int maxWaiters,
+                       LongSupplier clock, Supplier<ScheduledExecutorService> scheduler) {
+            this.providerName = providerName;
+            this.requestsPerMinute = rpm > 0 ? new TokenBucket(rpm, TimeUnit.MINUTES.toMillis(1), clock) : null;
+            this.requestsPerHour = rph > 0 ? new TokenBucket(rph, TimeUnit.HOURS.toMillis(1), clock) : null;
+            this.tokensPerMinute = tpm > 0 ? new TokenBucket(tpm, TimeUnit.MINUTES.toMillis(1), clock) : null;
+            this.maxWaitMs = Math.max(0, maxWaitMs);
+            this.maxWaiters = Math.max(1, maxWaiters);
+            this.clock = clock;
+            this.scheduler = scheduler;
+        }
+
+        CompletableFuture<Permit> acquire(int estimatedTokens) {
+            Waiter waiter = new Waiter(estimatedTokens, clock.getAsLong() + maxWaitMs);
+            synchronized (this) {
+                if (waiters.size() >= maxWaiters) {
+                    return CompletableFuture.failedFuture(new RejectedExecutionException(
+                        "Rate limit queue is full for provider " + providerName));
+                }
+                waiters.addLast(waiter);
+            }
+            waiter.future.whenComplete((permit, throwable) -> {
+                if (waiter.future.isCancelled()) {
+                    synchronized (this) {
+                        waiters.remove(waiter); // 取消的请求不再占用等待名额
+                    }
+                }
+            });
+            drain();
+
+            if (!waiter.future.isDone()) {
+                throttledRequests.incrementAndGet();
+                LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+                    "Request waiting for rate limit budget of provider " + providerName +
+                    " (estimated tokens: " + estimatedTokens + ")");
+            }
+            return waiter.future;
+        }
+
+        /**
+         * 按FIFO顺序放行配额足够的请求，队首不足时在配额恢复后再试
+         * 各请求的等待上限相同，队首的截止时间最早；队首在截止前等不到配额时直接超时，由下一个请求成为队首
+         */
+        void drain() {
+            List<Waiter> granted = new ArrayList<>();
+            List<Waiter> timedOut = new ArrayList<>();
+            synchronized (this) {
+                long now = clock.getAsLong();
+                while (!waiters.isEmpty()) {
+                    Waiter head = waiters.peekFirst();
+                    if (head.future.isDone()) {
+                        waiters.pollFirst(); // 等待期间已被取消
+                        continue;
+                    }
+
+                    long waitMs = Math.max(waitTime(requestsPerMinute, 1),
+                        Math.max(waitTime(requestsPerHour, 1), waitTime(tokensPerMinute, head.estimatedTokens)));
+                    if (waitMs > 0 && now + waitMs > head.deadline) {
+                        waiters.pollFirst();
+                        timedOut.add(head);
+                        continue;
+                    }
+                    if (waitMs > 0) {
+                        scheduleWakeup(waitMs);
+                        break;
+                    }
+
+                    consume(requestsPerMinute, 1);
+                    consume(requestsPerHour, 1);
+                    consume(tokensPerMinute, head.estimatedTokens);
+                    waiters.pollFirst();
+                    granted.add(head);
+                }
+            }
+
+            for (Waiter waiter : timedOut) {
+                waiter.future.completeExceptionally(new TimeoutException(
+                    "Request timeout waiting for rate limit budget of provider " + providerName));
+            }
+            for (Waiter waiter : granted) {
+                Permit permit = new Permit(this, waiter.estimatedTokens);
+                if (!waiter.future.complete(permit)) {
+                    // 已被取消，退还预扣的配额
+                    permit.reconcile(0);
+                }
+            }
+        }
+
+        private void scheduleWakeup(long delayMs) {
+            if (wakeup != null && !wakeup.isDone()) {
+                return;
+            }
+            wakeup = scheduler.get().schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 配置变更时放行所有等待中的请求
+         */
+        void releaseAll() {
+            List<Waiter> pending;
+            synchronized (this) {
+                pending = new ArrayList<>(waiters);
+                waiters.clear();
+                if (wakeup != null) {
+                    wakeup.cancel(false);
+                }
+            }
+            for (Waiter waiter : pending) {
+                waiter.future.complete(Permit.UNLIMITED);
+            }
+        }
+
+        synchronized double getBudgetFraction() {
+            if (!waiters.isEmpty()) {
+                return 0.0;
+            }
+            return Math.min(fraction(requestsPerMinute), Math.min(fraction(requestsPerHour), fraction(tokensPerMinute)));
+        }
+
+        private static double fraction(TokenBucket bucket) {
+            return bucket != null ? Math.max(0.0, (double) bucket.getAvailable() / bucket.getCapacity()) : 1.0;
+        }
+
+        synchronized RateLimitStats getStats() {
+            return new RateLimitStats(
+                waiters.size(),
+                throttledRequests.get(),
+                requestsPerMinute != null ? requestsPerMinute.getAvailable() : -1,
+                tokensPerMinute != null ? tokensPerMinute.getAvailable() : -1
+            );
+        }
+
+        private static long waitTime(TokenBucket bucket, long amount) {
+            return bucket != null ? bucket.getWaitTimeMs(amount) : 0;
+        }
+
+        private static void consume(TokenBucket bucket, long amount) {
+            if (bucket != null) {
+                bucket.consume(amount);
+            }
+        }
+    }
+
+    /**
+     * 等待配额的请求
+     */
+    private static class Waiter {
+        final int estimatedTokens;
+        final long deadline;
+        final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        Waiter(int estimatedTokens, long deadline) {
+            this.estimatedTokens = estimatedTokens;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 单个服务商的限流统计
+     */
+    public static class RateLimitStats {
+        public final int waitingRequests;
+        public final long throttledRequests;
+        public final long availableRequests; // -1表示未限制
+        public final long availableTokens;   // -1表示未限制
+
+        public RateLimitStats(int waitingRequests, long throttledRequests, long availableRequests, long availableTokens) {
+            this.waitingRequests = waitingRequests;
+            this.throttledRequests = throttledRequests;
+            this.availableRequests = availableRequests;
+            this.availableTokens = availableTokens;
+        }
+    }
+}
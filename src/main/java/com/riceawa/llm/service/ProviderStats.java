@@ -0,0 +1,196 @@
+package com.riceawa.llm.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 单个服务商的实时流量统计
+ * 保留最近一段时间的响应延迟样本和请求结果，用于计算延迟分位数、EWMA延迟和错误率，
+ * 并记录最近一次错误，供被动健康检查使用。所有方法线程安全。
+ */
+public class ProviderStats {
+    /** 保留的延迟样本数 */
+    private static final int LATENCY_WINDOW = 100;
+    /** 计算分位数所需的最少样本数，样本太少时分位数没有参考价值 */
+    static final int MIN_SAMPLES = 20;
+    /** 计算错误率的最近请求数 */
+    private static final int OUTCOME_WINDOW = 50;
+    /** EWMA延迟的平滑系数 */
+    private static final double EWMA_ALPHA = 0.3;
+    /** 负载评分中错误率和剩余配额的下限，避免除零 */
+    private static final double MIN_FACTOR = 0.05;
+    /** 还没有发生过的事件的时间 */
+    public static final long NEVER = Long.MIN_VALUE;
+
+    private final String providerName;
+    private final long[] latencies = new long[LATENCY_WINDOW];
+    private int sampleCount = 0;
+    private int nextIndex = 0;
+    private double ewmaLatencyMs = -1;
+
+    private final boolean[] failures = new boolean[OUTCOME_WINDOW];
+    private int outcomeCount = 0;
+    private int nextOutcome = 0;
+    private int failureCount = 0;
+    private int inFlight = 0;
+
+    private final LongSupplier clock;
+    private long lastActivityTime = NEVER;
+    private long lastSuccessTime = NEVER;
+    private long lastErrorTime = NEVER;
+    private ProviderHealthChecker.HealthStatus.ErrorType lastErrorType;
+    private String lastErrorMessage;
+
+    public ProviderStats(String providerName) {
+        this(providerName, System::currentTimeMillis);
+    }
+
+    ProviderStats(String providerName, LongSupplier clock) {
+        this.providerName = providerName;
+        this.clock = clock;
+    }
+
+    public String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * 记录一次成功响应的延迟
+     */
+    public synchronized void recordLatency(long latencyMs) {
+        latencies[nextIndex] = Math.max(0, latencyMs);
+        nextIndex = (nextIndex + 1) % LATENCY_WINDOW;
+        sampleCount = Math.min(LATENCY_WINDOW, sampleCount + 1);
+        ewmaLatencyMs = ewmaLatencyMs < 0 ? latencyMs : EWMA_ALPHA * latencyMs + (1 - EWMA_ALPHA) * ewmaLatencyMs;
+    }
+
+    /**
+     * 记录一次请求的结果
+     *
+     * @param success false表示服务商侧的失败（429、5xx、超时、网络错误）
+     */
+    public synchronized void recordOutcome(boolean success) {
+        if (outcomeCount == OUTCOME_WINDOW && failures[nextOutcome]) {
+            failureCount--;
+        }
+        failures[nextOutcome] = !success;
+        if (!success) {
+            failureCount++;
+        }
+        nextOutcome = (nextOutcome + 1) % OUTCOME_WINDOW;
+        outcomeCount = Math.min(OUTCOME_WINDOW, outcomeCount + 1);
+
+        lastActivityTime = clock.getAsLong();
+        if (success) {
+            lastSuccessTime = lastActivityTime;
+        }
+    }
+
+    /**
+     * 记录最近一次错误的类型和信息
+     */
+    public synchronized void recordError(ProviderHealthChecker.HealthStatus.ErrorType errorType, String message) {
+        lastErrorTime = clock.getAsLong();
+        lastActivityTime = lastErrorTime;
+        lastErrorType = errorType;
+        lastErrorMessage = message;
+    }
+
+    public synchronized void onRequestStart() {
+        inFlight++;
+    }
+
+    public synchronized void onRequestEnd() {
+        inFlight = Math.max(0, inFlight - 1);
+    }
+
+    /**
+     * 计算最近响应延迟的分位数
+     *
+     * @param percentile 分位（0-1），例如0.95
+     * @return 延迟毫秒数，样本不足时返回-1
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        if (sampleCount < MIN_SAMPLES) {
+            return -1;
+        }
+        long[] sorted = new long[sampleCount];
+        System.arraycopy(latencies, 0, sorted, 0, sampleCount);
+        java.util.Arrays.sort(sorted);
+        int index = (int) Math.ceil(Math.min(1.0, Math.max(0.0, percentile)) * sampleCount) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 最近请求的EWMA延迟
+     *
+     * @return 毫秒数，还没有样本时返回-1
+     */
+    public synchronized double getEwmaLatencyMs() {
+        return ewmaLatencyMs;
+    }
+
+    /**
+     * 最近请求中服务商侧失败的比例
+     */
+    public synchronized double getErrorRate() {
+        return outcomeCount > 0 ? (double) failureCount / outcomeCount : 0.0;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * 错误率窗口中的请求数
+     */
+    public synchronized int getOutcomeCount() {
+        return outcomeCount;
+    }
+
+    /**
+     * 距离最近一次请求结束的时间
+     *
+     * @return 毫秒数，还没有请求时返回Long.MAX_VALUE
+     */
+    public synchronized long getIdleMs() {
+        return lastActivityTime != NEVER ? clock.getAsLong() - lastActivityTime : Long.MAX_VALUE;
+    }
+
+    public synchronized long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
+    public synchronized long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+
+    public synchronized long getLastErrorTime() {
+        return lastErrorTime;
+    }
+
+    public synchronized ProviderHealthChecker.HealthStatus.ErrorType getLastErrorType() {
+        return lastErrorType;
+    }
+
+    public synchronized String getLastErrorMessage() {
+        return lastErrorMessage;
+    }
+
+    /**
+     * 计算负载评分，越低越适合接收新请求
+     * 以EWMA延迟乘以排队深度估计新请求的等待时间，再按错误率和剩余限流配额放大
+     *
+     * @param budgetFraction 剩余限流配额比例（0-1），未限流时为1
+     * @param defaultLatencyMs 还没有延迟样本时使用的延迟
+     */
+    public synchronized double getLoadScore(double budgetFraction, double defaultLatencyMs) {
+        double latency = ewmaLatencyMs >= 0 ? ewmaLatencyMs : defaultLatencyMs;
+        double successFactor = Math.max(MIN_FACTOR, 1.0 - getErrorRate());
+        double budgetFactor = Math.max(MIN_FACTOR, Math.min(1.0, budgetFraction));
+        return latency * (inFlight + 1) / successFactor / budgetFactor;
+    }
+}
@@ -0,0 +1,257 @@
+package com.riceawa.llm.service;
+
+import com.riceawa.llm.config.ConcurrencySettings;
+import com.riceawa.llm.config.Provider;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 请求重试策略
+ * 按状态码判断是否可重试，优先遵循服务商的Retry-After等响应头，否则使用去相关抖动（decorrelated jitter）退避，
+ * 避免大量玩家的请求在服务商故障后同时重试。
+ */
+public class RetryPolicy {
+    /** 可重试的HTTP状态码 */
+    private static final Set<Integer> RETRYABLE_STATUS_CODES = Set.of(408, 429, 500, 502, 503, 504);
+
+    /** 服务商限流额度的响应头后缀，与x-ratelimit-remaining和x-ratelimit-reset组合 */
+    private static final String[] RATE_LIMIT_BUCKETS = {"-requests", "-tokens", ""};
+
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final double backoffMultiplier;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, double backoffMultiplier) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = Math.max(1, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+        this.backoffMultiplier = Math.max(1.0, backoffMultiplier);
+    }
+
+    /**
+     * 根据全局并发设置和服务商的单独配置创建
+     */
+    public static RetryPolicy from(ConcurrencySettings settings, Provider provider) {
+        int retries = provider != null && provider.getMaxRetryAttempts() != null
+            ? provider.getMaxRetryAttempts() : settings.getMaxRetryAttempts();
+        long delayMs = provider != null && provider.getRetryDelayMs() != null
+            ? provider.getRetryDelayMs() : settings.getRetryDelayMs();
+        int maxAttempts = settings.isEnableRetry() ? retries + 1 : 1;
+        return new RetryPolicy(maxAttempts, delayMs, settings.getMaxRetryDelayMs(), settings.getRetryBackoffMultiplier());
+    }
+
+    /**
+     * 最大尝试次数（含第一次）
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 判断失败是否可以重试
+     */
+    public boolean isRetryable(Throwable e) {
+        if (e instanceof LLMHttpException httpException) {
+            return isRetryableStatus(httpException.getStatusCode());
+        }
+        if (e instanceof IOException) {
+            return !"Canceled".equals(e.getMessage()); // 网络错误通常可以重试，主动取消除外
+        }
+        return false;
+    }
+
+    public static boolean isRetryableStatus(int statusCode) {
+        return RETRYABLE_STATUS_CODES.contains(statusCode);
+    }
+
+    /**
+     * 计算下一次重试前的等待时间
+     *
+     * @param previousDelayMs 上一次的等待时间，第一次重试时传0
+     * @param cause 本次失败的原因
+     * @return 等待毫秒数；Retry-After要求的等待超过上限时返回-1，表示不应重试
+     */
+    public long nextDelayMs(long previousDelayMs, Throwable cause) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (cause instanceof LLMHttpException httpException && httpException.getRetryAfterMs() >= 0) {
+            long hint = httpException.getRetryAfterMs();
+            if (hint > maxDelayMs) {
+                return -1;
+            }
+            // 在服务商要求的时间之后再加少量抖动，避免所有请求在同一时刻重试
+            return hint + random.nextLong(Math.min(baseDelayMs, 1000) + 1);
+        }
+
+        if (cause instanceof LLMHttpException httpException && httpException.getRateLimitResetMs() >= 0) {
+            // 限流重置时间只是参考，窗口较长时最多等待上限后重试，不放弃重试
+            long reset = httpException.getRateLimitResetMs();
+            return Math.min(maxDelayMs, reset + random.nextLong(Math.min(baseDelayMs, 1000) + 1));
+        }
+
+        // 去相关抖动：在[base, 上次等待 * 倍数]之间随机
+        long previous = Math.max(baseDelayMs, previousDelayMs);
+        long upper = Math.max(baseDelayMs + 1, (long) (previous * backoffMultiplier));
+        return Math.min(maxDelayMs, random.nextLong(baseDelayMs, upper + 1));
+    }
+
+    /**
+     * 从响应头中解析服务商要求的等待时间
+     * 依次检查retry-after-ms和Retry-After（秒数或HTTP日期）
+     *
+     * @param header 按名称读取响应头的函数
+     * @param nowMillis 当前时间，用于计算HTTP日期格式的Retry-After
+     * @return 等待毫秒数，没有相关响应头时返回-1
+     */
+    public static long parseRetryAfterMs(Function<String, String> header, long nowMillis) {
+        String retryAfterMs = header.apply("retry-after-ms");
+        if (retryAfterMs != null) {
+            try {
+                return Math.max(0, (long) Double.parseDouble(retryAfterMs.trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        String retryAfter = header.apply("Retry-After");
+        if (retryAfter != null) {
+            String value = retryAfter.trim();
+            try {
+                return Math.max(0, (long) (Double.parseDouble(value) * 1000));
+            } catch (NumberFormatException ignored) {
+            }
+            try {
+                long when = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                return Math.max(0, when - nowMillis);
+            } catch (Exception ignored) {
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * 从429响应的x-ratelimit-*响应头中解析限流额度的重置时间
+     * 只看x-ratelimit-remaining-*为0的已耗尽额度；都没有标明耗尽时取最早的重置时间。
+     * 例如请求数1秒后重置、token数6分钟后重置而耗尽的是请求数时，返回1秒
+     *
+     * @return 等待毫秒数，没有相关响应头时返回-1
+     */
+    public static long parseRateLimitResetMs(Function<String, String> header) {
+        long exhausted = -1;
+        long earliest = -1;
+        for (String bucket : RATE_LIMIT_BUCKETS) {
+            String value = header.apply("x-ratelimit-reset" + bucket);
+            long reset = value != null ? parseDurationMs(value.trim()) : -1;
+            if (reset < 0) {
+                continue;
+            }
+            earliest = earliest < 0 ? reset : Math.min(earliest, reset);
+            String remaining = header.apply("x-ratelimit-remaining" + bucket);
+            if (remaining != null && remaining.trim().equals("0")) {
+                exhausted = Math.max(exhausted, reset);
+            }
+        }
+        return exhausted >= 0 ? exhausted : earliest;
+    }
+
+    /**
+     * 解析"1s"、"6m0s"、"250ms"、"1.5s"或纯秒数格式的时长
+     *
+     * @return 毫秒数，无法解析时返回-1
+     */
+    static long parseDurationMs(String value) {
+        if (value.isEmpty()) {
+            return -1;
+        }
+        try {
+            return (long) (Double.parseDouble(value) * 1000);
+        } catch (NumberFormatException ignored) {
+        }
+
+        Matcher matcher = DURATION_PART.matcher(value);
+        double total = 0;
+        int end = 0;
+        while (matcher.find()) {
+            if (matcher.start() != end) {
+                return -1;
+            }
+            double amount = Double.parseDouble(matcher.group(1));
+            switch (matcher.group(2)) {
+                case "h" -> total += amount * 3_600_000;
+                case "m" -> total += amount * 60_000;
+                case "s" -> total += amount * 1000;
+                default -> total += amount;
+            }
+            end = matcher.end();
+        }
+        return end == value.length() && end > 0 ? (long) Math.ceil(total) : -1;
+    }
+
+    /**
+     * 重试预算
+     * 每个请求存入一定比例的重试额度，每次重试消耗1，另有按时间补充的最低额度；
+     * 服务商整体故障时限制重试总量，避免重试流量放大故障。
+     */
+    public static class RetryBudget {
+        private static final double MAX_BALANCE = 10;
+        private static final double MIN_RETRIES_PER_SECOND = 1;
+
+        private final double ratio;
+        private final LongSupplier clock;
+        private double balance = MAX_BALANCE;
+        private long lastRefillTime;
+
+        /**
+         * @param ratio 每个请求可带来的重试额度，例如0.2表示重试量最多为请求量的20%
+         */
+        public RetryBudget(double ratio) {
+            this(ratio, System::currentTimeMillis);
+        }
+
+        RetryBudget(double ratio, LongSupplier clock) {
+            this.ratio = Math.max(0, ratio);
+            this.clock = clock;
+            this.lastRefillTime = clock.getAsLong();
+        }
+
+        /**
+         * 记录一次新请求（不含重试）
+         */
+        public synchronized void onRequest() {
+            refill();
+            balance = Math.min(MAX_BALANCE, balance + ratio);
+        }
+
+        /**
+         * 尝试消耗一次重试额度
+         */
+        public synchronized boolean tryAcquireRetry() {
+            refill();
+            if (balance >= 1) {
+                balance -= 1;
+                return true;
+            }
+            return false;
+        }
+
+        private void refill() {
+            long now = clock.getAsLong();
+            long elapsed = now - lastRefillTime;
+            if (elapsed > 0) {
+                balance = Math.min(MAX_BALANCE, balance + elapsed * MIN_RETRIES_PER_SECOND / 1000.0);
+                lastRefillTime = now;
+            }
+        }
+    }
+}
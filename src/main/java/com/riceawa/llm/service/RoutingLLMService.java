@@ -0,0 +1,592 @@
+package com.riceawa.llm.service;
+
+import com.google.gson.Gson;
+import com.riceawa.llm.cache.HashedNgramEmbedder;
+import com.riceawa.llm.cache.ResponseCache;
+import com.riceawa.llm.cache.SemanticCache;
+import com.riceawa.llm.config.ConcurrencySettings;
+import com.riceawa.llm.config.LLMChatConfig;
+import com.riceawa.llm.config.Provider;
+import com.riceawa.llm.core.ConcurrencyManager;
+import com.riceawa.llm.core.LLMConfig;
+import com.riceawa.llm.core.LLMContext;
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMResponse;
+import com.riceawa.llm.core.LLMService;
+import com.riceawa.llm.core.RequestPriority;
+import com.riceawa.llm.core.SingleFlight;
+import com.riceawa.llm.logging.LogManager;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 路由服务 - 在当前默认服务商之上做请求路由
+ * 启用负载均衡时，在默认服务商和其他支持同一模型的服务商中选择负载评分最低的一个；
+ * 启用对冲请求时，主服务商超过近期P95延迟仍未响应，就把相同请求发给支持同一模型的备用服务商，
+ * 采用先返回的成功结果并取消另一个请求。都未启用时直接转发给默认服务商。
+ * 选中的服务商熔断时改用其配置的备用服务商，没有可用的备用服务商时由熔断器直接返回失败。
+ * temperature为0或调用方允许时，完全相同的进行中请求合并为一次上游调用。
+ * 调用方指定了缓存作用域时，先查找响应缓存，命中则不发送请求；会话中的第一个问题还会在语义缓存中查找相似的问题。
+ */
+public class RoutingLLMService implements LLMService {
+    /** 对冲阈值使用的延迟分位 */
+    private static final double HEDGE_PERCENTILE = 0.95;
+    /** 所有候选服务商都没有延迟样本时使用的估计延迟 */
+    private static final double DEFAULT_LATENCY_MS = 1000;
+
+    private final LLMServiceManager serviceManager;
+
+    // 对冲统计
+    private final AtomicLong routedRequests = new AtomicLong(0);
+    private final AtomicLong hedgedRequests = new AtomicLong(0);
+    private final AtomicLong hedgeWins = new AtomicLong(0);
+    private final AtomicLong failovers = new AtomicLong(0);
+
+    private final SingleFlight<String, LLMResponse> coalescer = new SingleFlight<>();
+    private final Gson gson = new Gson();
+    private final ResponseCache responseCache;
+    private final SemanticCache semanticCache;
+
+    public RoutingLLMService(LLMServiceManager serviceManager) {
+        this.serviceManager = serviceManager;
+        ConcurrencySettings defaults = ConcurrencySettings.createDefault();
+        this.responseCache = new ResponseCache(defaults.getResponseCacheMaxEntries(),
+            defaults.getResponseCacheTtlMs(), null, defaults.getResponseCacheDiskMaxEntries());
+        this.semanticCache = new SemanticCache(new HashedNgramEmbedder(), defaults.getSemanticCacheMaxEntries(),
+            defaults.getSemanticCacheThreshold(), defaults.getResponseCacheTtlMs());
+    }
+
+    /**
+     * 应用响应缓存配置，磁盘层保存在配置目录下
+     */
+    public void configure(ConcurrencySettings settings) {
+        Path diskDir = settings.isEnableResponseCacheDisk()
+            ? FabricLoader.getInstance().getConfigDir().resolve("lllmchat").resolve("response_cache")
+            : null;
+        responseCache.configure(settings.getResponseCacheMaxEntries(), settings.getResponseCacheTtlMs(),
+            diskDir, settings.getResponseCacheDiskMaxEntries());
+        semanticCache.configure(settings.getSemanticCacheMaxEntries(), settings.getSemanticCacheThreshold(),
+            settings.getResponseCacheTtlMs());
+    }
+
+    private LLMService primary() {
+        return serviceManager.getService(serviceManager.getDefaultServiceName());
+    }
+
+    /**
+     * 选择处理请求的服务商
+     * 未启用负载均衡时使用默认服务商；启用时在默认服务商和其他支持该模型的服务商中选择负载评分最低的
+     */
+    private String selectPrimary(String model) {
+        String defaultName = serviceManager.getDefaultServiceName();
+        if (!LLMChatConfig.getInstance().getConcurrencySettings().isEnableLoadBalancing()) {
+            return defaultName;
+        }
+
+        List<String> candidates = new ArrayList<>();
+        if (serviceManager.getService(defaultName) != null && ProviderMonitor.getInstance().isCallPermitted(defaultName)) {
+            candidates.add(defaultName);
+        }
+        for (Provider provider : LLMChatConfig.getInstance().getProviders()) {
+            if (isCandidate(provider, defaultName, model)) {
+                candidates.add(provider.getName());
+            }
+        }
+        if (candidates.isEmpty()) {
+            return defaultName;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+
+        // 还没有延迟样本的服务商按已知的最低延迟估计，使其能分到请求并积累样本
+        double knownMin = -1;
+        for (String name : candidates) {
+            double latency = ProviderMonitor.getInstance().getStats(name).getEwmaLatencyMs();
+            if (latency >= 0 && (knownMin < 0 || latency < knownMin)) {
+                knownMin = latency;
+            }
+        }
+        double defaultLatency = knownMin >= 0 ? knownMin : DEFAULT_LATENCY_MS;
+
+        String best = defaultName;
+        double bestScore = Double.MAX_VALUE;
+        for (String name : candidates) {
+            double score = ProviderMonitor.getInstance().getStats(name)
+                .getLoadScore(ProviderRateLimiter.getInstance().getBudgetFraction(name), defaultLatency);
+            if (score < bestScore) {
+                best = name;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 判断服务商能否替代指定服务商处理该模型的请求，熔断中的服务商不参与
+     */
+    private boolean isCandidate(Provider provider, String excludedName, String model) {
+        String name = provider.getName();
+        return name != null && !name.equals(excludedName) && provider.isValid() &&
+               provider.supportsModel(model) && serviceManager.getService(name) != null &&
+               ProviderMonitor.getInstance().isCallPermitted(name);
+    }
+
+    /**
+     * 服务商熔断时改用其配置的备用服务商
+     *
+     * @return 实际使用的服务商名称；备用服务商不可用时返回原服务商，由其熔断器直接失败
+     */
+    private String applyFailover(String providerName) {
+        if (ProviderMonitor.getInstance().isCallPermitted(providerName)) {
+            return providerName;
+        }
+        Provider provider = LLMChatConfig.getInstance().getProvider(providerName);
+        String fallbackName = provider != null ? provider.getFallbackProvider() : null;
+        if (fallbackName == null || fallbackName.equals(providerName) ||
+            serviceManager.getService(fallbackName) == null ||
+            !ProviderMonitor.getInstance().isCallPermitted(fallbackName)) {
+            return providerName;
+        }
+        failovers.incrementAndGet();
+        LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+            "Circuit breaker open for " + providerName + ", failing over to " + fallbackName);
+        return fallbackName;
+    }
+
+    /**
+     * 备用服务商不支持请求的模型时改用它的第一个模型
+     */
+    private static LLMConfig configFor(String providerName, LLMConfig config) {
+        Provider provider = LLMChatConfig.getInstance().getProvider(providerName);
+        if (provider == null || provider.getModels() == null || provider.getModels().isEmpty() ||
+            provider.supportsModel(config.getModel())) {
+            return config;
+        }
+        LLMConfig copy = new LLMConfig();
+        copy.setModel(provider.getModels().get(0));
+        copy.setTemperature(config.getTemperature());
+        copy.setMaxTokens(config.getMaxTokens());
+        copy.setTopP(config.getTopP());
+        copy.setFrequencyPenalty(config.getFrequencyPenalty());
+        copy.setPresencePenalty(config.getPresencePenalty());
+        copy.setStop(config.getStop());
+        copy.setStream(config.getStream());
+        copy.setTools(config.getTools());
+        copy.setToolChoice(config.getToolChoice());
+        return copy;
+    }
+
+    @Override
+    public CompletableFuture<LLMResponse> chat(List<LLMMessage> messages, LLMConfig config) {
+        return chat(messages, config, null);
+    }
+
+    @Override
+    public CompletableFuture<LLMResponse> chat(List<LLMMessage> messages, LLMConfig config, LLMContext context) {
+        String cacheKey = cacheKey(messages, config, context);
+        String question = semanticQuestion(messages, context);
+        LLMResponse cached = lookupCache(cacheKey, question, context);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        if (isCoalescable(config, context)) {
+            // 以序列化后的请求体为键，完全相同的进行中请求只发送一次
+            String key = ChatRequestBody.create(messages, config, false, gson).sha256();
+            return coalescer.execute(key, () -> cacheResponse(cacheKey, question, context, route(messages, config, context)));
+        }
+        return cacheResponse(cacheKey, question, context, route(messages, config, context));
+    }
+
+    /**
+     * 调用方指定了缓存作用域且启用了响应缓存时返回请求指纹，否则返回null
+     */
+    private static String cacheKey(List<LLMMessage> messages, LLMConfig config, LLMContext context) {
+        if (context == null || context.getCacheScope() == null ||
+            !LLMChatConfig.getInstance().getConcurrencySettings().isEnableResponseCache()) {
+            return null;
+        }
+        return ResponseCache.fingerprint(messages, config, context.getCacheScope());
+    }
+
+    /**
+     * 语义缓存只用于会话中的第一个问题，之后的问题依赖前面的对话，不能套用其他玩家的回答
+     *
+     * @return 除系统消息外只有一条用户消息时返回该消息，否则返回null
+     */
+    private static String semanticQuestion(List<LLMMessage> messages, LLMContext context) {
+        if (context == null || context.getCacheScope() == null ||
+            !LLMChatConfig.getInstance().getConcurrencySettings().isEnableSemanticCache()) {
+            return null;
+        }
+        LLMMessage question = null;
+        for (LLMMessage message : messages) {
+            if (message.getRole() == LLMMessage.MessageRole.SYSTEM) {
+                continue;
+            }
+            if (question != null || message.getRole() != LLMMessage.MessageRole.USER) {
+                return null;
+            }
+            question = message;
+        }
+        return question != null ? question.getContent() : null;
+    }
+
+    /**
+     * 先按请求指纹精确查找，未命中时再查找相似的问题
+     */
+    private LLMResponse lookupCache(String cacheKey, String question, LLMContext context) {
+        LLMResponse cached = cacheKey != null ? responseCache.get(cacheKey) : null;
+        if (cached == null && question != null) {
+            cached = semanticCache.lookup(context.getCacheScope(), question);
+        }
+        return cached;
+    }
+
+    /**
+     * 请求完成后在后台保存可缓存的回复，避免磁盘写入和向量化占用HTTP回调线程
+     */
+    private CompletableFuture<LLMResponse> cacheResponse(String cacheKey, String question, LLMContext context,
+                                                         CompletableFuture<LLMResponse> future) {
+        if (cacheKey != null) {
+            future.thenAccept(response -> {
+                if (ResponseCache.isCacheable(response)) {
+                    ConcurrencyManager.getInstance().getExecutor().execute(() -> {
+                        responseCache.put(cacheKey, response);
+                        if (question != null) {
+                            semanticCache.put(context.getCacheScope(), question, response.getModel(), response.getContent());
+                        }
+                    });
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * temperature为0的请求结果基本确定，可以直接共享；其他请求需要调用方明确允许
+     */
+    private static boolean isCoalescable(LLMConfig config, LLMContext context) {
+        if (!LLMChatConfig.getInstance().getConcurrencySettings().isEnableRequestCoalescing()) {
+            return false;
+        }
+        return (context != null && context.isCoalescable()) ||
+               (config.getTemperature() != null && config.getTemperature() == 0.0);
+    }
+
+    private CompletableFuture<LLMResponse> route(List<LLMMessage> messages, LLMConfig requestConfig, LLMContext context) {
+        String primaryName = applyFailover(selectPrimary(requestConfig.getModel()));
+        LLMConfig config = configFor(primaryName, requestConfig);
+        LLMService primary = serviceManager.getService(primaryName);
+        if (primary == null) {
+            LLMResponse errorResponse = new LLMResponse();
+            errorResponse.setError("No LLM service available");
+            return CompletableFuture.completedFuture(errorResponse);
+        }
+        routedRequests.incrementAndGet();
+
+        ConcurrencySettings settings = LLMChatConfig.getInstance().getConcurrencySettings();
+        boolean background = context != null && context.getPriority() == RequestPriority.BACKGROUND;
+        if (!settings.isEnableHedging() || background) {
+            return primary.chat(messages, config, context);
+        }
+
+        long hedgeDelayMs = ProviderMonitor.getInstance().getStats(primaryName).getLatencyPercentile(HEDGE_PERCENTILE);
+        String secondaryName = selectHedgeProvider(primaryName, config.getModel());
+        if (hedgeDelayMs < 0 || secondaryName == null) {
+            // 延迟样本不足或没有可用的备用服务商
+            return primary.chat(messages, config, context);
+        }
+        hedgeDelayMs = Math.max(settings.getHedgeMinDelayMs(), hedgeDelayMs);
+
+        return hedgedChat(primary, serviceManager.getService(secondaryName), secondaryName,
+            messages, config, context, hedgeDelayMs, settings.getMaxHedgeRatio());
+    }
+
+    /**
+     * 发送主请求，超过等待时间仍未完成时发送对冲请求
+     */
+    private CompletableFuture<LLMResponse> hedgedChat(LLMService primary, LLMService secondary, String secondaryName,
+                                                      List<LLMMessage> messages, LLMConfig config, LLMContext context,
+                                                      long hedgeDelayMs, double maxHedgeRatio) {
+        HedgeRace race = new HedgeRace();
+        race.primary = primary.chat(messages, config, context);
+        race.timer = ConcurrencyManager.getInstance().getScheduler().schedule(() -> {
+            // 对冲请求数受比例限制，避免服务商整体变慢时请求量翻倍
+            if (race.result.isDone() || hedgedRequests.get() >= routedRequests.get() * maxHedgeRatio) {
+                return;
+            }
+            hedgedRequests.incrementAndGet();
+            LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.DEBUG, "system",
+                "Primary provider slower than " + hedgeDelayMs + "ms, hedging request to " + secondaryName);
+            CompletableFuture<LLMResponse> hedge = secondary.chat(messages, config, context);
+            race.startHedge(hedge);
+            hedge.whenComplete((response, throwable) -> race.onHedgeDone(response, throwable));
+            if (race.result.isDone()) {
+                hedge.cancel(true); // 发出对冲请求的同时主请求已经完成
+            }
+        }, hedgeDelayMs, TimeUnit.MILLISECONDS);
+        race.primary.whenComplete((response, throwable) -> race.onPrimaryDone(response, throwable));
+
+        // 调用方取消时取消所有请求
+        race.result.whenComplete((response, throwable) -> {
+            if (race.result.isCancelled()) {
+                race.cancelAll();
+            }
+        });
+        return race.result;
+    }
+
+    /**
+     * 选择对冲使用的备用服务商：支持同一模型、已创建服务，近期延迟最低的优先
+     */
+    private String selectHedgeProvider(String primaryName, String model) {
+        String best = null;
+        long bestLatency = Long.MAX_VALUE;
+        for (Provider provider : LLMChatConfig.getInstance().getProviders()) {
+            if (!isCandidate(provider, primaryName, model)) {
+                continue;
+            }
+            String name = provider.getName();
+            long latency = ProviderMonitor.getInstance().getStats(name).getLatencyPercentile(0.5);
+            long rank = latency >= 0 ? latency : Long.MAX_VALUE - 1; // 没有样本的排在有样本的之后
+            if (best == null || rank < bestLatency) {
+                best = name;
+                bestLatency = rank;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 一次对冲请求的竞争状态
+     * 先到的成功响应胜出；一方失败时等待另一方，都失败时返回主请求的结果
+     */
+    private class HedgeRace {
+        final CompletableFuture<LLMResponse> result = new CompletableFuture<>();
+        CompletableFuture<LLMResponse> primary;
+        CompletableFuture<LLMResponse> hedge;
+        ScheduledFuture<?> timer;
+        LLMResponse primaryResponse;
+        Throwable primaryError;
+        boolean primaryDone;
+        boolean hedgeDone;
+
+        synchronized void startHedge(CompletableFuture<LLMResponse> hedge) {
+            this.hedge = hedge;
+        }
+
+        void onPrimaryDone(LLMResponse response, Throwable throwable) {
+            boolean finish;
+            synchronized (this) {
+                primaryDone = true;
+                primaryResponse = response;
+                primaryError = throwable;
+                // 成功，或者对冲请求尚未发出/已经失败时，直接采用主请求的结果
+                finish = isSuccess(response, throwable) || hedge == null || hedgeDone;
+            }
+            if (finish) {
+                timer.cancel(false);
+                complete(response, throwable);
+                cancel(hedge);
+            }
+        }
+
+        void onHedgeDone(LLMResponse response, Throwable throwable) {
+            boolean won;
+            boolean fallback;
+            synchronized (this) {
+                hedgeDone = true;
+                won = isSuccess(response, throwable);
+                fallback = !won && primaryDone;
+            }
+            if (won) {
+                if (result.complete(response)) {
+                    hedgeWins.incrementAndGet();
+                }
+                cancel(primary);
+            } else if (fallback) {
+                complete(primaryResponse, primaryError);
+            }
+        }
+
+        synchronized void cancelAll() {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            cancel(primary);
+            cancel(hedge);
+        }
+
+        private void complete(LLMResponse response, Throwable throwable) {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(response);
+            }
+        }
+
+        private void cancel(CompletableFuture<LLMResponse> future) {
+            if (future != null && !future.isDone()) {
+                future.cancel(true); // 取消会一直传递到OkHttp的Call.cancel()
+            }
+        }
+
+        private boolean isSuccess(LLMResponse response, Throwable throwable) {
+            return throwable == null && response != null && response.isSuccess();
+        }
+    }
+
+    /**
+     * 流式请求参与负载均衡，但已经在向玩家输出内容，不做对冲
+     */
+    @Override
+    public CompletableFuture<Void> chatStream(List<LLMMessage> messages, LLMConfig config, StreamCallback callback) {
+        return chatStream(messages, config, null, callback);
+    }
+
+    @Override
+    public CompletableFuture<Void> chatStream(List<LLMMessage> messages, LLMConfig config, LLMContext context,
+                                              StreamCallback callback) {
+        String cacheKey = cacheKey(messages, config, context);
+        if (cacheKey != null) {
+            String question = semanticQuestion(messages, context);
+            LLMResponse cached = lookupCache(cacheKey, question, context);
+            if (cached != null) {
+                // 缓存的回复作为一个文本块一次性输出
+                callback.onChunk(cached.getContent());
+                callback.onComplete(cached);
+                return CompletableFuture.completedFuture(null);
+            }
+            callback = new CachingStreamCallback(cacheKey, question, context, callback);
+        }
+
+        String primaryName = applyFailover(selectPrimary(config.getModel()));
+        LLMService primary = serviceManager.getService(primaryName);
+        if (primary == null) {
+            callback.onError(new IllegalStateException("No LLM service available"));
+            return CompletableFuture.completedFuture(null);
+        }
+        return primary.chatStream(messages, configFor(primaryName, config), context, callback);
+    }
+
+    /**
+     * 流式请求完成时保存可缓存的回复
+     */
+    private class CachingStreamCallback implements StreamCallback {
+        private final String cacheKey;
+        private final String question;
+        private final LLMContext context;
+        private final StreamCallback delegate;
+
+        CachingStreamCallback(String cacheKey, String question, LLMContext context, StreamCallback delegate) {
+            this.cacheKey = cacheKey;
+            this.question = question;
+            this.context = context;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onChunk(String chunk) {
+            delegate.onChunk(chunk);
+        }
+
+        @Override
+        public void onToolCallDelta(int index, String toolCallId, String functionName, String argumentsDelta) {
+            delegate.onToolCallDelta(index, toolCallId, functionName, argumentsDelta);
+        }
+
+        @Override
+        public void onComplete(LLMResponse response) {
+            cacheResponse(cacheKey, question, context, CompletableFuture.completedFuture(response));
+            delegate.onComplete(response);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            delegate.onError(error);
+        }
+    }
+
+    @Override
+    public List<String> getSupportedModels() {
+        LLMService primary = primary();
+        return primary != null ? primary.getSupportedModels() : List.of();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        LLMService primary = primary();
+        return primary != null && primary.isAvailable();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> healthCheck() {
+        LLMService primary = primary();
+        return primary != null ? primary.healthCheck() : CompletableFuture.completedFuture(false);
+    }
+
+    @Override
+    public String getServiceName() {
+        LLMService primary = primary();
+        return primary != null ? primary.getServiceName() : "routing";
+    }
+
+    /**
+     * 获取对冲请求统计
+     */
+    public HedgeStats getHedgeStats() {
+        return new HedgeStats(routedRequests.get(), hedgedRequests.get(), hedgeWins.get());
+    }
+
+    /**
+     * 获取因合并到相同的进行中请求而没有单独发送的请求数
+     */
+    public long getCoalescedCount() {
+        return coalescer.getCoalescedCount();
+    }
+
+    /**
+     * 获取响应缓存，用于查看统计和清空缓存
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * 获取语义缓存，可以通过它替换向量化实现
+     */
+    public SemanticCache getSemanticCache() {
+        return semanticCache;
+    }
+
+    /**
+     * 获取因熔断改用备用服务商的次数
+     */
+    public long getFailoverCount() {
+        return failovers.get();
+    }
+
+    /**
+     * 对冲请求统计
+     */
+    public static class HedgeStats {
+        public final long routedRequests;
+        public final long hedgedRequests;
+        public final long hedgeWins; // 对冲请求先于主请求成功返回的次数
+
+        public HedgeStats(long routedRequests, long hedgedRequests, long hedgeWins) {
+            this.routedRequests = routedRequests;
+            this.hedgedRequests = hedgedRequests;
+            this.hedgeWins = hedgeWins;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.riceawa.llm.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMResponse;
+import com.riceawa.llm.core.LLMService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SSE流式响应组装器
+ * 逐行解析OpenAI兼容的server-sent events，实时回调增量内容，并在结束时组装完整的LLMResponse
+ */
+public class StreamResponseAssembler {
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE_MARKER = "[DONE]";
+
+    private final LLMService.StreamCallback callback;
+    private final StringBuilder eventData = new StringBuilder();
+    private final StringBuilder content = new StringBuilder();
+    private final Map<Integer, ToolCallBuilder> toolCalls = new TreeMap<>();
+
+    private String id;
+    private String model;
+    private String role;
+    private String finishReason;
+    private LLMResponse.Usage usage;
+    private String error;
+    private boolean done = false;
+    private int chunkCount = 0;
+
+    public StreamResponseAssembler(LLMService.StreamCallback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * 处理一行SSE数据
+     *
+     * @param line 原始行（不含换行符）
+     * @return 是否已收到结束标记
+     */
+    public boolean acceptLine(String line) {
+        if (done) {
+            return true;
+        }
+
+        // 空行表示一个事件结束
+        if (line == null || line.isEmpty()) {
+            dispatchEvent();
+            return done;
+        }
+
+        // 注释行（部分服务商用作心跳）
+        if (line.startsWith(":")) {
+            return false;
+        }
+
+        if (line.startsWith(DATA_PREFIX)) {
+            String data = line.substring(DATA_PREFIX.length());
+            if (data.startsWith(" ")) {
+                data = data.substring(1);
+            }
+            if (eventData.length() > 0) {
+                eventData.append('\n');
+            }
+            eventData.append(data);
+        }
+        // event:/id:/retry: 字段对聊天补全没有意义，忽略
+
+        return false;
+    }
+
+    /**
+     * 流结束时调用，处理未以空行结尾的最后一个事件
+     */
+    public void finish() {
+        dispatchEvent();
+    }
+
+    /**
+     * 分发已累积的事件数据
+     */
+    private void dispatchEvent() {
+        if (eventData.length() == 0) {
+            return;
+        }
+
+        String data = eventData.toString().trim();
+        eventData.setLength(0);
+
+        if (DONE_MARKER.equals(data)) {
+            done = true;
+            return;
+        }
+
+        try {
+            JsonElement element = JsonParser.parseString(data);
+            if (element.isJsonObject()) {
+                processChunk(element.getAsJsonObject());
+            }
+        } catch (Exception e) {
+            // 单个无法解析的事件不应中断整个流
+        }
+    }
+
+    /**
+     * 处理单个chat.completion.chunk
+     */
+    private void processChunk(JsonObject chunk) {
+        chunkCount++;
+
+        if (chunk.has("error") && !chunk.get("error").isJsonNull()) {
+            JsonElement errorElement = chunk.get("error");
+            if (errorElement.isJsonObject() && errorElement.getAsJsonObject().has("message")) {
+                error = errorElement.getAsJsonObject().get("message").getAsString();
+            } else {
+                error = errorElement.toString();
+            }
+            done = true;
+            return;
+        }
+
+        if (id == null && hasValue(chunk, "id")) {
+            id = chunk.get("id").getAsString();
+        }
+        if (model == null && hasValue(chunk, "model")) {
+            model = chunk.get("model").getAsString();
+        }
+
+        if (hasValue(chunk, "usage") && chunk.get("usage").isJsonObject()) {
+            usage = parseUsage(chunk.getAsJsonObject("usage"));
+        }
+
+        if (!hasValue(chunk, "choices")) {
+            return;
+        }
+
+        JsonArray choices = chunk.getAsJsonArray("choices");
+        for (JsonElement choiceElement : choices) {
+            JsonObject choice = choiceElement.getAsJsonObject();
+            // 只组装第一个选择，与非流式解析保持一致
+            if (hasValue(choice, "index") && choice.get("index").getAsInt() != 0) {
+                continue;
+            }
+
+            if (hasValue(choice, "finish_reason")) {
+                finishReason = choice.get("finish_reason").getAsString();
+            }
+
+            if (!hasValue(choice, "delta") || !choice.get("delta").isJsonObject()) {
+                continue;
+            }
+
+            JsonObject delta = choice.getAsJsonObject("delta");
+            if (role == null && hasValue(delta, "role")) {
+                role = delta.get("role").getAsString();
+            }
+
+            if (hasValue(delta, "content")) {
+                String text = delta.get("content").getAsString();
+                if (!text.isEmpty()) {
+                    content.append(text);
+                    callback.onChunk(text);
+                }
+            }
+
+            if (hasValue(delta, "tool_calls")) {
+                for (JsonElement toolCallElement : delta.getAsJsonArray("tool_calls")) {
+                    JsonObject toolCall = toolCallElement.getAsJsonObject();
+                    int index = hasValue(toolCall, "index") ? toolCall.get("index").getAsInt() : 0;
+                    JsonObject function = hasValue(toolCall, "function") ? toolCall.getAsJsonObject("function") : null;
+                    appendToolCall(index,
+                            hasValue(toolCall, "id") ? toolCall.get("id").getAsString() : null,
+                            function != null && hasValue(function, "name") ? function.get("name").getAsString() : null,
+                            function != null && hasValue(function, "arguments") ? function.get("arguments").getAsString() : null);
+                }
+            } else if (hasValue(delta, "function_call")) {
+                // 兼容旧的function_call格式
+                JsonObject functionCall = delta.getAsJsonObject("function_call");
+                appendToolCall(0, null,
+                        hasValue(functionCall, "name") ? functionCall.get("name").getAsString() : null,
+                        hasValue(functionCall, "arguments") ? functionCall.get("arguments").getAsString() : null);
+            }
+        }
+    }
+
+    /**
+     * 累积工具调用片段
+     */
+    private void appendToolCall(int index, String toolCallId, String name, String argumentsDelta) {
+        ToolCallBuilder builder = toolCalls.computeIfAbsent(index, k -> new ToolCallBuilder());
+        if (toolCallId != null) {
+            builder.id = toolCallId;
+        }
+        if (name != null) {
+            builder.name.append(name);
+        }
+        if (argumentsDelta != null) {
+            builder.arguments.append(argumentsDelta);
+        }
+        callback.onToolCallDelta(index, toolCallId, name, argumentsDelta);
+    }
+
+    /**
+     * 组装完整响应
+     */
+    public LLMResponse buildResponse() {
+        LLMResponse response = new LLMResponse();
+        response.setId(id);
+        response.setModel(model);
+        response.setUsage(usage);
+
+        if (error != null) {
+            response.setError(error);
+            return response;
+        }
+
+        if (chunkCount == 0) {
+            response.setError("Empty stream response");
+            return response;
+        }
+
+        LLMMessage.MessageRole messageRole = LLMMessage.MessageRole.ASSISTANT;
+        if ("user".equals(role)) {
+            messageRole = LLMMessage.MessageRole.USER;
+        } else if ("system".equals(role)) {
+            messageRole = LLMMessage.MessageRole.SYSTEM;
+        }
+
+        String text = content.length() > 0 || toolCalls.isEmpty() ? content.toString() : null;
+        LLMMessage message = new LLMMessage(messageRole, text);
+
+        // 目前只处理第一个tool call，与非流式解析保持一致
+        if (!toolCalls.isEmpty()) {
+            ToolCallBuilder first = toolCalls.values().iterator().next();
+            LLMMessage.FunctionCall functionCall = new LLMMessage.FunctionCall(
+                    first.name.toString(), first.arguments.toString());
+            functionCall.setToolCallId(first.id);
+            LLMMessage.MessageMetadata metadata = new LLMMessage.MessageMetadata();
+            metadata.setFunctionCall(functionCall);
+            message.setMetadata(metadata);
+        }
+
+        LLMResponse.Choice choice = new LLMResponse.Choice();
+        choice.setIndex(0);
+        choice.setMessage(message);
+        choice.setFinishReason(finishReason);
+
+        List<LLMResponse.Choice> choices = new ArrayList<>();
+        choices.add(choice);
+        response.setChoices(choices);
+        return response;
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * 获取目前已累积的文本内容
+     */
+    public String getContent() {
+        return content.toString();
+    }
+
+    private LLMResponse.Usage parseUsage(JsonObject usageObj) {
+        LLMResponse.Usage parsed = new LLMResponse.Usage();
+        if (hasValue(usageObj, "prompt_tokens")) {
+            parsed.setPromptTokens(usageObj.get("prompt_tokens").getAsInt());
+        }
+        if (hasValue(usageObj, "completion_tokens")) {
+            parsed.setCompletionTokens(usageObj.get("completion_tokens").getAsInt());
+        }
+        if (hasValue(usageObj, "total_tokens")) {
+            parsed.setTotalTokens(usageObj.get("total_tokens").getAsInt());
+        }
+        return parsed;
+    }
+
+    private static boolean hasValue(JsonObject obj, String key) {
+        return obj.has(key) && !obj.get(key).isJsonNull();
+    }
+
+    /**
+     * 工具调用片段累积器
+     */
+    private static class ToolCallBuilder {
+        private String id;
+        private final StringBuilder name = new StringBuilder();
+        private final StringBuilder arguments = new StringBuilder();
+    }
+}
@@ -6,6 +6,7 @@ import com.riceawa.llm.core.LLMMessage;
 import com.riceawa.llm.core.LLMResponse;
 import com.riceawa.llm.core.LLMService;
 import com.riceawa.llm.core.LLMContext;
+import com.riceawa.llm.core.RequestPriority;
 import com.riceawa.llm.core.LLMMessage.MessageRole;
 import com.riceawa.llm.logging.LogManager;
 
@@ -87,6 +88,8 @@ public class TitleGenerationService {
             
             // 创建标题生成上下文
             LLMContext titleContext = LLMContext.builder()
+                    .priority(RequestPriority.BACKGROUND)
+                    .coalescable(true) // 同一段对话同时生成多次标题时共享一个结果
                     .metadata("operation", "title_generation")
                     .metadata("message_count", messages.size())
                     .build();
@@ -0,0 +1,85 @@
+package com.riceawa.llm.service;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 令牌桶
+ * 按固定速率补充令牌，允许突发到桶容量；余额可以为负，用于按实际用量补扣。
+ * 所有方法线程安全。
+ */
+public class TokenBucket {
+    private final long capacity;
+    private final double refillPerMs;
+    private final LongSupplier clock;
+
+    private double tokens;
+    private long lastRefillTime;
+
+    /**
+     * @param capacity 桶容量（同时也是每个周期的配额）
+     * @param periodMs 补满整个桶所需的时间
+     */
+    public TokenBucket(long capacity, long periodMs) {
+        this(capacity, periodMs, System::currentTimeMillis);
+    }
+
+    TokenBucket(long capacity, long periodMs, LongSupplier clock) {
+        this.capacity = Math.max(1, capacity);
+        this.refillPerMs = (double) this.capacity / Math.max(1, periodMs);
+        this.clock = clock;
+        this.tokens = this.capacity;
+        this.lastRefillTime = clock.getAsLong();
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 获取当前可用令牌数（可能为负）
+     */
+    public synchronized long getAvailable() {
+        refill();
+        return (long) Math.floor(tokens);
+    }
+
+    /**
+     * 计算获得指定数量令牌需要等待的时间
+     * 超过桶容量的请求按容量计算，避免永远无法满足
+     *
+     * @return 需要等待的毫秒数，0表示可以立即获取
+     */
+    public synchronized long getWaitTimeMs(long amount) {
+        refill();
+        double needed = Math.min(amount, capacity);
+        if (tokens >= needed) {
+            return 0;
+        }
+        return (long) Math.ceil((needed - tokens) / refillPerMs);
+    }
+
+    /**
+     * 扣除令牌，调用前应先确认getWaitTimeMs为0
+     */
+    public synchronized void consume(long amount) {
+        refill();
+        tokens -= Math.min(amount, capacity);
+    }
+
+    /**
+     * 按实际用量修正余额，正数补扣，负数退还
+     */
+    public synchronized void adjust(long delta) {
+        refill();
+        tokens = Math.min(capacity, tokens - delta);
+    }
+
+    private void refill() {
+        long now = clock.getAsLong();
+        long elapsed = now - lastRefillTime;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * refillPerMs);
+            lastRefillTime = now;
+        }
+    }
+}
@@ -5,10 +5,12 @@ import com.riceawa.llm.config.LLMChatConfig;
 import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.server.MinecraftServer;
 import net.fabricmc.loader.api.FabricLoader;
+import okio.ByteString;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -41,6 +43,9 @@ public class PromptTemplate {
     @SerializedName("enabled")
     private boolean enabled;
 
+    @SerializedName("cache_responses")
+    private boolean cacheResponses;
+
     private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{\\{(\\w+)\\}\\}");
 
     public PromptTemplate() {
@@ -276,6 +281,7 @@ public class PromptTemplate {
         copy.userPromptSuffix = this.userPromptSuffix;
         copy.variables = new HashMap<>(this.variables);
         copy.enabled = this.enabled;
+        copy.cacheResponses = this.cacheResponses;
         return copy;
     }
 
@@ -344,6 +350,31 @@ public class PromptTemplate {
         this.enabled = enabled;
     }
 
+    /**
+     * 是否缓存使用该模板的回复，适合服务器规则、常见问题等答案固定的模板
+     */
+    public boolean isCacheResponses() {
+        return cacheResponses;
+    }
+
+    public void setCacheResponses(boolean cacheResponses) {
+        this.cacheResponses = cacheResponses;
+    }
+
+    /**
+     * 模板内容的版本标识：未渲染的系统提示词和变量的哈希，修改模板后随之变化
+     * 用户消息的前后缀已体现在渲染后的用户消息中，不需要计入
+     */
+    public String getContentVersion() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(systemPrompt != null ? systemPrompt : "").append('\u0000');
+        if (variables != null) {
+            new TreeMap<>(variables).forEach((name, value) ->
+                builder.append(name).append('=').append(value).append('\u0000'));
+        }
+        return ByteString.encodeUtf8(builder.toString()).sha256().hex().substring(0, 12);
+    }
+
     /**
      * 生成全局上下文信息
      */
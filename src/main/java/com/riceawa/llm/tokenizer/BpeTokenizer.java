@@ -0,0 +1,178 @@
+package com.riceawa.llm.tokenizer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 字节级BPE分词器，与OpenAI的tiktoken编码兼容
+ * 先用正则把文本切分成片段，再在每个片段的UTF-8字节上按合并优先级反复合并相邻字节对。
+ * 同一片段（常见词、标点）的token数会被缓存，聊天文本中大部分片段直接命中缓存。
+ */
+public class BpeTokenizer implements Tokenizer {
+    /** cl100k_base（GPT-3.5/GPT-4）的预分词正则 */
+    public static final Pattern CL100K_PATTERN = Pattern.compile(
+        "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+        Pattern.UNICODE_CHARACTER_CLASS);
+
+    /** 片段缓存的最大条目数，超出后清空重建 */
+    private static final int MAX_CACHED_PIECES = 50000;
+
+    private final String name;
+    private final Pattern pattern;
+    /** 以ISO-8859-1字符串表示的字节序列 -> 合并优先级（即token ID） */
+    private final Map<String, Integer> ranks;
+    private final Map<String, Integer> pieceCounts = new ConcurrentHashMap<>();
+
+    public BpeTokenizer(String name, Map<byte[], Integer> ranks, Pattern pattern) {
+        this.name = name;
+        this.pattern = pattern;
+        this.ranks = new HashMap<>(ranks.size() * 2);
+        for (Map.Entry<byte[], Integer> entry : ranks.entrySet()) {
+            this.ranks.put(new String(entry.getKey(), StandardCharsets.ISO_8859_1), entry.getValue());
+        }
+    }
+
+    /**
+     * 读取tiktoken格式的词表：每行为base64编码的字节序列和它的优先级，以空格分隔
+     */
+    public static BpeTokenizer load(String name, InputStream input, Pattern pattern) throws IOException {
+        Map<byte[], Integer> ranks = new HashMap<>();
+        Base64.Decoder decoder = Base64.getDecoder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                try {
+                    ranks.put(decoder.decode(line.substring(0, space)), Integer.parseInt(line.substring(space + 1).trim()));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid tokenizer vocabulary line: " + line, e);
+                }
+            }
+        }
+        if (ranks.isEmpty()) {
+            throw new IOException("Tokenizer vocabulary is empty");
+        }
+        return new BpeTokenizer(name, ranks, pattern);
+    }
+
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            String piece = matcher.group();
+            Integer cached = pieceCounts.get(piece);
+            if (cached == null) {
+                cached = encodePiece(piece).length;
+                if (pieceCounts.size() >= MAX_CACHED_PIECES) {
+                    pieceCounts.clear();
+                }
+                pieceCounts.put(piece, cached);
+            }
+            count += cached;
+        }
+        return count;
+    }
+
+    /**
+     * 把文本编码为token ID序列
+     */
+    public int[] encode(String text) {
+        if (text == null || text.isEmpty()) {
+            return new int[0];
+        }
+        int[] tokens = new int[16];
+        int size = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            for (int token : encodePiece(matcher.group())) {
+                if (size == tokens.length) {
+                    tokens = Arrays.copyOf(tokens, size * 2);
+                }
+                tokens[size++] = token;
+            }
+        }
+        return Arrays.copyOf(tokens, size);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 对一个片段执行BPE合并
+     */
+    private int[] encodePiece(String piece) {
+        String bytes = new String(piece.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+        Integer whole = ranks.get(bytes);
+        if (whole != null) {
+            return new int[]{whole}; // 常见片段本身就是一个token
+        }
+
+        // boundaries[0..parts]为各部分的起始位置，pairRanks[i]为第i和第i+1部分合并后的优先级
+        int length = bytes.length();
+        int[] boundaries = new int[length + 1];
+        for (int i = 0; i <= length; i++) {
+            boundaries[i] = i;
+        }
+        int parts = length;
+        int[] pairRanks = new int[length];
+        for (int i = 0; i < parts - 1; i++) {
+            pairRanks[i] = rank(bytes, boundaries[i], boundaries[i + 2]);
+        }
+
+        while (parts > 1) {
+            int best = -1;
+            int bestRank = Integer.MAX_VALUE;
+            for (int i = 0; i < parts - 1; i++) {
+                if (pairRanks[i] < bestRank) {
+                    best = i;
+                    bestRank = pairRanks[i];
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+
+            // 合并第best和best+1部分：删除它们之间的边界
+            System.arraycopy(boundaries, best + 2, boundaries, best + 1, parts - best - 1);
+            System.arraycopy(pairRanks, best + 1, pairRanks, best, parts - best - 2);
+            parts--;
+            if (best < parts - 1) {
+                pairRanks[best] = rank(bytes, boundaries[best], boundaries[best + 2]);
+            }
+            if (best > 0) {
+                pairRanks[best - 1] = rank(bytes, boundaries[best - 1], boundaries[best + 1]);
+            }
+        }
+
+        int[] tokens = new int[parts];
+        for (int i = 0; i < parts; i++) {
+            Integer token = ranks.get(bytes.substring(boundaries[i], boundaries[i + 1]));
+            tokens[i] = token != null ? token : -1; // 词表缺少单字节时无法编码，仍计为一个token
+        }
+        return tokens;
+    }
+
+    private int rank(String bytes, int start, int end) {
+        Integer rank = ranks.get(bytes.substring(start, end));
+        return rank != null ? rank : Integer.MAX_VALUE;
+    }
+}
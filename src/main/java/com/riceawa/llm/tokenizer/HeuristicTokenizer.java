@@ -0,0 +1,60 @@
+package com.riceawa.llm.tokenizer;
+
+import java.util.regex.Matcher;
+
+/**
+ * 没有词表时使用的估算分词器
+ * 与BPE使用相同的预分词规则，再按字符类别估算每个片段的token数：
+ * 汉字、假名和谚文约每字一个token，英文单词约每5个字母一个token，数字最多每3位一个token。
+ * 比按总长度除以4准确得多，尤其是中文文本，但仍只是估算。
+ */
+public class HeuristicTokenizer implements Tokenizer {
+    private static final int CHARS_PER_TOKEN = 5;
+    private static final int DIGITS_PER_TOKEN = 3;
+
+    @Override
+    public int countTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = BpeTokenizer.CL100K_PATTERN.matcher(text);
+        while (matcher.find()) {
+            count += estimatePiece(matcher.group());
+        }
+        return count;
+    }
+
+    private static int estimatePiece(String piece) {
+        int cjk = 0;
+        int digits = 0;
+        int other = 0;
+        for (int i = 0; i < piece.length(); ) {
+            int codePoint = piece.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (isCjk(codePoint)) {
+                cjk++;
+            } else if (Character.isDigit(codePoint)) {
+                digits++;
+            } else if (!Character.isWhitespace(codePoint)) {
+                other++; // 前导空格与后面的单词合并为同一个token，不单独计数
+            }
+        }
+        int tokens = cjk + (digits + DIGITS_PER_TOKEN - 1) / DIGITS_PER_TOKEN +
+                     (other + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+        return Math.max(1, tokens); // 纯空白片段也是一个token
+    }
+
+    private static boolean isCjk(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN ||
+               script == Character.UnicodeScript.HIRAGANA ||
+               script == Character.UnicodeScript.KATAKANA ||
+               script == Character.UnicodeScript.HANGUL;
+    }
+
+    @Override
+    public String getName() {
+        return "heuristic";
+    }
+}
@@ -0,0 +1,136 @@
+package com.riceawa.llm.tokenizer;
+
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.logging.LogManager;
+import net.fabricmc.loader.api.FabricLoader;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * token计数器
+ * 使用模组附带的cl100k_base词表精确计数，配置目录的tokenizer文件夹中的同名词表可以替代它，都不可用时按字符类别估算。
+ * 每条消息的token数连同分词器名称记录在消息元数据中，同一分词器只计算一次。
+ */
+public class TokenCounter {
+    /** 词表文件名，与tiktoken发布的文件相同 */
+    public static final String VOCABULARY_FILE = "cl100k_base.tiktoken";
+    /** 模组附带的词表资源路径 */
+    public static final String VOCABULARY_RESOURCE = "/assets/lllmchat/tokenizer/" + VOCABULARY_FILE;
+
+    /** 每条消息的角色和分隔符开销 */
+    public static final int TOKENS_PER_MESSAGE = 3;
+    /** 回复开头的固定开销 */
+    public static final int TOKENS_PER_REPLY = 3;
+
+    private static volatile TokenCounter instance;
+
+    private final Tokenizer tokenizer;
+
+    TokenCounter(Tokenizer tokenizer) {
+        this.tokenizer = tokenizer;
+    }
+
+    public static TokenCounter getInstance() {
+        if (instance == null) {
+            synchronized (TokenCounter.class) {
+                if (instance == null) {
+                    instance = new TokenCounter(loadTokenizer());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 依次从模组资源和配置目录加载词表，都不可用时使用估算分词器
+     */
+    private static Tokenizer loadTokenizer() {
+        try (InputStream input = TokenCounter.class.getResourceAsStream(VOCABULARY_RESOURCE)) {
+            if (input != null) {
+                return loaded(BpeTokenizer.load("cl100k_base", input, BpeTokenizer.CL100K_PATTERN));
+            }
+        } catch (Exception e) {
+            LogManager.getInstance().error("Failed to load bundled tokenizer vocabulary", e);
+        }
+
+        try {
+            Path file = FabricLoader.getInstance().getConfigDir().resolve("lllmchat").resolve("tokenizer").resolve(VOCABULARY_FILE);
+            if (Files.exists(file)) {
+                try (InputStream input = Files.newInputStream(file)) {
+                    return loaded(BpeTokenizer.load("cl100k_base", input, BpeTokenizer.CL100K_PATTERN));
+                }
+            }
+        } catch (Exception e) {
+            LogManager.getInstance().error("Failed to load tokenizer vocabulary from config directory", e);
+        }
+
+        LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.WARN, "system",
+            "Tokenizer vocabulary " + VOCABULARY_FILE + " not found, token counts are estimated");
+        return new HeuristicTokenizer();
+    }
+
+    private static Tokenizer loaded(Tokenizer tokenizer) {
+        LogManager.getInstance().log(com.riceawa.llm.logging.LogLevel.INFO, "system",
+            "Loaded tokenizer " + tokenizer.getName());
+        return tokenizer;
+    }
+
+    /**
+     * 统计文本的token数
+     */
+    public int count(String text) {
+        return tokenizer.countTokens(text);
+    }
+
+    /**
+     * 统计一条消息的token数，包括内容、函数调用和消息开销
+     * 结果和分词器名称记录在消息元数据中，消息内容不可变，之后同一分词器直接返回记录的值；
+     * 从历史记录加载的消息如果由其他分词器计数（如安装词表之前的估算值），重新计算
+     */
+    public int count(LLMMessage message) {
+        LLMMessage.MessageMetadata metadata = message.getMetadata();
+        if (metadata != null && metadata.getTokens() != null &&
+            tokenizer.getName().equals(metadata.getTokenizer())) {
+            return metadata.getTokens();
+        }
+
+        int tokens = TOKENS_PER_MESSAGE + tokenizer.countTokens(message.getContent()) +
+                     tokenizer.countTokens(message.getName());
+        if (metadata != null && metadata.getFunctionCall() != null) {
+            tokens += tokenizer.countTokens(metadata.getFunctionCall().getName()) +
+                      tokenizer.countTokens(metadata.getFunctionCall().getArguments());
+        }
+
+        if (metadata == null) {
+            metadata = new LLMMessage.MessageMetadata();
+            message.setMetadata(metadata);
+        }
+        metadata.setTokens(tokens);
+        metadata.setTokenizer(tokenizer.getName());
+        return tokens;
+    }
+
+    /**
+     * 统计请求中所有消息的token数
+     */
+    public int count(List<LLMMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        int total = TOKENS_PER_REPLY;
+        for (LLMMessage message : messages) {
+            total += count(message);
+        }
+        return total;
+    }
+
+    /**
+     * 当前使用的分词器名称
+     */
+    public String getTokenizerName() {
+        return tokenizer.getName();
+    }
+}
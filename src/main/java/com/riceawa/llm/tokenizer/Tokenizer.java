@@ -0,0 +1,17 @@
+package com.riceawa.llm.tokenizer;
+
+/**
+ * 分词器接口，用于统计文本的token数
+ * 实现必须线程安全
+ */
+public interface Tokenizer {
+    /**
+     * 统计文本的token数，null和空字符串为0
+     */
+    int countTokens(String text);
+
+    /**
+     * 分词器名称，用于日志和状态显示
+     */
+    String getName();
+}
@@ -0,0 +1,64 @@
+package com.riceawa.llm.cache;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HashedNgramEmbedder测试类
+ */
+public class HashedNgramEmbedderTest {
+
+    private final HashedNgramEmbedder embedder = new HashedNgramEmbedder();
+
+    private double similarity(String a, String b) {
+        float[] u = embedder.embed(a);
+        float[] v = embedder.embed(b);
+        double sum = 0;
+        for (int i = 0; i < u.length; i++) {
+            sum += u[i] * v[i];
+        }
+        return sum;
+    }
+
+    @Test
+    void testVectorsAreNormalized() {
+        float[] vector = embedder.embed("出生点在哪里");
+        assertEquals(512, vector.length);
+        assertEquals(1.0, similarity("出生点在哪里", "出生点在哪里"), 1e-5);
+        assertArrayEquals(vector, embedder.embed("出生点在哪里"));
+    }
+
+    @Test
+    void testIgnoresCaseWhitespaceAndPunctuation() {
+        assertEquals(1.0, similarity("How do I claim land?", "how do i claim land"), 1e-5);
+        assertEquals(1.0, similarity("服务器规则是什么？", "服务器 规则是什么"), 1e-5);
+    }
+
+    @Test
+    void testNearDuplicatesScoreHigherThanDifferentQuestions() {
+        double nearDuplicate = similarity("服务器规则是什么", "服务器的规则是什么");
+        double different = similarity("怎么去下界", "怎么去末地");
+        double unrelated = similarity("服务器规则是什么", "怎么去末地");
+
+        assertTrue(nearDuplicate > 0.8, "near duplicate: " + nearDuplicate);
+        assertTrue(different < 0.8, "different: " + different);
+        assertTrue(unrelated < 0.3, "unrelated: " + unrelated);
+    }
+
+    @Test
+    void testCommonCharactersWeighLessThanKeywords() {
+        double functionWordChanged = similarity("服务器里钻石一般在第几层可以挖到", "服务器里钻石一般在第几层能挖到");
+        double keywordChanged = similarity("服务器里钻石一般在第几层可以挖到", "服务器里铁矿一般在第几层可以挖到");
+
+        assertTrue(functionWordChanged > 0.95, "function word changed: " + functionWordChanged);
+        assertTrue(keywordChanged < 0.85, "keyword changed: " + keywordChanged);
+    }
+
+    @Test
+    void testEmptyTextGivesZeroVector() {
+        for (float value : embedder.embed("？！ ")) {
+            assertEquals(0f, value);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.riceawa.llm.cache;
+
+import com.riceawa.llm.core.LLMConfig;
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ResponseCache测试类
+ */
+public class ResponseCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private AtomicLong now;
+    private ResponseCache cache;
+    private LLMConfig config;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(0);
+        cache = new ResponseCache(2, 1000, null, 10, now::get);
+        config = new LLMConfig();
+        config.setModel("gpt-4o");
+        config.setTemperature(0.7);
+    }
+
+    private static LLMResponse textResponse(String content) {
+        LLMResponse.Choice choice = new LLMResponse.Choice();
+        choice.setMessage(new LLMMessage(LLMMessage.MessageRole.ASSISTANT, content));
+        LLMResponse response = new LLMResponse();
+        response.setModel("gpt-4o");
+        response.setChoices(new ArrayList<>(List.of(choice)));
+        return response;
+    }
+
+    @Test
+    void testFingerprintIgnoresSystemPromptAndWhitespace() {
+        List<LLMMessage> first = List.of(
+            new LLMMessage(LLMMessage.MessageRole.SYSTEM, "玩家Steve位于(10, 64, 20)"),
+            new LLMMessage(LLMMessage.MessageRole.USER, "  服务器规则是什么？ "));
+        List<LLMMessage> second = List.of(
+            new LLMMessage(LLMMessage.MessageRole.SYSTEM, "玩家Alex位于(-5, 70, 3)"),
+            new LLMMessage(LLMMessage.MessageRole.USER, "服务器规则是什么？"));
+
+        assertEquals(ResponseCache.fingerprint(first, config, "template:faq"),
+                     ResponseCache.fingerprint(second, config, "template:faq"));
+        assertNotEquals(ResponseCache.fingerprint(first, config, "template:faq"),
+                        ResponseCache.fingerprint(first, config, "template:default"));
+
+        LLMConfig otherModel = new LLMConfig();
+        otherModel.setModel("gpt-4o-mini");
+        otherModel.setTemperature(0.7);
+        assertNotEquals(ResponseCache.fingerprint(first, config, "template:faq"),
+                        ResponseCache.fingerprint(first, otherModel, "template:faq"));
+    }
+
+    @Test
+    void testSystemPromptHashDistinguishesRenderedPrompts() {
+        List<LLMMessage> steve = List.of(
+            new LLMMessage(LLMMessage.MessageRole.SYSTEM, "你正在和玩家Steve对话"),
+            new LLMMessage(LLMMessage.MessageRole.USER, "我的坐标在哪"));
+        List<LLMMessage> steveAgain = List.of(
+            new LLMMessage(LLMMessage.MessageRole.SYSTEM, "你正在和玩家Steve对话"),
+            new LLMMessage(LLMMessage.MessageRole.USER, "附近有村庄吗"));
+        List<LLMMessage> alex = List.of(
+            new LLMMessage(LLMMessage.MessageRole.SYSTEM, "你正在和玩家Alex对话"),
+            new LLMMessage(LLMMessage.MessageRole.USER, "我的坐标在哪"));
+
+        assertEquals(ResponseCache.systemPromptHash(steve), ResponseCache.systemPromptHash(steveAgain));
+        assertNotEquals(ResponseCache.systemPromptHash(steve), ResponseCache.systemPromptHash(alex));
+    }
+
+    @Test
+    void testFingerprintIgnoresToolCallIds() {
+        LLMMessage firstResult = new LLMMessage(LLMMessage.MessageRole.TOOL, "钻石在Y=-59最多");
+        firstResult.setName("wiki_page");
+        firstResult.setToolCallId("call_abc");
+        LLMMessage secondResult = new LLMMessage(LLMMessage.MessageRole.TOOL, "钻石在Y=-59最多");
+        secondResult.setName("wiki_page");
+        secondResult.setToolCallId("call_xyz");
+
+        LLMMessage question = new LLMMessage(LLMMessage.MessageRole.USER, "钻石在哪一层最多");
+        assertEquals(ResponseCache.fingerprint(List.of(question, firstResult), config, "s"),
+                     ResponseCache.fingerprint(List.of(question, secondResult), config, "s"));
+    }
+
+    @Test
+    void testHitAndExpiry() {
+        assertNull(cache.get("key"));
+        cache.put("key", textResponse("答案"));
+
+        LLMResponse cached = cache.get("key");
+        assertNotNull(cached);
+        assertEquals("答案", cached.getContent());
+        assertTrue(cached.isSuccess());
+        assertNotSame(cached, cache.get("key")); // 每次命中返回新对象
+
+        now.set(1000);
+        assertNull(cache.get("key"));
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        cache.put("a", textResponse("A"));
+        cache.put("b", textResponse("B"));
+        cache.get("a");
+        cache.put("c", textResponse("C"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    void testSkipsFailedAndFunctionCallResponses() {
+        LLMResponse failed = new LLMResponse();
+        failed.setError("rate limited");
+        cache.put("failed", failed);
+
+        LLMResponse functionCall = textResponse("");
+        LLMMessage.MessageMetadata metadata = new LLMMessage.MessageMetadata();
+        metadata.setFunctionCall(new LLMMessage.FunctionCall("wiki_page", "{}", "call_1"));
+        functionCall.getChoices().get(0).getMessage().setMetadata(metadata);
+        cache.put("function", functionCall);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testDiskTierSurvivesRestart() {
+        ResponseCache persistent = new ResponseCache(2, 1000, tempDir, 10, now::get);
+        persistent.put("key", textResponse("持久化的答案"));
+        assertEquals(1, persistent.getDiskSize());
+
+        ResponseCache restarted = new ResponseCache(2, 1000, tempDir, 10, now::get);
+        assertEquals(1, restarted.getDiskSize());
+        LLMResponse cached = restarted.get("key");
+        assertNotNull(cached);
+        assertEquals("持久化的答案", cached.getContent());
+        assertEquals(1, restarted.getDiskHits());
+
+        restarted.clear();
+        assertNull(new ResponseCache(2, 1000, tempDir, 10, now::get).get("key"));
+    }
+
+    @Test
+    void testDiskTierIsBounded() {
+        ResponseCache persistent = new ResponseCache(10, 1000, tempDir, 2, now::get);
+        persistent.put("a", textResponse("A"));
+        persistent.put("b", textResponse("B"));
+        persistent.put("c", textResponse("C"));
+        assertEquals(2, persistent.getDiskSize());
+    }
+}
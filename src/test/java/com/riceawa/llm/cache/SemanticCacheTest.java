@@ -0,0 +1,106 @@
+package com.riceawa.llm.cache;
+
+import com.riceawa.llm.core.LLMResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SemanticCache测试类
+ */
+public class SemanticCacheTest {
+
+    private AtomicLong now;
+    private SemanticCache cache;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(0);
+        cache = new SemanticCache(new HashedNgramEmbedder(), 2, 0.92, 1000, now::get);
+    }
+
+    @Test
+    void testSimilarQuestionHits() {
+        cache.put("template:faq", "服务器规则是什么？", "gpt-4o", "禁止破坏他人建筑");
+
+        LLMResponse response = cache.lookup("template:faq", "服务器的规则是什么");
+        assertNotNull(response);
+        assertEquals("禁止破坏他人建筑", response.getContent());
+        assertEquals("gpt-4o", response.getModel());
+        assertEquals(1, cache.getHits());
+
+        assertNull(cache.lookup("template:faq", "怎么去末地"));
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testQuestionsDifferingInKeywordMiss() {
+        cache.put("template:faq", "服务器里钻石一般在第几层可以挖到", "gpt-4o", "Y=-59");
+
+        assertNull(cache.lookup("template:faq", "服务器里铁矿一般在第几层可以挖到"));
+        assertNotNull(cache.lookup("template:faq", "服务器里钻石一般在第几层能挖到"));
+    }
+
+    @Test
+    void testScopesAreIsolated() {
+        cache.put("template:faq", "服务器规则是什么", "gpt-4o", "答案");
+        assertNull(cache.lookup("template:default", "服务器规则是什么"));
+    }
+
+    @Test
+    void testReturnsMostSimilarEntry() {
+        cache.put("s", "出生点在哪里", "m", "出生点");
+        cache.put("s", "出生点怎么设置", "m", "床");
+        assertEquals("出生点", cache.lookup("s", "出生点在哪").getContent());
+    }
+
+    @Test
+    void testExpiredEntriesAreDropped() {
+        cache.put("s", "服务器规则是什么", "m", "答案");
+        now.set(1000);
+        assertNull(cache.lookup("s", "服务器规则是什么"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyHit() {
+        cache.put("s", "服务器规则是什么", "m", "规则");
+        cache.put("s", "出生点在哪里", "m", "出生点");
+        cache.lookup("s", "服务器规则是什么");
+        cache.put("s", "怎么去末地", "m", "末地");
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.lookup("s", "服务器规则是什么"));
+        assertNull(cache.lookup("s", "出生点在哪里"));
+    }
+
+    @Test
+    void testInspectOrdersByHitsAndFlush() {
+        cache.put("s", "服务器规则是什么", "m", "规则");
+        cache.put("s", "出生点在哪里", "m", "出生点");
+        cache.lookup("s", "出生点在哪里");
+        cache.lookup("s", "出生点在哪");
+
+        List<SemanticCache.EntryInfo> entries = cache.inspect(10);
+        assertEquals(2, entries.size());
+        assertEquals("出生点在哪里", entries.get(0).question);
+        assertEquals(2, entries.get(0).hits);
+        assertEquals(1, cache.inspect(1).size());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.lookup("s", "出生点在哪里"));
+    }
+
+    @Test
+    void testReplacingEmbedderClearsIndex() {
+        cache.put("s", "服务器规则是什么", "m", "规则");
+        cache.setEmbedder(new HashedNgramEmbedder(64));
+        assertEquals(0, cache.size());
+    }
+}
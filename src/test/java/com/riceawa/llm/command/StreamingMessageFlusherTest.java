@@ -0,0 +1,244 @@
+package com.riceawa.llm.command;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamingMessageFlusher测试类
+ */
+public class StreamingMessageFlusherTest {
+
+    /**
+     * 手动推进时间的调度器，到期的任务在advance中按时间顺序在当前线程执行
+     */
+    private static class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+        private final PriorityQueue<Task<?>> tasks = new PriorityQueue<>();
+        private long now = 1_000;
+        private long sequence;
+
+        synchronized long now() {
+            return now;
+        }
+
+        /**
+         * 推进时间并执行期间到期的任务，包括执行过程中新安排的任务
+         */
+        void advance(long millis) {
+            long target = now() + millis;
+            while (true) {
+                Task<?> next;
+                synchronized (this) {
+                    next = tasks.peek();
+                    if (next == null || next.time > target) {
+                        now = target;
+                        return;
+                    }
+                    tasks.poll();
+                    now = Math.max(now, next.time);
+                }
+                next.run();
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            return schedule(Executors.callable(command), delay, unit);
+        }
+
+        @Override
+        public synchronized <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+            Task<V> task = new Task<>(callable, now + unit.toMillis(delay), sequence++);
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+
+        private class Task<V> extends FutureTask<V> implements ScheduledFuture<V> {
+            final long time;
+            final long order;
+
+            Task(Callable<V> callable, long time, long order) {
+                super(callable);
+                this.time = time;
+                this.order = order;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(time - now(), TimeUnit.MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                Task<?> task = (Task<?>) other;
+                return time != task.time ? Long.compare(time, task.time) : Long.compare(order, task.order);
+            }
+        }
+    }
+
+    private ManualScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = new ManualScheduler();
+    }
+
+    private StreamingMessageFlusher flusher(Object rateKey, int maxMessagesPerSecond, Consumer<String> sink) {
+        return new StreamingMessageFlusher(rateKey, maxMessagesPerSecond, sink, scheduler, scheduler::now);
+    }
+
+    @Test
+    void testDeltasAreMergedAtSentenceBoundaries() {
+        List<String> sent = new ArrayList<>();
+        StreamingMessageFlusher flusher = flusher(UUID.randomUUID(), 20, sent::add);
+
+        flusher.append("红石");
+        flusher.append("是一种");
+        flusher.append("矿物。它可以");
+        scheduler.advance(0);
+        assertEquals(List.of("红石是一种矿物。"), sent);
+
+        flusher.append("传导信号");
+        var completion = flusher.complete();
+        scheduler.advance(49);
+        assertFalse(completion.isDone(), "限流间隔内不应发送");
+
+        scheduler.advance(1);
+        assertTrue(completion.isDone());
+        assertEquals(List.of("红石是一种矿物。", "它可以传导信号"), sent);
+        assertEquals(2, flusher.getSentSegments());
+    }
+
+    @Test
+    void testNoMessageBeforeBoundaryOrCompletion() {
+        List<String> sent = new ArrayList<>();
+        StreamingMessageFlusher flusher = flusher(UUID.randomUUID(), 20, sent::add);
+
+        flusher.append("version 1.20");
+        scheduler.advance(1000);
+        assertTrue(sent.isEmpty(), "小数点不应被视为句子边界");
+
+        var completion = flusher.complete();
+        scheduler.advance(0);
+        assertTrue(completion.isDone());
+        assertEquals(List.of("version 1.20"), sent);
+    }
+
+    @Test
+    void testRateLimitIsSharedPerPlayer() {
+        UUID player = UUID.randomUUID();
+        List<Long> sendTimes = new ArrayList<>();
+        StreamingMessageFlusher first = flusher(player, 5, s -> sendTimes.add(scheduler.now()));
+        StreamingMessageFlusher second = flusher(player, 5, s -> sendTimes.add(scheduler.now()));
+
+        first.append("第一句。");
+        second.append("第二句。");
+        var firstCompletion = first.complete();
+        var secondCompletion = second.complete();
+        scheduler.advance(199);
+        assertEquals(1, sendTimes.size(), "同一玩家的第二条消息应等待限流间隔");
+
+        scheduler.advance(1);
+        assertEquals(2, sendTimes.size());
+        assertEquals(200, sendTimes.get(1) - sendTimes.get(0));
+
+        scheduler.advance(200);
+        assertTrue(firstCompletion.isDone());
+        assertTrue(secondCompletion.isDone());
+    }
+
+    @Test
+    void testLongTextWithoutBoundaryIsSplit() {
+        List<String> sent = new ArrayList<>();
+        StreamingMessageFlusher flusher = flusher(UUID.randomUUID(), 20, sent::add);
+
+        flusher.append("a".repeat(600));
+        var completion = flusher.complete();
+        scheduler.advance(1000);
+
+        assertTrue(completion.isDone());
+        assertEquals(3, sent.size());
+        assertEquals(600, sent.stream().mapToInt(String::length).sum());
+    }
+
+    @Test
+    void testCompleteWithoutContent() {
+        List<String> sent = new ArrayList<>();
+        StreamingMessageFlusher flusher = flusher(UUID.randomUUID(), 2, sent::add);
+
+        var completion = flusher.complete();
+        scheduler.advance(0);
+        assertTrue(completion.isDone());
+        assertTrue(sent.isEmpty());
+    }
+
+    @Test
+    void testExpiredRateLimitsAreEvicted() {
+        UUID leftPlayer = UUID.randomUUID();
+        UUID activePlayer = UUID.randomUUID();
+
+        flusher(leftPlayer, 20, s -> { }).append("再见。");
+        scheduler.advance(0);
+        assertTrue(StreamingMessageFlusher.isTracked(leftPlayer));
+
+        scheduler.advance(100);
+        flusher(activePlayer, 20, s -> { }).append("你好。");
+        scheduler.advance(0);
+        assertFalse(StreamingMessageFlusher.isTracked(leftPlayer), "过期的限额应在下一次发送时清除");
+        assertTrue(StreamingMessageFlusher.isTracked(activePlayer));
+    }
+}
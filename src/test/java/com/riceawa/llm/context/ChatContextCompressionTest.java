@@ -0,0 +1,209 @@
+package com.riceawa.llm.context;
+
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMMessage.MessageRole;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatContext异步压缩测试类
+ */
+public class ChatContextCompressionTest {
+
+    private ChatContext context;
+    private LinkedBlockingQueue<CompletableFuture<String>> pendingSummaries;
+
+    @BeforeEach
+    void setUp() {
+        pendingSummaries = new LinkedBlockingQueue<>();
+        context = newContext(200);
+        assertTrue(context.exceedsContextLimits());
+    }
+
+    /**
+     * 创建包含10轮对话（约300字符）的上下文，摘要请求由测试手动完成
+     */
+    private ChatContext newContext(int maxCharacters) {
+        ChatContext chatContext = new ChatContext(UUID.randomUUID());
+        chatContext.setMaxContextCharacters(maxCharacters);
+        chatContext.setTokenLimit(false, 1000);
+        chatContext.setSpeculativeCompression(true, 0.7);
+        chatContext.setSummarizer(messages -> {
+            CompletableFuture<String> summary = new CompletableFuture<>();
+            pendingSummaries.add(summary);
+            return summary;
+        });
+
+        chatContext.addSystemMessage("系统提示词");
+        for (int i = 0; i < 10; i++) {
+            chatContext.addUserMessage("这是第" + i + "个问题，内容足够长以便超过上下文限制");
+            chatContext.addAssistantMessage("这是第" + i + "个回答");
+        }
+        return chatContext;
+    }
+
+    /**
+     * 触发压缩并等待摘要请求发出
+     */
+    private CompletableFuture<String> startCompression() throws InterruptedException {
+        context.scheduleCompressionIfNeeded();
+        CompletableFuture<String> summary = pendingSummaries.poll(5, TimeUnit.SECONDS);
+        assertNotNull(summary, "压缩应该在5秒内发出摘要请求");
+        return summary;
+    }
+
+    /**
+     * 等待压缩任务结束，完成回调可能在调度线程上执行
+     */
+    private void awaitCompressionFinished() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (context.isCompressionInProgress() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(context.isCompressionInProgress(), "压缩应该在5秒内结束");
+    }
+
+    private static boolean hasSummary(List<LLMMessage> messages) {
+        return messages.stream().anyMatch(m -> m.getRole() == MessageRole.SYSTEM && m.getContent().contains("对话历史摘要"));
+    }
+
+    @Test
+    void testMessagesArrivingDuringCompressionArePreserved() throws InterruptedException {
+        CompletableFuture<String> summary = startCompression();
+        assertTrue(context.isCompressionInProgress());
+
+        context.addUserMessage("压缩期间的新问题");
+        summary.complete("之前讨论了十个问题");
+        awaitCompressionFinished();
+
+        List<LLMMessage> messages = context.getMessages();
+        assertTrue(hasSummary(messages));
+        assertEquals("压缩期间的新问题", messages.get(messages.size() - 1).getContent());
+        assertEquals("系统提示词", messages.get(0).getContent());
+        assertEquals(messages.size(), context.getMessageCount());
+    }
+
+    @Test
+    void testSummaryDiscardedWhenContextRewritten() throws InterruptedException {
+        CompletableFuture<String> summary = startCompression();
+
+        context.clear();
+        context.addUserMessage("清空后的问题");
+        summary.complete("过期的摘要");
+        awaitCompressionFinished();
+
+        List<LLMMessage> messages = context.getMessages();
+        assertEquals(1, messages.size());
+        assertEquals("清空后的问题", messages.get(0).getContent());
+    }
+
+    @Test
+    void testOnlyOneCompressionAtATime() throws InterruptedException {
+        CompletableFuture<String> summary = startCompression();
+
+        context.addUserMessage("又一个问题");
+        context.scheduleCompressionIfNeeded();
+        assertNull(pendingSummaries.poll(200, TimeUnit.MILLISECONDS));
+
+        summary.complete("摘要");
+        awaitCompressionFinished();
+    }
+
+    @Test
+    void testFailedSummaryFallsBackToTrimming() throws InterruptedException {
+        CompletableFuture<String> summary = startCompression();
+
+        context.addUserMessage("最新的问题");
+        summary.complete(null);
+        awaitCompressionFinished();
+
+        List<LLMMessage> messages = context.getMessages();
+        assertFalse(hasSummary(messages));
+        assertFalse(context.exceedsContextLimits());
+        assertEquals("最新的问题", messages.get(messages.size() - 1).getContent());
+    }
+
+    @Test
+    void testPreparedSummarySwappedInAtLimit() throws InterruptedException {
+        context = newContext(400);
+        assertFalse(context.exceedsContextLimits());
+
+        // 超过70%水位，后台预先生成摘要，但不修改上下文
+        CompletableFuture<String> prepared = startCompression();
+        int sizeBefore = context.getMessageCount();
+        prepared.complete("预先生成的摘要");
+        awaitCompressionFinished();
+        assertEquals(sizeBefore, context.getMessageCount());
+        assertFalse(hasSummary(context.getMessages()));
+
+        for (int i = 0; i < 6; i++) {
+            context.addUserMessage("达到上限之前的第" + i + "个问题，同样足够长");
+        }
+        assertTrue(context.exceedsContextLimits());
+
+        // 超过上限时直接替换，不再发送摘要请求
+        context.scheduleCompressionIfNeeded();
+        awaitCompressionFinished();
+        assertNull(pendingSummaries.poll(200, TimeUnit.MILLISECONDS));
+        List<LLMMessage> messages = context.getMessages();
+        assertTrue(hasSummary(messages));
+        assertFalse(context.exceedsContextLimits());
+        assertEquals("达到上限之前的第5个问题，同样足够长", messages.get(messages.size() - 1).getContent());
+    }
+
+    @Test
+    void testStalePreparedSummaryIsNotUsed() throws InterruptedException {
+        context = newContext(400);
+        startCompression().complete("预先生成的摘要");
+        awaitCompressionFinished();
+
+        context.updateSystemMessage("切换模板后的提示词");
+        for (int i = 0; i < 6; i++) {
+            context.addUserMessage("达到上限之前的第" + i + "个问题，同样足够长");
+        }
+
+        // 预先生成的摘要对应的上下文已被改写，重新压缩
+        CompletableFuture<String> summary = startCompression();
+        summary.complete("新的摘要");
+        awaitCompressionFinished();
+        List<LLMMessage> messages = context.getMessages();
+        assertTrue(messages.stream().anyMatch(m -> m.getContent().contains("新的摘要")));
+        assertFalse(messages.stream().anyMatch(m -> m.getContent().contains("预先生成的摘要")));
+    }
+
+    @Test
+    void testNoPreparationBelowWatermark() throws InterruptedException {
+        context = newContext(1000);
+        context.scheduleCompressionIfNeeded();
+        assertNull(pendingSummaries.poll(200, TimeUnit.MILLISECONDS));
+        assertFalse(context.isCompressionInProgress());
+    }
+
+    @Test
+    void testFailedPreparationBacksOff() throws InterruptedException {
+        context = newContext(400);
+
+        // 服务不可用时摘要为null，不应立即重新发送请求
+        startCompression().complete(null);
+        awaitCompressionFinished();
+        assertNull(pendingSummaries.poll(200, TimeUnit.MILLISECONDS));
+
+        context.addUserMessage("短问题");
+        context.scheduleCompressionIfNeeded();
+        assertNull(pendingSummaries.poll(200, TimeUnit.MILLISECONDS));
+        assertFalse(context.isCompressionInProgress());
+
+        // 上下文明显增长后再次尝试
+        context.addUserMessage("又一个足够长的问题，让上下文增长超过上限的十分之一，这样预压缩会在退避之后重新尝试生成摘要");
+        context.scheduleCompressionIfNeeded();
+        assertNotNull(pendingSummaries.poll(5, TimeUnit.SECONDS));
+    }
+}
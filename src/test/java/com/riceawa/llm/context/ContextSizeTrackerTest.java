@@ -0,0 +1,91 @@
+package com.riceawa.llm.context;
+
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMMessage.MessageRole;
+import com.riceawa.llm.tokenizer.TokenCounter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContextSizeTracker测试类
+ */
+public class ContextSizeTrackerTest {
+
+    private AtomicInteger tokenCalls;
+    private ContextSizeTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tokenCalls = new AtomicInteger();
+        // 每个字符计为一个token，便于核对
+        tracker = new ContextSizeTracker(message -> {
+            tokenCalls.incrementAndGet();
+            return message.getContent().length();
+        });
+    }
+
+    @Test
+    void testEmptyTracker() {
+        assertEquals(0, tracker.getCharacters());
+        assertEquals(0, tracker.getTokens());
+        assertEquals(0, tracker.getMessageCount());
+    }
+
+    @Test
+    void testAddAndRemoveUpdateTotals() {
+        LLMMessage system = new LLMMessage(MessageRole.SYSTEM, "你是助手");
+        LLMMessage user = new LLMMessage(MessageRole.USER, "你好");
+        LLMMessage tool = new LLMMessage(MessageRole.TOOL, "{\"ok\":true}");
+        tracker.add(system);
+        tracker.add(user);
+        tracker.add(tool);
+
+        assertEquals(4 + 2 + 11, tracker.getCharacters());
+        assertEquals(4 + 2 + 11 + TokenCounter.TOKENS_PER_REPLY, tracker.getTokens());
+        assertEquals(3, tracker.getMessageCount());
+        assertEquals(1, tracker.getRoleCount(MessageRole.TOOL));
+        assertEquals(0, tracker.getRoleCount(MessageRole.ASSISTANT));
+
+        tracker.remove(tool);
+        assertEquals(6, tracker.getCharacters());
+        assertEquals(0, tracker.getRoleCount(MessageRole.TOOL));
+        assertEquals(2, tracker.getMessageCount());
+    }
+
+    @Test
+    void testReplaceOnlyCountsChangedMessage() {
+        LLMMessage oldSystem = new LLMMessage(MessageRole.SYSTEM, "旧的系统提示词");
+        tracker.add(oldSystem);
+        for (int i = 0; i < 100; i++) {
+            tracker.add(new LLMMessage(MessageRole.USER, "消息" + i));
+        }
+        int calls = tokenCalls.get();
+
+        LLMMessage newSystem = new LLMMessage(MessageRole.SYSTEM, "新提示词");
+        tracker.replace(oldSystem, newSystem);
+        assertEquals(calls + 2, tokenCalls.get());
+        assertEquals(1, tracker.getRoleCount(MessageRole.SYSTEM));
+        assertEquals(101, tracker.getMessageCount());
+    }
+
+    @Test
+    void testResetRecountsList() {
+        tracker.add(new LLMMessage(MessageRole.USER, "很长的一段旧对话"));
+        tracker.reset(List.of(
+            new LLMMessage(MessageRole.SYSTEM, "摘要"),
+            new LLMMessage(MessageRole.USER, "问题")));
+
+        assertEquals(4, tracker.getCharacters());
+        assertEquals(2, tracker.getMessageCount());
+        assertEquals(0, tracker.getRoleCount(MessageRole.ASSISTANT));
+
+        tracker.reset();
+        assertEquals(0, tracker.getTokens());
+        assertEquals(0, tracker.getRoleCount(MessageRole.SYSTEM));
+    }
+}
@@ -0,0 +1,80 @@
+package com.riceawa.llm.context;
+
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMMessage.MessageRole;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * MessageSequence测试类
+ */
+public class MessageSequenceTest {
+
+    private static LLMMessage user(String content) {
+        return new LLMMessage(MessageRole.USER, content);
+    }
+
+    @Test
+    void testAppendKeepsOldSnapshots() {
+        MessageSequence first = MessageSequence.empty().append(user("a"));
+        MessageSequence second = first.append(user("b"));
+
+        assertEquals(1, first.size());
+        assertEquals(2, second.size());
+        assertEquals("a", second.get(0).getContent());
+        assertEquals("b", second.get(1).getContent());
+        assertThrows(IndexOutOfBoundsException.class, () -> first.get(1));
+    }
+
+    @Test
+    void testBranchingFromOldSnapshotDoesNotOverwrite() {
+        MessageSequence base = MessageSequence.empty().append(user("a"));
+        MessageSequence left = base.append(user("left"));
+        MessageSequence right = base.append(user("right"));
+
+        assertEquals("left", left.get(1).getContent());
+        assertEquals("right", right.get(1).getContent());
+        assertEquals(1, base.size());
+    }
+
+    @Test
+    void testGrowsBeyondInitialCapacity() {
+        MessageSequence sequence = MessageSequence.empty();
+        List<MessageSequence> snapshots = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            sequence = sequence.append(user(String.valueOf(i)));
+            snapshots.add(sequence);
+        }
+        assertEquals(100, sequence.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + 1, snapshots.get(i).size());
+            assertEquals(String.valueOf(i), sequence.get(i).getContent());
+        }
+    }
+
+    @Test
+    void testReplaceAndPrependCopy() {
+        MessageSequence base = MessageSequence.of(List.of(user("a"), user("b")));
+        LLMMessage system = new LLMMessage(MessageRole.SYSTEM, "提示词");
+
+        MessageSequence prepended = base.prepend(system);
+        assertEquals(List.of(system, base.get(0), base.get(1)), prepended);
+
+        MessageSequence replaced = prepended.with(0, user("c"));
+        assertEquals("c", replaced.get(0).getContent());
+        assertSame(system, prepended.get(0));
+        assertEquals(2, base.size());
+    }
+
+    @Test
+    void testIsUnmodifiable() {
+        MessageSequence sequence = MessageSequence.empty().append(user("a"));
+        assertThrows(UnsupportedOperationException.class, () -> sequence.add(user("b")));
+        assertThrows(UnsupportedOperationException.class, () -> sequence.set(0, user("b")));
+        assertThrows(UnsupportedOperationException.class, sequence::clear);
+    }
+}
@@ -0,0 +1,164 @@
+package com.riceawa.llm.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AdaptiveConcurrencyLimiter测试类
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    private static final String STREAM = "interactive/ttfb";
+    private static final String CHAT = "interactive/per-token";
+    private static final String BACKGROUND = "background/per-token";
+
+    private AtomicLong now;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(10_000);
+        limiter = new AdaptiveConcurrencyLimiter(2, 16, now::get);
+    }
+
+    @Test
+    void testStartsAtMaxLimit() {
+        assertEquals(16, limiter.getLimit());
+        assertEquals(16, limiter.getLimit("openai"));
+    }
+
+    @Test
+    void testOverloadHalvesLimitWithCooldown() {
+        limiter.onSample("openai", STREAM, 100, true, 16);
+        assertEquals(8, limiter.getLimit());
+
+        // 冷却时间内的后续429不再继续收缩
+        limiter.onSample("openai", STREAM, 100, true, 8);
+        assertEquals(8, limiter.getLimit());
+
+        now.addAndGet(1000);
+        limiter.onSample("openai", STREAM, 100, true, 8);
+        assertEquals(4, limiter.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            now.addAndGet(1000);
+            limiter.onSample("openai", STREAM, 100, true, 4);
+        }
+        assertEquals(2, limiter.getLimit(), "不应低于下限");
+    }
+
+    @Test
+    void testOverloadedProviderLimitsSharedSlots() {
+        limiter.onSample("deepseek", STREAM, 300, false, 16);
+        limiter.onSample("openai", STREAM, 100, true, 16);
+
+        assertEquals(8, limiter.getLimit("openai"));
+        assertEquals(16, limiter.getLimit("deepseek"), "429只收缩该服务商自己的上限");
+        assertEquals(8, limiter.getLimit(), "其他服务商正常时也不应继续打满限流中的服务商");
+    }
+
+    @Test
+    void testGrowthUsesProviderInFlight() {
+        limiter.onSample("openai", STREAM, 100, true, 16);
+        // 全局还有很多请求，但都发往其他服务商，限流中的服务商自己很空闲
+        for (int i = 0; i < 100; i++) {
+            now.addAndGet(100);
+            limiter.onSample("openai", STREAM, 100, false, 1);
+            limiter.onSample("deepseek", STREAM, 300, false, 16);
+        }
+        assertEquals(8, limiter.getLimit("openai"));
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void testIdleProviderNoLongerCounts() {
+        limiter.onSample("openai", STREAM, 100, true, 16);
+        assertEquals(8, limiter.getLimit());
+
+        now.addAndGet(5 * 60 * 1000 + 1);
+        assertEquals(16, limiter.getLimit(), "长时间没有请求的服务商不再限制整体上限");
+    }
+
+    @Test
+    void testLimitRecoversWhileLatencyIsFlat() {
+        limiter.onSample("openai", STREAM, 100, true, 16);
+        assertEquals(8, limiter.getLimit());
+
+        for (int i = 0; i < 100; i++) {
+            now.addAndGet(100);
+            limiter.onSample("openai", STREAM, 100, false, limiter.getLimit());
+        }
+        assertEquals(16, limiter.getLimit(), "延迟平稳时应恢复到上限");
+    }
+
+    @Test
+    void testNoGrowthWhenUnderutilized() {
+        limiter.onSample("openai", STREAM, 100, true, 16);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample("openai", STREAM, 100, false, 1);
+        }
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void testRisingLatencyShrinksLimit() {
+        for (int i = 0; i < 10; i++) {
+            limiter.onSample("openai", STREAM, 100, false, 16);
+        }
+        assertEquals(16, limiter.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            now.addAndGet(1000);
+            limiter.onSample("openai", STREAM, 1000, false, 16);
+        }
+        assertTrue(limiter.getLimit() < 16, "延迟升高后应收缩，当前: " + limiter.getLimit());
+        assertTrue(limiter.getLimit() >= 2);
+    }
+
+    @Test
+    void testMixedRequestKindsDoNotShrinkLimit() {
+        // 首字节时间、每token耗时和不同服务商的延迟相差很大，但各自平稳
+        for (int i = 0; i < 300; i++) {
+            now.addAndGet(100);
+            limiter.onSample("openai", STREAM, 250 + (i % 7) * 20, false, 16);
+            limiter.onSample("openai", CHAT, 30 + (i % 5), false, 16);
+            limiter.onSample("openai", BACKGROUND, 12 + (i % 3), false, 16);
+            limiter.onSample("deepseek", STREAM, 1800 + (i % 11) * 50, false, 16);
+        }
+        assertEquals(16, limiter.getLimit("openai"));
+        assertEquals(16, limiter.getLimit("deepseek"));
+    }
+
+    @Test
+    void testFastOutlierDoesNotBecomeBaseline() {
+        for (int i = 0; i < 50; i++) {
+            now.addAndGet(100);
+            limiter.onSample("openai", STREAM, 100 + (i % 5) * 10, false, 16);
+        }
+        // 一次命中缓存的极快响应不应把基线拉低
+        limiter.onSample("openai", STREAM, 5, false, 16);
+        for (int i = 0; i < 50; i++) {
+            now.addAndGet(1000);
+            limiter.onSample("openai", STREAM, 100 + (i % 5) * 10, false, 16);
+        }
+
+        assertEquals(16, limiter.getLimit());
+        assertEquals(120, limiter.getBaselineLatency("openai", STREAM), 0.001);
+    }
+
+    @Test
+    void testBaselineRequiresEnoughSamples() {
+        for (int i = 0; i < 9; i++) {
+            limiter.onSample("openai", CHAT, 40, false, 16);
+        }
+        assertEquals(-1, limiter.getBaselineLatency("openai", CHAT));
+        assertEquals(-1, limiter.getBaselineLatency("openai", STREAM));
+
+        limiter.onSample("openai", CHAT, 40, false, 16);
+        assertEquals(40, limiter.getBaselineLatency("openai", CHAT), 0.001);
+    }
+}
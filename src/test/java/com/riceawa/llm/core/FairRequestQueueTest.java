@@ -0,0 +1,83 @@
+package com.riceawa.llm.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FairRequestQueue测试类
+ */
+public class FairRequestQueueTest {
+
+    private static List<String> drainAll(FairRequestQueue<String> queue) {
+        List<String> order = new ArrayList<>();
+        String item;
+        while ((item = queue.poll(key -> true)) != null) {
+            order.add(item);
+        }
+        return order;
+    }
+
+    @Test
+    void testClientsAreServedInRoundRobin() {
+        FairRequestQueue<String> queue = new FairRequestQueue<>();
+        // 玩家A先提交了大量请求
+        for (int i = 1; i <= 4; i++) {
+            queue.offer("A", "A" + i);
+        }
+        queue.offer("B", "B1");
+        queue.offer("C", "C1");
+        queue.offer("B", "B2");
+
+        assertEquals(List.of("A1", "B1", "C1", "A2", "B2", "A3", "A4"), drainAll(queue));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void testSizePerClient() {
+        FairRequestQueue<String> queue = new FairRequestQueue<>();
+        queue.offer("A", "A1");
+        queue.offer("A", "A2");
+        queue.offer("B", "B1");
+
+        assertEquals(3, queue.size());
+        assertEquals(2, queue.size("A"));
+        assertEquals(0, queue.size("C"));
+
+        queue.poll(key -> true);
+        assertEquals(1, queue.size("A"));
+    }
+
+    @Test
+    void testIneligibleClientIsSkipped() {
+        FairRequestQueue<String> queue = new FairRequestQueue<>();
+        queue.offer("A", "A1");
+        queue.offer("A", "A2");
+        queue.offer("B", "B1");
+
+        // A已达到在途上限
+        assertEquals("B1", queue.poll(key -> !"A".equals(key)));
+        assertNull(queue.poll(key -> !"A".equals(key)));
+        assertEquals("A1", queue.poll(key -> true));
+    }
+
+    @Test
+    void testRemoveAndSizes() {
+        FairRequestQueue<String> queue = new FairRequestQueue<>();
+        queue.offer("A", "A1");
+        queue.offer("B", "B1");
+        queue.offer("B", "B2");
+
+        assertTrue(queue.remove("A", "A1"));
+        assertFalse(queue.remove("A", "A1"));
+        assertEquals(Map.of("B", 2), queue.sizesByClient());
+
+        assertEquals(2, queue.drain().size());
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll(key -> true));
+    }
+}
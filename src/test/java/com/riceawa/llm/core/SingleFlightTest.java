@@ -0,0 +1,91 @@
+package com.riceawa.llm.core;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SingleFlight测试类
+ */
+public class SingleFlightTest {
+
+    private SingleFlight<String, String> singleFlight;
+    private AtomicInteger calls;
+
+    @BeforeEach
+    void setUp() {
+        singleFlight = new SingleFlight<>();
+        calls = new AtomicInteger(0);
+    }
+
+    private CompletableFuture<String> start(CompletableFuture<String> upstream) {
+        calls.incrementAndGet();
+        return upstream;
+    }
+
+    @Test
+    void testConcurrentCallersShareOneRequest() throws Exception {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("key", () -> start(upstream));
+        CompletableFuture<String> second = singleFlight.execute("key", () -> start(new CompletableFuture<>()));
+
+        assertEquals(1, calls.get());
+        assertEquals(1, singleFlight.getCoalescedCount());
+        assertNotSame(first, second);
+
+        upstream.complete("answer");
+        assertEquals("answer", first.get());
+        assertEquals("answer", second.get());
+        assertEquals(0, singleFlight.getInFlightCount());
+    }
+
+    @Test
+    void testDifferentKeysAreNotCoalesced() {
+        singleFlight.execute("a", () -> start(new CompletableFuture<>()));
+        singleFlight.execute("b", () -> start(new CompletableFuture<>()));
+        assertEquals(2, calls.get());
+        assertEquals(0, singleFlight.getCoalescedCount());
+    }
+
+    @Test
+    void testCompletedRequestIsNotReused() throws Exception {
+        singleFlight.execute("key", () -> start(CompletableFuture.completedFuture("first"))).get();
+        assertEquals("second", singleFlight.execute("key", () -> start(CompletableFuture.completedFuture("second"))).get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void testFailureIsSharedByAllCallers() {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("key", () -> start(upstream));
+        CompletableFuture<String> second = singleFlight.execute("key", () -> start(upstream));
+
+        upstream.completeExceptionally(new IllegalStateException("boom"));
+        assertThrows(ExecutionException.class, first::get);
+        assertThrows(ExecutionException.class, second::get);
+    }
+
+    @Test
+    void testUpstreamCancelledOnlyWhenAllCallersCancel() throws Exception {
+        CompletableFuture<String> upstream = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.execute("key", () -> start(upstream));
+        CompletableFuture<String> second = singleFlight.execute("key", () -> start(upstream));
+
+        first.cancel(true);
+        assertFalse(upstream.isCancelled());
+
+        second.cancel(true);
+        assertTrue(upstream.isCancelled());
+        assertEquals(0, singleFlight.getInFlightCount());
+
+        // 放弃的请求不会被新的调用方复用
+        CompletableFuture<String> third = singleFlight.execute("key", () -> start(CompletableFuture.completedFuture("new")));
+        assertEquals("new", third.get());
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,106 @@
+package com.riceawa.llm.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.riceawa.llm.core.LLMConfig;
+import com.riceawa.llm.core.LLMMessage;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatRequestBody测试类
+ */
+public class ChatRequestBodyTest {
+
+    private final Gson gson = new Gson();
+
+    private LLMConfig createConfig() {
+        LLMConfig config = new LLMConfig();
+        config.setModel("test-model");
+        return config;
+    }
+
+    @Test
+    void testSerializesMessagesAndToolCalls() {
+        List<LLMMessage> messages = new ArrayList<>();
+        messages.add(new LLMMessage(LLMMessage.MessageRole.USER, "你好 \"世界\""));
+
+        LLMMessage assistant = new LLMMessage(LLMMessage.MessageRole.ASSISTANT, null);
+        assistant.getMetadata().setFunctionCall(new LLMMessage.FunctionCall("wiki_search", "{\"query\":\"铁\"}", "call_1"));
+        messages.add(assistant);
+
+        LLMMessage tool = new LLMMessage(LLMMessage.MessageRole.TOOL, "结果");
+        tool.setName("wiki_search");
+        tool.setToolCallId("call_1");
+        messages.add(tool);
+
+        LLMConfig config = createConfig();
+        config.setTools(List.of(new LLMConfig.ToolDefinition(
+            new LLMConfig.FunctionDefinition("wiki_search", "搜索Wiki", Map.of("type", "object")))));
+
+        JsonObject json = JsonParser.parseString(ChatRequestBody.create(messages, config, false, gson).toJson()).getAsJsonObject();
+
+        assertEquals("test-model", json.get("model").getAsString());
+        assertEquals("你好 \"世界\"", json.getAsJsonArray("messages").get(0).getAsJsonObject().get("content").getAsString());
+
+        JsonObject toolCall = json.getAsJsonArray("messages").get(1).getAsJsonObject()
+            .getAsJsonArray("tool_calls").get(0).getAsJsonObject();
+        assertEquals("call_1", toolCall.get("id").getAsString());
+        assertEquals("{\"query\":\"铁\"}", toolCall.getAsJsonObject("function").get("arguments").getAsString());
+
+        JsonObject toolMessage = json.getAsJsonArray("messages").get(2).getAsJsonObject();
+        assertEquals("call_1", toolMessage.get("tool_call_id").getAsString());
+
+        assertEquals("object", json.getAsJsonArray("tools").get(0).getAsJsonObject()
+            .getAsJsonObject("function").getAsJsonObject("parameters").get("type").getAsString());
+        assertFalse(json.has("stream"));
+    }
+
+    @Test
+    void testStreamOptions() {
+        ChatRequestBody body = ChatRequestBody.create(
+            List.of(new LLMMessage(LLMMessage.MessageRole.USER, "hi")), createConfig(), true, gson);
+        JsonObject json = JsonParser.parseString(body.toJson()).getAsJsonObject();
+
+        assertTrue(json.get("stream").getAsBoolean());
+        assertTrue(json.getAsJsonObject("stream_options").get("include_usage").getAsBoolean());
+    }
+
+    @Test
+    void testBodyCanBeWrittenRepeatedly() throws Exception {
+        ChatRequestBody body = ChatRequestBody.create(
+            List.of(new LLMMessage(LLMMessage.MessageRole.USER, "方块")), createConfig(), false, gson);
+
+        // 连接失败重试时OkHttp会再次写入请求体
+        Buffer first = new Buffer();
+        body.writeTo(first);
+        Buffer second = new Buffer();
+        body.writeTo(second);
+
+        assertEquals(body.contentLength(), first.size());
+        assertEquals(body.toJson(), first.readUtf8());
+        assertEquals(body.toJson(), second.readUtf8());
+    }
+
+    @Test
+    void testSha256IdentifiesIdenticalRequests() {
+        List<LLMMessage> messages = List.of(new LLMMessage(LLMMessage.MessageRole.USER, "钻石在哪一层"));
+        LLMConfig config = createConfig();
+        config.setTemperature(0.0);
+
+        String hash = ChatRequestBody.create(messages, config, false, gson).sha256();
+        assertEquals(64, hash.length());
+        assertEquals(hash, ChatRequestBody.create(
+            List.of(new LLMMessage(LLMMessage.MessageRole.USER, "钻石在哪一层")), config, false, gson).sha256());
+
+        config.setTemperature(0.5);
+        assertNotEquals(hash, ChatRequestBody.create(messages, config, false, gson).sha256());
+    }
+}
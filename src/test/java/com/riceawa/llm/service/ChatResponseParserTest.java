@@ -0,0 +1,93 @@
+package com.riceawa.llm.service;
+
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMResponse;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ChatResponseParser测试类
+ */
+public class ChatResponseParserTest {
+
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+
+    private static final String TEXT_RESPONSE = "{\"id\":\"chatcmpl-1\",\"object\":\"chat.completion\",\"model\":\"gpt-4o\"," +
+        "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"你好\",\"refusal\":null}," +
+        "\"logprobs\":null,\"finish_reason\":\"stop\"}]," +
+        "\"usage\":{\"prompt_tokens\":10,\"completion_tokens\":5,\"total_tokens\":15,\"prompt_tokens_details\":{\"cached_tokens\":0}}}";
+
+    private LLMResponse parse(String json, long captureLimit, ChatResponseParser[] parserOut) {
+        ChatResponseParser parser = new ChatResponseParser(captureLimit);
+        if (parserOut != null) {
+            parserOut[0] = parser;
+        }
+        return parser.parse(ResponseBody.create(json, JSON));
+    }
+
+    @Test
+    void testParseTextResponse() {
+        LLMResponse response = parse(TEXT_RESPONSE, 0, null);
+
+        assertTrue(response.isSuccess());
+        assertEquals("chatcmpl-1", response.getId());
+        assertEquals("gpt-4o", response.getModel());
+        assertEquals("你好", response.getContent());
+        assertEquals("stop", response.getChoices().get(0).getFinishReason());
+        assertEquals(15, response.getUsage().getTotalTokens());
+    }
+
+    @Test
+    void testParseToolCallInAnyFieldOrder() {
+        String json = "{\"choices\":[{\"index\":0,\"finish_reason\":\"tool_calls\",\"message\":{\"content\":null," +
+            "\"tool_calls\":[{\"function\":{\"arguments\":\"{\\\"query\\\":\\\"铁\\\"}\",\"name\":\"wiki_search\"}," +
+            "\"id\":\"call_1\",\"type\":\"function\"},{\"id\":\"call_2\",\"type\":\"function\",\"function\":{\"name\":\"other\",\"arguments\":\"{}\"}}]," +
+            "\"role\":\"assistant\"}}]}";
+
+        LLMResponse response = parse(json, 0, null);
+        LLMMessage message = response.getChoices().get(0).getMessage();
+
+        assertNull(message.getContent());
+        LLMMessage.FunctionCall call = message.getMetadata().getFunctionCall();
+        assertEquals("wiki_search", call.getName());
+        assertEquals("{\"query\":\"铁\"}", call.getArguments());
+        assertEquals("call_1", call.getToolCallId());
+    }
+
+    @Test
+    void testParseLegacyFunctionCall() {
+        String json = "{\"choices\":[{\"message\":{\"role\":\"assistant\"," +
+            "\"function_call\":{\"name\":\"get_time\",\"arguments\":\"{}\"}}}]}";
+
+        LLMMessage message = parse(json, 0, null).getChoices().get(0).getMessage();
+
+        assertEquals("get_time", message.getMetadata().getFunctionCall().getName());
+    }
+
+    @Test
+    void testRawCaptureIsOptionalAndCapped() {
+        ChatResponseParser[] parser = new ChatResponseParser[1];
+
+        parse(TEXT_RESPONSE, 0, parser);
+        assertNull(parser[0].getRawJson());
+
+        parse(TEXT_RESPONSE, 1_000_000, parser);
+        assertEquals(TEXT_RESPONSE, parser[0].getRawJson());
+
+        LLMResponse response = parse(TEXT_RESPONSE, 20, parser);
+        assertEquals("你好", response.getContent(), "截断只影响日志内容，不影响解析");
+        assertTrue(parser[0].getRawJson().startsWith(TEXT_RESPONSE.substring(0, 20)));
+        assertTrue(parser[0].getRawJson().endsWith("...(truncated)"));
+    }
+
+    @Test
+    void testInvalidJsonReturnsError() {
+        LLMResponse response = parse("<html>Bad Gateway</html>", 0, null);
+
+        assertFalse(response.isSuccess());
+        assertTrue(response.getError().startsWith("Failed to parse response"));
+    }
+}
@@ -0,0 +1,106 @@
+package com.riceawa.llm.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CircuitBreaker测试类
+ */
+public class CircuitBreakerTest {
+
+    private AtomicLong now;
+    private CircuitBreaker breaker;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(0);
+        breaker = new CircuitBreaker(3, 0.5, 1000, now::get);
+    }
+
+    @Test
+    void testOpensAfterConsecutiveFailures() {
+        assertFalse(breaker.onFailure(false));
+        assertFalse(breaker.onFailure(false));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        assertTrue(breaker.onFailure(false));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        assertFalse(breaker.isCallPermitted());
+        assertEquals(1000, breaker.getRemainingOpenMs());
+    }
+
+    @Test
+    void testSuccessResetsConsecutiveFailures() {
+        breaker.onFailure(false);
+        breaker.onFailure(false);
+        breaker.onSuccess();
+        breaker.onFailure(false);
+        breaker.onFailure(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void testOpensOnTimeoutRate() {
+        CircuitBreaker lenient = new CircuitBreaker(100, 0.5, 1000, now::get);
+        for (int i = 0; i < CircuitBreaker.MIN_CALLS / 2 - 1; i++) {
+            lenient.onSuccess();
+            lenient.onFailure(true);
+        }
+        // 超时比例已达到50%，但请求数不足时不熔断
+        assertEquals(CircuitBreaker.State.CLOSED, lenient.getState());
+
+        lenient.onSuccess();
+        assertTrue(lenient.onFailure(true));
+        assertEquals(CircuitBreaker.State.OPEN, lenient.getState());
+    }
+
+    @Test
+    void testHalfOpenAllowsSingleProbe() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(false);
+        }
+        now.set(1000);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.isCallPermitted());
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+        assertFalse(breaker.isCallPermitted());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void testFailedProbeReopens() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(false);
+        }
+        now.set(1000);
+        assertTrue(breaker.tryAcquirePermission());
+        assertTrue(breaker.onFailure(true));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1000, breaker.getRemainingOpenMs());
+    }
+
+    @Test
+    void testLostProbeIsReplacedAfterOpenDuration() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure(false);
+        }
+        now.set(1000);
+        assertTrue(breaker.tryAcquirePermission());
+
+        // 探测请求被取消，没有记录结果
+        now.set(1500);
+        assertFalse(breaker.tryAcquirePermission());
+        now.set(2000);
+        assertTrue(breaker.tryAcquirePermission());
+    }
+}
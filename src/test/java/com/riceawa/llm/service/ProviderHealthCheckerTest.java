@@ -8,6 +8,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -16,9 +17,13 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class ProviderHealthCheckerTest {
     
+    private static final long MAX_IDLE_MS = 60_000;
+
     private ProviderHealthChecker healthChecker;
     private Provider validProvider;
     private Provider invalidProvider;
+    private AtomicLong now;
+    private ProviderStats stats;
     
     @BeforeEach
     void setUp() {
@@ -40,6 +45,9 @@ public class ProviderHealthCheckerTest {
             null,
             List.of("gpt-3.5-turbo")
         );
+
+        now = new AtomicLong(1_000_000);
+        stats = new ProviderStats("test", now::get);
     }
     
     @Test
@@ -157,4 +165,61 @@ public class ProviderHealthCheckerTest {
         assertNotNull(formattedTime);
         assertTrue(formattedTime.matches("\\d{2}:\\d{2}:\\d{2}")); // HH:mm:ss格式
     }
+
+    @Test
+    void testNoRecentTrafficRequiresProbe() {
+        assertNull(ProviderHealthChecker.fromTraffic(stats, MAX_IDLE_MS));
+
+        stats.recordOutcome(true);
+        assertNotNull(ProviderHealthChecker.fromTraffic(stats, MAX_IDLE_MS));
+
+        now.addAndGet(MAX_IDLE_MS + 1);
+        assertNull(ProviderHealthChecker.fromTraffic(stats, MAX_IDLE_MS));
+    }
+
+    @Test
+    void testHealthFromSuccessRate() {
+        for (int i = 0; i < 10; i++) {
+            stats.recordOutcome(i != 0);
+        }
+        stats.recordLatency(800);
+        ProviderHealthChecker.HealthStatus healthy = ProviderHealthChecker.fromTraffic(stats, MAX_IDLE_MS);
+        assertTrue(healthy.isHealthy());
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.NONE, healthy.getErrorType());
+
+        for (int i = 0; i < 10; i++) {
+            stats.recordOutcome(false);
+        }
+        stats.recordError(ProviderHealthChecker.HealthStatus.ErrorType.API_ERROR, "HTTP 503");
+        ProviderHealthChecker.HealthStatus unhealthy = ProviderHealthChecker.fromTraffic(stats, MAX_IDLE_MS);
+        assertFalse(unhealthy.isHealthy());
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.API_ERROR, unhealthy.getErrorType());
+        assertTrue(unhealthy.getMessage().contains("HTTP 503"));
+    }
+
+    @Test
+    void testRecentAuthFailureIsUnhealthy() {
+        for (int i = 0; i < 10; i++) {
+            stats.recordOutcome(true);
+        }
+        now.addAndGet(1000);
+        stats.recordOutcome(false);
+        stats.recordError(ProviderHealthChecker.HealthStatus.ErrorType.AUTH_ERROR, "HTTP 401");
+        ProviderHealthChecker.HealthStatus status = ProviderHealthChecker.fromTraffic(stats, MAX_IDLE_MS);
+        assertFalse(status.isHealthy());
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.AUTH_ERROR, status.getErrorType());
+
+        // 修复配置后请求成功，恢复健康
+        now.addAndGet(1000);
+        stats.recordOutcome(true);
+        assertTrue(ProviderHealthChecker.fromTraffic(stats, MAX_IDLE_MS).isHealthy());
+    }
+
+    @Test
+    void testErrorTypeForStatus() {
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.AUTH_ERROR, ProviderHealthChecker.errorTypeForStatus(401));
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.RATE_LIMIT_ERROR, ProviderHealthChecker.errorTypeForStatus(429));
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.MODEL_ERROR, ProviderHealthChecker.errorTypeForStatus(404));
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.API_ERROR, ProviderHealthChecker.errorTypeForStatus(500));
+    }
 }
@@ -0,0 +1,115 @@
+package com.riceawa.llm.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProviderRateLimiter测试类
+ */
+public class ProviderRateLimiterTest {
+
+    private AtomicLong now;
+    private ScheduledExecutorService scheduler;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(1_000_000);
+        // 只用于安排唤醒，测试中不会等到唤醒触发，由测试推进时钟后手动放行
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private ProviderRateLimiter.ProviderBudget budget(int rpm, int rph, int tpm, long maxWaitMs, int maxWaiters) {
+        return new ProviderRateLimiter.ProviderBudget("test", rpm, rph, tpm, maxWaitMs, maxWaiters, now::get, () -> scheduler);
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        assertTrue(future.isCompletedExceptionally());
+        return assertThrows(ExecutionException.class, future::get).getCause();
+    }
+
+    @Test
+    void testWaitingRequestIsGrantedWhenBudgetRecovers() {
+        ProviderRateLimiter.ProviderBudget budget = budget(2, 0, 0, 60_000, 10);
+        assertTrue(budget.acquire(0).isDone());
+        assertTrue(budget.acquire(0).isDone());
+
+        CompletableFuture<ProviderRateLimiter.Permit> waiting = budget.acquire(0);
+        assertFalse(waiting.isDone());
+
+        now.addAndGet(30_000);
+        budget.drain();
+        assertTrue(waiting.isDone());
+        assertFalse(waiting.isCompletedExceptionally());
+    }
+
+    @Test
+    void testWaitLongerThanLimitFailsImmediately() {
+        // 每小时配额用尽时需要等待约一小时，超过等待上限，立即超时而不是排队
+        ProviderRateLimiter.ProviderBudget budget = budget(0, 1, 0, 30_000, 10);
+        assertTrue(budget.acquire(0).isDone());
+
+        assertInstanceOf(TimeoutException.class, failure(budget.acquire(0)));
+        assertEquals(0, budget.getStats().waitingRequests);
+    }
+
+    @Test
+    void testWaitingQueueIsBounded() {
+        ProviderRateLimiter.ProviderBudget budget = budget(1, 0, 0, 120_000, 2);
+        assertTrue(budget.acquire(0).isDone());
+
+        CompletableFuture<ProviderRateLimiter.Permit> first = budget.acquire(0);
+        CompletableFuture<ProviderRateLimiter.Permit> second = budget.acquire(0);
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        assertInstanceOf(RejectedExecutionException.class, failure(budget.acquire(0)));
+
+        // 取消的请求释放等待名额
+        second.cancel(true);
+        assertFalse(budget.acquire(0).isDone());
+    }
+
+    @Test
+    void testQueuedRequestTimesOutWhenItCannotBeServedInTime() {
+        ProviderRateLimiter.ProviderBudget budget = budget(1, 0, 0, 90_000, 10);
+        assertTrue(budget.acquire(0).isDone());
+
+        CompletableFuture<ProviderRateLimiter.Permit> first = budget.acquire(0);
+        CompletableFuture<ProviderRateLimiter.Permit> second = budget.acquire(0);
+
+        now.addAndGet(60_000);
+        budget.drain();
+        assertTrue(first.isDone());
+        assertFalse(first.isCompletedExceptionally());
+        // 第二个请求还要再等一分钟，超过了从入队开始算的90秒上限
+        assertInstanceOf(TimeoutException.class, failure(second));
+    }
+
+    @Test
+    void testRefundReleasesWaitingRequest() throws Exception {
+        ProviderRateLimiter.ProviderBudget budget = budget(0, 0, 1000, 60_000, 10);
+        ProviderRateLimiter.Permit permit = budget.acquire(800).get();
+
+        CompletableFuture<ProviderRateLimiter.Permit> waiting = budget.acquire(800);
+        assertFalse(waiting.isDone());
+
+        permit.reconcile(0);
+        assertTrue(waiting.isDone());
+    }
+}
@@ -0,0 +1,128 @@
+package com.riceawa.llm.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProviderStats测试类
+ */
+public class ProviderStatsTest {
+
+    private ProviderStats stats;
+
+    @BeforeEach
+    void setUp() {
+        stats = new ProviderStats("test");
+    }
+
+    @Test
+    void testPercentileRequiresEnoughSamples() {
+        for (int i = 0; i < ProviderStats.MIN_SAMPLES - 1; i++) {
+            stats.recordLatency(100);
+        }
+        assertEquals(-1, stats.getLatencyPercentile(0.95));
+
+        stats.recordLatency(100);
+        assertEquals(100, stats.getLatencyPercentile(0.95));
+    }
+
+    @Test
+    void testLatencyPercentile() {
+        for (int i = 1; i <= 100; i++) {
+            stats.recordLatency(i * 10);
+        }
+        assertEquals(950, stats.getLatencyPercentile(0.95));
+        assertEquals(500, stats.getLatencyPercentile(0.5));
+        assertEquals(1000, stats.getLatencyPercentile(1.0));
+    }
+
+    @Test
+    void testOldSamplesAreReplaced() {
+        for (int i = 0; i < 100; i++) {
+            stats.recordLatency(5000);
+        }
+        // 服务商恢复后，新的样本逐渐替换旧样本
+        for (int i = 0; i < 100; i++) {
+            stats.recordLatency(200);
+        }
+        assertEquals(100, stats.getSampleCount());
+        assertEquals(200, stats.getLatencyPercentile(0.95));
+    }
+
+    @Test
+    void testEwmaLatency() {
+        assertEquals(-1, stats.getEwmaLatencyMs());
+        stats.recordLatency(1000);
+        assertEquals(1000, stats.getEwmaLatencyMs(), 0.001);
+        stats.recordLatency(2000);
+        assertEquals(1300, stats.getEwmaLatencyMs(), 0.001);
+    }
+
+    @Test
+    void testErrorRateWindow() {
+        assertEquals(0.0, stats.getErrorRate());
+        for (int i = 0; i < 10; i++) {
+            stats.recordOutcome(i % 2 == 0);
+        }
+        assertEquals(0.5, stats.getErrorRate(), 0.001);
+
+        // 只统计最近的请求，旧的失败会移出窗口
+        for (int i = 0; i < 100; i++) {
+            stats.recordOutcome(true);
+        }
+        assertEquals(0.0, stats.getErrorRate(), 0.001);
+    }
+
+    @Test
+    void testLoadScoreOrdering() {
+        ProviderStats slow = new ProviderStats("slow");
+        ProviderStats fast = new ProviderStats("fast");
+        slow.recordLatency(2000);
+        fast.recordLatency(500);
+        assertTrue(fast.getLoadScore(1.0, 1000) < slow.getLoadScore(1.0, 1000));
+
+        // 进行中的请求越多评分越高
+        for (int i = 0; i < 4; i++) {
+            fast.onRequestStart();
+        }
+        assertTrue(fast.getLoadScore(1.0, 1000) > slow.getLoadScore(1.0, 1000));
+        for (int i = 0; i < 4; i++) {
+            fast.onRequestEnd();
+        }
+
+        // 错误率和剩余限流配额同样影响评分
+        ProviderStats failing = new ProviderStats("failing");
+        failing.recordLatency(500);
+        for (int i = 0; i < 10; i++) {
+            failing.recordOutcome(false);
+        }
+        assertTrue(failing.getLoadScore(1.0, 1000) > slow.getLoadScore(1.0, 1000));
+        assertTrue(fast.getLoadScore(0.1, 1000) > slow.getLoadScore(1.0, 1000));
+
+        // 没有样本时使用默认延迟
+        assertEquals(1000, new ProviderStats("new").getLoadScore(1.0, 1000), 0.001);
+    }
+
+    @Test
+    void testActivityAndLastError() {
+        AtomicLong now = new AtomicLong(10_000);
+        ProviderStats timed = new ProviderStats("timed", now::get);
+        assertEquals(Long.MAX_VALUE, timed.getIdleMs());
+
+        timed.recordOutcome(true);
+        now.addAndGet(500);
+        timed.recordError(ProviderHealthChecker.HealthStatus.ErrorType.AUTH_ERROR, "HTTP 401");
+        assertEquals(0, timed.getIdleMs());
+        assertEquals(10_000, timed.getLastSuccessTime());
+        assertEquals(10_500, timed.getLastErrorTime());
+        assertEquals(ProviderHealthChecker.HealthStatus.ErrorType.AUTH_ERROR, timed.getLastErrorType());
+        assertEquals("HTTP 401", timed.getLastErrorMessage());
+
+        now.addAndGet(1000);
+        assertEquals(1000, timed.getIdleMs());
+    }
+}
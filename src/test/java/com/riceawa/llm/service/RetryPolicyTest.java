@@ -0,0 +1,141 @@
+package com.riceawa.llm.service;
+
+import com.riceawa.llm.config.ConcurrencySettings;
+import com.riceawa.llm.config.Provider;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RetryPolicy测试类
+ */
+public class RetryPolicyTest {
+
+    @Test
+    void testRetryableFailures() {
+        RetryPolicy policy = new RetryPolicy(4, 1000, 30000, 2.0);
+
+        assertTrue(policy.isRetryable(new LLMHttpException(429, "rate limited", -1)));
+        assertTrue(policy.isRetryable(new LLMHttpException(503, "unavailable", -1)));
+        assertFalse(policy.isRetryable(new LLMHttpException(400, "bad request", -1)));
+        assertFalse(policy.isRetryable(new LLMHttpException(401, "unauthorized", -1)));
+        assertTrue(policy.isRetryable(new IOException("connection reset")));
+        assertFalse(policy.isRetryable(new IOException("Canceled")));
+        assertFalse(policy.isRetryable(new IllegalStateException("bug")));
+    }
+
+    @Test
+    void testJitteredDelayStaysWithinBounds() {
+        RetryPolicy policy = new RetryPolicy(4, 1000, 5000, 3.0);
+        IOException cause = new IOException("timeout");
+
+        long previous = 0;
+        for (int i = 0; i < 50; i++) {
+            long delay = policy.nextDelayMs(previous, cause);
+            assertTrue(delay >= 1000, "不应小于基础时间: " + delay);
+            assertTrue(delay <= Math.min(5000, Math.max(1000, previous) * 3), "不应超过上界: " + delay);
+            previous = delay;
+        }
+    }
+
+    @Test
+    void testServerHintIsHonored() {
+        RetryPolicy policy = new RetryPolicy(4, 1000, 30000, 2.0);
+
+        long delay = policy.nextDelayMs(0, new LLMHttpException(429, "", 5000));
+        assertTrue(delay >= 5000 && delay <= 6000, "实际: " + delay);
+
+        // 服务商要求的等待超过上限时放弃重试
+        assertEquals(-1, policy.nextDelayMs(0, new LLMHttpException(429, "", 60000)));
+    }
+
+    @Test
+    void testRateLimitResetIsCappedInsteadOfCancellingRetry() {
+        RetryPolicy policy = new RetryPolicy(4, 1000, 30000, 2.0);
+
+        long delay = policy.nextDelayMs(0, new LLMHttpException(429, "", -1, 2000));
+        assertTrue(delay >= 2000 && delay <= 3000, "实际: " + delay);
+
+        assertEquals(30000, policy.nextDelayMs(0, new LLMHttpException(429, "", -1, 360000)));
+    }
+
+    @Test
+    void testParseRetryAfterHeaders() {
+        long now = 1_700_000_000_000L;
+
+        assertEquals(1500, RetryPolicy.parseRetryAfterMs(Map.of("retry-after-ms", "1500")::get, now));
+        assertEquals(20000, RetryPolicy.parseRetryAfterMs(Map.of("Retry-After", "20")::get, now));
+        assertEquals(3000, RetryPolicy.parseRetryAfterMs(
+            Map.of("Retry-After", "Tue, 14 Nov 2023 22:13:23 GMT")::get, now));
+        assertEquals(-1, RetryPolicy.parseRetryAfterMs(
+            Map.of("x-ratelimit-reset-requests", "1s", "x-ratelimit-reset-tokens", "6m0s")::get, now));
+        assertEquals(-1, RetryPolicy.parseRetryAfterMs(Map.<String, String>of()::get, now));
+    }
+
+    @Test
+    void testParseRateLimitResetUsesExhaustedBucket() {
+        // 没有标明耗尽的额度时取最早的重置时间
+        assertEquals(1000, RetryPolicy.parseRateLimitResetMs(
+            Map.of("x-ratelimit-reset-requests", "1s", "x-ratelimit-reset-tokens", "6m0s")::get));
+
+        assertEquals(1000, RetryPolicy.parseRateLimitResetMs(Map.of(
+            "x-ratelimit-reset-requests", "1s", "x-ratelimit-remaining-requests", "0",
+            "x-ratelimit-reset-tokens", "6m0s", "x-ratelimit-remaining-tokens", "1200")::get));
+
+        assertEquals(360000, RetryPolicy.parseRateLimitResetMs(Map.of(
+            "x-ratelimit-reset-requests", "1s", "x-ratelimit-remaining-requests", "59",
+            "x-ratelimit-reset-tokens", "6m0s", "x-ratelimit-remaining-tokens", "0")::get));
+
+        assertEquals(-1, RetryPolicy.parseRateLimitResetMs(Map.<String, String>of()::get));
+    }
+
+    @Test
+    void testParseDuration() {
+        assertEquals(250, RetryPolicy.parseDurationMs("250ms"));
+        assertEquals(1500, RetryPolicy.parseDurationMs("1.5s"));
+        assertEquals(90000, RetryPolicy.parseDurationMs("1m30s"));
+        assertEquals(2000, RetryPolicy.parseDurationMs("2"));
+        assertEquals(-1, RetryPolicy.parseDurationMs("soon"));
+    }
+
+    @Test
+    void testProviderOverrides() {
+        ConcurrencySettings settings = new ConcurrencySettings();
+        Provider provider = new Provider("p", "http://localhost", "key", List.of("m"));
+        assertEquals(settings.getMaxRetryAttempts() + 1, RetryPolicy.from(settings, provider).getMaxAttempts());
+
+        provider.setMaxRetryAttempts(5);
+        assertEquals(6, RetryPolicy.from(settings, provider).getMaxAttempts());
+
+        settings.setEnableRetry(false);
+        assertEquals(1, RetryPolicy.from(settings, provider).getMaxAttempts());
+    }
+
+    @Test
+    void testRetryBudgetLimitsRetryStorms() {
+        AtomicLong now = new AtomicLong(0);
+        RetryPolicy.RetryBudget budget = new RetryPolicy.RetryBudget(0.2, now::get);
+
+        int granted = 0;
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest();
+            if (budget.tryAcquireRetry()) {
+                granted++;
+            }
+        }
+        // 初始额度10，之后每5个请求积累1次重试
+        assertTrue(granted <= 30, "重试次数应受预算限制: " + granted);
+
+        // 额度用尽后随时间恢复
+        while (budget.tryAcquireRetry()) {
+            // 清空余额
+        }
+        now.addAndGet(2000);
+        assertTrue(budget.tryAcquireRetry());
+    }
+}
@@ -0,0 +1,150 @@
+package com.riceawa.llm.service;
+
+import com.riceawa.llm.core.LLMMessage;
+import com.riceawa.llm.core.LLMResponse;
+import com.riceawa.llm.core.LLMService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamResponseAssembler测试类
+ */
+public class StreamResponseAssemblerTest {
+
+    private List<String> chunks;
+    private List<String> argumentDeltas;
+    private StreamResponseAssembler assembler;
+
+    @BeforeEach
+    void setUp() {
+        chunks = new ArrayList<>();
+        argumentDeltas = new ArrayList<>();
+        assembler = new StreamResponseAssembler(new LLMService.StreamCallback() {
+            @Override
+            public void onChunk(String chunk) {
+                chunks.add(chunk);
+            }
+
+            @Override
+            public void onToolCallDelta(int index, String toolCallId, String functionName, String argumentsDelta) {
+                if (argumentsDelta != null && !argumentsDelta.isEmpty()) {
+                    argumentDeltas.add(argumentsDelta);
+                }
+            }
+
+            @Override
+            public void onComplete(LLMResponse response) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+        });
+    }
+
+    private void feed(String... lines) {
+        for (String line : lines) {
+            if (assembler.acceptLine(line)) {
+                break;
+            }
+        }
+        assembler.finish();
+    }
+
+    @Test
+    void testContentDeltasAreEmittedIncrementally() {
+        feed(
+            "data: {\"id\":\"chatcmpl-1\",\"model\":\"gpt-4o\",\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":\"\"}}]}",
+            "",
+            "data: {\"id\":\"chatcmpl-1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"你好\"}}]}",
+            "",
+            "data: {\"id\":\"chatcmpl-1\",\"choices\":[{\"index\":0,\"delta\":{\"content\":\"，世界\"},\"finish_reason\":\"stop\"}]}",
+            "",
+            "data: [DONE]",
+            ""
+        );
+
+        assertEquals(List.of("你好", "，世界"), chunks);
+        assertTrue(assembler.isDone());
+
+        LLMResponse response = assembler.buildResponse();
+        assertTrue(response.isSuccess());
+        assertEquals("chatcmpl-1", response.getId());
+        assertEquals("gpt-4o", response.getModel());
+        assertEquals("你好，世界", response.getContent());
+        assertEquals("stop", response.getChoices().get(0).getFinishReason());
+        assertEquals(LLMMessage.MessageRole.ASSISTANT, response.getChoices().get(0).getMessage().getRole());
+    }
+
+    @Test
+    void testToolCallFragmentsAreAssembled() {
+        feed(
+            "data: {\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\",\"content\":null,\"tool_calls\":[{\"index\":0,\"id\":\"call_1\",\"type\":\"function\",\"function\":{\"name\":\"get_weather\",\"arguments\":\"\"}}]}}]}",
+            "",
+            "data: {\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"{\\\"city\\\":\"}}]}}]}",
+            "",
+            "data: {\"choices\":[{\"index\":0,\"delta\":{\"tool_calls\":[{\"index\":0,\"function\":{\"arguments\":\"\\\"北京\\\"}\"}}]},\"finish_reason\":\"tool_calls\"}]}",
+            "",
+            "data: [DONE]"
+        );
+
+        assertTrue(chunks.isEmpty());
+        assertEquals(List.of("{\"city\":", "\"北京\"}"), argumentDeltas);
+
+        LLMResponse response = assembler.buildResponse();
+        assertTrue(response.isSuccess());
+        LLMMessage message = response.getChoices().get(0).getMessage();
+        assertNull(message.getContent());
+        LLMMessage.FunctionCall functionCall = message.getMetadata().getFunctionCall();
+        assertEquals("get_weather", functionCall.getName());
+        assertEquals("{\"city\":\"北京\"}", functionCall.getArguments());
+        assertEquals("call_1", functionCall.getToolCallId());
+    }
+
+    @Test
+    void testUsageChunkAndCommentsAreHandled() {
+        feed(
+            ": keep-alive",
+            "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"ok\"}}]}",
+            "",
+            "data: {\"choices\":[],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":1,\"total_tokens\":13}}",
+            "",
+            "data: [DONE]",
+            ""
+        );
+
+        LLMResponse response = assembler.buildResponse();
+        assertEquals("ok", response.getContent());
+        assertNotNull(response.getUsage());
+        assertEquals(13, response.getUsage().getTotalTokens());
+    }
+
+    @Test
+    void testStreamWithoutTrailingBlankLine() {
+        feed("data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"partial\"}}]}");
+
+        assertEquals(List.of("partial"), chunks);
+        assertEquals("partial", assembler.buildResponse().getContent());
+    }
+
+    @Test
+    void testErrorEvent() {
+        feed("data: {\"error\":{\"message\":\"Rate limit exceeded\"}}", "");
+
+        LLMResponse response = assembler.buildResponse();
+        assertFalse(response.isSuccess());
+        assertEquals("Rate limit exceeded", response.getError());
+    }
+
+    @Test
+    void testEmptyStream() {
+        feed();
+
+        assertFalse(assembler.buildResponse().isSuccess());
+    }
+}
@@ -0,0 +1,64 @@
+package com.riceawa.llm.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenBucket测试类
+ */
+public class TokenBucketTest {
+
+    private AtomicLong now;
+    private TokenBucket bucket;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong(0);
+        // 每分钟6000个token，即每毫秒0.1个
+        bucket = new TokenBucket(6000, 60_000, now::get);
+    }
+
+    @Test
+    void testBurstUpToCapacity() {
+        assertEquals(0, bucket.getWaitTimeMs(6000));
+        bucket.consume(6000);
+        assertEquals(0, bucket.getAvailable());
+        assertEquals(10_000, bucket.getWaitTimeMs(1000));
+    }
+
+    @Test
+    void testRefillOverTime() {
+        bucket.consume(6000);
+        now.addAndGet(10_000);
+        assertEquals(1000, bucket.getAvailable());
+        assertEquals(0, bucket.getWaitTimeMs(1000));
+
+        now.addAndGet(120_000);
+        assertEquals(6000, bucket.getAvailable(), "余额不应超过容量");
+    }
+
+    @Test
+    void testAdjustWithActualUsage() {
+        bucket.consume(2000);
+        // 实际只用了500，退还1500
+        bucket.adjust(500 - 2000);
+        assertEquals(5500, bucket.getAvailable());
+
+        // 实际超出预估时补扣，余额可以为负
+        bucket.consume(5000);
+        bucket.adjust(1000);
+        assertEquals(-500, bucket.getAvailable());
+        assertEquals(15_000, bucket.getWaitTimeMs(1000));
+    }
+
+    @Test
+    void testRequestLargerThanCapacityIsClamped() {
+        assertEquals(0, bucket.getWaitTimeMs(10_000));
+        bucket.consume(10_000);
+        assertEquals(0, bucket.getAvailable());
+    }
+}
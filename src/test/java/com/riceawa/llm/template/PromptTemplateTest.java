@@ -59,4 +59,20 @@ public class PromptTemplateTest {
         String promptWithVar = template.renderSystemPrompt();
         assertEquals("包含测试值的提示词", promptWithVar);
     }
+
+    @Test
+    void testContentVersionChangesWithTemplate() {
+        String version = template.getContentVersion();
+        assertEquals(version, template.copy().getContentVersion());
+
+        template.setName("改名不影响版本");
+        assertEquals(version, template.getContentVersion());
+
+        template.setSystemPrompt("你是一个服务器规则助手。");
+        String editedVersion = template.getContentVersion();
+        assertNotEquals(version, editedVersion, "修改系统提示词后版本应变化");
+
+        template.setVariable("rules", "禁止破坏");
+        assertNotEquals(editedVersion, template.getContentVersion(), "修改变量后版本应变化");
+    }
 }
@@ -0,0 +1,79 @@
+package com.riceawa.llm.tokenizer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BpeTokenizer测试类
+ */
+public class BpeTokenizerTest {
+
+    private BpeTokenizer tokenizer;
+
+    /**
+     * 构造一个小词表：256个单字节，加上几条合并规则
+     */
+    private static String vocabulary(String... merges) {
+        StringBuilder builder = new StringBuilder();
+        Base64.Encoder encoder = Base64.getEncoder();
+        for (int i = 0; i < 256; i++) {
+            builder.append(encoder.encodeToString(new byte[]{(byte) i})).append(' ').append(i).append('\n');
+        }
+        for (int i = 0; i < merges.length; i++) {
+            builder.append(encoder.encodeToString(merges[i].getBytes(StandardCharsets.UTF_8)))
+                   .append(' ').append(256 + i).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static BpeTokenizer load(String vocabulary) throws IOException {
+        return BpeTokenizer.load("test", new ByteArrayInputStream(vocabulary.getBytes(StandardCharsets.US_ASCII)),
+                BpeTokenizer.CL100K_PATTERN);
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tokenizer = load(vocabulary("he", "ll", "hell", " w", "or", " wor", " world"));
+    }
+
+    @Test
+    void testMergesByRank() {
+        // h e l l o -> he l l o -> he ll o -> hell o
+        assertArrayEquals(new int[]{258, 'o'}, tokenizer.encode("hello"));
+        assertEquals(2, tokenizer.countTokens("hello"));
+    }
+
+    @Test
+    void testWholePieceInVocabulary() {
+        assertArrayEquals(new int[]{258, 'o', 262}, tokenizer.encode("hello world"));
+        assertEquals(3, tokenizer.countTokens("hello world"));
+    }
+
+    @Test
+    void testUnmergedBytesAndUtf8() {
+        assertEquals(3, tokenizer.countTokens("xyz"));
+        assertEquals(3, tokenizer.countTokens("钻")); // 一个汉字是3个UTF-8字节
+        assertEquals(0, tokenizer.countTokens(""));
+        assertEquals(0, tokenizer.countTokens(null));
+    }
+
+    @Test
+    void testCachedCountsAreStable() {
+        int first = tokenizer.countTokens("hello hello hello world");
+        assertEquals(first, tokenizer.countTokens("hello hello hello world"));
+        assertEquals(tokenizer.encode("hello hello hello world").length, first);
+    }
+
+    @Test
+    void testRejectsInvalidVocabulary() {
+        assertThrows(IOException.class, () -> load("aGVsbG8= notanumber\n"));
+        assertThrows(IOException.class, () -> load(""));
+    }
+}
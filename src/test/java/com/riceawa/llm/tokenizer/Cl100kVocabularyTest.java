@@ -0,0 +1,47 @@
+package com.riceawa.llm.tokenizer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * 模组附带的cl100k_base词表测试类
+ * 与tiktoken对同一文本的编码结果对照；词表由构建下载，未下载时跳过
+ */
+public class Cl100kVocabularyTest {
+
+    private static BpeTokenizer tokenizer;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        try (InputStream input = TokenCounter.class.getResourceAsStream(TokenCounter.VOCABULARY_RESOURCE)) {
+            assumeTrue(input != null, "词表未打包: " + TokenCounter.VOCABULARY_RESOURCE);
+            tokenizer = BpeTokenizer.load("cl100k_base", input, BpeTokenizer.CL100K_PATTERN);
+        }
+    }
+
+    @Test
+    void testEnglish() {
+        assertArrayEquals(new int[]{15339, 1917}, tokenizer.encode("hello world"));
+        assertArrayEquals(new int[]{9906, 11, 1917, 0}, tokenizer.encode("Hello, world!"));
+        assertArrayEquals(new int[]{83, 1609, 5963, 374, 2294, 0}, tokenizer.encode("tiktoken is great!"));
+    }
+
+    @Test
+    void testChinese() {
+        assertArrayEquals(new int[]{57668, 53901}, tokenizer.encode("你好"));
+        assertEquals(2, tokenizer.countTokens("你好"));
+    }
+
+    @Test
+    void testCounterUsesBundledVocabulary() {
+        TokenCounter counter = new TokenCounter(tokenizer);
+        assertEquals(2, counter.count("hello world"));
+        assertEquals("cl100k_base", tokenizer.getName());
+    }
+}
@@ -0,0 +1,32 @@
+package com.riceawa.llm.tokenizer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * HeuristicTokenizer测试类
+ */
+public class HeuristicTokenizerTest {
+
+    private final HeuristicTokenizer tokenizer = new HeuristicTokenizer();
+
+    @Test
+    void testChineseCountsPerCharacter() {
+        assertEquals(6, tokenizer.countTokens("钻石在哪一层"));
+    }
+
+    @Test
+    void testEnglishWordsAndNumbers() {
+        assertEquals(2, tokenizer.countTokens("hello world"));
+        assertEquals(2, tokenizer.countTokens("12345"));
+        assertEquals(0, tokenizer.countTokens(""));
+    }
+
+    @Test
+    void testChineseCostsMoreThanLengthSuggests() {
+        // 按长度除以4估算时中文会被严重低估
+        String text = "末影龙的血量是多少";
+        assertTrue(tokenizer.countTokens(text) > text.length() / 4);
+    }
+}
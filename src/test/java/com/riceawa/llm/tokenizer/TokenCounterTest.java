@@ -0,0 +1,89 @@
+package com.riceawa.llm.tokenizer;
+
+import com.riceawa.llm.core.LLMMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TokenCounter测试类
+ */
+public class TokenCounterTest {
+
+    /**
+     * 记录调用次数的分词器，每个字符计为一个token
+     */
+    private static class CountingTokenizer implements Tokenizer {
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public int countTokens(String text) {
+            calls.incrementAndGet();
+            return text != null ? text.length() : 0;
+        }
+
+        @Override
+        public String getName() {
+            return "counting";
+        }
+    }
+
+    @Test
+    void testMessageCountIsMemoized() {
+        CountingTokenizer tokenizer = new CountingTokenizer();
+        TokenCounter counter = new TokenCounter(tokenizer);
+        LLMMessage message = new LLMMessage(LLMMessage.MessageRole.USER, "你好");
+
+        int tokens = counter.count(message);
+        assertEquals(2 + TokenCounter.TOKENS_PER_MESSAGE, tokens);
+        assertEquals(tokens, message.getMetadata().getTokens());
+        assertEquals("counting", message.getMetadata().getTokenizer());
+
+        int calls = tokenizer.calls.get();
+        assertEquals(tokens, counter.count(message));
+        assertEquals(calls, tokenizer.calls.get());
+    }
+
+    @Test
+    void testCountFromOtherTokenizerIsRecomputed() {
+        TokenCounter counter = new TokenCounter(new CountingTokenizer());
+        LLMMessage message = new LLMMessage(LLMMessage.MessageRole.USER, "你好");
+        // 历史记录中由估算分词器或旧版本记录的token数
+        message.getMetadata().setTokens(100);
+        message.getMetadata().setTokenizer("heuristic");
+        assertEquals(2 + TokenCounter.TOKENS_PER_MESSAGE, counter.count(message));
+        assertEquals("counting", message.getMetadata().getTokenizer());
+
+        LLMMessage legacy = new LLMMessage(LLMMessage.MessageRole.USER, "abc");
+        legacy.getMetadata().setTokens(100);
+        assertEquals(3 + TokenCounter.TOKENS_PER_MESSAGE, counter.count(legacy));
+    }
+
+    @Test
+    void testCountsFunctionCallsAndMissingMetadata() {
+        TokenCounter counter = new TokenCounter(new CountingTokenizer());
+        LLMMessage call = new LLMMessage(LLMMessage.MessageRole.ASSISTANT, "");
+        LLMMessage.MessageMetadata metadata = new LLMMessage.MessageMetadata();
+        metadata.setFunctionCall(new LLMMessage.FunctionCall("wiki", "{}", "call_1"));
+        call.setMetadata(metadata);
+        assertEquals(4 + 2 + TokenCounter.TOKENS_PER_MESSAGE, counter.count(call));
+
+        LLMMessage bare = new LLMMessage(LLMMessage.MessageRole.USER, "abc");
+        bare.setMetadata(null);
+        assertEquals(3 + TokenCounter.TOKENS_PER_MESSAGE, counter.count(bare));
+        assertNotNull(bare.getMetadata());
+    }
+
+    @Test
+    void testListIncludesReplyOverhead() {
+        TokenCounter counter = new TokenCounter(new CountingTokenizer());
+        List<LLMMessage> messages = List.of(
+            new LLMMessage(LLMMessage.MessageRole.SYSTEM, "abc"),
+            new LLMMessage(LLMMessage.MessageRole.USER, "de"));
+        assertEquals(5 + 2 * TokenCounter.TOKENS_PER_MESSAGE + TokenCounter.TOKENS_PER_REPLY, counter.count(messages));
+        assertEquals(0, counter.count(List.of()));
+    }
+}